@@ -0,0 +1,60 @@
+package root.vending;
+
+/**
+ * Which sales would succeed right now, packed into the {@code long} returned by
+ * {@link VendingMachine#getAvailability()}.
+ *
+ * Bit {@code n - 1} is set if {@code n} units of product 1 would sell, bit {@code 32 + n - 1}
+ * the same for product 2, for {@code n} up to {@link #MAX_UNITS}. A set bit means the
+ * machine is selling, holds that many units, the balance pays for them and the change can
+ * be paid out exactly. Quantities are tracked separately because change that works for one
+ * may not for the next.
+ */
+public final class Availability
+{
+    public static final int MAX_UNITS = 32;
+
+    private static final int PRODUCT2_SHIFT = 32;
+    private static final long UNITS_MASK = 0xFFFFFFFFL;
+
+    private Availability()
+    {
+    }
+
+    static long pack(int units1, int units2)
+    {
+        return (units1 & UNITS_MASK) | ((long)units2 << PRODUCT2_SHIFT);
+    }
+
+    static int units1(long availability)
+    {
+        return (int)availability;
+    }
+
+    static int units2(long availability)
+    {
+        return (int)(availability >>> PRODUCT2_SHIFT);
+    }
+
+    public static boolean canSell1(long availability, int number)
+    {
+        return number > 0 && number <= MAX_UNITS && (availability >>> (number - 1) & 1) != 0;
+    }
+
+    public static boolean canSell2(long availability, int number)
+    {
+        return number > 0 && number <= MAX_UNITS && (availability >>> (PRODUCT2_SHIFT + number - 1) & 1) != 0;
+    }
+
+    /** Largest quantity of product 1 that would sell, 0 if none. */
+    public static int maxUnits1(long availability)
+    {
+        return 32 - Integer.numberOfLeadingZeros((int)availability);
+    }
+
+    /** Largest quantity of product 2 that would sell, 0 if none. */
+    public static int maxUnits2(long availability)
+    {
+        return 32 - Integer.numberOfLeadingZeros((int)(availability >>> PRODUCT2_SHIFT));
+    }
+}
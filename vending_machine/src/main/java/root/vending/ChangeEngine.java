@@ -0,0 +1,92 @@
+package root.vending;
+
+import java.util.Arrays;
+
+import root.vending.VendingMachine.Response;
+
+/**
+ * Decides how a machine pays out change from the coins it holds.
+ *
+ * Coin types are addressed by index; {@link #denominations()} gives the value of each.
+ */
+public interface ChangeEngine
+{
+    /**
+     * Plans a payout of {@code amount} from {@code coins[i]} coins of each type.
+     *
+     * @return {@code OK} with the number of coins of each type to dispense written to
+     *         {@code out}, {@code TOO_BIG_CHANGE} if the coins held are worth less than
+     *         {@code amount}, or {@code UNSUITABLE_CHANGE} if no combination of them adds
+     *         up to it exactly; {@code out} is unspecified unless the result is {@code OK}
+     */
+    Response makeChange(int amount, int[] coins, int[] out);
+
+    int[] denominations();
+
+    /**
+     * Returns an engine for coin types worth {@code values[i]} of which at most
+     * {@code capacities[i]} are held.
+     *
+     * When every value divides the next larger one, taking as many of the largest coins
+     * as possible is always exact and the engine is stateless. Other coin sets get a
+     * memoized feasibility table that is not thread-safe.
+     */
+    static ChangeEngine forCoins(int[] values, int[] capacities)
+    {
+        check(values, capacities);
+
+        int[] order = GreedyChangeEngine.descending(values);
+        for(int j = 1; j < order.length; j++)
+        {
+            if(values[order[j - 1]] % values[order[j]] != 0)
+                return new TableChangeEngine(values, capacities);
+        }
+        return new GreedyChangeEngine(values);
+    }
+
+    /**
+     * Returns an engine for two coin types that, of the ways to pay an amount, takes the
+     * one leaving the most amounts up to twice the sum of the two values payable, so that
+     * coins a later sale will need are not handed out when others would do. Its policy is
+     * precomputed for up to {@code capacities[i]} coins of each type; the engine is
+     * immutable and can be shared by many machines.
+     */
+    static ChangeEngine preserving(int[] values, int[] capacities)
+    {
+        check(values, capacities);
+        return preserving(values, capacities, values.length == 2 ? 2*(values[0] + values[1]) : 1);
+    }
+
+    /** {@link #preserving(int[], int[])} looking ahead at the amounts from 1 to {@code horizon}. */
+    static ChangeEngine preserving(int[] values, int[] capacities, int horizon)
+    {
+        if(horizon <= 0) throw new IllegalArgumentException("horizon: " + horizon);
+        int[] weights = new int[horizon + 1];
+        Arrays.fill(weights, 1, weights.length, 1);
+        return preserving(values, capacities, weights);
+    }
+
+    /**
+     * {@link #preserving(int[], int[])} keeping payable the change that matters most:
+     * {@code weights[a]} says how much amount {@code a} is worth keeping payable, for
+     * instance how often sales have asked for it.
+     */
+    static ChangeEngine preserving(int[] values, int[] capacities, int[] weights)
+    {
+        check(values, capacities);
+        return new PreservingChangeEngine(values, capacities, weights);
+    }
+
+    private static void check(int[] values, int[] capacities)
+    {
+        if(values.length == 0 || values.length != capacities.length)
+            throw new IllegalArgumentException("need one capacity per coin value");
+        for(int i = 0; i < values.length; i++)
+        {
+            if(values[i] <= 0) throw new IllegalArgumentException("coin value: " + values[i]);
+            if(capacities[i] < 0) throw new IllegalArgumentException("coin capacity: " + capacities[i]);
+            for(int j = 0; j < i; j++)
+                if(values[i] == values[j]) throw new IllegalArgumentException("duplicate coin value: " + values[i]);
+        }
+    }
+}
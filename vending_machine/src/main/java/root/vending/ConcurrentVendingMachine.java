@@ -0,0 +1,342 @@
+package root.vending;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import root.vending.VendingMachine.Mode;
+import root.vending.VendingMachine.Response;
+
+/**
+ * Thread-safe variant of {@link VendingMachine} that never takes a monitor.
+ *
+ * All counters, the balance and the mode live in one packed {@code long} that is
+ * replaced with a CAS loop, so every operation sees and commits a consistent state.
+ * Prices sit in a second word; they can only change in admin mode, and every entry
+ * into admin mode bumps an epoch inside the state word, so a sale that read the
+ * state before a price change can never commit against it.
+ *
+ * Responses are identical to {@link VendingMachine}.
+ */
+public class ConcurrentVendingMachine
+{
+    private static final long id = 117345294655382L;
+
+    private static final int max1 = 30;
+    private static final int max2 = 40;
+
+    private static final int maxc1 = 50;
+    private static final int maxc2 = 50;
+
+    // state word: num1 | num2 | coins1 | coins2 | balance | mode | pricing | epoch
+    private static final int NUM1_SHIFT    = 0;
+    private static final int NUM2_SHIFT    = 6;
+    private static final int COINS1_SHIFT  = 12;
+    private static final int COINS2_SHIFT  = 18;
+    private static final int BALANCE_SHIFT = 24;
+    private static final int MODE_SHIFT    = 32;
+    private static final int PRICING_SHIFT = 33;
+    private static final int EPOCH_SHIFT   = 34;
+
+    private static final long COUNT_MASK   = 0x3FL;
+    private static final long BALANCE_MASK = 0xFFL;
+    private static final long ADMIN        = 1L << MODE_SHIFT;
+    private static final long PRICING      = 1L << PRICING_SHIFT;
+    private static final long EPOCH_MASK   = (1L << 29) - 1;
+
+    private static final long TOO_BIG    = -1;
+    private static final long UNSUITABLE = -2;
+
+    private final AtomicLong state = new AtomicLong();
+    private volatile long prices = packPrices(8, 5);
+
+    static int num1(long s)    { return (int)((s >>> NUM1_SHIFT) & COUNT_MASK); }
+    static int num2(long s)    { return (int)((s >>> NUM2_SHIFT) & COUNT_MASK); }
+    static int coins1(long s)  { return (int)((s >>> COINS1_SHIFT) & COUNT_MASK); }
+    static int coins2(long s)  { return (int)((s >>> COINS2_SHIFT) & COUNT_MASK); }
+    static int balance(long s) { return (int)((s >>> BALANCE_SHIFT) & BALANCE_MASK); }
+    static Mode mode(long s)   { return (s & ADMIN) != 0 ? Mode.ADMINISTERING : Mode.OPERATION; }
+
+    static long pack(int num1, int num2, int coins1, int coins2, int balance, long flags)
+    {
+        return ((long)num1 << NUM1_SHIFT)
+             | ((long)num2 << NUM2_SHIFT)
+             | ((long)coins1 << COINS1_SHIFT)
+             | ((long)coins2 << COINS2_SHIFT)
+             | ((long)balance << BALANCE_SHIFT)
+             | flags;
+    }
+
+    private static long flags(long s)
+    {
+        return s & ~((1L << MODE_SHIFT) - 1);
+    }
+
+    private static long nextEpoch(long s)
+    {
+        long epoch = ((s >>> EPOCH_SHIFT) + 1) & EPOCH_MASK;
+        return (s & ~(EPOCH_MASK << EPOCH_SHIFT)) | (epoch << EPOCH_SHIFT);
+    }
+
+    private static long packPrices(int p1, int p2)
+    {
+        return ((long)p1 << 32) | (p2 & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the state word with {@code amount} paid out and the balance cleared,
+     * or {@link #TOO_BIG}/{@link #UNSUITABLE}.
+     */
+    private static long payOut(long s, int amount)
+    {
+        int coins1 = coins1(s);
+        int coins2 = coins2(s);
+        int coinval1 = MachineConfig.DEFAULT.getCoinValue1();
+        int coinval2 = MachineConfig.DEFAULT.getCoinValue2();
+
+        if(amount > coins1*coinval1 + coins2*coinval2)
+        {
+            return TOO_BIG;
+        }
+        else if(amount > coins2*coinval2)
+        {
+            // using coinval1 == 1
+            coins1 -= (amount-coins2*coinval2);
+            coins2 = 0;
+        }
+        else if(amount%coinval2 == 0)
+        {
+            coins2 -= (amount/coinval2);
+        }
+        else if(coins1 == 0)
+        {
+            // using coinval1 == 1
+            return UNSUITABLE;
+        }
+        else
+        {
+            // using coinval1 == 1
+            coins2 -= (amount/coinval2);
+            coins1 -= amount%coinval2;
+        }
+        return pack(num1(s), num2(s), coins1, coins2, 0, flags(s));
+    }
+
+    private static Response failure(long code)
+    {
+        return code == TOO_BIG ? Response.TOO_BIG_CHANGE : Response.UNSUITABLE_CHANGE;
+    }
+
+    public int getNumberOfProduct1()
+    {
+        return num1(state.get());
+    }
+
+    public int getNumberOfProduct2()
+    {
+        return num2(state.get());
+    }
+
+    public int getCurrentBalance()
+    {
+        return balance(state.get());
+    }
+
+    public Mode getCurrentMode()
+    {
+        return mode(state.get());
+    }
+
+    public int getCurrentSum()
+    {
+        long s = state.get();
+        if(mode(s) == Mode.OPERATION)
+            return 0;
+        else
+            return coins1(s)*MachineConfig.DEFAULT.getCoinValue1()+coins2(s)*MachineConfig.DEFAULT.getCoinValue2();
+    }
+
+    public int getCoins1()
+    {
+        long s = state.get();
+        if(mode(s) == Mode.OPERATION)
+            return 0;
+        else
+            return coins1(s);
+    }
+
+    public int getCoins2()
+    {
+        long s = state.get();
+        if(mode(s) == Mode.OPERATION)
+            return 0;
+        else
+            return coins2(s);
+    }
+
+    public int getPrice1()
+    {
+        return (int)(prices >>> 32);
+    }
+
+    public int getPrice2()
+    {
+        return (int)prices;
+    }
+
+    public Response fillProducts()
+    {
+        for(;;)
+        {
+            long s = state.get();
+            if(mode(s) == Mode.OPERATION) return Response.ILLEGAL_OPERATION;
+            long next = pack(max1, max2, coins1(s), coins2(s), balance(s), flags(s));
+            if(state.compareAndSet(s, next)) return Response.OK;
+        }
+    }
+
+    public Response fillCoins(int c1, int c2)
+    {
+        for(;;)
+        {
+            long s = state.get();
+            if(mode(s) == Mode.OPERATION) return Response.ILLEGAL_OPERATION;
+            if(c1 <= 0 || c1 > maxc1) return Response.INVALID_PARAM;
+            if(c2 <= 0 || c2 > maxc2) return Response.INVALID_PARAM;
+            long next = pack(num1(s), num2(s), c1, c2, balance(s), flags(s));
+            if(state.compareAndSet(s, next)) return Response.OK;
+        }
+    }
+
+    public Response enterAdminMode(long code)
+    {
+        for(;;)
+        {
+            long s = state.get();
+            if(code != id) return Response.INVALID_PARAM;
+            if(balance(s) != 0) return Response.CANNOT_PERFORM;
+            if((s & PRICING) != 0)
+            {
+                Thread.onSpinWait();
+                continue;
+            }
+            if(state.compareAndSet(s, nextEpoch(s) | ADMIN)) return Response.OK;
+        }
+    }
+
+    public void exitAdminMode()
+    {
+        for(;;)
+        {
+            long s = state.get();
+            if((s & PRICING) != 0)
+            {
+                Thread.onSpinWait();
+                continue;
+            }
+            if(state.compareAndSet(s, s & ~ADMIN)) return;
+        }
+    }
+
+    public Response setPrices(int p1, int p2)
+    {
+        for(;;)
+        {
+            long s = state.get();
+            if(mode(s) == Mode.OPERATION) return Response.ILLEGAL_OPERATION;
+            if(p1 <= 0 || p2 <= 0) return Response.INVALID_PARAM;
+            if((s & PRICING) != 0)
+            {
+                Thread.onSpinWait();
+                continue;
+            }
+            if(!state.compareAndSet(s, s | PRICING)) continue;
+
+            // sales are rejected in admin mode and mode changes wait for the flag,
+            // so nobody can observe the state word together with a half-written price
+            prices = packPrices(p1, p2);
+            state.getAndAdd(-PRICING);
+            return Response.OK;
+        }
+    }
+
+    public Response putCoin1()
+    {
+        for(;;)
+        {
+            long s = state.get();
+            if(mode(s) == Mode.ADMINISTERING) return Response.ILLEGAL_OPERATION;
+            if(coins1(s) == maxc1)            return Response.CANNOT_PERFORM;
+
+            long next = pack(num1(s), num2(s), coins1(s) + 1, coins2(s), balance(s) + MachineConfig.DEFAULT.getCoinValue1(), flags(s));
+            if(state.compareAndSet(s, next)) return Response.OK;
+        }
+    }
+
+    public Response putCoin2()
+    {
+        for(;;)
+        {
+            long s = state.get();
+            if(mode(s) == Mode.ADMINISTERING) return Response.ILLEGAL_OPERATION;
+            if(coins2(s) == maxc2)            return Response.CANNOT_PERFORM;
+
+            long next = pack(num1(s), num2(s), coins1(s), coins2(s) + 1, balance(s) + MachineConfig.DEFAULT.getCoinValue2(), flags(s));
+            if(state.compareAndSet(s, next)) return Response.OK;
+        }
+    }
+
+    public Response returnMoney()
+    {
+        for(;;)
+        {
+            long s = state.get();
+            if(mode(s) == Mode.ADMINISTERING) return Response.ILLEGAL_OPERATION;
+
+            int balance = balance(s);
+            if(balance == 0) return Response.OK;
+
+            long next = payOut(s, balance);
+            if(next < 0) return failure(next);
+            if(state.compareAndSet(s, next)) return Response.OK;
+        }
+    }
+
+    public Response giveProduct1(int number)
+    {
+        for(;;)
+        {
+            long s = state.get();
+            if(mode(s) == Mode.ADMINISTERING) return Response.ILLEGAL_OPERATION;
+
+            if(number <= 0 || number > max1) return Response.INVALID_PARAM;
+            if(number > num1(s)) return Response.INSUFFICIENT_PRODUCT;
+
+            int res = balance(s) - number*getPrice1();
+            if(res < 0) return Response.INSUFFICIENT_MONEY;
+
+            long next = payOut(s, res);
+            if(next < 0) return failure(next);
+            next -= (long)number << NUM1_SHIFT;
+            if(state.compareAndSet(s, next)) return Response.OK;
+        }
+    }
+
+    public Response giveProduct2(int number)
+    {
+        for(;;)
+        {
+            long s = state.get();
+            if(mode(s) == Mode.ADMINISTERING) return Response.ILLEGAL_OPERATION;
+
+            if(number <= 0 || number > max2) return Response.INVALID_PARAM;
+            if(number > num2(s)) return Response.INSUFFICIENT_PRODUCT;
+
+            int res = balance(s) - number*getPrice2();
+            if(res < 0) return Response.INSUFFICIENT_MONEY;
+
+            long next = payOut(s, res);
+            if(next < 0) return failure(next);
+            next -= (long)number << NUM2_SHIFT;
+            if(state.compareAndSet(s, next)) return Response.OK;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package root.vending;
+
+import java.util.Objects;
+
+/**
+ * The current {@link MachineConfig} of the machines sharing this reference.
+ *
+ * A single volatile field: machines read it once per operation and a {@link ConfigWatcher}
+ * replaces it with a version validated elsewhere, so an operation sees either the old
+ * configuration or the new one as a whole.
+ */
+public final class ConfigReference
+{
+    private volatile MachineConfig config;
+
+    public ConfigReference(MachineConfig config)
+    {
+        this.config = Objects.requireNonNull(config);
+    }
+
+    public MachineConfig get()
+    {
+        return config;
+    }
+
+    public void set(MachineConfig config)
+    {
+        this.config = Objects.requireNonNull(config);
+    }
+}
@@ -0,0 +1,158 @@
+package root.vending;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Reloads a {@link MachineConfig} file into a {@link ConfigReference} whenever it changes.
+ *
+ * Loading and validation happen on the watcher's own daemon thread; machines only ever
+ * see the reference switch from one valid version to the next. A file that cannot be read
+ * or fails validation is counted and ignored, leaving the last good version in place, so
+ * an editor saving half a file costs nothing but a retry on its next write. Replacing the
+ * file with an atomic move is seen as well as writing it in place. Machines fix their coin
+ * values when built, so a version that changes them is refused the same way.
+ */
+public final class ConfigWatcher implements AutoCloseable
+{
+    private final Path file;
+    private final ConfigReference reference;
+    private final WatchService service;
+    private final Thread thread;
+
+    private volatile long reloads;
+    private volatile long failures;
+    private volatile Exception lastFailure;
+
+    private ConfigWatcher(Path file, ConfigReference reference, WatchService service)
+    {
+        this.file = file;
+        this.reference = reference;
+        this.service = service;
+        this.thread = new Thread(this::run, "config-watcher " + file.getFileName());
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Loads {@code file} into {@code reference} and keeps it current until closed.
+     *
+     * @throws IOException if the file cannot be read or is invalid now; nothing is started
+     */
+    public static ConfigWatcher watch(Path file, ConfigReference reference) throws IOException
+    {
+        file = file.toAbsolutePath();
+        reference.set(MachineConfig.load(file));
+
+        WatchService service = FileSystems.getDefault().newWatchService();
+        try
+        {
+            file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        catch(IOException e)
+        {
+            service.close();
+            throw e;
+        }
+
+        ConfigWatcher watcher = new ConfigWatcher(file, reference, service);
+        watcher.thread.start();
+        return watcher;
+    }
+
+    private void run()
+    {
+        Path name = file.getFileName();
+        try
+        {
+            while(true)
+            {
+                WatchKey key = service.take();
+                boolean changed = false;
+                for(WatchEvent<?> event : key.pollEvents())
+                {
+                    if(event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context()))
+                        changed = true;
+                }
+                if(changed) reload();
+                if(!key.reset()) return;
+            }
+        }
+        catch(InterruptedException | ClosedWatchServiceException e)
+        {
+            // closed
+        }
+    }
+
+    /** Loads the file now; returns whether a new version was swapped in. */
+    boolean reload()
+    {
+        MachineConfig loaded;
+        try
+        {
+            loaded = MachineConfig.load(file);
+        }
+        catch(IOException e)
+        {
+            lastFailure = e;
+            failures++;
+            return false;
+        }
+
+        MachineConfig current = reference.get();
+        if(loaded.equals(current)) return false;
+        if(loaded.getCoinValue1() != current.getCoinValue1() || loaded.getCoinValue2() != current.getCoinValue2())
+        {
+            lastFailure = new IOException(file + ": coin values " + loaded.getCoinValue1() + "/" + loaded.getCoinValue2()
+                    + " differ from " + current.getCoinValue1() + "/" + current.getCoinValue2()
+                    + "; running machines keep theirs, restart to change them");
+            failures++;
+            return false;
+        }
+        reference.set(loaded);
+        reloads++;
+        return true;
+    }
+
+    public Path getFile()
+    {
+        return file;
+    }
+
+    /** Number of new versions swapped in since the watcher started. */
+    public long getReloads()
+    {
+        return reloads;
+    }
+
+    /** Number of changes to the file that could not be loaded or changed the coin values. */
+    public long getFailures()
+    {
+        return failures;
+    }
+
+    /** Why the latest failed load failed, or {@code null}. */
+    public Exception getLastFailure()
+    {
+        return lastFailure;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        service.close();
+        try
+        {
+            thread.join();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
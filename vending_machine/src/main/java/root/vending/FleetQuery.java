@@ -0,0 +1,118 @@
+package root.vending;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Fleet-wide filters and totals over a {@link MachineRegistry}, evaluated with parallel
+ * streams on the common fork-join pool.
+ *
+ * Each machine is read under its monitor, the same one {@link MachineServer} holds for a
+ * sale, so every machine contributes a consistent state while sales go on elsewhere. A
+ * result is therefore a sum of per-machine snapshots, not a fleet-wide one. State is read
+ * directly: no machine is switched into admin mode to see its coins.
+ */
+public final class FleetQuery
+{
+    private final MachineRegistry registry;
+
+    public FleetQuery(MachineRegistry registry)
+    {
+        this.registry = registry;
+    }
+
+    /** Ids of the machines whose state matches {@code filter}, in ascending order. */
+    public List<Long> find(Predicate<MachineState> filter)
+    {
+        return read().filter(r -> filter.test(r.state)).map(r -> r.id).sorted().collect(Collectors.toList());
+    }
+
+    public long count(Predicate<MachineState> filter)
+    {
+        return read().filter(r -> filter.test(r.state)).count();
+    }
+
+    public long sum(ToLongFunction<MachineState> value)
+    {
+        return read().mapToLong(r -> value.applyAsLong(r.state)).sum();
+    }
+
+    /** State of every machine, keyed by id. */
+    public Map<Long, MachineState> snapshot()
+    {
+        return read().collect(Collectors.toConcurrentMap(r -> r.id, r -> r.state));
+    }
+
+    /** Value of all coins held, customers' unspent balances included. */
+    public long totalCash()
+    {
+        return read().mapToLong(r -> (long)r.state.getCoins1()*r.cashValue1 + (long)r.state.getCoins2()*r.cashValue2).sum();
+    }
+
+    public long totalBalance()
+    {
+        return sum(MachineState::getBalance);
+    }
+
+    public List<Long> lowOnProduct1(int units)
+    {
+        return find(s -> s.getNumberOfProduct1() < units);
+    }
+
+    public List<Long> lowOnProduct2(int units)
+    {
+        return find(s -> s.getNumberOfProduct2() < units);
+    }
+
+    /**
+     * Machines that could not give back some overpayment smaller than their largest coin,
+     * for example a machine without coins worth 1 when the coins are worth 1 and 2.
+     */
+    public List<Long> cannotMakeChange()
+    {
+        return registry.entries()
+                .filter(e -> !canMakeSmallChange(e.getValue()))
+                .map(Map.Entry::getKey)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private static boolean canMakeSmallChange(VendingMachine machine)
+    {
+        int largest = Math.max(machine.getCoinValue1(), machine.getCoinValue2());
+        synchronized(machine)
+        {
+            for(int amount = 1; amount < largest; amount++)
+                if(!machine.canMakeChange(amount)) return false;
+        }
+        return true;
+    }
+
+    private Stream<Reading> read()
+    {
+        return registry.entries().map(e -> new Reading(e.getKey(), e.getValue()));
+    }
+
+    private static final class Reading
+    {
+        final long id;
+        final MachineState state;
+        final int cashValue1;
+        final int cashValue2;
+
+        Reading(long id, VendingMachine machine)
+        {
+            this.id = id;
+            synchronized(machine)
+            {
+                this.state = machine.captureState();
+            }
+            this.cashValue1 = machine.getCoinValue1();
+            this.cashValue2 = machine.getCoinValue2();
+        }
+    }
+}
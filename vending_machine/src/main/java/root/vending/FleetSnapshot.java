@@ -0,0 +1,181 @@
+package root.vending;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import root.vending.VendingMachine.Mode;
+
+/**
+ * Versioned binary snapshot of many machines: a 32-byte header followed by one
+ * fixed-width record per machine.
+ *
+ * <pre>
+ * header: magic "VMSN" | version u16 | record size u16 | count i32 | crc32c of records i32 | reserved
+ * record: num1 i16 | num2 i16 | coins1 i16 | coins2 i16 | balance i32 | price1 i32 | price2 i32 | mode u8 | flags u8 | pad
+ * </pre>
+ *
+ * Bit 0 of the flags marks prices that came from the machine's configuration; records
+ * written before it existed have it clear and restore their prices as the machine's own.
+ *
+ * All values are little-endian. Files are written to a temporary sibling and moved into
+ * place, so a reader never sees a half-written snapshot.
+ */
+public final class FleetSnapshot
+{
+    public static final int MAGIC = 0x4E534D56;
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 24;
+
+    private static final int CHUNK = 64 << 10;
+    private static final Mode[] MODES = Mode.values();
+    private static final int CONFIGURED_PRICES = 1;
+
+    private final MappedByteBuffer data;
+    private final int count;
+    private final int crc;
+
+    private FleetSnapshot(MappedByteBuffer data, int count, int crc)
+    {
+        this.data = data;
+        this.count = count;
+        this.crc = crc;
+    }
+
+    /** Maps {@code file} and checks its header; records are decoded only when asked for. */
+    public static FleetSnapshot open(Path file) throws IOException
+    {
+        MappedByteBuffer data;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        data.order(ByteOrder.LITTLE_ENDIAN);
+
+        if(data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC)
+            throw new IOException(file + ": not a machine snapshot");
+        if(data.getShort(4) != VERSION)
+            throw new IOException(file + ": unsupported snapshot version " + data.getShort(4));
+        if(data.getShort(6) != RECORD_SIZE)
+            throw new IOException(file + ": unexpected record size " + data.getShort(6));
+
+        int count = data.getInt(8);
+        if(count < 0 || data.limit() != HEADER_SIZE + (long)count*RECORD_SIZE)
+            throw new IOException(file + ": truncated snapshot");
+        return new FleetSnapshot(data, count, data.getInt(12));
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    public MachineState state(int index)
+    {
+        return getRecord(data, offset(index));
+    }
+
+    /** Checks the records against the header checksum; reads the whole file. */
+    public boolean verify()
+    {
+        return checksum(data, HEADER_SIZE, count*RECORD_SIZE) == crc;
+    }
+
+    static int offset(int index)
+    {
+        if(index < 0) throw new IndexOutOfBoundsException(Integer.toString(index));
+        return HEADER_SIZE + index*RECORD_SIZE;
+    }
+
+    ByteBuffer data()
+    {
+        return data;
+    }
+
+    public static void write(Path file, List<VendingMachine> machines) throws IOException
+    {
+        write(file, machines.size(), (buffer, at, i) -> putRecord(buffer, at, machines.get(i).captureState()));
+    }
+
+    interface RecordSource
+    {
+        void put(ByteBuffer buffer, int at, int index);
+    }
+
+    static void write(Path file, int count, RecordSource source) throws IOException
+    {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK - CHUNK % RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32C crc = new CRC32C();
+
+        try(FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            long position = HEADER_SIZE;
+            for(int i = 0; i < count; )
+            {
+                chunk.clear();
+                int at = 0;
+                for(; i < count && at + RECORD_SIZE <= chunk.capacity(); i++, at += RECORD_SIZE)
+                    source.put(chunk, at, i);
+
+                chunk.limit(at);
+                crc.update(chunk.duplicate());
+                while(chunk.hasRemaining()) position += out.write(chunk, position);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0, MAGIC);
+            header.putShort(4, VERSION);
+            header.putShort(6, (short)RECORD_SIZE);
+            header.putInt(8, count);
+            header.putInt(12, (int)crc.getValue());
+            while(header.hasRemaining()) out.write(header, header.position());
+            out.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static void putRecord(ByteBuffer buffer, int at, MachineState state)
+    {
+        buffer.putShort(at, (short)state.getNumberOfProduct1());
+        buffer.putShort(at + 2, (short)state.getNumberOfProduct2());
+        buffer.putShort(at + 4, (short)state.getCoins1());
+        buffer.putShort(at + 6, (short)state.getCoins2());
+        buffer.putInt(at + 8, state.getBalance());
+        buffer.putInt(at + 12, state.getPrice1());
+        buffer.putInt(at + 16, state.getPrice2());
+        buffer.put(at + 20, (byte)state.getMode().ordinal());
+        buffer.put(at + 21, (byte)(state.hasConfiguredPrices() ? CONFIGURED_PRICES : 0));
+        buffer.putShort(at + 22, (short)0);
+    }
+
+    static MachineState getRecord(ByteBuffer buffer, int at)
+    {
+        return new MachineState(
+                buffer.getShort(at), buffer.getShort(at + 2),
+                buffer.getShort(at + 4), buffer.getShort(at + 6),
+                buffer.getInt(at + 8),
+                buffer.getInt(at + 12), buffer.getInt(at + 16),
+                MODES[buffer.get(at + 20)],
+                (buffer.get(at + 21) & CONFIGURED_PRICES) != 0);
+    }
+
+    private static int checksum(ByteBuffer buffer, int from, int length)
+    {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(from + length).position(from);
+        CRC32C crc = new CRC32C();
+        crc.update(view);
+        return (int)crc.getValue();
+    }
+}
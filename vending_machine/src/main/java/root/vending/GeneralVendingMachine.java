@@ -0,0 +1,195 @@
+package root.vending;
+
+import root.vending.VendingMachine.Mode;
+import root.vending.VendingMachine.Response;
+
+/**
+ * {@link VendingMachine} generalized to any number of product slots and coin types.
+ *
+ * Slots and coin types are addressed by index and follow the same rules as their
+ * numbered counterparts in {@link VendingMachine}; change is planned by a
+ * {@link ChangeEngine}. Configured with two slots of 30 and 40, prices 8 and 5 and
+ * up to 50 coins worth 1 and 2 it behaves exactly like {@link VendingMachine}.
+ */
+public class GeneralVendingMachine
+{
+    private final long id;
+
+    private Mode mode = Mode.OPERATION;
+
+    private final int[] max;
+    private final int[] num;
+    private final int[] price;
+
+    private final int[] maxc;
+    private final int[] coins;
+    private final int[] coinval;
+
+    private int balance = 0;
+
+    private final ChangeEngine changeEngine;
+    private final int[] change;
+
+    public GeneralVendingMachine(long id, int[] max, int[] prices, int[] maxc, ChangeEngine changeEngine)
+    {
+        if(max.length == 0 || max.length != prices.length)
+            throw new IllegalArgumentException("need one price per product slot");
+        this.coinval = changeEngine.denominations();
+        if(coinval.length != maxc.length)
+            throw new IllegalArgumentException("need one capacity per coin type");
+
+        this.id = id;
+        this.max = max.clone();
+        this.num = new int[max.length];
+        this.price = prices.clone();
+        this.maxc = maxc.clone();
+        this.coins = new int[maxc.length];
+        this.changeEngine = changeEngine;
+        this.change = new int[maxc.length];
+    }
+
+    public GeneralVendingMachine(long id, int[] max, int[] prices, int[] coinval, int[] maxc)
+    {
+        this(id, max, prices, maxc, ChangeEngine.forCoins(coinval, maxc));
+    }
+
+    public int getProductCount()
+    {
+        return num.length;
+    }
+
+    public int getCoinTypeCount()
+    {
+        return coins.length;
+    }
+
+    public int getNumberOfProduct(int slot)
+    {
+        return num[slot];
+    }
+
+    public int getCurrentBalance()
+    {
+        return balance;
+    }
+
+    public Mode getCurrentMode()
+    {
+        return mode;
+    }
+
+    public int getCurrentSum()
+    {
+        if(mode == Mode.OPERATION)
+            return 0;
+
+        int sum = 0;
+        for(int i = 0; i < coins.length; i++) sum += coins[i]*coinval[i];
+        return sum;
+    }
+
+    public int getCoins(int type)
+    {
+        if(mode == Mode.OPERATION)
+            return 0;
+        else
+            return coins[type];
+    }
+
+    public int getCoinValue(int type)
+    {
+        return coinval[type];
+    }
+
+    public int getPrice(int slot)
+    {
+        return price[slot];
+    }
+
+    public Response fillProducts()
+    {
+        if(mode == Mode.OPERATION) return Response.ILLEGAL_OPERATION;
+        System.arraycopy(max, 0, num, 0, max.length);
+        return Response.OK;
+    }
+
+    public Response fillCoins(int... counts)
+    {
+        if(mode == Mode.OPERATION) return Response.ILLEGAL_OPERATION;
+        if(counts.length != coins.length) return Response.INVALID_PARAM;
+        for(int i = 0; i < counts.length; i++)
+            if(counts[i] <= 0 || counts[i] > maxc[i]) return Response.INVALID_PARAM;
+        System.arraycopy(counts, 0, coins, 0, counts.length);
+        return Response.OK;
+    }
+
+    public Response enterAdminMode(long code)
+    {
+        if(code != id) return Response.INVALID_PARAM;
+        if(balance != 0) return Response.CANNOT_PERFORM;
+
+        mode = Mode.ADMINISTERING;
+        return Response.OK;
+    }
+
+    public void exitAdminMode()
+    {
+        mode = Mode.OPERATION;
+    }
+
+    public Response setPrices(int... prices)
+    {
+        if(mode == Mode.OPERATION) return Response.ILLEGAL_OPERATION;
+        if(prices.length != price.length) return Response.INVALID_PARAM;
+        for(int p : prices)
+            if(p <= 0) return Response.INVALID_PARAM;
+        System.arraycopy(prices, 0, price, 0, prices.length);
+        return Response.OK;
+    }
+
+    public Response putCoin(int type)
+    {
+        if(mode == Mode.ADMINISTERING) return Response.ILLEGAL_OPERATION;
+        if(type < 0 || type >= coins.length) return Response.INVALID_PARAM;
+        if(coins[type] == maxc[type])        return Response.CANNOT_PERFORM;
+
+        balance += coinval[type];
+        coins[type]++;
+
+        return Response.OK;
+    }
+
+    public Response returnMoney()
+    {
+        if(mode == Mode.ADMINISTERING) return Response.ILLEGAL_OPERATION;
+
+        if(balance == 0) return Response.OK;
+        return payOut(balance);
+    }
+
+    public Response giveProduct(int slot, int number)
+    {
+        if(mode == Mode.ADMINISTERING) return Response.ILLEGAL_OPERATION;
+
+        if(slot < 0 || slot >= num.length) return Response.INVALID_PARAM;
+        if(number <= 0 || number > max[slot]) return Response.INVALID_PARAM;
+        if(number > num[slot]) return Response.INSUFFICIENT_PRODUCT;
+
+        int res = balance - number*price[slot];
+        if(res < 0) return Response.INSUFFICIENT_MONEY;
+
+        Response response = payOut(res);
+        if(response == Response.OK) num[slot] -= number;
+        return response;
+    }
+
+    private Response payOut(int amount)
+    {
+        Response response = changeEngine.makeChange(amount, coins, change);
+        if(response != Response.OK) return response;
+
+        for(int i = 0; i < coins.length; i++) coins[i] -= change[i];
+        balance = 0;
+        return Response.OK;
+    }
+}
@@ -0,0 +1,55 @@
+package root.vending;
+
+import java.util.Arrays;
+
+import root.vending.VendingMachine.Response;
+
+/**
+ * Largest coins first. Exact whenever each coin value divides the next larger one:
+ * the smaller coins of any payout can then be regrouped into a larger coin.
+ */
+final class GreedyChangeEngine implements ChangeEngine
+{
+    private final int[] values;
+    private final int[] order;
+
+    GreedyChangeEngine(int[] values)
+    {
+        this.values = values.clone();
+        this.order = descending(values);
+    }
+
+    static int[] descending(int[] values)
+    {
+        Integer[] boxed = new Integer[values.length];
+        for(int i = 0; i < boxed.length; i++) boxed[i] = i;
+        Arrays.sort(boxed, (a, b) -> Integer.compare(values[b], values[a]));
+
+        int[] order = new int[boxed.length];
+        for(int i = 0; i < order.length; i++) order[i] = boxed[i];
+        return order;
+    }
+
+    @Override
+    public Response makeChange(int amount, int[] coins, int[] out)
+    {
+        long total = 0;
+        for(int i = 0; i < values.length; i++) total += (long)coins[i]*values[i];
+        if(amount > total) return Response.TOO_BIG_CHANGE;
+
+        int rest = amount;
+        for(int i : order)
+        {
+            int n = Math.min(coins[i], rest/values[i]);
+            out[i] = n;
+            rest -= n*values[i];
+        }
+        return rest == 0 ? Response.OK : Response.UNSUITABLE_CHANGE;
+    }
+
+    @Override
+    public int[] denominations()
+    {
+        return values.clone();
+    }
+}
@@ -0,0 +1,325 @@
+package root.vending;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import root.vending.VendingMachine.Response;
+
+/**
+ * One sealed, memory-mapped file of a {@link HistoryStore}.
+ *
+ * <pre>
+ * header:  magic "VMHC" | version u16 | columns u16 | rows i32 | machines i32 | events i32 | reserved i32
+ *          | first time i64 | last time i64 | reserved
+ * machines: id i64 per distinct machine
+ * events:   operation u8 | response u8 per distinct pair, padded to 8 bytes
+ * column:   base i64 | width i32 | words i32 | words i64
+ * </pre>
+ *
+ * Columns hold the time since the previous row, the machine and event as indices into
+ * their dictionaries, units, amount and the coins paid out of each kind. Each is stored
+ * as offsets from its smallest value, packed into as few bits as the largest offset
+ * needs. All values are little-endian.
+ */
+final class HistorySegment
+{
+    static final int MAGIC = 0x43484D56;
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 64;
+
+    static final int TIME = 0;
+    static final int MACHINE = 1;
+    static final int EVENT = 2;
+    static final int UNITS = 3;
+    static final int AMOUNT = 4;
+    static final int COINS1 = 5;
+    static final int COINS2 = 6;
+    static final int COLUMNS = 7;
+
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final Response[] RESPONSES = Response.values();
+
+    private final MappedByteBuffer data;
+    private final int rows;
+    private final long firstTime;
+    private final long lastTime;
+    private final long[] machines;
+    private final Operation[] operations;
+    private final Response[] responses;
+    private final long[] bases = new long[COLUMNS];
+    private final int[] widths = new int[COLUMNS];
+    private final int[] offsets = new int[COLUMNS];
+    private final int[] ends = new int[COLUMNS];
+
+    private HistorySegment(Path file, MappedByteBuffer data) throws IOException
+    {
+        this.data = data;
+        if(data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC)
+            throw new IOException(file + ": not a history segment");
+        if(data.getShort(4) != VERSION)
+            throw new IOException(file + ": unsupported segment version " + data.getShort(4));
+        if(data.getShort(6) != COLUMNS)
+            throw new IOException(file + ": unexpected column count " + data.getShort(6));
+
+        rows = data.getInt(8);
+        int machineCount = data.getInt(12);
+        int eventCount = data.getInt(16);
+        firstTime = data.getLong(24);
+        lastTime = data.getLong(32);
+
+        try
+        {
+            int at = HEADER_SIZE;
+            machines = new long[machineCount];
+            for(int i = 0; i < machineCount; i++, at += 8) machines[i] = data.getLong(at);
+            operations = new Operation[eventCount];
+            responses = new Response[eventCount];
+            for(int i = 0; i < eventCount; i++, at += 2)
+            {
+                operations[i] = OPERATIONS[data.get(at)];
+                responses[i] = RESPONSES[data.get(at + 1)];
+            }
+            at = align(at);
+            for(int c = 0; c < COLUMNS; c++)
+            {
+                bases[c] = data.getLong(at);
+                widths[c] = data.getInt(at + 8);
+                int words = data.getInt(at + 12);
+                offsets[c] = at + 16;
+                at += 16 + 8*words;
+                ends[c] = at;
+                if(widths[c] < 0 || widths[c] > 64 || words != wordsFor(rows, widths[c]) || at > data.limit())
+                    throw new IOException(file + ": truncated segment");
+            }
+        }
+        catch(IndexOutOfBoundsException e)
+        {
+            throw new IOException(file + ": truncated segment", e);
+        }
+    }
+
+    static HistorySegment open(Path file) throws IOException
+    {
+        MappedByteBuffer data;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        return new HistorySegment(file, data);
+    }
+
+    int rows()
+    {
+        return rows;
+    }
+
+    long firstTime()
+    {
+        return firstTime;
+    }
+
+    long lastTime()
+    {
+        return lastTime;
+    }
+
+    long size()
+    {
+        return data.limit();
+    }
+
+    /** Dictionary index of {@code machineId}, or -1 if it has no rows here. */
+    int machineIndex(long machineId)
+    {
+        for(int i = 0; i < machines.length; i++)
+            if(machines[i] == machineId) return i;
+        return -1;
+    }
+
+    long machine(int index)
+    {
+        return machines[index];
+    }
+
+    /** Dictionary index of the pair, or -1 if it has no rows here. */
+    int eventIndex(Operation operation, Response response)
+    {
+        for(int i = 0; i < operations.length; i++)
+            if(operations[i] == operation && responses[i] == response) return i;
+        return -1;
+    }
+
+    Operation operation(int index)
+    {
+        return operations[index];
+    }
+
+    Response response(int index)
+    {
+        return responses[index];
+    }
+
+    /** Value of {@code column} in {@code row}; times are the delta to the previous row. */
+    long get(int column, int row)
+    {
+        int width = widths[column];
+        if(width == 0) return bases[column];
+
+        long bit = (long)row*width;
+        int at = offsets[column] + (int)(bit >>> 6)*8;
+        int shift = (int)(bit & 63);
+        long value = data.getLong(at) >>> shift;
+        if(shift + width > 64) value |= data.getLong(at + 8) << (64 - shift);
+        return bases[column] + (width == 64 ? value : value & ((1L << width) - 1));
+    }
+
+    /** Decodes rows {@code from} to {@code from + count} of {@code column} into {@code out}. */
+    void get(int column, int from, int count, long[] out)
+    {
+        int width = widths[column];
+        long base = bases[column];
+        if(width == 0)
+        {
+            Arrays.fill(out, 0, count, base);
+            return;
+        }
+        long mask = width == 64 ? -1L : (1L << width) - 1;
+        long bit = (long)from*width;
+        int at = offsets[column] + (int)(bit >>> 6)*8;
+        int end = ends[column];
+        int shift = (int)(bit & 63);
+        long word = data.getLong(at);
+        for(int i = 0; i < count; i++)
+        {
+            long value = word >>> shift;
+            shift += width;
+            if(shift >= 64)
+            {
+                at += 8;
+                word = at < end ? data.getLong(at) : 0;
+                shift -= 64;
+                if(shift > 0) value |= word << (width - shift);
+            }
+            out[i] = base + (value & mask);
+        }
+    }
+
+    static void write(Path file, int rows, long[] times, long[] machineIds, int[] events, int[] units, int[] amounts,
+                      int[] coins1, int[] coins2) throws IOException
+    {
+        long[] machineDictionary = Arrays.stream(machineIds, 0, rows).distinct().sorted().toArray();
+        int[] eventDictionary = Arrays.stream(events, 0, rows).distinct().sorted().toArray();
+
+        long[][] columns = new long[COLUMNS][rows];
+        long previous = rows == 0 ? 0 : times[0];
+        for(int i = 0; i < rows; i++)
+        {
+            columns[TIME][i] = times[i] - previous;
+            previous = times[i];
+            columns[MACHINE][i] = Arrays.binarySearch(machineDictionary, machineIds[i]);
+            columns[EVENT][i] = Arrays.binarySearch(eventDictionary, events[i]);
+            columns[UNITS][i] = units[i];
+            columns[AMOUNT][i] = amounts[i];
+            columns[COINS1][i] = coins1[i];
+            columns[COINS2][i] = coins2[i];
+        }
+
+        int size = align(HEADER_SIZE + 8*machineDictionary.length + 2*eventDictionary.length);
+        long[] bases = new long[COLUMNS];
+        int[] widths = new int[COLUMNS];
+        for(int c = 0; c < COLUMNS; c++)
+        {
+            long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+            for(int i = 0; i < rows; i++)
+            {
+                min = Math.min(min, columns[c][i]);
+                max = Math.max(max, columns[c][i]);
+            }
+            bases[c] = rows == 0 ? 0 : min;
+            widths[c] = rows == 0 ? 0 : 64 - Long.numberOfLeadingZeros(max - min);
+            size += 16 + 8*wordsFor(rows, widths[c]);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, VERSION);
+        buffer.putShort(6, (short)COLUMNS);
+        buffer.putInt(8, rows);
+        buffer.putInt(12, machineDictionary.length);
+        buffer.putInt(16, eventDictionary.length);
+        buffer.putLong(24, rows == 0 ? 0 : times[0]);
+        buffer.putLong(32, rows == 0 ? 0 : times[rows - 1]);
+
+        int at = HEADER_SIZE;
+        for(long id : machineDictionary)
+        {
+            buffer.putLong(at, id);
+            at += 8;
+        }
+        for(int event : eventDictionary)
+        {
+            buffer.put(at, (byte)(event >>> 8));
+            buffer.put(at + 1, (byte)event);
+            at += 2;
+        }
+        at = align(at);
+        for(int c = 0; c < COLUMNS; c++)
+        {
+            int width = widths[c];
+            int words = wordsFor(rows, width);
+            buffer.putLong(at, bases[c]);
+            buffer.putInt(at + 8, width);
+            buffer.putInt(at + 12, words);
+            at += 16;
+            long[] packed = new long[words];
+            long bit = 0;
+            for(int i = 0; i < rows && width > 0; i++, bit += width)
+            {
+                long value = columns[c][i] - bases[c];
+                int word = (int)(bit >>> 6);
+                int shift = (int)(bit & 63);
+                packed[word] |= value << shift;
+                if(shift + width > 64) packed[word + 1] |= value >>> (64 - shift);
+            }
+            for(long word : packed)
+            {
+                buffer.putLong(at, word);
+                at += 8;
+            }
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try(FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while(buffer.hasRemaining()) out.write(buffer);
+            out.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Dictionary key of an operation and its response, as passed to {@link #write}. */
+    static int event(Operation operation, Response response)
+    {
+        return operation.ordinal() << 8 | response.ordinal();
+    }
+
+    private static int wordsFor(int rows, int width)
+    {
+        return (int)(((long)rows*width + 63) >>> 6);
+    }
+
+    private static int align(int at)
+    {
+        return (at + 7) & ~7;
+    }
+}
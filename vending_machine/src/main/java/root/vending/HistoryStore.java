@@ -0,0 +1,475 @@
+package root.vending;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import root.vending.VendingMachine.Response;
+
+/**
+ * Append-only history of machine operations, stored column by column.
+ *
+ * Rows are buffered in memory and sealed into a {@link HistorySegment} file of
+ * {@code segmentRows} rows, or fewer on {@link #flush()}. Sealing runs on the store's own
+ * daemon thread while appends go on into a second buffer, so a full buffer costs the
+ * appending thread a swap rather than a file write; only when both buffers are full does
+ * it wait for the write to finish. A segment keeps the time as the
+ * delta to the previous row, machines and (operation, response) pairs as indices into
+ * small per-segment dictionaries, and every column bit-packed, so a typical row takes a
+ * few bytes instead of the 40 of a plain record. Queries read the mapped segments,
+ * skip those outside the time range or without the machine asked for, and decode only
+ * the columns they need; rows still buffered are not visible to them.
+ *
+ * Times are milliseconds and must not decrease. Appending is synchronized; queries run
+ * concurrently with it. A segment that fails to seal loses its rows; it is counted in
+ * {@link #getSealFailures()} and the error is thrown by the next append or flush.
+ *
+ * Attached machines never see the store's errors, since their operation has already
+ * taken effect when the store hears of it: a row is stamped with the clock held at the
+ * last row's time should the clock step back, and a closed store ignores them.
+ */
+public final class HistoryStore implements AutoCloseable
+{
+    /** Machine id that matches every machine in a query. */
+    public static final long ANY_MACHINE = Long.MIN_VALUE;
+
+    static final int DEFAULT_SEGMENT_ROWS = 1 << 16;
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final int BLOCK = 1024;
+
+    /** Receives the rows of a {@link #scan}. */
+    public interface RowVisitor
+    {
+        void visit(long time, long machineId, Operation operation, Response response, int units, int amount,
+                   int coins1, int coins2);
+    }
+
+    /** Rows of one segment, filled by appends and then written by the sealer. */
+    private static final class Buffer
+    {
+        final long[] times;
+        final long[] machineIds;
+        final int[] events;
+        final int[] units;
+        final int[] amounts;
+        final int[] coins1;
+        final int[] coins2;
+        int rows;
+        int number;
+
+        Buffer(int segmentRows)
+        {
+            times = new long[segmentRows];
+            machineIds = new long[segmentRows];
+            events = new int[segmentRows];
+            units = new int[segmentRows];
+            amounts = new int[segmentRows];
+            coins1 = new int[segmentRows];
+            coins2 = new int[segmentRows];
+        }
+    }
+
+    // handed to the sealer to make it stop
+    private static final Buffer STOP = new Buffer(0);
+
+    private final Path directory;
+    private final int segmentRows;
+    private final LongSupplier clock;
+    private final CopyOnWriteArrayList<HistorySegment> segments = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<Buffer> full = new ArrayBlockingQueue<>(3);
+    private final BlockingQueue<Buffer> free = new ArrayBlockingQueue<>(1);
+    private final Thread sealer;
+
+    // guarded by this
+    private int next;
+    private long handedOff;
+    private long lastTime = Long.MIN_VALUE;
+    private Buffer buffer;
+    private boolean closed;
+
+    private final Object sealLock = new Object();
+    // guarded by sealLock
+    private long sealed;
+    private long sealFailures;
+    private Exception failure;
+
+    private HistoryStore(Path directory, int segmentRows, LongSupplier clock)
+    {
+        this.directory = directory;
+        this.segmentRows = segmentRows;
+        this.clock = clock;
+        this.buffer = new Buffer(segmentRows);
+        this.free.add(new Buffer(segmentRows));
+        this.sealer = new Thread(this::sealLoop, "history-sealer-" + directory.getFileName());
+        this.sealer.setDaemon(true);
+    }
+
+    /** Opens the store in {@code directory}, creating it if needed, and maps its segments. */
+    public static HistoryStore open(Path directory) throws IOException
+    {
+        return open(directory, DEFAULT_SEGMENT_ROWS, System::currentTimeMillis);
+    }
+
+    static HistoryStore open(Path directory, int segmentRows, LongSupplier clock) throws IOException
+    {
+        if(segmentRows <= 0) throw new IllegalArgumentException("segment rows: " + segmentRows);
+        Files.createDirectories(directory);
+        HistoryStore store = new HistoryStore(directory, segmentRows, clock);
+
+        List<Path> files = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*.col"))
+        {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        for(Path file : files)
+        {
+            HistorySegment segment = HistorySegment.open(file);
+            store.segments.add(segment);
+            if(segment.rows() > 0) store.lastTime = segment.lastTime();
+        }
+        // numbered after the last one, since a segment that failed to seal leaves a gap
+        store.next = files.isEmpty() ? 0 : number(files.get(files.size() - 1)) + 1;
+        store.sealer.start();
+        return store;
+    }
+
+    private static int number(Path file) throws IOException
+    {
+        String name = file.getFileName().toString();
+        try
+        {
+            return Integer.parseInt(name.substring("segment-".length(), name.length() - ".col".length()));
+        }
+        catch(NumberFormatException e)
+        {
+            throw new IOException("not a segment: " + file, e);
+        }
+    }
+
+    /**
+     * Records every operation of {@code machine} as machine {@code id}, next to any listener
+     * it already has. Sales are recorded with their revenue at the unit price charged,
+     * coin inserts and refunds with the value of the coins.
+     */
+    public void attach(long id, VendingMachine machine)
+    {
+        MachineListener recorder = new MachineListener()
+        {
+            @Override
+            public void onOperation(VendingMachine m, Operation operation, int arg1, int arg2, long receipt)
+            {
+                record(id, operation, receipt, Receipt.isOk(receipt) ? value(m, operation, arg1, arg2, receipt) : 0);
+            }
+
+            @Override
+            public void onSale(VendingMachine m, Operation operation, int units, int priceVersion, int unitPrice,
+                               long receipt)
+            {
+                record(id, operation, receipt, Receipt.isOk(receipt) ? Receipt.units(receipt)*unitPrice : 0);
+            }
+        };
+        synchronized(machine)
+        {
+            MachineListener current = machine.getListener();
+            machine.setListener(current == null ? recorder : MachineListener.both(current, recorder));
+        }
+    }
+
+    /** Value of the coins a successful operation other than a sale took in or paid out. */
+    private static int value(VendingMachine machine, Operation operation, int arg1, int arg2, long receipt)
+    {
+        switch(operation)
+        {
+            case PUT_COIN1:    return machine.getCoinValue1();
+            case PUT_COIN2:    return machine.getCoinValue2();
+            case PUT_COINS:    return arg1*machine.getCoinValue1() + arg2*machine.getCoinValue2();
+            case RETURN_MONEY:
+                return Receipt.coins1(receipt)*machine.getCoinValue1() + Receipt.coins2(receipt)*machine.getCoinValue2();
+            default: return 0;
+        }
+    }
+
+    private synchronized void record(long id, Operation operation, long receipt, int amount)
+    {
+        if(closed) return;
+        put(Math.max(clock.getAsLong(), lastTime), id, HistorySegment.event(operation, Receipt.response(receipt)),
+            Receipt.units(receipt), amount, Receipt.coins1(receipt), Receipt.coins2(receipt));
+    }
+
+    /** Appends one row, handing the segment to the sealer when it is full. */
+    public synchronized void append(long time, long machineId, Operation operation, Response response, int units,
+                                    int amount, int coins1, int coins2) throws IOException
+    {
+        if(closed) throw new IllegalStateException("store is closed");
+        if(time < lastTime) throw new IllegalArgumentException("time goes backwards: " + time + " < " + lastTime);
+        if(units < 0 || amount < 0 || coins1 < 0 || coins2 < 0)
+            throw new IllegalArgumentException("counts must not be negative");
+        checkFailure();
+        put(time, machineId, HistorySegment.event(operation, response), units, amount, coins1, coins2);
+    }
+
+    // holding this
+    private void put(long time, long machineId, int event, int units, int amount, int coins1, int coins2)
+    {
+        Buffer b = buffer;
+        int row = b.rows;
+        b.times[row] = time;
+        b.machineIds[row] = machineId;
+        b.events[row] = event;
+        b.units[row] = units;
+        b.amounts[row] = amount;
+        b.coins1[row] = coins1;
+        b.coins2[row] = coins2;
+        lastTime = time;
+        if(++b.rows == segmentRows) handOff();
+    }
+
+    /** Seals the buffered rows into a segment and waits until they are visible to queries. */
+    public void flush() throws IOException
+    {
+        long target;
+        synchronized(this)
+        {
+            if(buffer.rows > 0) handOff();
+            target = handedOff;
+        }
+        synchronized(sealLock)
+        {
+            while(sealed < target)
+            {
+                try
+                {
+                    sealLock.wait();
+                }
+                catch(InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted waiting for segments to seal");
+                }
+            }
+        }
+        checkFailure();
+    }
+
+    /** Seals the buffered rows and stops the sealer once it has written every segment. */
+    @Override
+    public void close() throws IOException
+    {
+        synchronized(this)
+        {
+            if(closed) return;
+            closed = true;
+            if(buffer.rows > 0) handOff();
+            full.add(STOP);
+        }
+        try
+        {
+            sealer.join();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        checkFailure();
+    }
+
+    // holding this; waits only while the other buffer is still being written
+    private void handOff()
+    {
+        Buffer filled = buffer;
+        filled.number = next++;
+        boolean interrupted = false;
+        Buffer spare = null;
+        while(spare == null)
+        {
+            try
+            {
+                spare = free.take();
+            }
+            catch(InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if(interrupted) Thread.currentThread().interrupt();
+        full.add(filled);
+        handedOff++;
+        buffer = spare;
+    }
+
+    private void checkFailure() throws IOException
+    {
+        Exception e;
+        synchronized(sealLock)
+        {
+            e = failure;
+            failure = null;
+        }
+        if(e != null) throw new IOException("could not seal a segment of " + directory, e);
+    }
+
+    private void sealLoop()
+    {
+        while(true)
+        {
+            Buffer b;
+            try
+            {
+                b = full.take();
+            }
+            catch(InterruptedException e)
+            {
+                continue;
+            }
+            if(b == STOP) return;
+
+            Exception error = null;
+            try
+            {
+                Path file = directory.resolve(String.format("segment-%08d.col", b.number));
+                HistorySegment.write(file, b.rows, b.times, b.machineIds, b.events, b.units, b.amounts, b.coins1, b.coins2);
+                segments.add(HistorySegment.open(file));
+            }
+            catch(IOException | RuntimeException e)
+            {
+                error = e;
+            }
+            b.rows = 0;
+            free.add(b);
+            synchronized(sealLock)
+            {
+                sealed++;
+                if(error != null)
+                {
+                    sealFailures++;
+                    if(failure == null) failure = error;
+                }
+                sealLock.notifyAll();
+            }
+        }
+    }
+
+    /** Number of segments that failed to seal, losing their rows. */
+    public long getSealFailures()
+    {
+        synchronized(sealLock)
+        {
+            return sealFailures;
+        }
+    }
+
+    /** Rows in sealed segments. */
+    public long size()
+    {
+        long n = 0;
+        for(HistorySegment segment : segments) n += segment.rows();
+        return n;
+    }
+
+    /** Bytes of sealed segments. */
+    public long sizeOnDisk()
+    {
+        long n = 0;
+        for(HistorySegment segment : segments) n += segment.size();
+        return n;
+    }
+
+    /** Visits the rows with {@code from <= time < to} of {@code machineId}, or all machines with {@link #ANY_MACHINE}, in time order. */
+    public void scan(long from, long to, long machineId, RowVisitor visitor)
+    {
+        long[] time = new long[BLOCK];
+        long[] machine = new long[BLOCK];
+        long[] event = new long[BLOCK];
+        long[][] counts = new long[4][BLOCK];
+
+        for(HistorySegment segment : segments)
+        {
+            if(!overlaps(segment, from, to)) continue;
+            int wanted = machineId == ANY_MACHINE ? -1 : segment.machineIndex(machineId);
+            if(machineId != ANY_MACHINE && wanted < 0) continue;
+
+            long t = segment.firstTime();
+            for(int start = 0; start < segment.rows(); start += BLOCK)
+            {
+                int n = Math.min(BLOCK, segment.rows() - start);
+                segment.get(HistorySegment.TIME, start, n, time);
+                segment.get(HistorySegment.MACHINE, start, n, machine);
+                segment.get(HistorySegment.EVENT, start, n, event);
+                segment.get(HistorySegment.UNITS, start, n, counts[0]);
+                segment.get(HistorySegment.AMOUNT, start, n, counts[1]);
+                segment.get(HistorySegment.COINS1, start, n, counts[2]);
+                segment.get(HistorySegment.COINS2, start, n, counts[3]);
+                for(int i = 0; i < n; i++)
+                {
+                    t += time[i];
+                    if(t < from || t >= to || (wanted >= 0 && machine[i] != wanted)) continue;
+                    int e = (int)event[i];
+                    visitor.visit(t, segment.machine((int)machine[i]), segment.operation(e), segment.response(e),
+                            (int)counts[0][i], (int)counts[1][i], (int)counts[2][i], (int)counts[3][i]);
+                }
+                if(t >= to) break;
+            }
+        }
+    }
+
+    /**
+     * Revenue of successful sales with {@code from <= time < to} of {@code machineId}, or
+     * all machines with {@link #ANY_MACHINE}, per hour since {@code from}: element
+     * {@code [h][0]} is product 1 in hour {@code h}, {@code [h][1]} product 2.
+     */
+    public long[][] revenuePerHour(long from, long to, long machineId)
+    {
+        if(to < from) throw new IllegalArgumentException("empty range: " + from + " to " + to);
+        long[][] revenue = new long[(int)((to - from + HOUR - 1)/HOUR)][2];
+        long[] time = new long[BLOCK];
+        long[] machine = new long[BLOCK];
+        long[] event = new long[BLOCK];
+        long[] amount = new long[BLOCK];
+
+        for(HistorySegment segment : segments)
+        {
+            if(!overlaps(segment, from, to)) continue;
+            int wanted = machineId == ANY_MACHINE ? -1 : segment.machineIndex(machineId);
+            if(machineId != ANY_MACHINE && wanted < 0) continue;
+            int sale1 = segment.eventIndex(Operation.GIVE_PRODUCT1, Response.OK);
+            int sale2 = segment.eventIndex(Operation.GIVE_PRODUCT2, Response.OK);
+            if(sale1 < 0 && sale2 < 0) continue;
+
+            long t = segment.firstTime();
+            for(int start = 0; start < segment.rows(); start += BLOCK)
+            {
+                int n = Math.min(BLOCK, segment.rows() - start);
+                segment.get(HistorySegment.TIME, start, n, time);
+                segment.get(HistorySegment.EVENT, start, n, event);
+                segment.get(HistorySegment.AMOUNT, start, n, amount);
+                if(wanted >= 0) segment.get(HistorySegment.MACHINE, start, n, machine);
+                for(int i = 0; i < n; i++)
+                {
+                    t += time[i];
+                    if(t < from || t >= to || (wanted >= 0 && machine[i] != wanted)) continue;
+                    int e = (int)event[i];
+                    if(e == sale1) revenue[(int)((t - from)/HOUR)][0] += amount[i];
+                    else if(e == sale2) revenue[(int)((t - from)/HOUR)][1] += amount[i];
+                }
+                if(t >= to) break;
+            }
+        }
+        return revenue;
+    }
+
+    private static boolean overlaps(HistorySegment segment, long from, long to)
+    {
+        return segment.rows() > 0 && segment.lastTime() >= from && segment.firstTime() < to;
+    }
+}
@@ -0,0 +1,114 @@
+package root.vending;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram: every power of two is split
+ * into eight buckets, so a reported value is within 12.5% of the recorded one. Values
+ * from 0 to about 68 seconds in nanoseconds are kept; larger ones count as the largest.
+ *
+ * Recording is two {@link LongAdder} increments and no allocation, so many threads can
+ * share one histogram. Reads are not atomic with respect to concurrent recording.
+ */
+public final class LatencyHistogram
+{
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 35;
+
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS)*SUB + 2*SUB;
+    static final long HIGHEST = upperBound(BUCKETS - 1);
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+
+    public LatencyHistogram()
+    {
+        for(int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    public void record(long nanos)
+    {
+        buckets[bucket(nanos)].increment();
+        total.add(nanos);
+    }
+
+    static int bucket(long value)
+    {
+        if(value < 2*SUB) return value < 0 ? 0 : (int)value;
+        if(value > HIGHEST) return BUCKETS - 1;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        return shift*SUB + (int)(value >>> shift);
+    }
+
+    static long lowerBound(int bucket)
+    {
+        if(bucket < 2*SUB) return bucket;
+        int shift = bucket/SUB - 1;
+        return (long)(bucket%SUB + SUB) << shift;
+    }
+
+    static long upperBound(int bucket)
+    {
+        if(bucket < 2*SUB) return bucket;
+        int shift = bucket/SUB - 1;
+        return ((long)(bucket%SUB + SUB + 1) << shift) - 1;
+    }
+
+    public long getCount()
+    {
+        long n = 0;
+        for(LongAdder bucket : buckets) n += bucket.sum();
+        return n;
+    }
+
+    public double getMean()
+    {
+        long n = getCount();
+        return n == 0 ? 0 : (double)total.sum()/n;
+    }
+
+    /** Largest value recorded, rounded up to its bucket; 0 if nothing was recorded. */
+    public long getMax()
+    {
+        for(int i = buckets.length - 1; i >= 0; i--)
+            if(buckets[i].sum() != 0) return upperBound(i);
+        return 0;
+    }
+
+    /** Value at or below which {@code percentile} percent of the recorded values fall, rounded up to its bucket. */
+    public long valueAtPercentile(double percentile)
+    {
+        if(percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("percentile: " + percentile);
+
+        long[] counts = new long[buckets.length];
+        long n = 0;
+        for(int i = 0; i < counts.length; i++) n += counts[i] = buckets[i].sum();
+        if(n == 0) return 0;
+
+        long rank = Math.max(1, (long)Math.ceil(percentile/100*n));
+        long seen = 0;
+        for(int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+            if(seen >= rank) return upperBound(i);
+        }
+        return upperBound(counts.length - 1);
+    }
+
+    void reset()
+    {
+        for(LongAdder bucket : buckets) bucket.reset();
+        total.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("count=%d mean=%.1fns p50=%dns p99=%dns p99.9=%dns max=%dns",
+                getCount(), getMean(), valueAtPercentile(50), valueAtPercentile(99), valueAtPercentile(99.9), getMax());
+    }
+}
@@ -0,0 +1,83 @@
+package root.vending;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Machines restored from a {@link FleetSnapshot} on first access.
+ *
+ * Opening maps the file and reads its header, so it takes the same time for ten machines
+ * or a million. A machine is built from its record the first time {@link #get} asks for
+ * it; machines never touched are written back by copying their records unchanged.
+ */
+public final class LazyFleet
+{
+    private final FleetSnapshot snapshot;
+    private final AtomicReferenceArray<VendingMachine> machines;
+
+    private LazyFleet(FleetSnapshot snapshot)
+    {
+        this.snapshot = snapshot;
+        this.machines = new AtomicReferenceArray<>(snapshot.size());
+    }
+
+    public static LazyFleet open(Path file) throws IOException
+    {
+        return new LazyFleet(FleetSnapshot.open(file));
+    }
+
+    public int size()
+    {
+        return machines.length();
+    }
+
+    /** Returns machine {@code index}, restoring it from the snapshot if this is its first use. */
+    public VendingMachine get(int index)
+    {
+        VendingMachine machine = machines.get(index);
+        if(machine != null) return machine;
+
+        machine = new VendingMachine();
+        machine.restoreState(snapshot.state(index));
+        if(machines.compareAndSet(index, null, machine)) return machine;
+        return machines.get(index);
+    }
+
+    public boolean isMaterialized(int index)
+    {
+        return machines.get(index) != null;
+    }
+
+    public int materializedCount()
+    {
+        int n = 0;
+        for(int i = 0; i < machines.length(); i++)
+            if(machines.get(i) != null) n++;
+        return n;
+    }
+
+    /**
+     * Writes the current state of every machine to {@code file}. Machines in use must not
+     * change while this runs.
+     */
+    public void writeSnapshot(Path file) throws IOException
+    {
+        ByteBuffer source = snapshot.data();
+        FleetSnapshot.write(file, size(), (buffer, at, i) ->
+        {
+            VendingMachine machine = machines.get(i);
+            if(machine != null)
+            {
+                FleetSnapshot.putRecord(buffer, at, machine.captureState());
+            }
+            else
+            {
+                int from = FleetSnapshot.offset(i);
+                for(int b = 0; b < FleetSnapshot.RECORD_SIZE; b += 8)
+                    buffer.putLong(at + b, source.getLong(from + b));
+            }
+        });
+    }
+}
@@ -0,0 +1,142 @@
+package root.vending;
+
+/**
+ * Open-addressing hash map from {@code long} ids to machines, without boxing.
+ *
+ * Linear probing over parallel key and value arrays kept at most half full; a slot is
+ * free when its value is {@code null}, so every id including 0 can be a key. Removal
+ * shifts the following entries back instead of leaving tombstones.
+ *
+ * Not thread-safe, but {@link #get} racing with a writer terminates and throws nothing,
+ * so a caller can run it under an optimistic read and validate afterwards.
+ */
+final class LongMachineMap
+{
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private VendingMachine[] values;
+    private int size;
+
+    LongMachineMap()
+    {
+        this(MIN_CAPACITY);
+    }
+
+    LongMachineMap(int expected)
+    {
+        int capacity = MIN_CAPACITY;
+        while(capacity < 2L*expected) capacity <<= 1;
+        keys = new long[capacity];
+        values = new VendingMachine[capacity];
+    }
+
+    static long hash(long id)
+    {
+        long h = id*0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    VendingMachine get(long id)
+    {
+        long[] keys = this.keys;
+        VendingMachine[] values = this.values;
+        int mask = Math.min(keys.length, values.length) - 1;
+        for(int i = (int)hash(id) & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++)
+        {
+            VendingMachine value = values[i];
+            if(value == null) return null;
+            if(keys[i] == id) return value;
+        }
+        return null;
+    }
+
+    /** Maps {@code id} to {@code machine} unless it is mapped already; returns the existing machine or {@code null}. */
+    VendingMachine putIfAbsent(long id, VendingMachine machine)
+    {
+        if(2*(size + 1) > keys.length) resize(keys.length*2);
+        int mask = keys.length - 1;
+        int i = (int)hash(id) & mask;
+        for(; values[i] != null; i = (i + 1) & mask)
+            if(keys[i] == id) return values[i];
+        keys[i] = id;
+        values[i] = machine;
+        size++;
+        return null;
+    }
+
+    VendingMachine remove(long id)
+    {
+        int mask = keys.length - 1;
+        int i = (int)hash(id) & mask;
+        for(; values[i] != null; i = (i + 1) & mask)
+        {
+            if(keys[i] != id) continue;
+            VendingMachine removed = values[i];
+            shiftBack(i);
+            size--;
+            return removed;
+        }
+        return null;
+    }
+
+    /** Closes the gap at {@code free} by moving back entries whose probe sequence crosses it. */
+    private void shiftBack(int free)
+    {
+        int mask = keys.length - 1;
+        for(int i = (free + 1) & mask; values[i] != null; i = (i + 1) & mask)
+        {
+            int home = (int)hash(keys[i]) & mask;
+            if(((i - home) & mask) >= ((i - free) & mask))
+            {
+                keys[free] = keys[i];
+                values[free] = values[i];
+                free = i;
+            }
+        }
+        keys[free] = 0;
+        values[free] = null;
+    }
+
+    private void resize(int capacity)
+    {
+        long[] oldKeys = keys;
+        VendingMachine[] oldValues = values;
+        keys = new long[capacity];
+        values = new VendingMachine[capacity];
+        int mask = capacity - 1;
+        for(int j = 0; j < oldKeys.length; j++)
+        {
+            if(oldValues[j] == null) continue;
+            int i = (int)hash(oldKeys[j]) & mask;
+            while(values[i] != null) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    /** Copies the ids into {@code ids} from {@code at}; returns the position after the last. */
+    int keys(long[] ids, int at)
+    {
+        for(int i = 0; i < values.length; i++)
+            if(values[i] != null) ids[at++] = keys[i];
+        return at;
+    }
+
+    /** Calls {@code action} for every entry. */
+    void forEach(Entry action)
+    {
+        for(int i = 0; i < values.length; i++)
+            if(values[i] != null) action.accept(keys[i], values[i]);
+    }
+
+    interface Entry
+    {
+        void accept(long id, VendingMachine machine);
+    }
+}
@@ -0,0 +1,188 @@
+package root.vending;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Capacities, factory prices and coin values of a {@link VendingMachine}, validated once
+ * when built and immutable after.
+ *
+ * A file holds the same values as properties, every one of them, so that a file read
+ * half-written fails to load instead of passing with defaults:
+ *
+ * <pre>
+ * max1 = 30
+ * max2 = 40
+ * maxCoins1 = 50
+ * maxCoins2 = 50
+ * price1 = 8
+ * price2 = 5
+ * coinValue1 = 1
+ * coinValue2 = 2
+ * </pre>
+ */
+public final class MachineConfig
+{
+    /** The machine as built at the factory. */
+    public static final MachineConfig DEFAULT = new MachineConfig(30, 40, 50, 50, 8, 5, 1, 2);
+
+    private static final int MAX_UNITS = 0xFFFF;
+    private static final int MAX_COINS = 0xFFFFF;
+
+    private final int max1;
+    private final int max2;
+    private final int maxCoins1;
+    private final int maxCoins2;
+    private final int price1;
+    private final int price2;
+    private final int coinValue1;
+    private final int coinValue2;
+
+    public MachineConfig(int max1, int max2, int maxCoins1, int maxCoins2, int price1, int price2,
+                         int coinValue1, int coinValue2)
+    {
+        check("max1", max1, MAX_UNITS);
+        check("max2", max2, MAX_UNITS);
+        check("maxCoins1", maxCoins1, MAX_COINS);
+        check("maxCoins2", maxCoins2, MAX_COINS);
+        check("price1", price1, Integer.MAX_VALUE);
+        check("price2", price2, Integer.MAX_VALUE);
+        check("coinValue1", coinValue1, Integer.MAX_VALUE);
+        check("coinValue2", coinValue2, Integer.MAX_VALUE);
+        if(coinValue1 == coinValue2) throw new IllegalArgumentException("both coins are worth " + coinValue1);
+        if((long)maxCoins1*coinValue1 + (long)maxCoins2*coinValue2 >= Integer.MAX_VALUE)
+            throw new IllegalArgumentException("coin boxes can hold more than an int");
+
+        this.max1 = max1;
+        this.max2 = max2;
+        this.maxCoins1 = maxCoins1;
+        this.maxCoins2 = maxCoins2;
+        this.price1 = price1;
+        this.price2 = price2;
+        this.coinValue1 = coinValue1;
+        this.coinValue2 = coinValue2;
+    }
+
+    private static void check(String name, int value, int max)
+    {
+        if(value <= 0 || value > max) throw new IllegalArgumentException(name + " out of range: " + value);
+    }
+
+    /** Reads and validates {@code file}; a missing or invalid value fails with the offending key. */
+    public static MachineConfig load(Path file) throws IOException
+    {
+        Properties properties = new Properties();
+        try(Reader reader = Files.newBufferedReader(file))
+        {
+            properties.load(reader);
+        }
+        try
+        {
+            return parse(properties);
+        }
+        catch(IllegalArgumentException e)
+        {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    public static MachineConfig parse(Properties properties)
+    {
+        return new MachineConfig(
+                value(properties, "max1"),
+                value(properties, "max2"),
+                value(properties, "maxCoins1"),
+                value(properties, "maxCoins2"),
+                value(properties, "price1"),
+                value(properties, "price2"),
+                value(properties, "coinValue1"),
+                value(properties, "coinValue2"));
+    }
+
+    private static int value(Properties properties, String key)
+    {
+        String value = properties.getProperty(key);
+        if(value == null) throw new IllegalArgumentException(key + " is missing");
+        try
+        {
+            return Integer.parseInt(value.trim());
+        }
+        catch(NumberFormatException e)
+        {
+            throw new IllegalArgumentException(key + " is not a number: " + value);
+        }
+    }
+
+    /** Same configuration with other capacities. */
+    MachineConfig withCapacities(int max1, int max2, int maxCoins1, int maxCoins2)
+    {
+        return new MachineConfig(max1, max2, maxCoins1, maxCoins2, price1, price2, coinValue1, coinValue2);
+    }
+
+    public int getMax1()
+    {
+        return max1;
+    }
+
+    public int getMax2()
+    {
+        return max2;
+    }
+
+    public int getMaxCoins1()
+    {
+        return maxCoins1;
+    }
+
+    public int getMaxCoins2()
+    {
+        return maxCoins2;
+    }
+
+    public int getPrice1()
+    {
+        return price1;
+    }
+
+    public int getPrice2()
+    {
+        return price2;
+    }
+
+    public int getCoinValue1()
+    {
+        return coinValue1;
+    }
+
+    public int getCoinValue2()
+    {
+        return coinValue2;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if(this == o) return true;
+        if(!(o instanceof MachineConfig)) return false;
+        MachineConfig c = (MachineConfig)o;
+        return max1 == c.max1 && max2 == c.max2 && maxCoins1 == c.maxCoins1 && maxCoins2 == c.maxCoins2
+            && price1 == c.price1 && price2 == c.price2 && coinValue1 == c.coinValue1 && coinValue2 == c.coinValue2;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(max1, max2, maxCoins1, maxCoins2, price1, price2, coinValue1, coinValue2);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "max1=" + max1 + " max2=" + max2 + " maxCoins1=" + maxCoins1 + " maxCoins2=" + maxCoins2
+             + " price1=" + price1 + " price2=" + price2 + " coinValue1=" + coinValue1 + " coinValue2=" + coinValue2;
+    }
+}
@@ -0,0 +1,101 @@
+package root.vending;
+
+import root.vending.VendingMachine.Response;
+
+/**
+ * One operation of a machine as delivered by a {@link MachineEventStream}.
+ *
+ * Events live in the buffer of a subscription and are overwritten once
+ * {@code onNext} returns: a subscriber that keeps one must {@link #copy()} it.
+ */
+public final class MachineEvent
+{
+    private long sequence;
+    private long machineId;
+    private VendingMachine machine;
+    private Operation operation;
+    private int arg1;
+    private int arg2;
+    private long receipt;
+    private long nanoTime;
+
+    MachineEvent()
+    {
+    }
+
+    void set(long sequence, long machineId, VendingMachine machine, Operation operation, int arg1, int arg2,
+             long receipt, long nanoTime)
+    {
+        this.sequence = sequence;
+        this.machineId = machineId;
+        this.machine = machine;
+        this.operation = operation;
+        this.arg1 = arg1;
+        this.arg2 = arg2;
+        this.receipt = receipt;
+        this.nanoTime = nanoTime;
+    }
+
+    /** Position in the subscription's stream; a gap means events were dropped. */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    public long getMachineId()
+    {
+        return machineId;
+    }
+
+    public VendingMachine getMachine()
+    {
+        return machine;
+    }
+
+    public Operation getOperation()
+    {
+        return operation;
+    }
+
+    /** As passed to {@link MachineListener#onOperation}. */
+    public int getArg1()
+    {
+        return arg1;
+    }
+
+    public int getArg2()
+    {
+        return arg2;
+    }
+
+    /** The outcome packed as by {@link Receipt}. */
+    public long getReceipt()
+    {
+        return receipt;
+    }
+
+    public Response getResponse()
+    {
+        return Receipt.response(receipt);
+    }
+
+    /** {@link System#nanoTime()} when the operation completed. */
+    public long getNanoTime()
+    {
+        return nanoTime;
+    }
+
+    /** Event that stays valid after {@code onNext} returns. */
+    public MachineEvent copy()
+    {
+        MachineEvent event = new MachineEvent();
+        event.set(sequence, machineId, machine, operation, arg1, arg2, receipt, nanoTime);
+        return event;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "#" + sequence + " machine " + machineId + " " + operation + "(" + arg1 + ", " + arg2 + ") " + getResponse();
+    }
+}
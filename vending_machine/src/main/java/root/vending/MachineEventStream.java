@@ -0,0 +1,296 @@
+package root.vending;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes every operation of the attached machines to {@link Flow.Subscriber}s.
+ *
+ * Each subscription owns a ring of {@code bufferSize} preallocated {@link MachineEvent}s.
+ * The machine's thread copies the operation into the next free slot and returns; events
+ * reach the subscriber on the executor, only as far as it has requested them. When a
+ * subscriber falls behind and its ring is full, {@link Overflow#DROP} discards the new
+ * event at once and {@link Overflow#BLOCK} waits for a free slot at most {@code maxBlock}
+ * before discarding it, so a slow consumer can delay an operation by that much at most.
+ * Discarded events leave a gap in {@link MachineEvent#getSequence()} and are counted by
+ * {@link #getDropped()}.
+ */
+public final class MachineEventStream implements Flow.Publisher<MachineEvent>, AutoCloseable
+{
+    /** What publishing does when a subscriber's buffer is full. */
+    public enum Overflow { DROP, BLOCK }
+
+    private final Executor executor;
+    private final int bufferSize;
+    private final Overflow overflow;
+    private final long maxBlockNanos;
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean closed;
+
+    /** Stream delivering on the common pool that waits at most a millisecond for a full buffer to drain. */
+    public MachineEventStream(int bufferSize, Overflow overflow)
+    {
+        this(ForkJoinPool.commonPool(), bufferSize, overflow, 1, TimeUnit.MILLISECONDS);
+    }
+
+    public MachineEventStream(Executor executor, int bufferSize, Overflow overflow, long maxBlock, TimeUnit unit)
+    {
+        if(bufferSize <= 0) throw new IllegalArgumentException("buffer size: " + bufferSize);
+        if(maxBlock < 0) throw new IllegalArgumentException("maximum blocking time: " + maxBlock);
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+        this.overflow = overflow;
+        this.maxBlockNanos = unit.toNanos(maxBlock);
+    }
+
+    /** Publishes the operations of {@code machine} as machine {@code id}, next to any listener it already has. */
+    public void attach(long id, VendingMachine machine)
+    {
+        MachineListener publisher = (m, operation, arg1, arg2, receipt) -> publish(id, m, operation, arg1, arg2, receipt);
+        synchronized(machine)
+        {
+            MachineListener current = machine.getListener();
+            machine.setListener(current == null ? publisher : MachineListener.both(current, publisher));
+        }
+    }
+
+    /** Attaches every machine of {@code registry}. */
+    public void attachAll(MachineRegistry registry)
+    {
+        for(long id : registry.ids()) attach(id, registry.get(id));
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super MachineEvent> subscriber)
+    {
+        Subscription subscription = new Subscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscriptions.add(subscription);
+        if(closed) subscription.signal();
+    }
+
+    /** Events discarded because a subscriber's buffer was full, over all subscriptions. */
+    public long getDropped()
+    {
+        return dropped.sum();
+    }
+
+    public int getSubscriberCount()
+    {
+        return subscriptions.size();
+    }
+
+    /** Stops publishing; subscribers complete once they have taken what is buffered. */
+    @Override
+    public void close()
+    {
+        closed = true;
+        for(Subscription subscription : subscriptions) subscription.signal();
+    }
+
+    void publish(long id, VendingMachine machine, Operation operation, int arg1, int arg2, long receipt)
+    {
+        if(closed) return;
+        long now = System.nanoTime();
+        for(Subscription subscription : subscriptions)
+            subscription.offer(id, machine, operation, arg1, arg2, receipt, now);
+    }
+
+    private final class Subscription implements Flow.Subscription
+    {
+        private final Flow.Subscriber<? super MachineEvent> subscriber;
+        private final MachineEvent[] ring = new MachineEvent[bufferSize];
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notFull = lock.newCondition();
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+        private final Runnable drainer = this::drain;
+
+        // guarded by lock
+        private long head;
+        private long tail;
+        private long sequence;
+
+        private volatile boolean cancelled;
+        private volatile Throwable failure;
+
+        Subscription(Flow.Subscriber<? super MachineEvent> subscriber)
+        {
+            this.subscriber = subscriber;
+            for(int i = 0; i < ring.length; i++) ring[i] = new MachineEvent();
+        }
+
+        void offer(long id, VendingMachine machine, Operation operation, int arg1, int arg2, long receipt, long now)
+        {
+            if(cancelled) return;
+            lock.lock();
+            try
+            {
+                long seq = sequence++;
+                if(tail - head == ring.length && !awaitSlot())
+                {
+                    dropped.increment();
+                    return;
+                }
+                ring[(int)(tail % ring.length)].set(seq, id, machine, operation, arg1, arg2, receipt, now);
+                tail++;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            if(demand.get() > 0) signal();
+        }
+
+        private boolean awaitSlot()
+        {
+            if(overflow == Overflow.DROP) return false;
+            long nanos = maxBlockNanos;
+            boolean interrupted = false;
+            while(tail - head == ring.length && !cancelled)
+            {
+                if(nanos <= 0) break;
+                try
+                {
+                    nanos = notFull.awaitNanos(nanos);
+                }
+                catch(InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+            if(interrupted) Thread.currentThread().interrupt();
+            return tail - head < ring.length && !cancelled;
+        }
+
+        @Override
+        public void request(long n)
+        {
+            if(n <= 0)
+            {
+                failure = new IllegalArgumentException("non-positive request: " + n);
+            }
+            else
+            {
+                long current, next;
+                do
+                {
+                    current = demand.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                }
+                while(!demand.compareAndSet(current, next));
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+            subscriptions.remove(this);
+            lock.lock();
+            try
+            {
+                notFull.signalAll();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        void signal()
+        {
+            if(work.getAndIncrement() == 0) executor.execute(drainer);
+        }
+
+        private void drain()
+        {
+            int missed = 1;
+            for(;;)
+            {
+                if(cancelled) return;
+                Throwable error = failure;
+                if(error != null)
+                {
+                    cancel();
+                    subscriber.onError(error);
+                    return;
+                }
+
+                long wanted = demand.get();
+                long sent = 0;
+                while(sent < wanted && !cancelled)
+                {
+                    MachineEvent event;
+                    lock.lock();
+                    try
+                    {
+                        if(head == tail) break;
+                        event = ring[(int)(head % ring.length)];
+                    }
+                    finally
+                    {
+                        lock.unlock();
+                    }
+
+                    try
+                    {
+                        subscriber.onNext(event);
+                    }
+                    catch(Throwable e)
+                    {
+                        cancel();
+                        return;
+                    }
+
+                    lock.lock();
+                    try
+                    {
+                        head++;
+                        notFull.signal();
+                    }
+                    finally
+                    {
+                        lock.unlock();
+                    }
+                    sent++;
+                }
+                if(sent != 0 && wanted != Long.MAX_VALUE) demand.addAndGet(-sent);
+
+                if(closed && !cancelled && isEmpty())
+                {
+                    cancelled = true;
+                    subscriptions.remove(this);
+                    subscriber.onComplete();
+                    return;
+                }
+
+                missed = work.addAndGet(-missed);
+                if(missed == 0) return;
+            }
+        }
+
+        private boolean isEmpty()
+        {
+            lock.lock();
+            try
+            {
+                return head == tail;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package root.vending;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+
+import root.vending.VendingMachine.Response;
+
+/**
+ * Write-ahead journal that makes a {@link VendingMachine} survive a crash.
+ *
+ * Every successful state-changing operation is appended as a CRC-protected record to a
+ * memory-mapped segment file, which costs a copy into the page cache. Sales are recorded
+ * with the unit price they were charged, so a sale made under a {@link PriceBoard}
+ * replays at that price. A background thread forces the segment to disk every commit
+ * interval, so many operations share one flush; {@link #sync()} waits for the flush that
+ * covers everything appended so far.
+ *
+ * Each segment starts with a snapshot of the full machine state, and restoring the machine,
+ * as {@link StateRecorder#rollback} does, starts a new segment. The background thread
+ * keeps the next segment created and mapped ahead of time, so the append that fills a
+ * segment only switches to it and writes the snapshot; forcing, closing and deleting the
+ * old segments is left to that thread too. {@link #open} restores the newest intact
+ * snapshot, replays the records after it up to the first torn one, then starts a fresh
+ * segment and deletes the old ones.
+ *
+ * Like the machine itself, appends must come from one thread at a time. Once closed the
+ * journal ignores the machine's operations rather than failing them after the fact.
+ */
+public final class MachineJournal implements MachineListener, Closeable
+{
+    public static final int DEFAULT_SEGMENT_SIZE = 16 << 20;
+    public static final long DEFAULT_COMMIT_INTERVAL_MICROS = 1000;
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+
+    private static final byte OPERATION_RECORD = 1;
+    private static final byte SNAPSHOT_RECORD = 2;
+
+    // record: length | crc32c | payload; payload: type | operation | pad | seq | body
+    private static final int HEADER = 8;
+    private static final int OPERATION_PAYLOAD = 12 + 8;
+    private static final int SNAPSHOT_PAYLOAD = 12 + FleetSnapshot.RECORD_SIZE;
+
+    /** A mapped segment file. */
+    private static final class Segment
+    {
+        final long generation;
+        final Path file;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final ByteBuffer crcView;
+
+        Segment(long generation, Path file, FileChannel channel, MappedByteBuffer buffer)
+        {
+            this.generation = generation;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.crcView = buffer.duplicate();
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long commitIntervalNanos;
+    private final VendingMachine machine;
+    private final CRC32C crc = new CRC32C();
+    private final Object commitLock = new Object();
+    private final Thread committer;
+
+    // appending thread
+    private volatile Segment segment;
+    private int position;
+    private long seq;
+
+    // generation of the newest segment whose snapshot is written
+    private volatile long started;
+    // segments the appending thread has left, for the committer to force and close
+    private final ConcurrentLinkedQueue<Segment> retired = new ConcurrentLinkedQueue<>();
+    // committer: closed segments to delete once a newer snapshot is on disk
+    private final List<Segment> retiring = new ArrayList<>();
+
+    private final Object spareLock = new Object();
+    // guarded by spareLock
+    private Segment spare;
+    private long generation;
+
+    private volatile long appended;
+    private volatile boolean closed;
+    private long committed;
+
+    private MachineJournal(Path directory, VendingMachine machine, int segmentSize, long commitIntervalMicros)
+    {
+        this.directory = directory;
+        this.machine = machine;
+        this.segmentSize = segmentSize;
+        this.commitIntervalNanos = TimeUnit.MICROSECONDS.toNanos(commitIntervalMicros);
+        this.committer = new Thread(this::commitLoop, "machine-journal-" + directory.getFileName());
+        this.committer.setDaemon(true);
+    }
+
+    public static MachineJournal open(Path directory, VendingMachine machine) throws IOException
+    {
+        return open(directory, machine, DEFAULT_SEGMENT_SIZE, DEFAULT_COMMIT_INTERVAL_MICROS);
+    }
+
+    /**
+     * Recovers {@code machine} from the journal in {@code directory}, if there is one, and
+     * registers the journal as its listener, next to any listener it already has.
+     */
+    public static MachineJournal open(Path directory, VendingMachine machine, int segmentSize, long commitIntervalMicros)
+            throws IOException
+    {
+        if(segmentSize < HEADER + SNAPSHOT_PAYLOAD + HEADER + OPERATION_PAYLOAD)
+            throw new IllegalArgumentException("segment size too small: " + segmentSize);
+        if(commitIntervalMicros <= 0)
+            throw new IllegalArgumentException("commit interval: " + commitIntervalMicros);
+
+        Files.createDirectories(directory);
+        MachineJournal journal = new MachineJournal(directory, machine, segmentSize, commitIntervalMicros);
+        journal.recover();
+        journal.firstSegment();
+        synchronized(machine)
+        {
+            MachineListener current = machine.getListener();
+            machine.setListener(current == null ? journal : MachineListener.both(current, journal));
+        }
+        journal.committer.start();
+        return journal;
+    }
+
+    @Override
+    public void onOperation(VendingMachine source, Operation operation, int arg1, int arg2, long receipt)
+    {
+        if(!Receipt.isOk(receipt) || closed) return;
+
+        if(position + HEADER + OPERATION_PAYLOAD > segmentSize)
+        {
+            // the snapshot opening the next segment already holds this operation
+            seq++;
+            try
+            {
+                nextSegment();
+            }
+            catch(IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+
+        MappedByteBuffer buffer = segment.buffer;
+        int at = position + HEADER;
+        buffer.put(at, OPERATION_RECORD);
+        buffer.put(at + 1, (byte)operation.ordinal());
+        buffer.putLong(at + 4, ++seq);
+        buffer.putInt(at + 12, arg1);
+        buffer.putInt(at + 16, arg2);
+        seal(OPERATION_PAYLOAD);
+    }
+
+    @Override
+    public void onSale(VendingMachine source, Operation operation, int units, int priceVersion, int unitPrice, long receipt)
+    {
+        onOperation(source, operation, units, unitPrice, receipt);
+    }
+
+    /** Starts a new segment from the restored state, so recovery does not replay what it undid. */
+    @Override
+    public void onRestore(VendingMachine source, MachineState state)
+    {
+        if(closed) return;
+        try
+        {
+            nextSegment();
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Blocks until every operation appended so far has been forced to disk. */
+    public void sync() throws InterruptedException
+    {
+        long target = appended;
+        synchronized(commitLock)
+        {
+            while(committed < target)
+            {
+                if(closed) throw new IllegalStateException("journal is closed");
+                commitLock.wait();
+            }
+        }
+    }
+
+    /** Starts a new segment with a snapshot of the current state, shortening the next recovery. */
+    public void checkpoint() throws IOException
+    {
+        nextSegment();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if(closed) return;
+        closed = true;
+        synchronized(machine)
+        {
+            if(machine.getListener() == this) machine.setListener(null);
+        }
+        LockSupport.unpark(committer);
+        try
+        {
+            committer.join();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        synchronized(commitLock)
+        {
+            long target = appended;
+            segment.buffer.force();
+            retire(Long.MAX_VALUE);
+            segment.channel.close();
+            committed = target;
+            commitLock.notifyAll();
+        }
+        synchronized(spareLock)
+        {
+            if(spare != null)
+            {
+                spare.channel.close();
+                Files.deleteIfExists(spare.file);
+                spare = null;
+            }
+        }
+    }
+
+    private void seal(int payload)
+    {
+        Segment s = segment;
+        int at = position + HEADER;
+        s.crcView.limit(at + payload).position(at);
+        crc.reset();
+        crc.update(s.crcView);
+        s.buffer.putInt(position + 4, (int)crc.getValue());
+        s.buffer.putInt(position, payload);
+        position = at + payload;
+        appended = seq;
+    }
+
+    private void writeSnapshot()
+    {
+        MachineState state = machine.captureState();
+        MappedByteBuffer buffer = segment.buffer;
+        int at = position + HEADER;
+        buffer.put(at, SNAPSHOT_RECORD);
+        buffer.putLong(at + 4, seq);
+        FleetSnapshot.putRecord(buffer, at + 12, state);
+        seal(SNAPSHOT_PAYLOAD);
+    }
+
+    /** Opens the first segment, forced before the segments recovered from are deleted. */
+    private void firstSegment() throws IOException
+    {
+        List<Path> old = segments();
+        segment = takeSpare();
+        position = 0;
+        writeSnapshot();
+        segment.buffer.force();
+        started = segment.generation;
+        committed = appended;
+        for(Path file : old) Files.deleteIfExists(file);
+    }
+
+    /** Moves appends to the spare segment, opened with a snapshot, and leaves the old one to the committer. */
+    private void nextSegment() throws IOException
+    {
+        Segment next = takeSpare();
+        retired.add(segment);
+        segment = next;
+        position = 0;
+        writeSnapshot();
+        started = next.generation;
+        LockSupport.unpark(committer);
+    }
+
+    /** The segment made ready by the committer, or a new one if it has not got round to it. */
+    private Segment takeSpare() throws IOException
+    {
+        synchronized(spareLock)
+        {
+            Segment next = spare != null ? spare : createSegment(++generation);
+            spare = null;
+            return next;
+        }
+    }
+
+    private Segment createSegment(long generation) throws IOException
+    {
+        Path file = directory.resolve(String.format("%s%016x%s", PREFIX, generation, SUFFIX));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        try
+        {
+            return new Segment(generation, file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        }
+        catch(IOException | RuntimeException e)
+        {
+            channel.close();
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    private void commitLoop()
+    {
+        while(!closed)
+        {
+            LockSupport.parkNanos(commitIntervalNanos);
+            commit();
+            prepareSpare();
+        }
+    }
+
+    private void commit()
+    {
+        synchronized(commitLock)
+        {
+            // in this order: every record up to target is in the current segment or one retired before it
+            long target = appended;
+            long newest = started;
+            Segment current = segment;
+            if(closed || (target == committed && retired.isEmpty() && retiring.isEmpty())) return;
+            current.buffer.force();
+            try
+            {
+                retire(newest);
+            }
+            catch(IOException e)
+            {
+                // what is left in retiring is tried again on the next pass
+            }
+            committed = target;
+            commitLock.notifyAll();
+        }
+    }
+
+    /**
+     * Forces and closes the retired segments, then deletes those older than the segment of
+     * generation {@code newest}, whose snapshot the caller has forced.
+     */
+    // holding commitLock
+    private void retire(long newest) throws IOException
+    {
+        for(Segment s; (s = retired.poll()) != null; )
+        {
+            s.buffer.force();
+            s.channel.close();
+            retiring.add(s);
+        }
+        for(int i = retiring.size() - 1; i >= 0; i--)
+        {
+            Segment s = retiring.get(i);
+            if(s.generation >= newest) continue;
+            Files.deleteIfExists(s.file);
+            retiring.remove(i);
+        }
+    }
+
+    /**
+     * Creates and maps the next segment and touches the page its snapshot goes to, so the
+     * file system allocates it here rather than in the middle of a sale. Done outside
+     * spareLock; dropped if the appending thread had to create a segment meanwhile, since
+     * generations must follow the order segments are used in.
+     */
+    private void prepareSpare()
+    {
+        long next;
+        synchronized(spareLock)
+        {
+            if(spare != null || closed) return;
+            next = ++generation;
+        }
+        Segment prepared;
+        try
+        {
+            prepared = createSegment(next);
+            prepared.buffer.put(0, (byte)0);
+        }
+        catch(IOException e)
+        {
+            // the next segment switch tries again on the appending thread and throws there
+            return;
+        }
+        synchronized(spareLock)
+        {
+            if(generation == next && !closed)
+            {
+                spare = prepared;
+                return;
+            }
+        }
+        try
+        {
+            prepared.channel.close();
+            Files.deleteIfExists(prepared.file);
+        }
+        catch(IOException e)
+        {
+            // recovery skips a segment without a snapshot
+        }
+    }
+
+    private List<Path> segments() throws IOException
+    {
+        List<Path> result = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX))
+        {
+            for(Path p : stream) result.add(p);
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private static long generationOf(Path segment)
+    {
+        String name = segment.getFileName().toString();
+        return Long.parseUnsignedLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()), 16);
+    }
+
+    private void recover() throws IOException
+    {
+        List<Path> files = segments();
+        if(!files.isEmpty()) generation = generationOf(files.get(files.size() - 1));
+        for(int i = files.size() - 1; i >= 0; i--)
+        {
+            if(replaySegment(files.get(i))) return;
+        }
+    }
+
+    /** Restores the snapshot at the start of {@code file} and replays what follows; false if the snapshot is torn. */
+    private boolean replaySegment(Path file) throws IOException
+    {
+        ByteBuffer data;
+        try(FileChannel in = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            data = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        }
+
+        int at = 0;
+        int payload = validRecord(data, at);
+        if(payload != SNAPSHOT_PAYLOAD || data.get(at + HEADER) != SNAPSHOT_RECORD) return false;
+
+        int p = at + HEADER;
+        seq = data.getLong(p + 4);
+        machine.restoreState(FleetSnapshot.getRecord(data, p + 12));
+        at = p + payload;
+
+        while((payload = validRecord(data, at)) == OPERATION_PAYLOAD && data.get(at + HEADER) == OPERATION_RECORD)
+        {
+            p = at + HEADER;
+            long recordSeq = data.getLong(p + 4);
+            if(recordSeq != seq + 1) break;
+
+            Operation operation = Operation.of(data.get(p + 1));
+            Response response = machine.replay(operation, data.getInt(p + 12), data.getInt(p + 16));
+            if(response != Response.OK)
+                throw new IOException(file + ": record " + recordSeq + " (" + operation + ") does not replay: " + response);
+            seq = recordSeq;
+            at = p + payload;
+        }
+        appended = seq;
+        return true;
+    }
+
+    /** Returns the payload length of the intact record at {@code at}, or -1. */
+    private int validRecord(ByteBuffer data, int at)
+    {
+        if(at + HEADER > data.limit()) return -1;
+        int payload = data.getInt(at);
+        if(payload <= 0 || at + HEADER + payload > data.limit()) return -1;
+
+        ByteBuffer view = data.duplicate();
+        view.limit(at + HEADER + payload).position(at + HEADER);
+        crc.reset();
+        crc.update(view);
+        return (int)crc.getValue() == data.getInt(at + 4) ? payload : -1;
+    }
+}
@@ -0,0 +1,75 @@
+package root.vending;
+
+/**
+ * Told about every operation of a {@link VendingMachine} once it has completed, on the
+ * thread that performed it. The operation has already taken effect, so a listener should
+ * not throw: the exception would reach the caller as if the operation had failed.
+ * {@link MachinePipeline} counts such throws apart and reports the real outcome.
+ */
+public interface MachineListener
+{
+    /**
+     * @param arg1    the number of units for sales, the first unit count, coin count or
+     *                price for {@code fillProducts(n1, n2)}/{@code fillCoins}/{@code putCoins}/{@code setPrices},
+     *                otherwise 0
+     * @param arg2    the second unit count, coin count or price, for sales the version of
+     *                the {@link PriceTable} charged from, otherwise 0
+     * @param receipt the outcome packed as by {@link Receipt}; only sales and refunds
+     *                carry units and change
+     */
+    void onOperation(VendingMachine machine, Operation operation, int arg1, int arg2, long receipt);
+
+    /**
+     * Told about a sale, {@code GIVE_PRODUCT1} or {@code GIVE_PRODUCT2}, in place of
+     * {@link #onOperation}, with the price it was charged at; passes it on to
+     * {@link #onOperation} unless overridden. Listeners that value sales use this price
+     * rather than reading the machine's, which a price board may have changed since.
+     *
+     * @param units        the number of units asked for
+     * @param priceVersion the version of the {@link PriceTable} charged from, 0 for the machine's own prices
+     * @param unitPrice    the price per unit, 0 if the sale failed before a price applied
+     */
+    default void onSale(VendingMachine machine, Operation operation, int units, int priceVersion, int unitPrice, long receipt)
+    {
+        onOperation(machine, operation, units, priceVersion, receipt);
+    }
+
+    /**
+     * Told that the machine's whole state was put back to {@code state} by
+     * {@link StateRecorder#rollback} rather than changed by an operation. Does nothing unless
+     * overridden; listeners that keep their own copy of the state, such as a journal, must
+     * override it.
+     */
+    default void onRestore(VendingMachine machine, MachineState state)
+    {
+    }
+
+    /** Listener telling {@code first}, then {@code second}. */
+    static MachineListener both(MachineListener first, MachineListener second)
+    {
+        return new MachineListener()
+        {
+            @Override
+            public void onOperation(VendingMachine machine, Operation operation, int arg1, int arg2, long receipt)
+            {
+                first.onOperation(machine, operation, arg1, arg2, receipt);
+                second.onOperation(machine, operation, arg1, arg2, receipt);
+            }
+
+            @Override
+            public void onSale(VendingMachine machine, Operation operation, int units, int priceVersion, int unitPrice,
+                               long receipt)
+            {
+                first.onSale(machine, operation, units, priceVersion, unitPrice, receipt);
+                second.onSale(machine, operation, units, priceVersion, unitPrice, receipt);
+            }
+
+            @Override
+            public void onRestore(VendingMachine machine, MachineState state)
+            {
+                first.onRestore(machine, state);
+                second.onRestore(machine, state);
+            }
+        };
+    }
+}
@@ -0,0 +1,127 @@
+package root.vending;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import root.vending.VendingMachine.Response;
+
+/**
+ * Counts of every operation by {@link Response} and a {@link LatencyHistogram} per
+ * operation, for one machine or shared by many via {@link VendingMachine#setMetrics}.
+ *
+ * Counters are {@link LongAdder}s, so machines on different threads do not contend on one
+ * cache line, and recording allocates nothing. Read it through the getters or register it
+ * with JMX.
+ */
+public final class MachineMetrics implements MachineMetricsMXBean
+{
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final Response[] RESPONSES = Response.values();
+
+    private final LongAdder[] counts = new LongAdder[OPERATIONS.length*RESPONSES.length];
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+
+    public MachineMetrics()
+    {
+        for(int i = 0; i < counts.length; i++) counts[i] = new LongAdder();
+        for(int i = 0; i < latencies.length; i++) latencies[i] = new LatencyHistogram();
+    }
+
+    void record(Operation operation, Response response, long nanos)
+    {
+        counts[operation.ordinal()*RESPONSES.length + response.ordinal()].increment();
+        latencies[operation.ordinal()].record(nanos);
+    }
+
+    public long getCount(Operation operation, Response response)
+    {
+        return counts[operation.ordinal()*RESPONSES.length + response.ordinal()].sum();
+    }
+
+    public long getCount(Operation operation)
+    {
+        long n = 0;
+        for(Response response : RESPONSES) n += getCount(operation, response);
+        return n;
+    }
+
+    public LatencyHistogram getLatency(Operation operation)
+    {
+        return latencies[operation.ordinal()];
+    }
+
+    /** Registers this with the platform MBean server under {@code root.vending:type=MachineMetrics,name=<name>}. */
+    public ObjectName register(String name) throws JMException
+    {
+        ObjectName objectName = new ObjectName("root.vending:type=MachineMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts()
+    {
+        return perOperation(this::getCount);
+    }
+
+    @Override
+    public Map<String, Long> getResponseCounts()
+    {
+        Map<String, Long> result = new TreeMap<>();
+        for(Operation operation : OPERATIONS)
+            for(Response response : RESPONSES)
+            {
+                long n = getCount(operation, response);
+                if(n != 0) result.put(operation + "/" + response, n);
+            }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP50Nanos()
+    {
+        return perOperation(operation -> getLatency(operation).valueAtPercentile(50));
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP99Nanos()
+    {
+        return perOperation(operation -> getLatency(operation).valueAtPercentile(99));
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP999Nanos()
+    {
+        return perOperation(operation -> getLatency(operation).valueAtPercentile(99.9));
+    }
+
+    @Override
+    public Map<String, Long> getLatencyMaxNanos()
+    {
+        return perOperation(operation -> getLatency(operation).getMax());
+    }
+
+    @Override
+    public void reset()
+    {
+        for(LongAdder count : counts) count.reset();
+        for(LatencyHistogram latency : latencies) latency.reset();
+    }
+
+    private Map<String, Long> perOperation(ToLongFunction<Operation> value)
+    {
+        Map<String, Long> result = new TreeMap<>();
+        for(Operation operation : OPERATIONS)
+        {
+            if(getCount(operation) == 0) continue;
+            result.put(operation.toString(), value.applyAsLong(operation));
+        }
+        return result;
+    }
+}
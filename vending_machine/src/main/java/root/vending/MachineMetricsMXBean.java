@@ -0,0 +1,24 @@
+package root.vending;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link MachineMetrics}. Maps are keyed by operation, or by
+ * {@code operation/response} for the response counts, and leave out zeros.
+ */
+public interface MachineMetricsMXBean
+{
+    Map<String, Long> getOperationCounts();
+
+    Map<String, Long> getResponseCounts();
+
+    Map<String, Long> getLatencyP50Nanos();
+
+    Map<String, Long> getLatencyP99Nanos();
+
+    Map<String, Long> getLatencyP999Nanos();
+
+    Map<String, Long> getLatencyMaxNanos();
+
+    void reset();
+}
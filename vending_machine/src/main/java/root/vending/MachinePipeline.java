@@ -0,0 +1,348 @@
+package root.vending;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Operations on one {@link VendingMachine} submitted by many threads and applied by one.
+ *
+ * Commands go into a bounded ring of preallocated slots. A producer claims the next
+ * sequence with a compare-and-set once there is room, fills the slot and publishes it; the
+ * owner thread applies every command published since its last pass as one batch, holding
+ * the machine's monitor once per batch instead of once per command, and then hands each
+ * outcome to the {@link Completion} given with it. Nothing is allocated per command: a
+ * producer waiting for its result reuses one {@link Ticket}.
+ *
+ * Other threads may still read or lock the machine as before; its listeners and metrics
+ * run on the owner thread. A command the machine throws on is completed with
+ * {@link VendingMachine.Response#CANNOT_PERFORM} and the batch goes on; a completion that
+ * throws is skipped; both are counted in {@link #getFailures()}. A listener that throws
+ * does so after the command took effect, so the command is completed with its real
+ * outcome and the throw counted apart, in {@link #getListenerFailures()}. The owner
+ * thread has no caller to throw any of them to.
+ */
+public final class MachinePipeline implements AutoCloseable
+{
+    /** Told the outcome of a command on the owner thread, packed as by {@link Receipt}. */
+    public interface Completion
+    {
+        void complete(long receipt);
+    }
+
+    /**
+     * Completion a producer can wait on. A ticket holds one outcome at a time: submit, then
+     * {@link #await()} before submitting with it again.
+     */
+    public static final class Ticket implements Completion
+    {
+        private static final int SPINS = 200;
+
+        private volatile Thread waiter;
+        private volatile boolean done;
+        private long receipt;
+
+        @Override
+        public void complete(long receipt)
+        {
+            this.receipt = receipt;
+            done = true;
+            Thread thread = waiter;
+            if(thread != null) LockSupport.unpark(thread);
+        }
+
+        /** Waits for the outcome and makes the ticket ready for the next command. */
+        public long await()
+        {
+            for(int i = 0; i < SPINS && !done; i++) Thread.onSpinWait();
+            if(!done)
+            {
+                waiter = Thread.currentThread();
+                while(!done) LockSupport.park(this);
+                waiter = null;
+            }
+            done = false;
+            return receipt;
+        }
+    }
+
+    private static final VarHandle PUBLISHED = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final long CLOSED = Long.MIN_VALUE;
+    // not a receipt: no response has ordinal 0xFF
+    private static final long NOT_TOLD = -1;
+    private static final int SPINS = 200;
+
+    private final VendingMachine machine;
+    private final int mask;
+
+    private final Operation[] operations;
+    private final long[] args1;
+    private final int[] args2;
+    private final Completion[] completions;
+    private final long[] receipts;
+    private final long[] published;
+
+    // next sequence to claim, with CLOSED set once no more may be claimed
+    private final AtomicLong tail = new AtomicLong();
+    // every sequence below has been applied and its slot may be reused
+    private volatile long head;
+
+    private final Thread owner;
+    private volatile boolean sleeping;
+
+    private volatile long batches;
+    private volatile long failures;
+    private volatile long listenerFailures;
+    private volatile RuntimeException lastFailure;
+
+    private MachinePipeline(VendingMachine machine, int capacity)
+    {
+        this.machine = machine;
+        this.mask = capacity - 1;
+        this.operations = new Operation[capacity];
+        this.args1 = new long[capacity];
+        this.args2 = new int[capacity];
+        this.completions = new Completion[capacity];
+        this.receipts = new long[capacity];
+        this.published = new long[capacity];
+        Arrays.fill(published, -1);
+        this.owner = new Thread(this::run, "machine-pipeline");
+        this.owner.setDaemon(true);
+    }
+
+    /** Starts a pipeline for {@code machine} holding up to {@code capacity} commands, a power of two. */
+    public static MachinePipeline start(VendingMachine machine, int capacity)
+    {
+        if(capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        MachinePipeline pipeline = new MachinePipeline(machine, capacity);
+        pipeline.owner.start();
+        return pipeline;
+    }
+
+    public VendingMachine getMachine()
+    {
+        return machine;
+    }
+
+    /**
+     * Queues {@code operation}, waiting while the ring is full, and has {@code completion}
+     * told its outcome once applied.
+     *
+     * @param arg1 the admin code for {@code ENTER_ADMIN_MODE}, otherwise the first argument
+     *             as given to the {@link MachineListener}
+     * @param arg2 the second argument as given to the {@link MachineListener}; ignored for sales
+     * @throws IllegalStateException if the pipeline has been closed
+     * @throws NullPointerException if {@code operation} is null
+     */
+    public void submit(Operation operation, long arg1, int arg2, Completion completion)
+    {
+        Objects.requireNonNull(operation, "operation");
+        long sequence = claim();
+        int i = (int)sequence & mask;
+        operations[i] = operation;
+        args1[i] = arg1;
+        args2[i] = arg2;
+        completions[i] = completion;
+        // volatile rather than release: the owner may be checking the slot right after raising sleeping
+        PUBLISHED.setVolatile(published, i, sequence);
+        if(sleeping) LockSupport.unpark(owner);
+    }
+
+    /** {@link #submit} and wait for the outcome on {@code ticket}. */
+    public long call(Operation operation, long arg1, int arg2, Ticket ticket)
+    {
+        submit(operation, arg1, arg2, ticket);
+        return ticket.await();
+    }
+
+    private long claim()
+    {
+        int waits = 0;
+        while(true)
+        {
+            long t = tail.get();
+            if(t < 0) throw new IllegalStateException("pipeline closed");
+            if(t - head > mask)
+            {
+                if(++waits < SPINS) Thread.onSpinWait();
+                else LockSupport.parkNanos(1_000);
+            }
+            else if(tail.compareAndSet(t, t + 1))
+            {
+                return t;
+            }
+        }
+    }
+
+    private void run()
+    {
+        long next = 0;
+        int idle = 0;
+        while(true)
+        {
+            long end = next;
+            while(end - next <= mask && (long)PUBLISHED.getAcquire(published, (int)end & mask) == end) end++;
+
+            if(end != next)
+            {
+                apply(next, end);
+                next = end;
+                idle = 0;
+                continue;
+            }
+
+            long t = tail.get();
+            if(t < 0 && next == (t & ~CLOSED)) return;
+
+            if(++idle < SPINS)
+            {
+                Thread.onSpinWait();
+            }
+            else
+            {
+                sleeping = true;
+                if((long)PUBLISHED.getVolatile(published, (int)next & mask) != next && tail.get() >= 0) LockSupport.park(this);
+                sleeping = false;
+            }
+        }
+    }
+
+    private void apply(long from, long to)
+    {
+        synchronized(machine)
+        {
+            for(long s = from; s < to; s++)
+            {
+                int i = (int)s & mask;
+                machine.told = NOT_TOLD;
+                try
+                {
+                    receipts[i] = apply(operations[i], args1[i], args2[i]);
+                }
+                catch(RuntimeException e)
+                {
+                    long told = machine.told;
+                    if(told != NOT_TOLD)
+                    {
+                        // the listener threw after the command took effect
+                        receipts[i] = told;
+                        lastFailure = e;
+                        listenerFailures++;
+                    }
+                    else
+                    {
+                        receipts[i] = Receipt.of(VendingMachine.Response.CANNOT_PERFORM);
+                        failed(e);
+                    }
+                }
+            }
+        }
+
+        for(long s = from; s < to; s++)
+        {
+            int i = (int)s & mask;
+            Completion completion = completions[i];
+            completions[i] = null;
+            operations[i] = null;
+            if(completion == null) continue;
+            try
+            {
+                completion.complete(receipts[i]);
+            }
+            catch(RuntimeException e)
+            {
+                failed(e);
+            }
+        }
+        batches++;
+        head = to;
+    }
+
+    // owner thread only
+    private void failed(RuntimeException e)
+    {
+        lastFailure = e;
+        failures++;
+    }
+
+    private long apply(Operation operation, long arg1, int arg2)
+    {
+        switch(operation)
+        {
+            case PUT_COIN1:        return Receipt.of(machine.putCoin1());
+            case PUT_COIN2:        return Receipt.of(machine.putCoin2());
+            case PUT_COINS:        return Receipt.of(machine.putCoins((int)arg1, arg2));
+            case GIVE_PRODUCT1:    return machine.sellProduct1((int)arg1);
+            case GIVE_PRODUCT2:    return machine.sellProduct2((int)arg1);
+            case RETURN_MONEY:     return machine.refund();
+            case FILL_PRODUCTS:    return Receipt.of(machine.fillProducts());
+            case FILL_PRODUCTS_TO: return Receipt.of(machine.fillProducts((int)arg1, arg2));
+            case FILL_COINS:       return Receipt.of(machine.fillCoins((int)arg1, arg2));
+            case SET_PRICES:       return Receipt.of(machine.setPrices((int)arg1, arg2));
+            case ENTER_ADMIN_MODE: return Receipt.of(machine.enterAdminMode(arg1));
+            case EXIT_ADMIN_MODE:  machine.exitAdminMode(); return Receipt.of(VendingMachine.Response.OK);
+            default: throw new IllegalArgumentException(operation.name());
+        }
+    }
+
+    /** Number of batches applied so far; with many producers this is well below the number of commands. */
+    public long getBatches()
+    {
+        return batches;
+    }
+
+    /** Number of commands the machine threw on and completions that threw. */
+    public long getFailures()
+    {
+        return failures;
+    }
+
+    /** Number of commands that took effect but whose listener threw. */
+    public long getListenerFailures()
+    {
+        return listenerFailures;
+    }
+
+    /** What the latest of either kind threw, or {@code null}. */
+    public RuntimeException getLastFailure()
+    {
+        return lastFailure;
+    }
+
+    /** Commands claimed but not yet applied. */
+    public int getPending()
+    {
+        return (int)((tail.get() & ~CLOSED) - head);
+    }
+
+    /**
+     * Stops taking commands, waits for the owner to apply those already submitted and
+     * returns. Submitting afterwards fails.
+     */
+    @Override
+    public void close()
+    {
+        long t;
+        do
+        {
+            t = tail.get();
+            if(t < 0) break;
+        }
+        while(!tail.compareAndSet(t, t | CLOSED));
+
+        LockSupport.unpark(owner);
+        try
+        {
+            owner.join();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package root.vending;
+
+import root.vending.VendingMachine.Response;
+
+/**
+ * Text protocol of {@link MachineServer}, one request and one reply per line.
+ *
+ * <pre>
+ * request: machine-id OPERATION [arg...]     e.g. "7 GIVE_PRODUCT1 2", "7 ENTER_ADMIN_MODE 117345294655382"
+ * reply:   RESPONSE                          for most operations
+ *          RESPONSE units coins1 coins2      for GIVE_PRODUCT1, GIVE_PRODUCT2 and RETURN_MONEY
+ *          OK num1 num2 coins1 coins2 balance price1 price2 mode   for STATE
+ *          ERROR message                     for requests that cannot be parsed or name no machine
+ * </pre>
+ */
+final class MachineProtocol
+{
+    static final String STATE = "STATE";
+
+    private MachineProtocol()
+    {
+    }
+
+    static String handle(MachineRegistry registry, String line)
+    {
+        String[] words = line.trim().split("\\s+");
+        if(words.length < 2) return error("expected: machine-id OPERATION [arg...]");
+
+        long id;
+        try
+        {
+            id = Long.parseLong(words[0]);
+        }
+        catch(NumberFormatException e)
+        {
+            return error("bad machine id " + words[0]);
+        }
+        VendingMachine machine = registry.get(id);
+        if(machine == null) return error("no machine " + id);
+
+        try
+        {
+            if(words[1].equals(STATE))
+            {
+                MachineState state;
+                synchronized(machine)
+                {
+                    state = machine.captureState();
+                }
+                return "OK " + state.getNumberOfProduct1() + ' ' + state.getNumberOfProduct2() + ' '
+                        + state.getCoins1() + ' ' + state.getCoins2() + ' ' + state.getBalance() + ' '
+                        + state.getPrice1() + ' ' + state.getPrice2() + ' ' + state.getMode();
+            }
+
+            Operation operation = Operation.valueOf(words[1]);
+            synchronized(machine)
+            {
+                return apply(machine, operation, words);
+            }
+        }
+        catch(IllegalArgumentException | ArrayIndexOutOfBoundsException e)
+        {
+            return error("bad request: " + line);
+        }
+    }
+
+    private static String apply(VendingMachine machine, Operation operation, String[] words)
+    {
+        switch(operation)
+        {
+            case PUT_COIN1:        return reply(machine.putCoin1());
+            case PUT_COIN2:        return reply(machine.putCoin2());
+            case PUT_COINS:        return reply(machine.putCoins(Integer.parseInt(words[2]), Integer.parseInt(words[3])));
+            case GIVE_PRODUCT1:    return reply(machine.sellProduct1(Integer.parseInt(words[2])));
+            case GIVE_PRODUCT2:    return reply(machine.sellProduct2(Integer.parseInt(words[2])));
+            case RETURN_MONEY:     return reply(machine.refund());
+            case FILL_PRODUCTS:    return reply(machine.fillProducts());
+            case FILL_PRODUCTS_TO: return reply(machine.fillProducts(Integer.parseInt(words[2]), Integer.parseInt(words[3])));
+            case FILL_COINS:       return reply(machine.fillCoins(Integer.parseInt(words[2]), Integer.parseInt(words[3])));
+            case SET_PRICES:       return reply(machine.setPrices(Integer.parseInt(words[2]), Integer.parseInt(words[3])));
+            case ENTER_ADMIN_MODE: return reply(machine.enterAdminMode(Long.parseLong(words[2])));
+            case EXIT_ADMIN_MODE:  machine.exitAdminMode(); return reply(Response.OK);
+            default: throw new IllegalArgumentException(operation.toString());
+        }
+    }
+
+    private static String reply(Response response)
+    {
+        return response.toString();
+    }
+
+    private static String reply(long receipt)
+    {
+        return Receipt.response(receipt).toString() + ' ' + Receipt.units(receipt) + ' '
+                + Receipt.coins1(receipt) + ' ' + Receipt.coins2(receipt);
+    }
+
+    private static String error(String message)
+    {
+        return "ERROR " + message;
+    }
+}
@@ -0,0 +1,264 @@
+package root.vending;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+
+/**
+ * Machines keyed by a fleet-wide machine id, safe to look up from many threads.
+ *
+ * The id is the machine's public name and has nothing to do with its admin code. Ids are
+ * spread over a power-of-two number of shards, each an open-addressing {@code long} map
+ * behind its own {@link StampedLock}: lookups are optimistic reads that take no lock
+ * unless a writer got in the way, and writers to different shards never meet. Bulk
+ * operations take each shard's lock once for all the ids that fall into it.
+ *
+ * The registry does not make the machines themselves thread-safe: whoever calls a
+ * registered machine holds its monitor, {@code synchronized(machine)}, for the duration
+ * of the call, as {@link MachineServer} does.
+ */
+public final class MachineRegistry
+{
+    private final Shard[] shards;
+    private final int shift;
+
+    /** Registry with four shards per processor. */
+    public MachineRegistry()
+    {
+        this(4*Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Registry with at least {@code shards} shards, rounded up to a power of two. */
+    public MachineRegistry(int shards)
+    {
+        if(shards <= 0 || shards > 1 << 16) throw new IllegalArgumentException("shards: " + shards);
+        int n = 1;
+        while(n < shards) n <<= 1;
+        this.shards = new Shard[n];
+        for(int i = 0; i < n; i++) this.shards[i] = new Shard();
+        this.shift = 64 - Integer.numberOfTrailingZeros(n);
+    }
+
+    private Shard shard(long id)
+    {
+        return shift == 64 ? shards[0] : shards[(int)(LongMachineMap.hash(id) >>> shift)];
+    }
+
+    int shardCount()
+    {
+        return shards.length;
+    }
+
+    /** Registers {@code machine} under {@code id}; fails if the id is taken. */
+    public void register(long id, VendingMachine machine)
+    {
+        if(machine == null) throw new NullPointerException("machine");
+        Shard shard = shard(id);
+        long stamp = shard.lock.writeLock();
+        try
+        {
+            if(shard.map.putIfAbsent(id, machine) != null)
+                throw new IllegalArgumentException("machine " + id + " is already registered");
+        }
+        finally
+        {
+            shard.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Registers {@code machines[i]} under {@code ids[i]} for every {@code i}. Fails without
+     * registering anything if an id is taken or appears twice.
+     */
+    public void registerAll(long[] ids, VendingMachine[] machines)
+    {
+        if(ids.length != machines.length)
+            throw new IllegalArgumentException(ids.length + " ids for " + machines.length + " machines");
+        for(VendingMachine machine : machines)
+            if(machine == null) throw new NullPointerException("machine");
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        for(int i = 1; i < sorted.length; i++)
+            if(sorted[i] == sorted[i - 1]) throw new IllegalArgumentException("machine " + sorted[i] + " appears twice");
+
+        int[][] byShard = groupByShard(ids);
+        long[] stamps = new long[shards.length];
+        for(int s = 0; s < shards.length; s++)
+            if(byShard[s].length > 0) stamps[s] = shards[s].lock.writeLock();
+        try
+        {
+            for(long id : ids)
+                if(shard(id).map.get(id) != null)
+                    throw new IllegalArgumentException("machine " + id + " is already registered");
+            for(int i = 0; i < ids.length; i++) shard(ids[i]).map.putIfAbsent(ids[i], machines[i]);
+        }
+        finally
+        {
+            for(int s = 0; s < shards.length; s++)
+                if(byShard[s].length > 0) shards[s].lock.unlockWrite(stamps[s]);
+        }
+    }
+
+    /** Returns the machine registered under {@code id}, or {@code null}. */
+    public VendingMachine get(long id)
+    {
+        return shard(id).get(id);
+    }
+
+    /** Looks up every id in {@code ids}, storing the machines or {@code null} in {@code out}. */
+    public void getAll(long[] ids, VendingMachine[] out)
+    {
+        if(out.length < ids.length) throw new IllegalArgumentException("output too short: " + out.length);
+        int[][] byShard = groupByShard(ids);
+        for(int s = 0; s < shards.length; s++)
+        {
+            int[] positions = byShard[s];
+            if(positions.length == 0) continue;
+            Shard shard = shards[s];
+            long stamp = shard.lock.tryOptimisticRead();
+            for(int p : positions) out[p] = shard.map.get(ids[p]);
+            if(shard.lock.validate(stamp)) continue;
+
+            stamp = shard.lock.readLock();
+            try
+            {
+                for(int p : positions) out[p] = shard.map.get(ids[p]);
+            }
+            finally
+            {
+                shard.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    private int[][] groupByShard(long[] ids)
+    {
+        int[] counts = new int[shards.length];
+        int[] shardOf = new int[ids.length];
+        for(int i = 0; i < ids.length; i++)
+        {
+            shardOf[i] = shift == 64 ? 0 : (int)(LongMachineMap.hash(ids[i]) >>> shift);
+            counts[shardOf[i]]++;
+        }
+        int[][] byShard = new int[shards.length][];
+        for(int s = 0; s < shards.length; s++) byShard[s] = new int[counts[s]];
+        for(int i = ids.length - 1; i >= 0; i--) byShard[shardOf[i]][--counts[shardOf[i]]] = i;
+        return byShard;
+    }
+
+    public VendingMachine remove(long id)
+    {
+        Shard shard = shard(id);
+        long stamp = shard.lock.writeLock();
+        try
+        {
+            return shard.map.remove(id);
+        }
+        finally
+        {
+            shard.lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size()
+    {
+        int n = 0;
+        for(Shard shard : shards) n += shard.size();
+        return n;
+    }
+
+    /** Ids registered at the time of the call, in no particular order. */
+    public long[] ids()
+    {
+        long[] ids = new long[0];
+        int n = 0;
+        for(Shard shard : shards)
+        {
+            long stamp = shard.lock.readLock();
+            try
+            {
+                if(ids.length - n < shard.map.size()) ids = Arrays.copyOf(ids, Math.max(2*ids.length, n + shard.map.size()));
+                n = shard.map.keys(ids, n);
+            }
+            finally
+            {
+                shard.lock.unlockRead(stamp);
+            }
+        }
+        return Arrays.copyOf(ids, n);
+    }
+
+    /** Machines registered at the time of the call. */
+    public Collection<VendingMachine> machines()
+    {
+        List<VendingMachine> machines = new ArrayList<>();
+        for(Shard shard : shards) shard.forEach((id, machine) -> machines.add(machine));
+        return Collections.unmodifiableList(machines);
+    }
+
+    /** Parallel stream over every registration, split by shard. */
+    Stream<Map.Entry<Long, VendingMachine>> entries()
+    {
+        return Arrays.stream(shards).parallel().flatMap(shard ->
+        {
+            List<Map.Entry<Long, VendingMachine>> entries = new ArrayList<>(shard.size());
+            shard.forEach((id, machine) -> entries.add(new AbstractMap.SimpleImmutableEntry<>(id, machine)));
+            return entries.stream();
+        });
+    }
+
+    private static final class Shard
+    {
+        final StampedLock lock = new StampedLock();
+        final LongMachineMap map = new LongMachineMap();
+
+        VendingMachine get(long id)
+        {
+            long stamp = lock.tryOptimisticRead();
+            VendingMachine machine = map.get(id);
+            if(lock.validate(stamp)) return machine;
+
+            stamp = lock.readLock();
+            try
+            {
+                return map.get(id);
+            }
+            finally
+            {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        int size()
+        {
+            long stamp = lock.readLock();
+            try
+            {
+                return map.size();
+            }
+            finally
+            {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void forEach(LongMachineMap.Entry action)
+        {
+            long stamp = lock.readLock();
+            try
+            {
+                map.forEach(action);
+            }
+            finally
+            {
+                lock.unlockRead(stamp);
+            }
+        }
+    }
+}
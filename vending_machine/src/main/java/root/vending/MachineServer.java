@@ -0,0 +1,186 @@
+package root.vending;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Serves the machines of a {@link MachineRegistry} over TCP on the loopback interface,
+ * speaking the line protocol of {@link MachineProtocol}.
+ *
+ * Each connection is served by its own thread doing blocking I/O. On runtimes with
+ * virtual threads these are virtual, so tens of thousands of idle kiosk connections cost
+ * little; elsewhere they come from a cached pool of platform threads.
+ *
+ * A failed accept, such as running out of file descriptors, is counted in
+ * {@link #getAcceptFailures()} and the acceptor waits before trying again, doubling the
+ * wait while the failures go on, so a lasting failure does not spin.
+ */
+public final class MachineServer implements Closeable
+{
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private final MachineRegistry registry;
+    private final ServerSocket socket;
+    private final ExecutorService connections;
+    private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+
+    private volatile boolean closed;
+    private volatile long acceptFailures;
+    private volatile IOException lastFailure;
+
+    private MachineServer(MachineRegistry registry, ServerSocket socket)
+    {
+        this.registry = registry;
+        this.socket = socket;
+        this.connections = newConnectionExecutor();
+        this.acceptor = new Thread(this::acceptLoop, "machine-server-" + socket.getLocalPort());
+        this.acceptor.setDaemon(true);
+    }
+
+    /** Starts serving {@code registry} on {@code port} of localhost; port 0 picks a free one. */
+    public static MachineServer start(MachineRegistry registry, int port) throws IOException
+    {
+        ServerSocket socket = new ServerSocket();
+        socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4096);
+        return start(registry, socket);
+    }
+
+    static MachineServer start(MachineRegistry registry, ServerSocket socket)
+    {
+        MachineServer server = new MachineServer(registry, socket);
+        server.acceptor.start();
+        return server;
+    }
+
+    public int getPort()
+    {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Executor running every task on a new virtual thread when the runtime has them, or on
+     * a cached pool of daemon threads otherwise.
+     */
+    public static ExecutorService newConnectionExecutor()
+    {
+        try
+        {
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch(ReflectiveOperationException e)
+        {
+            return Executors.newCachedThreadPool(task ->
+            {
+                Thread thread = new Thread(task, "machine-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void acceptLoop()
+    {
+        long backoff = 0;
+        while(!closed)
+        {
+            try
+            {
+                Socket client = socket.accept();
+                backoff = 0;
+                client.setTcpNoDelay(true);
+                open.add(client);
+                try
+                {
+                    connections.execute(() -> serve(client));
+                }
+                catch(RejectedExecutionException e)
+                {
+                    open.remove(client);
+                    client.close();
+                }
+            }
+            catch(IOException e)
+            {
+                if(closed) return;
+                lastFailure = e;
+                acceptFailures++;
+                backoff = Math.min(Math.max(2*backoff, MIN_BACKOFF_NANOS), MAX_BACKOFF_NANOS);
+                LockSupport.parkNanos(backoff);
+            }
+        }
+    }
+
+    private void serve(Socket client)
+    {
+        try(Socket s = client;
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII)))
+        {
+            String line;
+            while((line = in.readLine()) != null)
+            {
+                if(line.isBlank()) continue;
+                out.write(MachineProtocol.handle(registry, line));
+                out.write('\n');
+                if(!in.ready()) out.flush();
+            }
+        }
+        catch(IOException e)
+        {
+            // the client went away; nothing to clean up beyond the socket
+        }
+        finally
+        {
+            open.remove(client);
+        }
+    }
+
+    /** Number of accepts that failed, each followed by a wait. */
+    public long getAcceptFailures()
+    {
+        return acceptFailures;
+    }
+
+    /** What the latest failed accept threw, or {@code null}. */
+    public IOException getLastFailure()
+    {
+        return lastFailure;
+    }
+
+    /** Stops accepting, closes every open connection and waits for the acceptor to finish. */
+    @Override
+    public void close() throws IOException
+    {
+        if(closed) return;
+        closed = true;
+        socket.close();
+        for(Socket client : open) client.close();
+        connections.shutdownNow();
+        try
+        {
+            acceptor.join();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
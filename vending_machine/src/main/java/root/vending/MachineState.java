@@ -0,0 +1,124 @@
+package root.vending;
+
+import java.util.Objects;
+
+import root.vending.VendingMachine.Mode;
+
+/**
+ * Complete state of a {@link VendingMachine} at one point in time.
+ *
+ * The prices are those in force when the state was captured. A machine that had no prices
+ * of its own charges its configuration's, and the state remembers that, so restoring it
+ * leaves the machine following its configuration rather than pinning today's prices.
+ */
+public final class MachineState
+{
+    private final int num1;
+    private final int num2;
+    private final int coins1;
+    private final int coins2;
+    private final int balance;
+    private final int price1;
+    private final int price2;
+    private final Mode mode;
+    private final boolean configuredPrices;
+
+    /** A state whose prices were set on the machine itself. */
+    public MachineState(int num1, int num2, int coins1, int coins2, int balance, int price1, int price2, Mode mode)
+    {
+        this(num1, num2, coins1, coins2, balance, price1, price2, mode, false);
+    }
+
+    /**
+     * @param configuredPrices whether the machine charged the prices of its configuration
+     *                         rather than prices of its own
+     */
+    public MachineState(int num1, int num2, int coins1, int coins2, int balance, int price1, int price2, Mode mode,
+                        boolean configuredPrices)
+    {
+        this.num1 = num1;
+        this.num2 = num2;
+        this.coins1 = coins1;
+        this.coins2 = coins2;
+        this.balance = balance;
+        this.price1 = price1;
+        this.price2 = price2;
+        this.mode = Objects.requireNonNull(mode);
+        this.configuredPrices = configuredPrices;
+    }
+
+    public int getNumberOfProduct1()
+    {
+        return num1;
+    }
+
+    public int getNumberOfProduct2()
+    {
+        return num2;
+    }
+
+    public int getCoins1()
+    {
+        return coins1;
+    }
+
+    public int getCoins2()
+    {
+        return coins2;
+    }
+
+    public int getBalance()
+    {
+        return balance;
+    }
+
+    public int getPrice1()
+    {
+        return price1;
+    }
+
+    public int getPrice2()
+    {
+        return price2;
+    }
+
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    /** Whether the prices came from the machine's configuration rather than its own. */
+    public boolean hasConfiguredPrices()
+    {
+        return configuredPrices;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if(this == o) return true;
+        if(!(o instanceof MachineState)) return false;
+        MachineState that = (MachineState)o;
+        return num1 == that.num1 && num2 == that.num2
+            && coins1 == that.coins1 && coins2 == that.coins2
+            && balance == that.balance
+            && price1 == that.price1 && price2 == that.price2
+            && mode == that.mode && configuredPrices == that.configuredPrices;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(num1, num2, coins1, coins2, balance, price1, price2, mode, configuredPrices);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MachineState{num1=" + num1 + ", num2=" + num2
+            + ", coins1=" + coins1 + ", coins2=" + coins2
+            + ", balance=" + balance
+            + ", price1=" + price1 + ", price2=" + price2
+            + ", mode=" + mode + (configuredPrices ? ", configured prices" : "") + "}";
+    }
+}
@@ -0,0 +1,28 @@
+package root.vending;
+
+/**
+ * Public operations of {@link VendingMachine} that may change its state, as reported
+ * to a {@link MachineListener}.
+ */
+public enum Operation
+{
+    PUT_COIN1,
+    PUT_COIN2,
+    GIVE_PRODUCT1,
+    GIVE_PRODUCT2,
+    RETURN_MONEY,
+    FILL_PRODUCTS,
+    FILL_COINS,
+    SET_PRICES,
+    ENTER_ADMIN_MODE,
+    EXIT_ADMIN_MODE,
+    FILL_PRODUCTS_TO,
+    PUT_COINS;
+
+    private static final Operation[] VALUES = values();
+
+    public static Operation of(int ordinal)
+    {
+        return VALUES[ordinal];
+    }
+}
@@ -0,0 +1,165 @@
+package root.vending;
+
+import root.vending.VendingMachine.Response;
+
+/**
+ * Exact change for two coin types that leaves the machine best placed for the sales after.
+ *
+ * Among the coin mixes that pay an amount, the engine picks the one whose remaining coins
+ * can still pay the most of the change future sales are likely to need: each amount has a
+ * weight, such as how often it is asked for, and the mix keeping the largest total weight
+ * payable wins; ties go to the mix with fewer coins. Every mix leaves the same value
+ * behind, so this is the lookahead that matters: which amounts stay payable.
+ *
+ * The choice depends only on the coins held and the amount, so it is precomputed for every
+ * coin count within the capacities and read back from a table. Machines holding more coins
+ * than that are planned directly. The engine is immutable and may be shared by any number
+ * of machines and threads.
+ */
+final class PreservingChangeEngine implements ChangeEngine
+{
+    // largest table worth building; the default machine needs about 200 thousand entries
+    private static final int MAX_TABLE = 1 << 24;
+
+    private static final short UNSUITABLE = -1;
+
+    private final int value1;
+    private final int value2;
+    private final int capacity1;
+    private final int capacity2;
+    private final int[] weights;
+
+    // total weight of the amounts payable with coins (r1, r2), at r1*(capacity2 + 1) + r2
+    private final int[] scores;
+
+    // coins of the first type to pay amount a from (c1, c2), at offsets[c1*(capacity2 + 1) + c2] + a;
+    // null if the capacities are too large for a table
+    private final int[] offsets;
+    private final short[] plans;
+
+    /** @param weights how much keeping amount {@code a} payable is worth, at {@code weights[a]} */
+    PreservingChangeEngine(int[] values, int[] capacities, int[] weights)
+    {
+        if(values.length != 2 || capacities.length != 2)
+            throw new IllegalArgumentException("expected two coin types");
+        long sum = 0;
+        for(int weight : weights)
+        {
+            if(weight < 0) throw new IllegalArgumentException("negative weight: " + weight);
+            sum += weight;
+        }
+        if(sum > Integer.MAX_VALUE) throw new IllegalArgumentException("weights too large");
+        if(capacities[0] >= Short.MAX_VALUE || (long)(capacities[0] + 1)*(capacities[1] + 1) > MAX_TABLE)
+            throw new IllegalArgumentException("coin capacity too large");
+
+        this.value1 = values[0];
+        this.value2 = values[1];
+        this.capacity1 = capacities[0];
+        this.capacity2 = capacities[1];
+        this.weights = weights.clone();
+
+        this.scores = new int[(capacity1 + 1)*(capacity2 + 1)];
+        for(int r1 = 0; r1 <= capacity1; r1++)
+            for(int r2 = 0; r2 <= capacity2; r2++)
+                scores[r1*(capacity2 + 1) + r2] = payableWeight(r1, r2);
+
+        long entries = 0;
+        for(int c1 = 0; c1 <= capacity1; c1++)
+            for(int c2 = 0; c2 <= capacity2; c2++)
+                entries += (long)c1*value1 + (long)c2*value2 + 1;
+
+        if(entries > MAX_TABLE)
+        {
+            this.offsets = null;
+            this.plans = null;
+            return;
+        }
+
+        this.offsets = new int[scores.length];
+        this.plans = new short[(int)entries];
+        int at = 0;
+        for(int c1 = 0; c1 <= capacity1; c1++)
+        {
+            for(int c2 = 0; c2 <= capacity2; c2++)
+            {
+                offsets[c1*(capacity2 + 1) + c2] = at;
+                int total = c1*value1 + c2*value2;
+                for(int a = 0; a <= total; a++) plans[at++] = (short)plan(a, c1, c2);
+            }
+        }
+    }
+
+    @Override
+    public Response makeChange(int amount, int[] coins, int[] out)
+    {
+        int c1 = coins[0];
+        int c2 = coins[1];
+        if(amount > (long)c1*value1 + (long)c2*value2) return Response.TOO_BIG_CHANGE;
+
+        int n1;
+        if(plans != null && c1 <= capacity1 && c2 <= capacity2)
+            n1 = plans[offsets[c1*(capacity2 + 1) + c2] + amount];
+        else
+            n1 = plan(amount, c1, c2);
+        if(n1 == UNSUITABLE) return Response.UNSUITABLE_CHANGE;
+
+        out[0] = n1;
+        out[1] = (amount - n1*value1)/value2;
+        return Response.OK;
+    }
+
+    /** Coins of the first type in the best payout of {@code amount} from {@code (c1, c2)}, or {@link #UNSUITABLE}. */
+    private int plan(int amount, int c1, int c2)
+    {
+        int best = UNSUITABLE;
+        int bestScore = -1;
+        int bestCoins = Integer.MAX_VALUE;
+        for(int n1 = Math.min(c1, amount/value1); n1 >= 0; n1--)
+        {
+            int rest = amount - n1*value1;
+            if(rest/value2 > c2) break;
+            if(rest % value2 != 0) continue;
+            int n2 = rest/value2;
+
+            int score = score(c1 - n1, c2 - n2);
+            if(score > bestScore || (score == bestScore && n1 + n2 < bestCoins))
+            {
+                best = n1;
+                bestScore = score;
+                bestCoins = n1 + n2;
+            }
+        }
+        return best;
+    }
+
+    private int score(int r1, int r2)
+    {
+        if(r1 <= capacity1 && r2 <= capacity2) return scores[r1*(capacity2 + 1) + r2];
+        return payableWeight(r1, r2);
+    }
+
+    private int payableWeight(int r1, int r2)
+    {
+        int weight = 0;
+        for(int a = 1; a < weights.length; a++)
+            if(weights[a] != 0 && payable(a, r1, r2)) weight += weights[a];
+        return weight;
+    }
+
+    private boolean payable(int amount, int r1, int r2)
+    {
+        for(int n1 = Math.min(r1, amount/value1); n1 >= 0; n1--)
+        {
+            int rest = amount - n1*value1;
+            if(rest/value2 > r2) return false;
+            if(rest % value2 == 0) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int[] denominations()
+    {
+        return new int[] {value1, value2};
+    }
+}
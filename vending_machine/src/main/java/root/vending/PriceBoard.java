@@ -0,0 +1,41 @@
+package root.vending;
+
+/**
+ * Prices shared by every machine attached to it with {@link VendingMachine#setPriceBoard}.
+ *
+ * The board holds one {@link PriceTable} in a volatile field. {@link #publish} replaces it
+ * with a new table in a single write, so all attached machines switch at the same instant,
+ * without entering admin mode. A sale reads the reference once and charges from that table
+ * alone, so it never mixes prices of two versions and never waits for a publisher.
+ */
+public final class PriceBoard
+{
+    private volatile PriceTable current;
+
+    public PriceBoard(int price1, int price2)
+    {
+        check(price1, price2);
+        current = new PriceTable(1, price1, price2);
+    }
+
+    /** The table sales are charged from now. */
+    public PriceTable current()
+    {
+        return current;
+    }
+
+    /** Makes {@code price1} and {@code price2} the prices of every attached machine under the next version. */
+    public synchronized PriceTable publish(int price1, int price2)
+    {
+        check(price1, price2);
+        PriceTable table = new PriceTable(current.getVersion() + 1, price1, price2);
+        current = table;
+        return table;
+    }
+
+    private static void check(int price1, int price2)
+    {
+        if(price1 <= 0 || price2 <= 0)
+            throw new IllegalArgumentException("prices must be positive: " + price1 + ", " + price2);
+    }
+}
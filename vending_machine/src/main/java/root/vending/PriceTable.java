@@ -0,0 +1,40 @@
+package root.vending;
+
+/**
+ * Immutable prices of both products under a version number. Tables are published through
+ * a {@link PriceBoard}; version 0 stands for a machine's own prices.
+ */
+public final class PriceTable
+{
+    private final int version;
+    private final int price1;
+    private final int price2;
+
+    PriceTable(int version, int price1, int price2)
+    {
+        this.version = version;
+        this.price1 = price1;
+        this.price2 = price2;
+    }
+
+    public int getVersion()
+    {
+        return version;
+    }
+
+    public int getPrice1()
+    {
+        return price1;
+    }
+
+    public int getPrice2()
+    {
+        return price2;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "v" + version + " " + price1 + "/" + price2;
+    }
+}
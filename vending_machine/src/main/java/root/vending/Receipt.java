@@ -0,0 +1,108 @@
+package root.vending;
+
+import root.vending.VendingMachine.Response;
+
+/**
+ * Outcome of a sale or refund: the response, the units sold and the coins of each
+ * kind paid out as change.
+ *
+ * The static methods read and write the packed {@code long} form returned by
+ * {@link VendingMachine#sellProduct1(int)} and friends; an instance is a reusable
+ * holder for callers that prefer fields.
+ */
+public final class Receipt
+{
+    private static final Response[] RESPONSES = Response.values();
+
+    private static final int UNITS_SHIFT  = 8;
+    private static final int COINS1_SHIFT = 24;
+    private static final int COINS2_SHIFT = 44;
+
+    private static final long RESPONSE_MASK = 0xFFL;
+    private static final long UNITS_MASK    = 0xFFFFL;
+    private static final long COINS_MASK    = 0xFFFFFL;
+
+    private Response response = Response.OK;
+    private int units;
+    private int coins1;
+    private int coins2;
+
+    public static long pack(Response response, int units, int coins1, int coins2)
+    {
+        return response.ordinal()
+             | ((long)units << UNITS_SHIFT)
+             | ((long)coins1 << COINS1_SHIFT)
+             | ((long)coins2 << COINS2_SHIFT);
+    }
+
+    public static long of(Response response)
+    {
+        return response.ordinal();
+    }
+
+    public static Response response(long receipt)
+    {
+        return RESPONSES[(int)(receipt & RESPONSE_MASK)];
+    }
+
+    public static boolean isOk(long receipt)
+    {
+        return (receipt & RESPONSE_MASK) == 0;
+    }
+
+    public static int units(long receipt)
+    {
+        return (int)((receipt >>> UNITS_SHIFT) & UNITS_MASK);
+    }
+
+    public static int coins1(long receipt)
+    {
+        return (int)((receipt >>> COINS1_SHIFT) & COINS_MASK);
+    }
+
+    public static int coins2(long receipt)
+    {
+        return (int)((receipt >>> COINS2_SHIFT) & COINS_MASK);
+    }
+
+    static long withUnits(long receipt, int units)
+    {
+        return (receipt & ~(UNITS_MASK << UNITS_SHIFT)) | ((long)units << UNITS_SHIFT);
+    }
+
+    /** Unpacks {@code receipt} into this holder and returns its response. */
+    public Response set(long receipt)
+    {
+        response = response(receipt);
+        units = units(receipt);
+        coins1 = coins1(receipt);
+        coins2 = coins2(receipt);
+        return response;
+    }
+
+    public Response getResponse()
+    {
+        return response;
+    }
+
+    public int getUnits()
+    {
+        return units;
+    }
+
+    public int getCoins1()
+    {
+        return coins1;
+    }
+
+    public int getCoins2()
+    {
+        return coins2;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Receipt{" + response + ", units=" + units + ", coins1=" + coins1 + ", coins2=" + coins2 + "}";
+    }
+}
@@ -0,0 +1,122 @@
+package root.vending;
+
+import root.vending.VendingMachine.Response;
+
+/**
+ * Outcome of a {@link TraceReplayer} run: how every event was answered, overall and per
+ * machine, and what the successful sales brought in. A parallel worker keeps one for the
+ * range of machines it replays, starting at machine {@code first}.
+ */
+public final class ReplayStats
+{
+    private static final Response[] RESPONSES = Response.values();
+
+    private final int first;
+    private final int machines;
+    private final long[] responses = new long[RESPONSES.length];
+    private final long[] perMachine;
+
+    private long events;
+    private long unitsSold;
+    private long revenue;
+    private long elapsedNanos;
+
+    ReplayStats(int machines)
+    {
+        this(0, machines);
+    }
+
+    ReplayStats(int first, int machines)
+    {
+        this.first = first;
+        this.machines = machines;
+        this.perMachine = new long[machines*RESPONSES.length];
+    }
+
+    void count(int machine, Response response)
+    {
+        events++;
+        responses[response.ordinal()]++;
+        perMachine[(machine - first)*RESPONSES.length + response.ordinal()]++;
+    }
+
+    void sold(int units, int price)
+    {
+        unitsSold += units;
+        revenue += (long)units*price;
+    }
+
+    void add(ReplayStats other)
+    {
+        events += other.events;
+        unitsSold += other.unitsSold;
+        revenue += other.revenue;
+        for(int i = 0; i < responses.length; i++) responses[i] += other.responses[i];
+        int offset = (other.first - first)*RESPONSES.length;
+        for(int i = 0; i < other.perMachine.length; i++) perMachine[offset + i] += other.perMachine[i];
+    }
+
+    void setElapsedNanos(long elapsedNanos)
+    {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getMachineCount()
+    {
+        return machines;
+    }
+
+    public long getEvents()
+    {
+        return events;
+    }
+
+    public long getCount(Response response)
+    {
+        return responses[response.ordinal()];
+    }
+
+    public long getCount(int machine, Response response)
+    {
+        return perMachine[(machine - first)*RESPONSES.length + response.ordinal()];
+    }
+
+    public long getMachineEvents(int machine)
+    {
+        long n = 0;
+        for(int i = 0; i < RESPONSES.length; i++) n += perMachine[(machine - first)*RESPONSES.length + i];
+        return n;
+    }
+
+    public long getUnitsSold()
+    {
+        return unitsSold;
+    }
+
+    /** Sum of units times the unit price charged for every successful sale. */
+    public long getRevenue()
+    {
+        return revenue;
+    }
+
+    public long getElapsedNanos()
+    {
+        return elapsedNanos;
+    }
+
+    public double getEventsPerSecond()
+    {
+        return elapsedNanos == 0 ? 0 : events*1e9/elapsedNanos;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%d events in %.1f ms (%.0f/s), %d units sold for %d",
+                events, elapsedNanos/1e6, getEventsPerSecond(), unitsSold, revenue));
+        for(Response response : RESPONSES)
+            if(responses[response.ordinal()] != 0) sb.append(", ").append(response).append('=').append(responses[response.ordinal()]);
+        return sb.toString();
+    }
+}
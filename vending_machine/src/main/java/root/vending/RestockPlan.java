@@ -0,0 +1,138 @@
+package root.vending;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a truck should bring to the machines of one route, most urgent stop first.
+ */
+public final class RestockPlan
+{
+    /** Target levels and forecast for one machine. */
+    public static final class Stop
+    {
+        private final long machineId;
+        private final int product1, product2;
+        private final int load1, load2;
+        private final int coins1, coins2;
+        private final double demand1, demand2;
+        private final double hoursLeft;
+
+        Stop(long machineId, int product1, int product2, int load1, int load2, int coins1, int coins2,
+             double demand1, double demand2, double hoursLeft)
+        {
+            this.machineId = machineId;
+            this.product1 = product1;
+            this.product2 = product2;
+            this.load1 = load1;
+            this.load2 = load2;
+            this.coins1 = coins1;
+            this.coins2 = coins2;
+            this.demand1 = demand1;
+            this.demand2 = demand2;
+            this.hoursLeft = hoursLeft;
+        }
+
+        public long getMachineId()
+        {
+            return machineId;
+        }
+
+        /** Stock of product 1 to leave behind, for {@link VendingMachine#fillProducts(int, int)}. */
+        public int getProduct1()
+        {
+            return product1;
+        }
+
+        public int getProduct2()
+        {
+            return product2;
+        }
+
+        /** Units of product 1 to bring, beyond what the machine holds now. */
+        public int getLoad1()
+        {
+            return load1;
+        }
+
+        public int getLoad2()
+        {
+            return load2;
+        }
+
+        /** Coin float to leave behind, for {@link VendingMachine#fillCoins(int, int)}. */
+        public int getCoins1()
+        {
+            return coins1;
+        }
+
+        public int getCoins2()
+        {
+            return coins2;
+        }
+
+        /** Forecast units of product 1 asked for over the planning horizon, lost sales included. */
+        public double getDemand1()
+        {
+            return demand1;
+        }
+
+        public double getDemand2()
+        {
+            return demand2;
+        }
+
+        /** Forecast hours until the first product runs out; infinite without demand. */
+        public double getHoursLeft()
+        {
+            return hoursLeft;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("machine %d: products %d/%d (+%d/+%d), coins %d/%d, %.1f h left",
+                    machineId, product1, product2, load1, load2, coins1, coins2, hoursLeft);
+        }
+    }
+
+    private final String route;
+    private final double horizonHours;
+    private final List<Stop> stops;
+
+    RestockPlan(String route, double horizonHours, List<Stop> stops)
+    {
+        this.route = route;
+        this.horizonHours = horizonHours;
+        this.stops = Collections.unmodifiableList(stops);
+    }
+
+    public String getRoute()
+    {
+        return route;
+    }
+
+    public double getHorizonHours()
+    {
+        return horizonHours;
+    }
+
+    public List<Stop> getStops()
+    {
+        return stops;
+    }
+
+    public int getTotalLoad1()
+    {
+        int n = 0;
+        for(Stop stop : stops) n += stop.load1;
+        return n;
+    }
+
+    public int getTotalLoad2()
+    {
+        int n = 0;
+        for(Stop stop : stops) n += stop.load2;
+        return n;
+    }
+}
@@ -0,0 +1,266 @@
+package root.vending;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import root.vending.VendingMachine.Response;
+
+/**
+ * Forecasts demand and coin flow per machine from its operations and plans restocks and
+ * coin floats per route.
+ *
+ * Each machine keeps a handful of exponentially decaying rates: units asked for per
+ * product (sales lost to an empty slot count as demand), coins taken in and paid out per
+ * type, and change failures. An event updates its rate in constant time, so planning
+ * never rescans history; a plan reads only the current rates and state of the machines on
+ * its route.
+ *
+ * The planner is a {@link MachineListener}: {@link #track} installs it next to any
+ * listener the machine already has. Each machine's rates are updated and read under a
+ * lock of their own rather than the machine's monitor, which a
+ * {@link StampedVendingMachine} does not hold while it sells.
+ */
+public final class RestockPlanner implements MachineListener
+{
+    private static final double NANOS_PER_HOUR = TimeUnit.HOURS.toNanos(1);
+
+    private final double tauNanos;
+    private final double safety;
+    private final LongSupplier clock;
+    private final Map<VendingMachine, Tracked> tracked = new ConcurrentHashMap<>();
+
+    /**
+     * @param halfLifeHours how quickly old events stop counting
+     * @param safety        factor applied to forecast demand, e.g. 1.2
+     */
+    public RestockPlanner(double halfLifeHours, double safety)
+    {
+        this(halfLifeHours, safety, System::nanoTime);
+    }
+
+    RestockPlanner(double halfLifeHours, double safety, LongSupplier clock)
+    {
+        if(halfLifeHours <= 0) throw new IllegalArgumentException("half-life: " + halfLifeHours);
+        if(safety < 1) throw new IllegalArgumentException("safety factor: " + safety);
+        this.tauNanos = halfLifeHours*NANOS_PER_HOUR/Math.log(2);
+        this.safety = safety;
+        this.clock = clock;
+    }
+
+    /** Starts forecasting {@code machine}, known to the plan as {@code id} on {@code route}. */
+    public void track(long id, VendingMachine machine, String route)
+    {
+        synchronized(machine)
+        {
+            if(tracked.putIfAbsent(machine, new Tracked(id, route, clock.getAsLong())) != null)
+                throw new IllegalArgumentException("machine " + id + " is already tracked");
+            MachineListener current = machine.getListener();
+            machine.setListener(current == null ? this : MachineListener.both(current, this));
+        }
+    }
+
+    /** Tracks every machine of {@code registry} on {@code route}. */
+    public void trackAll(MachineRegistry registry, String route)
+    {
+        for(long id : registry.ids()) track(id, registry.get(id), route);
+    }
+
+    @Override
+    public void onOperation(VendingMachine machine, Operation operation, int arg1, int arg2, long receipt)
+    {
+        Tracked t = tracked.get(machine);
+        if(t == null) return;
+
+        long now = clock.getAsLong();
+        Response response = Receipt.response(receipt);
+        synchronized(t)
+        {
+            record(t, operation, arg1, arg2, response, receipt, now);
+        }
+    }
+
+    private void record(Tracked t, Operation operation, int arg1, int arg2, Response response, long receipt, long now)
+    {
+        switch(operation)
+        {
+            case PUT_COIN1:
+                if(response == Response.OK) t.coinsIn1.add(1, now, tauNanos);
+                break;
+            case PUT_COIN2:
+                if(response == Response.OK) t.coinsIn2.add(1, now, tauNanos);
+                break;
+            case PUT_COINS:
+                if(response != Response.OK) break;
+                if(arg1 != 0) t.coinsIn1.add(arg1, now, tauNanos);
+                if(arg2 != 0) t.coinsIn2.add(arg2, now, tauNanos);
+                break;
+            case GIVE_PRODUCT1:
+            case GIVE_PRODUCT2:
+            {
+                if(response != Response.OK && response != Response.INSUFFICIENT_PRODUCT
+                        && response != Response.TOO_BIG_CHANGE && response != Response.UNSUITABLE_CHANGE) break;
+                (operation == Operation.GIVE_PRODUCT1 ? t.demand1 : t.demand2).add(arg1, now, tauNanos);
+                if(response == Response.TOO_BIG_CHANGE || response == Response.UNSUITABLE_CHANGE)
+                    t.changeFailures.add(1, now, tauNanos);
+                paidOut(t, receipt, now);
+                break;
+            }
+            case RETURN_MONEY:
+                paidOut(t, receipt, now);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void paidOut(Tracked t, long receipt, long now)
+    {
+        if(Receipt.coins1(receipt) != 0) t.coinsOut1.add(Receipt.coins1(receipt), now, tauNanos);
+        if(Receipt.coins2(receipt) != 0) t.coinsOut2.add(Receipt.coins2(receipt), now, tauNanos);
+    }
+
+    /** Plans the next visit of every route. */
+    public Map<String, RestockPlan> plan(double horizonHours)
+    {
+        Map<String, List<RestockPlan.Stop>> routes = new TreeMap<>();
+        long now = clock.getAsLong();
+        tracked.forEach((machine, t) -> routes.computeIfAbsent(t.route, r -> new ArrayList<>())
+                .add(stop(machine, t, horizonHours, now)));
+
+        Map<String, RestockPlan> plans = new TreeMap<>();
+        routes.forEach((route, stops) -> plans.put(route, plan(route, horizonHours, stops)));
+        return plans;
+    }
+
+    /** Plans the next visit of {@code route}. */
+    public RestockPlan plan(String route, double horizonHours)
+    {
+        List<RestockPlan.Stop> stops = new ArrayList<>();
+        long now = clock.getAsLong();
+        tracked.forEach((machine, t) ->
+        {
+            if(t.route.equals(route)) stops.add(stop(machine, t, horizonHours, now));
+        });
+        return plan(route, horizonHours, stops);
+    }
+
+    private static RestockPlan plan(String route, double horizonHours, List<RestockPlan.Stop> stops)
+    {
+        stops.sort(Comparator.comparingDouble(RestockPlan.Stop::getHoursLeft)
+                .thenComparingLong(RestockPlan.Stop::getMachineId));
+        return new RestockPlan(route, horizonHours, stops);
+    }
+
+    private RestockPlan.Stop stop(VendingMachine machine, Tracked t, double horizonHours, long now)
+    {
+        MachineState state;
+        double demand1, demand2, net1, net2, failures;
+        synchronized(machine)
+        {
+            state = machine.captureState();
+        }
+        synchronized(t)
+        {
+            demand1 = t.demand1.perHour(now, tauNanos);
+            demand2 = t.demand2.perHour(now, tauNanos);
+            net1 = t.coinsOut1.perHour(now, tauNanos) - t.coinsIn1.perHour(now, tauNanos);
+            net2 = t.coinsOut2.perHour(now, tauNanos) - t.coinsIn2.perHour(now, tauNanos);
+            failures = t.changeFailures.perHour(now, tauNanos);
+        }
+
+        int product1 = target(demand1*horizonHours, 0, machine.getMaxNumberOfProduct1());
+        int product2 = target(demand2*horizonHours, 0, machine.getMaxNumberOfProduct2());
+        product1 = Math.max(product1, state.getNumberOfProduct1());
+        product2 = Math.max(product2, state.getNumberOfProduct2());
+
+        // every change failure asks for small coins: a larger coin's worth of them each
+        boolean firstIsSmall = machine.getCoinValue1() <= machine.getCoinValue2();
+        double ratio = (double)Math.max(machine.getCoinValue1(), machine.getCoinValue2())
+                / Math.min(machine.getCoinValue1(), machine.getCoinValue2());
+        double extra = failures*horizonHours*ratio;
+        int coins1 = target(Math.max(net1, 0)*horizonHours + (firstIsSmall ? extra : 0), 1, machine.getMaxCoins1());
+        int coins2 = target(Math.max(net2, 0)*horizonHours + (firstIsSmall ? 0 : extra), 1, machine.getMaxCoins2());
+
+        double hoursLeft = Math.min(hoursLeft(state.getNumberOfProduct1(), demand1),
+                hoursLeft(state.getNumberOfProduct2(), demand2));
+
+        return new RestockPlan.Stop(t.id, product1, product2,
+                product1 - state.getNumberOfProduct1(), product2 - state.getNumberOfProduct2(),
+                coins1, coins2, demand1*horizonHours, demand2*horizonHours, hoursLeft);
+    }
+
+    private int target(double forecast, int min, int max)
+    {
+        return (int)Math.max(min, Math.min(max, Math.ceil(forecast*safety)));
+    }
+
+    private static double hoursLeft(int units, double perHour)
+    {
+        return perHour <= 0 ? Double.POSITIVE_INFINITY : units/perHour;
+    }
+
+    /** Rates of one machine, guarded by the object itself. */
+    private static final class Tracked
+    {
+        final long id;
+        final String route;
+        final DecayingRate demand1, demand2;
+        final DecayingRate coinsIn1, coinsIn2, coinsOut1, coinsOut2;
+        final DecayingRate changeFailures;
+
+        Tracked(long id, String route, long now)
+        {
+            this.id = id;
+            this.route = route;
+            this.demand1 = new DecayingRate(now);
+            this.demand2 = new DecayingRate(now);
+            this.coinsIn1 = new DecayingRate(now);
+            this.coinsIn2 = new DecayingRate(now);
+            this.coinsOut1 = new DecayingRate(now);
+            this.coinsOut2 = new DecayingRate(now);
+            this.changeFailures = new DecayingRate(now);
+        }
+    }
+
+    /**
+     * Sum of past amounts, each weighted by exp(-age/tau); divided by tau it estimates the
+     * current rate.
+     */
+    static final class DecayingRate
+    {
+        private double sum;
+        private long last;
+
+        DecayingRate(long now)
+        {
+            this.last = now;
+        }
+
+        void add(double amount, long now, double tauNanos)
+        {
+            decay(now, tauNanos);
+            sum += amount;
+        }
+
+        double perHour(long now, double tauNanos)
+        {
+            decay(now, tauNanos);
+            return sum/tauNanos*NANOS_PER_HOUR;
+        }
+
+        private void decay(long now, double tauNanos)
+        {
+            if(now > last)
+            {
+                sum *= Math.exp(-(now - last)/tauNanos);
+                last = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package root.vending;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Units sold and revenue per product over the last five minutes, hour and day, kept up to
+ * date by every successful sale of the tracked machines.
+ *
+ * Each window is a ring of {@value #BUCKETS} buckets plus running totals, so a sale adds
+ * to one bucket and the totals, and a read returns a total after clearing the buckets
+ * that have slid out since the last access. Both take constant time and allocate nothing.
+ * A window covers its length to within one bucket: a sale counts from when it is made
+ * until between 15/16 and the whole of the window has passed.
+ *
+ * All machines share one {@code int} array sized for {@code capacity} machines up front,
+ * {@link #BYTES_PER_MACHINE} bytes each. A machine's slot is written and read under a lock
+ * of its own rather than the machine's monitor, which a {@link StampedVendingMachine}
+ * does not hold while it sells.
+ */
+public final class SalesWindows
+{
+    /** Length of a window. */
+    public enum Window
+    {
+        FIVE_MINUTES(TimeUnit.MINUTES.toMillis(5)),
+        HOUR(TimeUnit.HOURS.toMillis(1)),
+        DAY(TimeUnit.DAYS.toMillis(1));
+
+        private final long bucketMillis;
+
+        Window(long millis)
+        {
+            this.bucketMillis = millis/BUCKETS;
+        }
+    }
+
+    public static final int BUCKETS = 16;
+
+    private static final Window[] WINDOWS = Window.values();
+    private static final int VALUES = 4;    // units1, units2, revenue1, revenue2
+    private static final int REGION = 1 + VALUES + BUCKETS*VALUES;
+    private static final int STRIDE = WINDOWS.length*REGION;
+
+    public static final int BYTES_PER_MACHINE = STRIDE*Integer.BYTES;
+
+    private final int[] data;
+    private final VendingMachine[] machines;
+    private final Object[] locks;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<Long, Integer> slots = new ConcurrentHashMap<>();
+    private int used;
+
+    public SalesWindows(int capacity)
+    {
+        this(capacity, System::currentTimeMillis);
+    }
+
+    SalesWindows(int capacity, LongSupplier clock)
+    {
+        if(capacity <= 0 || capacity > Integer.MAX_VALUE/STRIDE)
+            throw new IllegalArgumentException("capacity: " + capacity);
+        this.data = new int[capacity*STRIDE];
+        this.machines = new VendingMachine[capacity];
+        this.locks = new Object[capacity];
+        this.clock = clock;
+    }
+
+    /**
+     * Starts counting the sales of {@code machine}, known as {@code id}, next to any
+     * listener it already has. Returns the slot to read it by.
+     */
+    public synchronized int track(long id, VendingMachine machine)
+    {
+        if(slots.containsKey(id)) throw new IllegalArgumentException("machine " + id + " is already tracked");
+        if(used == machines.length) throw new IllegalStateException("all " + used + " slots are in use");
+
+        int slot = used++;
+        Object lock = new Object();
+        synchronized(lock)
+        {
+            long now = clock.getAsLong();
+            for(Window window : WINDOWS) data[region(slot, window)] = (int)(now/window.bucketMillis);
+        }
+        locks[slot] = lock;
+        machines[slot] = machine;
+        synchronized(machine)
+        {
+            MachineListener counter = new MachineListener()
+            {
+                @Override
+                public void onOperation(VendingMachine m, Operation operation, int arg1, int arg2, long receipt)
+                {
+                }
+
+                @Override
+                public void onSale(VendingMachine m, Operation operation, int units, int priceVersion, int unitPrice,
+                                   long receipt)
+                {
+                    sold(slot, lock, operation, unitPrice, receipt);
+                }
+            };
+            MachineListener current = machine.getListener();
+            machine.setListener(current == null ? counter : MachineListener.both(current, counter));
+        }
+        slots.put(id, slot);
+        return slot;
+    }
+
+    /** Tracks every machine of {@code registry}. */
+    public void trackAll(MachineRegistry registry)
+    {
+        for(long id : registry.ids()) track(id, registry.get(id));
+    }
+
+    /** Slot of machine {@code id}, or -1 if it is not tracked. */
+    public int slot(long id)
+    {
+        Integer slot = slots.get(id);
+        return slot == null ? -1 : slot;
+    }
+
+    /** Units of {@code product} (1 or 2) sold by the machine in {@code slot} within {@code window}. */
+    public int units(int slot, int product, Window window)
+    {
+        return read(slot, checked(product) - 1, window);
+    }
+
+    /** Revenue from {@code product} (1 or 2) of the machine in {@code slot} within {@code window}. */
+    public int revenue(int slot, int product, Window window)
+    {
+        return read(slot, checked(product) + 1, window);
+    }
+
+    private static int checked(int product)
+    {
+        if(product != 1 && product != 2) throw new IllegalArgumentException("product: " + product);
+        return product;
+    }
+
+    private int read(int slot, int value, Window window)
+    {
+        machine(slot);
+        synchronized(locks[slot])
+        {
+            int region = region(slot, window);
+            advance(region, window, clock.getAsLong());
+            return data[region + 1 + value];
+        }
+    }
+
+    private VendingMachine machine(int slot)
+    {
+        VendingMachine machine = slot >= 0 && slot < machines.length ? machines[slot] : null;
+        if(machine == null) throw new IllegalArgumentException("no machine in slot " + slot);
+        return machine;
+    }
+
+    /** Counts a sale at the {@code price} a unit it was charged. */
+    private void sold(int slot, Object lock, Operation operation, int price, long receipt)
+    {
+        if(!Receipt.isOk(receipt)) return;
+        int product = operation == Operation.GIVE_PRODUCT1 ? 0 : 1;
+
+        int units = Receipt.units(receipt);
+        long now = clock.getAsLong();
+        synchronized(lock)
+        {
+            for(Window window : WINDOWS)
+            {
+                int region = region(slot, window);
+                advance(region, window, now);
+                int bucket = region + 1 + VALUES + (data[region] % BUCKETS)*VALUES;
+                data[bucket + product] += units;
+                data[bucket + 2 + product] += units*price;
+                data[region + 1 + product] += units;
+                data[region + 3 + product] += units*price;
+            }
+        }
+    }
+
+    /** Moves the head of the ring to the bucket of {@code now}, dropping what slid out of the window. */
+    private void advance(int region, Window window, long now)
+    {
+        int head = data[region];
+        int current = (int)(now/window.bucketMillis);
+        if(current <= head) return;
+
+        if(current - head >= BUCKETS)
+        {
+            for(int i = region + 1; i < region + REGION; i++) data[i] = 0;
+        }
+        else
+        {
+            for(int b = head + 1; b <= current; b++)
+            {
+                int bucket = region + 1 + VALUES + (b % BUCKETS)*VALUES;
+                for(int v = 0; v < VALUES; v++)
+                {
+                    data[region + 1 + v] -= data[bucket + v];
+                    data[bucket + v] = 0;
+                }
+            }
+        }
+        data[region] = current;
+    }
+
+    private static int region(int slot, Window window)
+    {
+        return slot*STRIDE + window.ordinal()*REGION;
+    }
+}
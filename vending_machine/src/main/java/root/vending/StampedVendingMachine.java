@@ -0,0 +1,435 @@
+package root.vending;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * {@link VendingMachine} that is safe to share between threads, built for dashboards that
+ * read far more often than customers buy.
+ *
+ * Operations that change state take the write lock of a {@link StampedLock}. Getters and
+ * {@link #snapshot()} read optimistically: they read the fields without locking and
+ * validate the stamp afterwards, so a poll never blocks a sale and only retries under the
+ * read lock if a sale got in between. Callers need no {@code synchronized} of their own.
+ *
+ * Listeners and metrics run while the operation still holds the write lock, which a
+ * {@link StampedLock} would not let the same thread take again; the machine remembers
+ * which thread holds it, and that thread reads and writes straight through.
+ */
+public class StampedVendingMachine extends VendingMachine
+{
+    private final StampedLock lock = new StampedLock();
+    // thread holding the write lock; only ever equal to the current thread if that thread set it
+    private Thread writer;
+
+    public StampedVendingMachine()
+    {
+        super();
+    }
+
+    public StampedVendingMachine(ChangeEngine changeEngine)
+    {
+        super(changeEngine);
+    }
+
+    /** Stock, coins, balance, prices and mode, all captured at the same instant. */
+    public MachineState snapshot()
+    {
+        return captureState();
+    }
+
+    @Override
+    MachineState captureState()
+    {
+        if(writer == Thread.currentThread()) return super.captureState();
+        long stamp = lock.tryOptimisticRead();
+        if(stamp != 0)
+        {
+            MachineState state = super.captureState();
+            if(lock.validate(stamp)) return state;
+        }
+        stamp = lock.readLock();
+        try
+        {
+            return super.captureState();
+        }
+        finally
+        {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static final Mode[] MODES = Mode.values();
+
+    private static final int PRODUCT1 = 0, PRODUCT2 = 1, BALANCE = 2, MODE = 3, SUM = 4,
+            COINS1 = 5, COINS2 = 6, PRICE1 = 7, PRICE2 = 8;
+
+    /** Takes the write lock, or returns 0 if this thread already holds it. */
+    private long writeLock()
+    {
+        Thread current = Thread.currentThread();
+        if(writer == current) return 0;
+        long stamp = lock.writeLock();
+        writer = current;
+        return stamp;
+    }
+
+    private void unlockWrite(long stamp)
+    {
+        if(stamp == 0) return;
+        writer = null;
+        lock.unlockWrite(stamp);
+    }
+
+    private int read(int field)
+    {
+        if(writer == Thread.currentThread()) return field(field);
+        long stamp = lock.tryOptimisticRead();
+        if(stamp != 0)
+        {
+            int value = field(field);
+            if(lock.validate(stamp)) return value;
+        }
+        stamp = lock.readLock();
+        try
+        {
+            return field(field);
+        }
+        finally
+        {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int field(int field)
+    {
+        switch(field)
+        {
+            case PRODUCT1: return super.getNumberOfProduct1();
+            case PRODUCT2: return super.getNumberOfProduct2();
+            case BALANCE:  return super.getCurrentBalance();
+            case MODE:     return super.getCurrentMode().ordinal();
+            case SUM:      return super.getCurrentSum();
+            case COINS1:   return super.getCoins1();
+            case COINS2:   return super.getCoins2();
+            case PRICE1:   return super.getPrice1();
+            case PRICE2:   return super.getPrice2();
+            default: throw new IllegalArgumentException(Integer.toString(field));
+        }
+    }
+
+    @Override
+    public int getNumberOfProduct1()
+    {
+        return read(PRODUCT1);
+    }
+
+    @Override
+    public int getNumberOfProduct2()
+    {
+        return read(PRODUCT2);
+    }
+
+    @Override
+    public int getCurrentBalance()
+    {
+        return read(BALANCE);
+    }
+
+    @Override
+    public Mode getCurrentMode()
+    {
+        return MODES[read(MODE)];
+    }
+
+    @Override
+    public int getCurrentSum()
+    {
+        return read(SUM);
+    }
+
+    @Override
+    public int getCoins1()
+    {
+        return read(COINS1);
+    }
+
+    @Override
+    public int getCoins2()
+    {
+        return read(COINS2);
+    }
+
+    @Override
+    public int getPrice1()
+    {
+        return read(PRICE1);
+    }
+
+    @Override
+    public int getPrice2()
+    {
+        return read(PRICE2);
+    }
+
+    /**
+     * Reads optimistically like the other getters while the mask is current; recomputing it
+     * after a new price table or configuration takes the write lock.
+     */
+    @Override
+    public long getAvailability()
+    {
+        long stamp = lock.tryOptimisticRead();
+        if(stamp != 0 && isAvailabilityCurrent())
+        {
+            long availability = lastAvailability();
+            if(lock.validate(stamp)) return availability;
+        }
+        stamp = writeLock();
+        try
+        {
+            return super.getAvailability();
+        }
+        finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Response fillProducts()
+    {
+        long stamp = writeLock();
+        try
+        {
+            return super.fillProducts();
+        }
+        finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Response fillProducts(int n1, int n2)
+    {
+        long stamp = writeLock();
+        try
+        {
+            return super.fillProducts(n1, n2);
+        }
+        finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Response fillCoins(int c1, int c2)
+    {
+        long stamp = writeLock();
+        try
+        {
+            return super.fillCoins(c1, c2);
+        }
+        finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Response enterAdminMode(long code)
+    {
+        long stamp = writeLock();
+        try
+        {
+            return super.enterAdminMode(code);
+        }
+        finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void exitAdminMode()
+    {
+        long stamp = writeLock();
+        try
+        {
+            super.exitAdminMode();
+        }
+        finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Response setPrices(int p1, int p2)
+    {
+        long stamp = writeLock();
+        try
+        {
+            return super.setPrices(p1, p2);
+        }
+        finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Response putCoin1()
+    {
+        long stamp = writeLock();
+        try
+        {
+            return super.putCoin1();
+        }
+        finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Response putCoin2()
+    {
+        long stamp = writeLock();
+        try
+        {
+            return super.putCoin2();
+        }
+        finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Response putCoins(int n1, int n2)
+    {
+        long stamp = writeLock();
+        try
+        {
+            return super.putCoins(n1, n2);
+        }
+        finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public long purchase(int product, int number, int n1, int n2)
+    {
+        long stamp = writeLock();
+        try
+        {
+            return super.purchase(product, number, n1, n2);
+        }
+        finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public long refund()
+    {
+        long stamp = writeLock();
+        try
+        {
+            return super.refund();
+        }
+        finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public long sellProduct1(int number)
+    {
+        long stamp = writeLock();
+        try
+        {
+            return super.sellProduct1(number);
+        }
+        finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public long sellProduct2(int number)
+    {
+        long stamp = writeLock();
+        try
+        {
+            return super.sellProduct2(number);
+        }
+        finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    boolean canMakeChange(int amount)
+    {
+        long stamp = writeLock();
+        try
+        {
+            return super.canMakeChange(amount);
+        }
+        finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    void restoreState(MachineState state)
+    {
+        long stamp = writeLock();
+        try
+        {
+            super.restoreState(state);
+        }
+        finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    void restore(MachineState state)
+    {
+        long stamp = writeLock();
+        try
+        {
+            super.restore(state);
+        }
+        finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    Response replay(Operation operation, int arg1, int arg2)
+    {
+        long stamp = writeLock();
+        try
+        {
+            return super.replay(operation, arg1, arg2);
+        }
+        finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+}
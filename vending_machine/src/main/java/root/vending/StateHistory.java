@@ -0,0 +1,210 @@
+package root.vending;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import root.vending.VendingMachine.Mode;
+
+/**
+ * Immutable sequence of machine states numbered by transaction, 0 being the first.
+ *
+ * Appending or rolling back returns a new history and leaves this one as it was, so any
+ * number of versions can be kept at the cost of the few nodes each one changed. States,
+ * including whether their prices came from the configuration, are packed into three longs
+ * and kept in a 32-way trie of leaves holding 32 states each: looking up a transaction
+ * walks one node per level, five levels covering a billion states. The last leaf sits
+ * outside the trie and fills in place while it belongs to the newest version only, so a
+ * typical append allocates nothing but the new history object; a full leaf goes into the
+ * trie by copying the path to it.
+ *
+ * Histories may be read from any thread. Appending to the same version from several
+ * threads is safe but forks it, as with any persistent structure.
+ */
+public final class StateHistory
+{
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final int WORDS = 3;
+
+    private static final Mode[] MODES = Mode.values();
+    private static final long CONFIGURED_PRICES = 1L << 53;
+    // marked full so that every history starts a tail of its own
+    private static final StateHistory EMPTY = new StateHistory(0, BITS, new Object[WIDTH], new long[0], new AtomicInteger(WIDTH));
+
+    private final int size;
+    private final int shift;
+    // internal nodes are Object[WIDTH], leaves long[WIDTH*WORDS]
+    private final Object[] root;
+    private final long[] tail;
+    // states written to tail so far by any version sharing it; only the version that
+    // wrote the last of them may write the next in place
+    private final AtomicInteger tailFilled;
+
+    private StateHistory(int size, int shift, Object[] root, long[] tail, AtomicInteger tailFilled)
+    {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+        this.tailFilled = tailFilled;
+    }
+
+    public static StateHistory empty()
+    {
+        return EMPTY;
+    }
+
+    /** Number of transactions recorded. */
+    public int size()
+    {
+        return size;
+    }
+
+    /** This history followed by {@code state}. */
+    public StateHistory append(MachineState state)
+    {
+        return append(state.getNumberOfProduct1(), state.getNumberOfProduct2(), state.getCoins1(), state.getCoins2(),
+                      state.getBalance(), state.getPrice1(), state.getPrice2(), state.getMode(),
+                      state.hasConfiguredPrices());
+    }
+
+    StateHistory append(int num1, int num2, int coins1, int coins2, int balance, int price1, int price2, Mode mode,
+                        boolean configuredPrices)
+    {
+        if(num1 < 0 || num1 > 0xFFFF || num2 < 0 || num2 > 0xFFFF || coins1 < 0 || coins1 > 0xFFFFF
+           || coins2 < 0 || coins2 > 0xFFFFF || balance < 0)
+            throw new IllegalArgumentException("state out of range: "
+                    + new MachineState(num1, num2, coins1, coins2, balance, price1, price2, mode, configuredPrices));
+        if(size == Integer.MAX_VALUE) throw new IllegalStateException("history full");
+
+        long word0 = num1 | (long)num2 << 16 | (long)coins1 << 32 | (long)mode.ordinal() << 52
+                     | (configuredPrices ? CONFIGURED_PRICES : 0);
+        long word1 = coins2 | (long)balance << 20;
+        long word2 = (price1 & 0xFFFFFFFFL) | (long)price2 << 32;
+
+        int inTail = size - tailOffset();
+        if(inTail < WIDTH)
+        {
+            long[] leaf = tail;
+            AtomicInteger filled = tailFilled;
+            if(!filled.compareAndSet(inTail, inTail + 1))
+            {
+                leaf = Arrays.copyOf(tail, WIDTH*WORDS);
+                filled = new AtomicInteger(inTail + 1);
+            }
+            write(leaf, inTail, word0, word1, word2);
+            return new StateHistory(size + 1, shift, root, leaf, filled);
+        }
+
+        long[] leaf = new long[WIDTH*WORDS];
+        write(leaf, 0, word0, word1, word2);
+        Object[] newRoot;
+        int newShift = shift;
+        if((size >>> BITS) > (1 << shift))
+        {
+            newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = newPath(shift, tail);
+            newShift += BITS;
+        }
+        else
+        {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new StateHistory(size + 1, newShift, newRoot, leaf, new AtomicInteger(1));
+    }
+
+    private static void write(long[] leaf, int i, long word0, long word1, long word2)
+    {
+        leaf[i*WORDS] = word0;
+        leaf[i*WORDS + 1] = word1;
+        leaf[i*WORDS + 2] = word2;
+    }
+
+    private Object[] pushTail(int level, Object[] parent, long[] leaf)
+    {
+        int i = ((size - 1) >>> level) & MASK;
+        Object[] copy = parent.clone();
+        if(level == BITS)
+            copy[i] = leaf;
+        else
+            copy[i] = parent[i] == null ? newPath(level - BITS, leaf) : pushTail(level - BITS, (Object[])parent[i], leaf);
+        return copy;
+    }
+
+    private static Object newPath(int level, long[] leaf)
+    {
+        if(level == 0) return leaf;
+        Object[] node = new Object[WIDTH];
+        node[0] = newPath(level - BITS, leaf);
+        return node;
+    }
+
+    // first transaction kept in the tail rather than the trie
+    private int tailOffset()
+    {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    private long[] leafFor(int transaction)
+    {
+        if(transaction >= tailOffset()) return tail;
+        Object node = root;
+        for(int level = shift; level > 0; level -= BITS) node = ((Object[])node)[(transaction >>> level) & MASK];
+        return (long[])node;
+    }
+
+    /** State after {@code transaction}. */
+    public MachineState get(int transaction)
+    {
+        if(transaction < 0 || transaction >= size)
+            throw new IndexOutOfBoundsException("transaction " + transaction + " of " + size);
+        long[] leaf = leafFor(transaction);
+        int at = (transaction & MASK)*WORDS;
+        long word0 = leaf[at];
+        long word1 = leaf[at + 1];
+        long word2 = leaf[at + 2];
+        return new MachineState((int)word0 & 0xFFFF, (int)(word0 >>> 16) & 0xFFFF,
+                                (int)(word0 >>> 32) & 0xFFFFF, (int)word1 & 0xFFFFF,
+                                (int)(word1 >>> 20),
+                                (int)word2, (int)(word2 >>> 32),
+                                MODES[(int)(word0 >>> 52) & 1], (word0 & CONFIGURED_PRICES) != 0);
+    }
+
+    /** The history up to and including {@code transaction}, sharing everything it can with this one. */
+    public StateHistory rollback(int transaction)
+    {
+        if(transaction < 0 || transaction >= size)
+            throw new IndexOutOfBoundsException("transaction " + transaction + " of " + size);
+        int newSize = transaction + 1;
+        if(newSize == size) return this;
+        // the tail keeps its fill count, so appending to the shorter history copies it
+        if(transaction >= tailOffset()) return new StateHistory(newSize, shift, root, tail, tailFilled);
+
+        long[] leaf = leafFor(transaction);
+        int inTrie = (transaction >>> BITS) << BITS;
+        if(inTrie == 0) return new StateHistory(newSize, BITS, new Object[WIDTH], leaf, new AtomicInteger(WIDTH));
+
+        Object[] newRoot = (Object[])truncate(root, shift, inTrie);
+        int newShift = shift;
+        while(newShift > BITS && inTrie <= (1 << newShift))
+        {
+            newRoot = (Object[])newRoot[0];
+            newShift -= BITS;
+        }
+        return new StateHistory(newSize, newShift, newRoot, leaf, new AtomicInteger(WIDTH));
+    }
+
+    // node holding the first count states of node, count being a positive multiple of WIDTH
+    private static Object truncate(Object node, int level, int count)
+    {
+        if(level == 0) return node;
+        Object[] children = (Object[])node;
+        int last = ((count - 1) >>> level) & MASK;
+        Object[] copy = new Object[WIDTH];
+        System.arraycopy(children, 0, copy, 0, last);
+        copy[last] = truncate(children[last], level - BITS, count - (last << level));
+        return copy;
+    }
+}
@@ -0,0 +1,67 @@
+package root.vending;
+
+/**
+ * Keeps the {@link StateHistory} of one machine for disputes: its state when attached is
+ * transaction 0, and every operation after it, successful or not, records the state it
+ * left as the next transaction.
+ *
+ * Recording runs in the machine's listener chain, so it costs a few stores per
+ * operation rather than a copy of the machine. {@link #history()} may be called from any
+ * thread and returns a version that stays as it is while the machine moves on.
+ */
+public final class StateRecorder
+{
+    private final VendingMachine machine;
+    private volatile StateHistory history;
+
+    private StateRecorder(VendingMachine machine, StateHistory history)
+    {
+        this.machine = machine;
+        this.history = history;
+    }
+
+    /** Starts recording {@code machine}, next to any listener it already has. */
+    public static StateRecorder attach(VendingMachine machine)
+    {
+        synchronized(machine)
+        {
+            StateRecorder recorder = new StateRecorder(machine, StateHistory.empty().append(machine.captureState()));
+            MachineListener listener = (m, operation, arg1, arg2, receipt) -> recorder.history = m.appendState(recorder.history);
+            MachineListener current = machine.getListener();
+            machine.setListener(current == null ? listener : MachineListener.both(current, listener));
+            return recorder;
+        }
+    }
+
+    public VendingMachine getMachine()
+    {
+        return machine;
+    }
+
+    /** Every transaction recorded so far. */
+    public StateHistory history()
+    {
+        return history;
+    }
+
+    /**
+     * Puts the machine back into its state after {@code transaction}, telling its listeners
+     * through {@link MachineListener#onRestore} so that a journal records the restored state,
+     * and drops the transactions after it from the history; earlier versions returned by
+     * {@link #history()} keep them. Runs holding the machine's monitor.
+     *
+     * @return the state restored
+     * @throws IndexOutOfBoundsException if no such transaction was recorded
+     */
+    public MachineState rollback(int transaction)
+    {
+        synchronized(machine)
+        {
+            StateHistory shorter = history.rollback(transaction);
+            MachineState state = shorter.get(transaction);
+            machine.restore(state);
+            history = shorter;
+            return state;
+        }
+    }
+}
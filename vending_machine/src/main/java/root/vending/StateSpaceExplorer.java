@@ -0,0 +1,504 @@
+package root.vending;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import root.vending.VendingMachine.Mode;
+import root.vending.VendingMachine.Response;
+
+/**
+ * Model checker that drives a real {@link VendingMachine} through every reachable state.
+ *
+ * A state is numbered densely by its stock, coins, balance, mode and prices, so the
+ * visited set is one bit per possible state, set with an atomic OR. Searching is a
+ * depth-first walk split across a fork-join pool: a worker whose stack grows while others
+ * are idle hands half of it to a new task.
+ *
+ * Every transition is checked against the requirements the machine was written to (see
+ * {@code errors.txt}): the response and successor must match a reference model, counts
+ * stay within bounds, the balance is covered by the coins held and is zero in admin mode,
+ * failed operations change nothing, and money is conserved: coins held minus balance
+ * only grows by what the customer paid for goods. Customer operations are tried with every
+ * argument in and just outside their range; admin operations likewise in admin mode, and
+ * with one argument while they are refused in operation mode. Prices range over the
+ * model's price set. Coins are worth 1 and 2.
+ */
+public final class StateSpaceExplorer
+{
+    static final long CODE = 117345294655382L;
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int SPLIT = 256;
+    private static final int MAX_REPORTED = 100;
+
+    /** Capacities and prices of the explored machine. */
+    public static final class Model
+    {
+        private final int max1, max2, maxc1, maxc2;
+        private final int[] prices;
+        private final int maxBalance;
+
+        /**
+         * @param prices every price {@code setPrices} may set; must include the factory
+         *               prices 8 and 5
+         */
+        public Model(int max1, int max2, int maxc1, int maxc2, int... prices)
+        {
+            if(max1 <= 0 || max2 <= 0 || maxc1 <= 0 || maxc2 <= 0)
+                throw new IllegalArgumentException("capacities must be positive");
+            this.max1 = max1;
+            this.max2 = max2;
+            this.maxc1 = maxc1;
+            this.maxc2 = maxc2;
+            this.prices = Arrays.stream(prices).distinct().sorted().toArray();
+            if(Arrays.binarySearch(this.prices, 8) < 0 || Arrays.binarySearch(this.prices, 5) < 0)
+                throw new IllegalArgumentException("prices must include 8 and 5");
+            if(this.prices[0] <= 0) throw new IllegalArgumentException("prices must be positive");
+            this.maxBalance = maxc1 + 2*maxc2;
+        }
+
+        /** The production machine: 30 and 40 units, 50 coins of each type, prices 5 and 8. */
+        public static Model full()
+        {
+            return new Model(30, 40, 50, 50, 5, 8);
+        }
+
+        /** Number of encodable states, and bits in the visited set. */
+        public long size()
+        {
+            return (long)(max1 + 1)*(max2 + 1)*(maxc1 + 1)*(maxc2 + 1)*(maxBalance + 1)*2*prices.length*prices.length;
+        }
+
+        long encode(MachineState s)
+        {
+            int p1 = Arrays.binarySearch(prices, s.getPrice1());
+            int p2 = Arrays.binarySearch(prices, s.getPrice2());
+            if(p1 < 0 || p2 < 0) return -1;
+            if(!within(s.getNumberOfProduct1(), max1) || !within(s.getNumberOfProduct2(), max2)) return -1;
+            if(!within(s.getCoins1(), maxc1) || !within(s.getCoins2(), maxc2)) return -1;
+            if(!within(s.getBalance(), maxBalance)) return -1;
+
+            long index = p1;
+            index = index*prices.length + p2;
+            index = index*2 + s.getMode().ordinal();
+            index = index*(maxBalance + 1) + s.getBalance();
+            index = index*(maxc2 + 1) + s.getCoins2();
+            index = index*(maxc1 + 1) + s.getCoins1();
+            index = index*(max2 + 1) + s.getNumberOfProduct2();
+            index = index*(max1 + 1) + s.getNumberOfProduct1();
+            return index;
+        }
+
+        MachineState decode(long index)
+        {
+            int num1 = (int)(index % (max1 + 1)); index /= max1 + 1;
+            int num2 = (int)(index % (max2 + 1)); index /= max2 + 1;
+            int coins1 = (int)(index % (maxc1 + 1)); index /= maxc1 + 1;
+            int coins2 = (int)(index % (maxc2 + 1)); index /= maxc2 + 1;
+            int balance = (int)(index % (maxBalance + 1)); index /= maxBalance + 1;
+            Mode mode = Mode.values()[(int)(index % 2)]; index /= 2;
+            int p2 = (int)(index % prices.length); index /= prices.length;
+            int p1 = (int)index;
+            return new MachineState(num1, num2, coins1, coins2, balance, prices[p1], prices[p2], mode);
+        }
+
+        private static boolean within(int value, int max)
+        {
+            return value >= 0 && value <= max;
+        }
+    }
+
+    /** What a search found. */
+    public static final class Result
+    {
+        private final long states;
+        private final long transitions;
+        private final long violationCount;
+        private final List<String> violations;
+        private final long elapsedNanos;
+
+        Result(long states, long transitions, long violationCount, List<String> violations, long elapsedNanos)
+        {
+            this.states = states;
+            this.transitions = transitions;
+            this.violationCount = violationCount;
+            this.violations = Collections.unmodifiableList(violations);
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getStates()
+        {
+            return states;
+        }
+
+        public long getTransitions()
+        {
+            return transitions;
+        }
+
+        public long getViolationCount()
+        {
+            return violationCount;
+        }
+
+        /** Descriptions of the first violations found. */
+        public List<String> getViolations()
+        {
+            return violations;
+        }
+
+        public long getElapsedNanos()
+        {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%,d states, %,d transitions, %d violations in %.1f s",
+                    states, transitions, violationCount, elapsedNanos/1e9);
+        }
+    }
+
+    private final Model model;
+    private final Supplier<VendingMachine> machines;
+
+    private long[] visited;
+    private final LongAdder states = new LongAdder();
+    private final LongAdder transitions = new LongAdder();
+    private final AtomicLong violationCount = new AtomicLong();
+    private final ConcurrentLinkedQueue<String> violations = new ConcurrentLinkedQueue<>();
+
+    public StateSpaceExplorer(Model model)
+    {
+        this(model, () -> new VendingMachine(ChangeEngine.forCoins(new int[] {1, 2}, new int[] {model.maxc1, model.maxc2}),
+                model.max1, model.max2, model.maxc1, model.maxc2));
+    }
+
+    /** Explores machines made by {@code machines}, e.g. deliberately broken ones. */
+    StateSpaceExplorer(Model model, Supplier<VendingMachine> machines)
+    {
+        this.model = model;
+        this.machines = machines;
+    }
+
+    public Result explore()
+    {
+        return explore(Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Visits every state reachable from a new machine, using {@code parallelism} threads. */
+    public synchronized Result explore(int parallelism)
+    {
+        long size = model.size();
+        if(size > 64L*Integer.MAX_VALUE) throw new IllegalArgumentException("model too large: " + size + " states");
+        visited = new long[(int)((size + 63) >>> 6)];
+        states.reset();
+        transitions.reset();
+        violationCount.set(0);
+        violations.clear();
+
+        long start = System.nanoTime();
+        long initial = model.encode(machines.get().captureState());
+        if(initial < 0) throw new IllegalArgumentException("new machine lies outside the model");
+        mark(initial);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try
+        {
+            pool.invoke(new Search(new long[] {initial}, 1));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        visited = null;
+        return new Result(states.sum(), transitions.sum(), violationCount.get(), new ArrayList<>(violations),
+                System.nanoTime() - start);
+    }
+
+    private boolean mark(long index)
+    {
+        int word = (int)(index >>> 6);
+        long bit = 1L << index;
+        if((visited[word] & bit) != 0) return false;
+        if(((long)WORDS.getAndBitwiseOr(visited, word, bit) & bit) != 0) return false;
+        states.increment();
+        return true;
+    }
+
+    private void violation(MachineState before, Operation operation, int arg1, int arg2, Response response,
+                           MachineState after, String what)
+    {
+        if(violationCount.incrementAndGet() > MAX_REPORTED) return;
+        violations.add(what + ": " + before + " " + operation + "(" + arg1 + ", " + arg2 + ") -> " + response + " " + after);
+    }
+
+    private final class Search extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private long[] stack;
+        private int size;
+        private long steps;
+
+        Search(long[] stack, int size)
+        {
+            this.stack = stack;
+            this.size = size;
+        }
+
+        @Override
+        protected void compute()
+        {
+            VendingMachine machine = machines.get();
+            List<Search> forked = new ArrayList<>();
+            while(size > 0)
+            {
+                expand(machine, model.decode(stack[--size]));
+                if(size >= SPLIT && getSurplusQueuedTaskCount() <= 0)
+                {
+                    int half = size/2;
+                    Search child = new Search(Arrays.copyOfRange(stack, 0, half), half);
+                    System.arraycopy(stack, half, stack, 0, size - half);
+                    size -= half;
+                    child.fork();
+                    forked.add(child);
+                }
+            }
+            transitions.add(steps);
+            for(Search child : forked) child.join();
+        }
+
+        private void push(long index)
+        {
+            if(size == stack.length) stack = Arrays.copyOf(stack, Math.max(16, size*2));
+            stack[size++] = index;
+        }
+
+        private void expand(VendingMachine machine, MachineState s)
+        {
+            boolean admin = s.getMode() == Mode.ADMINISTERING;
+
+            step(machine, s, Operation.PUT_COIN1, 0, 0);
+            step(machine, s, Operation.PUT_COIN2, 0, 0);
+            step(machine, s, Operation.PUT_COINS, 1, 1);
+            if(!admin)
+            {
+                step(machine, s, Operation.PUT_COINS, 0, 0);
+                step(machine, s, Operation.PUT_COINS, -1, 1);
+                step(machine, s, Operation.PUT_COINS, 2, 1);
+                step(machine, s, Operation.PUT_COINS, model.maxc1 - s.getCoins1(), model.maxc2 - s.getCoins2() + 1);
+            }
+            step(machine, s, Operation.RETURN_MONEY, 0, 0);
+            for(int n = 0; n <= (admin ? 1 : model.max1 + 1); n++) step(machine, s, Operation.GIVE_PRODUCT1, n, 0);
+            for(int n = 0; n <= (admin ? 1 : model.max2 + 1); n++) step(machine, s, Operation.GIVE_PRODUCT2, n, 0);
+
+            step(machine, s, Operation.ENTER_ADMIN_MODE, 1, 0);
+            step(machine, s, Operation.ENTER_ADMIN_MODE, 0, 0);
+            step(machine, s, Operation.EXIT_ADMIN_MODE, 0, 0);
+            step(machine, s, Operation.FILL_PRODUCTS, 0, 0);
+            if(!admin)
+            {
+                step(machine, s, Operation.FILL_PRODUCTS_TO, 1, 1);
+                step(machine, s, Operation.FILL_COINS, 1, 1);
+                step(machine, s, Operation.SET_PRICES, 8, 5);
+                return;
+            }
+            for(int n1 = -1; n1 <= model.max1 + 1; n1++)
+                for(int n2 = -1; n2 <= model.max2 + 1; n2++)
+                    step(machine, s, Operation.FILL_PRODUCTS_TO, n1, n2);
+            for(int c1 = 0; c1 <= model.maxc1 + 1; c1++)
+                for(int c2 = 0; c2 <= model.maxc2 + 1; c2++)
+                    step(machine, s, Operation.FILL_COINS, c1, c2);
+            for(int i = -1; i < model.prices.length; i++)
+                for(int j = -1; j < model.prices.length; j++)
+                    step(machine, s, Operation.SET_PRICES, i < 0 ? 0 : model.prices[i], j < 0 ? 0 : model.prices[j]);
+        }
+
+        private void step(VendingMachine machine, MachineState before, Operation operation, int arg1, int arg2)
+        {
+            machine.restoreState(before);
+            Response response;
+            switch(operation)
+            {
+                case PUT_COIN1:        response = machine.putCoin1(); break;
+                case PUT_COIN2:        response = machine.putCoin2(); break;
+                case PUT_COINS:        response = machine.putCoins(arg1, arg2); break;
+                case GIVE_PRODUCT1:    response = machine.giveProduct1(arg1); break;
+                case GIVE_PRODUCT2:    response = machine.giveProduct2(arg1); break;
+                case RETURN_MONEY:     response = machine.returnMoney(); break;
+                case FILL_PRODUCTS:    response = machine.fillProducts(); break;
+                case FILL_PRODUCTS_TO: response = machine.fillProducts(arg1, arg2); break;
+                case FILL_COINS:       response = machine.fillCoins(arg1, arg2); break;
+                case SET_PRICES:       response = machine.setPrices(arg1, arg2); break;
+                case ENTER_ADMIN_MODE: response = machine.enterAdminMode(arg1 == 1 ? CODE : CODE + 1); break;
+                case EXIT_ADMIN_MODE:  machine.exitAdminMode(); response = Response.OK; break;
+                default: throw new IllegalStateException(operation.toString());
+            }
+            MachineState after = machine.captureState();
+            steps++;
+
+            if(check(before, operation, arg1, arg2, response, after))
+            {
+                long index = model.encode(after);
+                if(index >= 0 && mark(index)) push(index);
+            }
+        }
+    }
+
+    /** Checks one transition; false if the successor is not worth exploring. */
+    private boolean check(MachineState before, Operation operation, int arg1, int arg2, Response response, MachineState after)
+    {
+        boolean ok = true;
+        if(model.encode(after) < 0)
+        {
+            violation(before, operation, arg1, arg2, response, after, "count out of bounds");
+            ok = false;
+        }
+        if(after.getBalance() > after.getCoins1() + 2*after.getCoins2())
+        {
+            violation(before, operation, arg1, arg2, response, after, "balance not covered by coins");
+            ok = false;
+        }
+        if(after.getMode() == Mode.ADMINISTERING && after.getBalance() != 0)
+        {
+            violation(before, operation, arg1, arg2, response, after, "balance in admin mode");
+            ok = false;
+        }
+        if(response != Response.OK && !after.equals(before))
+        {
+            violation(before, operation, arg1, arg2, response, after, "failed operation changed state");
+            ok = false;
+        }
+
+        if(response == Response.OK && after.getMode() == Mode.OPERATION && before.getMode() == Mode.OPERATION)
+        {
+            long paid = 0;
+            if(operation == Operation.GIVE_PRODUCT1) paid = (long)arg1*before.getPrice1();
+            if(operation == Operation.GIVE_PRODUCT2) paid = (long)arg1*before.getPrice2();
+            if(net(after) != net(before) + paid)
+            {
+                violation(before, operation, arg1, arg2, response, after, "money not conserved");
+                ok = false;
+            }
+        }
+
+        Response expectedResponse = expectedResponse(before, operation, arg1, arg2);
+        MachineState expected = expectedResponse == Response.OK ? expectedState(before, operation, arg1, arg2) : before;
+        if(response != expectedResponse || !after.equals(expected))
+        {
+            violation(before, operation, arg1, arg2, response, after,
+                    "expected " + expectedResponse + " " + expected);
+            ok = false;
+        }
+        return ok;
+    }
+
+    /** Coins held minus what belongs to the customer. */
+    private static long net(MachineState s)
+    {
+        return s.getCoins1() + 2L*s.getCoins2() - s.getBalance();
+    }
+
+    private Response expectedResponse(MachineState s, Operation operation, int arg1, int arg2)
+    {
+        boolean admin = s.getMode() == Mode.ADMINISTERING;
+        switch(operation)
+        {
+            case PUT_COIN1:
+                if(admin) return Response.ILLEGAL_OPERATION;
+                return s.getCoins1() == model.maxc1 ? Response.CANNOT_PERFORM : Response.OK;
+            case PUT_COIN2:
+                if(admin) return Response.ILLEGAL_OPERATION;
+                return s.getCoins2() == model.maxc2 ? Response.CANNOT_PERFORM : Response.OK;
+            case PUT_COINS:
+                if(admin) return Response.ILLEGAL_OPERATION;
+                if(arg1 < 0 || arg2 < 0) return Response.INVALID_PARAM;
+                return s.getCoins1() + arg1 > model.maxc1 || s.getCoins2() + arg2 > model.maxc2 ? Response.CANNOT_PERFORM : Response.OK;
+            case GIVE_PRODUCT1:
+            case GIVE_PRODUCT2:
+            {
+                if(admin) return Response.ILLEGAL_OPERATION;
+                boolean first = operation == Operation.GIVE_PRODUCT1;
+                int max = first ? model.max1 : model.max2;
+                if(arg1 <= 0 || arg1 > max) return Response.INVALID_PARAM;
+                if(arg1 > (first ? s.getNumberOfProduct1() : s.getNumberOfProduct2())) return Response.INSUFFICIENT_PRODUCT;
+                int change = s.getBalance() - arg1*(first ? s.getPrice1() : s.getPrice2());
+                if(change < 0) return Response.INSUFFICIENT_MONEY;
+                return change(s, change);
+            }
+            case RETURN_MONEY:
+                if(admin) return Response.ILLEGAL_OPERATION;
+                return s.getBalance() == 0 ? Response.OK : change(s, s.getBalance());
+            case FILL_PRODUCTS:
+                return admin ? Response.OK : Response.ILLEGAL_OPERATION;
+            case FILL_PRODUCTS_TO:
+                if(!admin) return Response.ILLEGAL_OPERATION;
+                return arg1 < 0 || arg1 > model.max1 || arg2 < 0 || arg2 > model.max2 ? Response.INVALID_PARAM : Response.OK;
+            case FILL_COINS:
+                if(!admin) return Response.ILLEGAL_OPERATION;
+                return arg1 <= 0 || arg1 > model.maxc1 || arg2 <= 0 || arg2 > model.maxc2 ? Response.INVALID_PARAM : Response.OK;
+            case SET_PRICES:
+                if(!admin) return Response.ILLEGAL_OPERATION;
+                return arg1 <= 0 || arg2 <= 0 ? Response.INVALID_PARAM : Response.OK;
+            case ENTER_ADMIN_MODE:
+                if(arg1 != 1) return Response.INVALID_PARAM;
+                return s.getBalance() != 0 ? Response.CANNOT_PERFORM : Response.OK;
+            default:
+                return Response.OK;
+        }
+    }
+
+    /** Change is paid in coins of 2 as far as possible, then coins of 1. */
+    private static Response change(MachineState s, int amount)
+    {
+        if(amount > s.getCoins1() + 2*s.getCoins2()) return Response.TOO_BIG_CHANGE;
+        int twos = Math.min(s.getCoins2(), amount/2);
+        return amount - 2*twos > s.getCoins1() ? Response.UNSUITABLE_CHANGE : Response.OK;
+    }
+
+    private MachineState expectedState(MachineState s, Operation operation, int arg1, int arg2)
+    {
+        int num1 = s.getNumberOfProduct1(), num2 = s.getNumberOfProduct2();
+        int coins1 = s.getCoins1(), coins2 = s.getCoins2(), balance = s.getBalance();
+        int price1 = s.getPrice1(), price2 = s.getPrice2();
+        Mode mode = s.getMode();
+
+        int payout = -1;
+        switch(operation)
+        {
+            case PUT_COIN1:        coins1++; balance += 1; break;
+            case PUT_COIN2:        coins2++; balance += 2; break;
+            case PUT_COINS:        coins1 += arg1; coins2 += arg2; balance += arg1 + 2*arg2; break;
+            case GIVE_PRODUCT1:    num1 -= arg1; payout = balance - arg1*price1; break;
+            case GIVE_PRODUCT2:    num2 -= arg1; payout = balance - arg1*price2; break;
+            case RETURN_MONEY:     payout = balance; break;
+            case FILL_PRODUCTS:    num1 = model.max1; num2 = model.max2; break;
+            case FILL_PRODUCTS_TO: num1 = arg1; num2 = arg2; break;
+            case FILL_COINS:       coins1 = arg1; coins2 = arg2; break;
+            case SET_PRICES:       price1 = arg1; price2 = arg2; break;
+            case ENTER_ADMIN_MODE: mode = Mode.ADMINISTERING; break;
+            case EXIT_ADMIN_MODE:  mode = Mode.OPERATION; break;
+            default: throw new IllegalStateException(operation.toString());
+        }
+        if(payout >= 0)
+        {
+            int twos = Math.min(coins2, payout/2);
+            coins2 -= twos;
+            coins1 -= payout - 2*twos;
+            balance = 0;
+        }
+        return new MachineState(num1, num2, coins1, coins2, balance, price1, price2, mode);
+    }
+}
@@ -0,0 +1,143 @@
+package root.vending;
+
+import java.util.Arrays;
+
+import root.vending.VendingMachine.Response;
+
+/**
+ * Exact change for arbitrary coin sets.
+ *
+ * For the coins currently held, {@code table[j]} is a bitset of the amounts that can be
+ * paid with the {@code j}-th largest coin type and all smaller ones. Amount {@code a} is
+ * payable iff bit {@code a} of {@code table[0]} is set, and the payout is read back one
+ * coin type at a time. Tables are memoized per coin count vector in a small direct-mapped
+ * cache, so repeated states cost a lookup instead of a rebuild. Not thread-safe.
+ */
+final class TableChangeEngine implements ChangeEngine
+{
+    private static final int CACHE_SIZE = 64;
+
+    private final int[] values;
+    private final int[] order;
+    private final int words;
+
+    // bit offset of each coin count in the cache key, or null if the counts do not fit a long
+    private final int[] keyShift;
+
+    private final long[] keys = new long[CACHE_SIZE];
+    private final long[][][] tables = new long[CACHE_SIZE][][];
+    private final long[][] scratch;
+
+    TableChangeEngine(int[] values, int[] capacities)
+    {
+        this.values = values.clone();
+        this.order = GreedyChangeEngine.descending(values);
+
+        long max = 0;
+        for(int i = 0; i < values.length; i++) max += (long)values[i]*capacities[i];
+        if(max >= Integer.MAX_VALUE) throw new IllegalArgumentException("coin capacity too large");
+        this.words = (int)(max >>> 6) + 1;
+
+        int[] shift = new int[values.length];
+        int bits = 0;
+        for(int i = 0; i < values.length; i++)
+        {
+            shift[i] = bits;
+            bits += 32 - Integer.numberOfLeadingZeros(capacities[i]);
+        }
+        this.keyShift = bits < 64 ? shift : null;
+
+        Arrays.fill(keys, -1);
+        this.scratch = new long[values.length + 1][words];
+    }
+
+    @Override
+    public Response makeChange(int amount, int[] coins, int[] out)
+    {
+        long total = 0;
+        for(int i = 0; i < values.length; i++) total += (long)coins[i]*values[i];
+        if(amount > total) return Response.TOO_BIG_CHANGE;
+
+        long[][] table = tableFor(coins);
+        if(!contains(table[0], amount)) return Response.UNSUITABLE_CHANGE;
+
+        int rest = amount;
+        for(int j = 0; j < order.length; j++)
+        {
+            int i = order[j];
+            int n = Math.min(coins[i], rest/values[i]);
+            while(!contains(table[j + 1], rest - n*values[i])) n--;
+            out[i] = n;
+            rest -= n*values[i];
+        }
+        return Response.OK;
+    }
+
+    @Override
+    public int[] denominations()
+    {
+        return values.clone();
+    }
+
+    private long[][] tableFor(int[] coins)
+    {
+        if(keyShift == null)
+        {
+            build(coins, scratch);
+            return scratch;
+        }
+
+        long key = 0;
+        for(int i = 0; i < coins.length; i++) key |= (long)coins[i] << keyShift[i];
+
+        int slot = (int)((key * 0x9E3779B97F4A7C15L) >>> 58);
+        if(keys[slot] != key)
+        {
+            if(tables[slot] == null) tables[slot] = new long[values.length + 1][words];
+            build(coins, tables[slot]);
+            keys[slot] = key;
+        }
+        return tables[slot];
+    }
+
+    private void build(int[] coins, long[][] table)
+    {
+        long[] last = table[order.length];
+        Arrays.fill(last, 0);
+        last[0] = 1;
+
+        for(int j = order.length - 1; j >= 0; j--)
+        {
+            long[] t = table[j];
+            System.arraycopy(table[j + 1], 0, t, 0, words);
+
+            // binary splitting: parts 1, 2, 4, ... cover every count from 0 to coins[i]
+            int i = order[j];
+            int left = coins[i];
+            for(int part = 1; left > 0; part <<= 1)
+            {
+                int take = Math.min(part, left);
+                orShifted(t, take*values[i]);
+                left -= take;
+            }
+        }
+    }
+
+    private static void orShifted(long[] t, int shift)
+    {
+        int wordShift = shift >>> 6;
+        int bitShift = shift & 63;
+        for(int w = t.length - 1; w >= wordShift; w--)
+        {
+            int src = w - wordShift;
+            long v = t[src] << bitShift;
+            if(bitShift != 0 && src > 0) v |= t[src - 1] >>> (64 - bitShift);
+            t[w] |= v;
+        }
+    }
+
+    private static boolean contains(long[] t, int amount)
+    {
+        return (t[amount >>> 6] & (1L << amount)) != 0;
+    }
+}
@@ -0,0 +1,311 @@
+package root.vending;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import root.vending.VendingMachine.Response;
+
+/**
+ * Streams a trace written by {@link TraceWriter} through real machines.
+ *
+ * The file is mapped a window at a time, so traces larger than memory replay in constant
+ * heap. Every event goes through the public API of its machine, listeners and metrics
+ * included, and sales are valued at the unit price they were charged.
+ * {@link #replayParallel} splits the machines into one contiguous range per worker. The
+ * calling thread scans the trace once and hands each worker batches of the events of its
+ * range, so each machine still sees its events in trace order, machines need no locking
+ * and a worker counts only the machines of its range.
+ */
+public final class TraceReplayer
+{
+    private static final long WINDOW = (64L << 20)/TraceWriter.RECORD_SIZE*TraceWriter.RECORD_SIZE;
+    private static final int OPERATIONS = Operation.values().length;
+
+    // events per batch handed to a worker, and batches per worker
+    private static final int BATCH = 4096;
+    private static final int BATCHES = 4;
+
+    /** Receives the events of a trace in order. */
+    private interface EventSink
+    {
+        void accept(int machine, int operation, int arg1, int arg2) throws IOException;
+    }
+
+    /** Events bound for one worker: machine, operation, arg1 and arg2 of each. */
+    private static final class Batch
+    {
+        final int[] events;
+        int size;
+
+        Batch(int capacity)
+        {
+            events = new int[capacity*4];
+        }
+    }
+
+    // handed to a worker to make it stop
+    private static final Batch STOP = new Batch(0);
+
+    /** Applies the events of machines {@code first} to {@code first + count - 1}, batch by batch. */
+    private static final class Worker
+    {
+        final int first;
+        final int count;
+        final BlockingQueue<Batch> full = new ArrayBlockingQueue<>(BATCHES + 1);
+        final BlockingQueue<Batch> free = new ArrayBlockingQueue<>(BATCHES);
+        Batch filling;
+        Future<ReplayStats> result;
+
+        Worker(int first, int count)
+        {
+            this.first = first;
+            this.count = count;
+            for(int i = 0; i < BATCHES; i++) free.add(new Batch(BATCH));
+        }
+
+        ReplayStats run(IntFunction<VendingMachine> machines) throws InterruptedException
+        {
+            ReplayStats stats = new ReplayStats(first, count);
+            while(true)
+            {
+                Batch b = full.take();
+                if(b == STOP) return stats;
+                int[] e = b.events;
+                for(int i = 0; i < b.size*4; i += 4)
+                    apply(machines.apply(e[i]), e[i], Operation.of(e[i + 1]), e[i + 2], e[i + 3], stats);
+                b.size = 0;
+                free.add(b);
+            }
+        }
+    }
+
+    private final Path file;
+    private final long records;
+
+    private TraceReplayer(Path file, long records)
+    {
+        this.file = file;
+        this.records = records;
+    }
+
+    public static TraceReplayer open(Path file) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(channel.size(), TraceWriter.HEADER_SIZE));
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if(header.limit() < TraceWriter.HEADER_SIZE || header.getInt(0) != TraceWriter.MAGIC)
+                throw new IOException(file + ": not a machine trace");
+            if(header.getShort(4) != TraceWriter.VERSION)
+                throw new IOException(file + ": unsupported trace version " + header.getShort(4));
+            if(header.getShort(6) != TraceWriter.RECORD_SIZE)
+                throw new IOException(file + ": unexpected record size " + header.getShort(6));
+
+            long body = channel.size() - TraceWriter.HEADER_SIZE;
+            if(body % TraceWriter.RECORD_SIZE != 0)
+                throw new IOException(file + ": truncated record at the end");
+            return new TraceReplayer(file, body/TraceWriter.RECORD_SIZE);
+        }
+    }
+
+    public long size()
+    {
+        return records;
+    }
+
+    public ReplayStats replay(VendingMachine[] machines) throws IOException
+    {
+        return replay(i -> machines[i], machines.length);
+    }
+
+    public ReplayStats replay(LazyFleet fleet) throws IOException
+    {
+        return replay(fleet::get, fleet.size());
+    }
+
+    public ReplayStats replayParallel(VendingMachine[] machines, int workers) throws IOException
+    {
+        return replayParallel(i -> machines[i], machines.length, workers);
+    }
+
+    public ReplayStats replayParallel(LazyFleet fleet, int workers) throws IOException
+    {
+        return replayParallel(fleet::get, fleet.size(), workers);
+    }
+
+    private ReplayStats replay(IntFunction<VendingMachine> machines, int count) throws IOException
+    {
+        long start = System.nanoTime();
+        ReplayStats stats = new ReplayStats(count);
+        scan(count, (machine, operation, arg1, arg2) ->
+                apply(machines.apply(machine), machine, Operation.of(operation), arg1, arg2, stats));
+        stats.setElapsedNanos(System.nanoTime() - start);
+        return stats;
+    }
+
+    private ReplayStats replayParallel(IntFunction<VendingMachine> machines, int count, int workers) throws IOException
+    {
+        if(workers <= 0) throw new IllegalArgumentException("workers: " + workers);
+
+        long start = System.nanoTime();
+        // machine m belongs to worker m*workers/count, so worker w starts at ceil(w*count/workers)
+        Worker[] parts = new Worker[workers];
+        for(int w = 0; w < workers; w++)
+        {
+            int first = (int)(((long)w*count + workers - 1)/workers);
+            int end = (int)(((long)(w + 1)*count + workers - 1)/workers);
+            parts[w] = new Worker(first, end - first);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try
+        {
+            for(Worker part : parts) part.result = pool.submit(() -> part.run(machines));
+
+            scan(count, (machine, operation, arg1, arg2) ->
+            {
+                Worker part = parts[(int)((long)machine*workers/count)];
+                Batch b = part.filling;
+                if(b == null) b = part.filling = takeFree(part);
+                int at = b.size++*4;
+                b.events[at] = machine;
+                b.events[at + 1] = operation;
+                b.events[at + 2] = arg1;
+                b.events[at + 3] = arg2;
+                if(b.size == BATCH)
+                {
+                    part.full.add(b);
+                    part.filling = null;
+                }
+            });
+            for(Worker part : parts)
+            {
+                if(part.filling != null) part.full.add(part.filling);
+                part.full.add(STOP);
+            }
+
+            ReplayStats stats = new ReplayStats(count);
+            for(Worker part : parts) stats.add(part.result.get());
+            stats.setElapsedNanos(System.nanoTime() - start);
+            return stats;
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("replay interrupted", e);
+        }
+        catch(ExecutionException e)
+        {
+            throw failure(e);
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    /** A spare batch of {@code part}, waiting while it is behind; throws what the worker threw if it has stopped. */
+    private static Batch takeFree(Worker part) throws IOException
+    {
+        try
+        {
+            while(true)
+            {
+                Batch b = part.free.poll(10, TimeUnit.MILLISECONDS);
+                if(b != null) return b;
+                if(part.result.isDone()) part.result.get();
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("replay interrupted", e);
+        }
+        catch(ExecutionException e)
+        {
+            throw failure(e);
+        }
+    }
+
+    private static IOException failure(ExecutionException e)
+    {
+        if(e.getCause() instanceof IOException) return (IOException)e.getCause();
+        if(e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+        return new IOException(e.getCause());
+    }
+
+    /** Checks every record of the trace and hands it to {@code sink}, in order. */
+    private void scan(int count, EventSink sink) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            long end = TraceWriter.HEADER_SIZE + records*TraceWriter.RECORD_SIZE;
+            for(long from = TraceWriter.HEADER_SIZE; from < end; from += WINDOW)
+            {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(WINDOW, end - from));
+                window.order(ByteOrder.LITTLE_ENDIAN);
+
+                for(int at = 0; at < window.limit(); at += TraceWriter.RECORD_SIZE)
+                {
+                    int machine = window.getInt(at);
+                    int operation = window.get(at + 4);
+                    if(machine < 0 || machine >= count)
+                        throw new IOException(file + ": record " + (from - TraceWriter.HEADER_SIZE + at)/TraceWriter.RECORD_SIZE
+                                + " names machine " + machine + " of " + count);
+                    if(operation < 0 || operation >= OPERATIONS)
+                        throw new IOException(file + ": record " + (from - TraceWriter.HEADER_SIZE + at)/TraceWriter.RECORD_SIZE
+                                + " has unknown operation " + operation);
+
+                    sink.accept(machine, operation, window.getInt(at + 8), window.getInt(at + 12));
+                }
+            }
+        }
+    }
+
+    private static void apply(VendingMachine machine, int index, Operation operation, int arg1, int arg2, ReplayStats stats)
+    {
+        Response response;
+        switch(operation)
+        {
+            case PUT_COIN1:        response = machine.putCoin1(); break;
+            case PUT_COIN2:        response = machine.putCoin2(); break;
+            case PUT_COINS:        response = machine.putCoins(arg1, arg2); break;
+            case RETURN_MONEY:     response = Receipt.response(machine.refund()); break;
+            case FILL_PRODUCTS:    response = machine.fillProducts(); break;
+            case FILL_PRODUCTS_TO: response = machine.fillProducts(arg1, arg2); break;
+            case FILL_COINS:       response = machine.fillCoins(arg1, arg2); break;
+            case SET_PRICES:       response = machine.setPrices(arg1, arg2); break;
+            case ENTER_ADMIN_MODE: response = machine.enterAdminMode((arg1 & 0xFFFFFFFFL) | (long)arg2 << 32); break;
+            case EXIT_ADMIN_MODE:  machine.exitAdminMode(); response = Response.OK; break;
+            case GIVE_PRODUCT1:
+            {
+                long receipt = machine.sellProduct1(arg1);
+                response = Receipt.response(receipt);
+                if(response == Response.OK) stats.sold(Receipt.units(receipt), machine.getSalePrice());
+                break;
+            }
+            case GIVE_PRODUCT2:
+            {
+                long receipt = machine.sellProduct2(arg1);
+                response = Receipt.response(receipt);
+                if(response == Response.OK) stats.sold(Receipt.units(receipt), machine.getSalePrice());
+                break;
+            }
+            default: throw new IllegalStateException(operation.toString());
+        }
+        stats.count(index, response);
+    }
+}
@@ -0,0 +1,79 @@
+package root.vending;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a trace of customer and service operations for {@link TraceReplayer}.
+ *
+ * <pre>
+ * header: magic "VMTR" | version u16 | record size u16 | reserved
+ * record: machine i32 | operation u8 | pad | arg1 i32 | arg2 i32
+ * </pre>
+ *
+ * All values are little-endian; the number of records follows from the file size. The
+ * admin code of {@link Operation#ENTER_ADMIN_MODE} is split over arg1 (low half) and
+ * arg2 (high half).
+ */
+public final class TraceWriter implements Closeable
+{
+    public static final int MAGIC = 0x52544D56;
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 16;
+
+    private static final int BUFFER = 1024*RECORD_SIZE;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+
+    private TraceWriter(FileChannel channel)
+    {
+        this.channel = channel;
+    }
+
+    public static TraceWriter create(Path file) throws IOException
+    {
+        TraceWriter writer = new TraceWriter(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING));
+        writer.buffer.putInt(MAGIC).putShort(VERSION).putShort((short)RECORD_SIZE).putLong(0);
+        return writer;
+    }
+
+    public void append(int machine, Operation operation, int arg1, int arg2) throws IOException
+    {
+        if(machine < 0) throw new IllegalArgumentException("machine: " + machine);
+        if(!buffer.hasRemaining()) flush();
+        buffer.putInt(machine).put((byte)operation.ordinal()).put((byte)0).putShort((short)0).putInt(arg1).putInt(arg2);
+    }
+
+    public void appendEnterAdminMode(int machine, long code) throws IOException
+    {
+        append(machine, Operation.ENTER_ADMIN_MODE, (int)code, (int)(code >>> 32));
+    }
+
+    private void flush() throws IOException
+    {
+        buffer.flip();
+        while(buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            flush();
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package root.vending;
+
+import java.util.Arrays;
+
+import root.vending.VendingMachine.Mode;
+import root.vending.VendingMachine.Response;
+
+/**
+ * Many machines stored as parallel primitive arrays, addressed by machine index.
+ *
+ * Every operation mirrors the method of the same name in {@link VendingMachine} and
+ * returns the same {@link Response}. Counts never exceed 50 and the balance never
+ * exceeds the coins held, so a machine costs 15 bytes instead of a full object.
+ * Not thread-safe.
+ */
+public class VendingFleet
+{
+    private static final long id = 117345294655382L;
+
+    private static final int max1 = 30;
+    private static final int max2 = 40;
+
+    private static final int maxc1 = 50;
+    private static final int maxc2 = 50;
+
+    private static final byte OPERATION = 0;
+    private static final byte ADMINISTERING = 1;
+
+    private final int size;
+
+    private final byte[] num1;
+    private final byte[] num2;
+
+    private final int[] price1;
+    private final int[] price2;
+
+    private final byte[] coins1;
+    private final byte[] coins2;
+
+    private final short[] balance;
+
+    private final byte[] mode;
+
+    private final ChangeEngine changeEngine;
+    private final int value1;
+    private final int value2;
+
+    private final int[] held = new int[2];
+    private final int[] change = new int[2];
+
+    public VendingFleet(int size)
+    {
+        this(size, ChangeEngine.forCoins(new int[] {MachineConfig.DEFAULT.getCoinValue1(), MachineConfig.DEFAULT.getCoinValue2()}, new int[] {maxc1, maxc2}));
+    }
+
+    public VendingFleet(int size, ChangeEngine changeEngine)
+    {
+        if(size < 0) throw new IllegalArgumentException("size: " + size);
+        int[] values = changeEngine.denominations();
+        if(values.length != 2) throw new IllegalArgumentException("expected two coin types");
+        this.changeEngine = changeEngine;
+        this.value1 = values[0];
+        this.value2 = values[1];
+        this.size = size;
+        num1 = new byte[size];
+        num2 = new byte[size];
+        price1 = new int[size];
+        price2 = new int[size];
+        coins1 = new byte[size];
+        coins2 = new byte[size];
+        balance = new short[size];
+        mode = new byte[size];
+        Arrays.fill(price1, 8);
+        Arrays.fill(price2, 5);
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int getNumberOfProduct1(int m)
+    {
+        return num1[m];
+    }
+
+    public int getNumberOfProduct2(int m)
+    {
+        return num2[m];
+    }
+
+    public int getCurrentBalance(int m)
+    {
+        return balance[m];
+    }
+
+    public Mode getCurrentMode(int m)
+    {
+        return mode[m] == OPERATION ? Mode.OPERATION : Mode.ADMINISTERING;
+    }
+
+    public int getCurrentSum(int m)
+    {
+        if(mode[m] == OPERATION)
+            return 0;
+        else
+            return coins1[m]*value1+coins2[m]*value2;
+    }
+
+    public int getCoins1(int m)
+    {
+        if(mode[m] == OPERATION)
+            return 0;
+        else
+            return coins1[m];
+    }
+
+    public int getCoins2(int m)
+    {
+        if(mode[m] == OPERATION)
+            return 0;
+        else
+            return coins2[m];
+    }
+
+    public int getPrice1(int m)
+    {
+        return price1[m];
+    }
+
+    public int getPrice2(int m)
+    {
+        return price2[m];
+    }
+
+    public Response fillProducts(int m)
+    {
+        if(mode[m] == OPERATION) return Response.ILLEGAL_OPERATION;
+        num1[m] = max1;
+        num2[m] = max2;
+        return Response.OK;
+    }
+
+    public Response fillCoins(int m, int c1, int c2)
+    {
+        if(mode[m] == OPERATION) return Response.ILLEGAL_OPERATION;
+        if(c1 <= 0 || c1 > maxc1) return Response.INVALID_PARAM;
+        if(c2 <= 0 || c2 > maxc2) return Response.INVALID_PARAM;
+        coins1[m] = (byte)c1;
+        coins2[m] = (byte)c2;
+        return Response.OK;
+    }
+
+    public Response enterAdminMode(int m, long code)
+    {
+        if(code != id) return Response.INVALID_PARAM;
+        if(balance[m] != 0) return Response.CANNOT_PERFORM;
+
+        mode[m] = ADMINISTERING;
+        return Response.OK;
+    }
+
+    public void exitAdminMode(int m)
+    {
+        mode[m] = OPERATION;
+    }
+
+    public Response setPrices(int m, int p1, int p2)
+    {
+        if(mode[m] == OPERATION) return Response.ILLEGAL_OPERATION;
+        if(p1 <= 0 || p2 <= 0) return Response.INVALID_PARAM;
+        price1[m] = p1;
+        price2[m] = p2;
+        return Response.OK;
+    }
+
+    public Response putCoin1(int m)
+    {
+        if(mode[m] == ADMINISTERING) return Response.ILLEGAL_OPERATION;
+        if(coins1[m] == maxc1)       return Response.CANNOT_PERFORM;
+
+        balance[m] += value1;
+        coins1[m]++;
+
+        return Response.OK;
+    }
+
+    public Response putCoin2(int m)
+    {
+        if(mode[m] == ADMINISTERING) return Response.ILLEGAL_OPERATION;
+        if(coins2[m] == maxc2)       return Response.CANNOT_PERFORM;
+
+        balance[m] += value2;
+        coins2[m]++;
+
+        return Response.OK;
+    }
+
+    public Response returnMoney(int m)
+    {
+        if(mode[m] == ADMINISTERING) return Response.ILLEGAL_OPERATION;
+
+        if(balance[m] == 0) return Response.OK;
+        return payOut(m, balance[m]);
+    }
+
+    public Response giveProduct1(int m, int number)
+    {
+        if(mode[m] == ADMINISTERING) return Response.ILLEGAL_OPERATION;
+
+        if(number <= 0 || number > max1) return Response.INVALID_PARAM;
+        if(number > num1[m]) return Response.INSUFFICIENT_PRODUCT;
+
+        int res = balance[m] - number*price1[m];
+        if(res < 0) return Response.INSUFFICIENT_MONEY;
+
+        Response response = payOut(m, res);
+        if(response == Response.OK) num1[m] -= number;
+        return response;
+    }
+
+    public Response giveProduct2(int m, int number)
+    {
+        if(mode[m] == ADMINISTERING) return Response.ILLEGAL_OPERATION;
+
+        if(number <= 0 || number > max2) return Response.INVALID_PARAM;
+        if(number > num2[m]) return Response.INSUFFICIENT_PRODUCT;
+
+        int res = balance[m] - number*price2[m];
+        if(res < 0) return Response.INSUFFICIENT_MONEY;
+
+        Response response = payOut(m, res);
+        if(response == Response.OK) num2[m] -= number;
+        return response;
+    }
+
+    private Response payOut(int m, int amount)
+    {
+        held[0] = coins1[m];
+        held[1] = coins2[m];
+        Response response = changeEngine.makeChange(amount, held, change);
+        if(response != Response.OK) return response;
+
+        coins1[m] -= change[0];
+        coins2[m] -= change[1];
+        balance[m] = 0;
+        return Response.OK;
+    }
+}
@@ -17,26 +17,104 @@ public class VendingMachine
         , INSUFFICIENT_MONEY
     };
 
-    private int max1 = 30;
-    private int max2 = 40;
+    private final ConfigReference config;
 
     private int num1 = 0;
     private int num2 = 0;
 
-    private int price1 = 8;
-    private int price2 = 5;
-
-    private int maxc1  = 50;
-    private int maxc2  = 50;
+    // 0 until set in admin mode: the configured price applies
+    private int price1 = 0;
+    private int price2 = 0;
 
     private int coins1  = 0;
     private int coins2  = 0;
 
-    public static int coinval1 = 1;
-    public static int coinval2 = 2;
-
     private int balance = 0;
 
+    private ChangeEngine changeEngine;
+    private final int value1;
+    private final int value2;
+
+    // configuration the engine was sized for, or null if the engine was supplied
+    private MachineConfig engineConfig;
+
+    private final int[] held = new int[2];
+    private final int[] change = new int[2];
+
+    private MachineListener listener;
+    private MachineMetrics metrics;
+    // receipt last handed to the listener, so MachinePipeline can tell a listener that threw from the machine
+    long told;
+
+    private PriceBoard priceBoard;
+    // table version and unit price of the sale in progress
+    private int priceVersion;
+    private int salePrice;
+
+    // sales that would succeed, as packed by Availability, and what it was computed against
+    private long availability;
+    private MachineConfig availabilityConfig;
+    private PriceTable availabilityTable;
+
+    public VendingMachine()
+    {
+        this(new ConfigReference(MachineConfig.DEFAULT));
+    }
+
+    /**
+     * Machine following the configuration in {@code config}. Capacities, limits and default
+     * prices are read from it on every operation, so a new version swapped in applies from
+     * the next one; coin values are those of the version current now and stay fixed.
+     */
+    public VendingMachine(ConfigReference config)
+    {
+        this(config, config.get());
+    }
+
+    private VendingMachine(ConfigReference config, MachineConfig current)
+    {
+        this(engineFor(current, current.getCoinValue1(), current.getCoinValue2(), 0, 0), config, current);
+    }
+
+    public VendingMachine(ChangeEngine changeEngine)
+    {
+        this(changeEngine, new ConfigReference(MachineConfig.DEFAULT));
+    }
+
+    /** Machine paying change with {@code changeEngine}, whose capacities must cover every version of {@code config}. */
+    public VendingMachine(ChangeEngine changeEngine, ConfigReference config)
+    {
+        this(changeEngine, config, null);
+    }
+
+    /** Machine with other capacities, for models scaled down to be explored exhaustively. */
+    VendingMachine(ChangeEngine changeEngine, int max1, int max2, int maxc1, int maxc2)
+    {
+        this(changeEngine, new ConfigReference(MachineConfig.DEFAULT.withCapacities(max1, max2, maxc1, maxc2)));
+    }
+
+    private VendingMachine(ChangeEngine changeEngine, ConfigReference config, MachineConfig engineConfig)
+    {
+        int[] values = changeEngine.denominations();
+        if(values.length != 2) throw new IllegalArgumentException("expected two coin types");
+        this.config = config;
+        this.changeEngine = changeEngine;
+        this.engineConfig = engineConfig;
+        this.value1 = values[0];
+        this.value2 = values[1];
+    }
+
+    private static ChangeEngine engineFor(MachineConfig c, int value1, int value2, int coins1, int coins2)
+    {
+        return ChangeEngine.forCoins(new int[] {value1, value2},
+                new int[] {Math.max(c.getMaxCoins1(), coins1), Math.max(c.getMaxCoins2(), coins2)});
+    }
+
+    public ConfigReference getConfig()
+    {
+        return config;
+    }
+
     public int getNumberOfProduct1()
     {
         return num1;
@@ -62,7 +140,7 @@ public class VendingMachine
         if(mode == Mode.OPERATION)
             return 0;
         else
-            return coins1*coinval1+coins2*coinval2;
+            return coins1*value1+coins2*value2;
     }
 
     public int getCoins1()
@@ -83,33 +161,204 @@ public class VendingMachine
 
     public int getPrice1()
     {
-        return price1;
+        PriceBoard board = priceBoard;
+        return board == null ? ownPrice1(config.get()) : board.current().getPrice1();
     }
 
     public int getPrice2()
     {
-        return price2;
+        PriceBoard board = priceBoard;
+        return board == null ? ownPrice2(config.get()) : board.current().getPrice2();
+    }
+
+    private int ownPrice1(MachineConfig c)
+    {
+        return price1 != 0 ? price1 : c.getPrice1();
+    }
+
+    private int ownPrice2(MachineConfig c)
+    {
+        return price2 != 0 ? price2 : c.getPrice2();
+    }
+
+    /** Version of the {@link PriceTable} sales are charged from now, 0 for the machine's own prices. */
+    public int getPriceVersion()
+    {
+        PriceBoard board = priceBoard;
+        return board == null ? 0 : board.current().getVersion();
+    }
+
+    public int getMaxNumberOfProduct1()
+    {
+        return config.get().getMax1();
+    }
+
+    public int getMaxNumberOfProduct2()
+    {
+        return config.get().getMax2();
+    }
+
+    public int getMaxCoins1()
+    {
+        return config.get().getMaxCoins1();
+    }
+
+    public int getMaxCoins2()
+    {
+        return config.get().getMaxCoins2();
+    }
+
+    public int getCoinValue1()
+    {
+        return value1;
+    }
+
+    public int getCoinValue2()
+    {
+        return value2;
+    }
+
+    /**
+     * Which quantities of each product would sell now, packed as by {@link Availability}.
+     * Kept up to date by every operation that changes the machine, so this is a field read
+     * unless a new configuration or price table has been published since the last one.
+     */
+    public long getAvailability()
+    {
+        if(!isAvailabilityCurrent()) updateAvailability();
+        return availability;
+    }
+
+    /** Whether the mask was computed against the configuration and price table in force now. */
+    boolean isAvailabilityCurrent()
+    {
+        PriceBoard board = priceBoard;
+        return availabilityConfig == config.get() && availabilityTable == (board == null ? null : board.current());
+    }
+
+    /** The mask as last computed, current or not. */
+    long lastAvailability()
+    {
+        return availability;
+    }
+
+    /**
+     * Brings the mask up to date after {@code operation} succeeded, once the metrics have
+     * timed it. A coin insert only adds to the balance and to the coins held, so a quantity
+     * that sold before still does, its change now paid partly in the new coins, and only the
+     * quantities that did not are probed. Every other operation leaves no balance or the
+     * machine in admin mode, and the full update returns before probing.
+     */
+    private void updateAvailability(Operation operation)
+    {
+        boolean insert = operation == Operation.PUT_COIN1 || operation == Operation.PUT_COIN2
+                         || operation == Operation.PUT_COINS;
+        if(!insert || !isAvailabilityCurrent())
+        {
+            updateAvailability();
+            return;
+        }
+        MachineConfig c = availabilityConfig;
+        PriceTable table = availabilityTable;
+        int p1 = table == null ? ownPrice1(c) : table.getPrice1();
+        int p2 = table == null ? ownPrice2(c) : table.getPrice2();
+        long before = availability;
+        availability = Availability.pack(sellable(num1, c.getMax1(), p1, c, Availability.units1(before)),
+                                         sellable(num2, c.getMax2(), p2, c, Availability.units2(before)));
+    }
+
+    private void updateAvailability()
+    {
+        MachineConfig c = config.get();
+        PriceBoard board = priceBoard;
+        PriceTable table = board == null ? null : board.current();
+        availabilityConfig = c;
+        availabilityTable = table;
+
+        if(mode == Mode.ADMINISTERING || balance == 0)
+        {
+            availability = 0;
+            return;
+        }
+        int p1 = table == null ? ownPrice1(c) : table.getPrice1();
+        int p2 = table == null ? ownPrice2(c) : table.getPrice2();
+        availability = Availability.pack(sellable(num1, c.getMax1(), p1, c, 0), sellable(num2, c.getMax2(), p2, c, 0));
+    }
+
+    /**
+     * Bit {@code n - 1} set for each quantity {@code n} the balance pays for with exact change,
+     * taking the quantities in {@code known} as sellable without probing.
+     */
+    private int sellable(int stock, int max, int price, MachineConfig c, int known)
+    {
+        int n = Math.min(Math.min(stock, max), Math.min(balance/price, Availability.MAX_UNITS));
+        int units = 0;
+        for(int q = 1; q <= n; q++)
+        {
+            int bit = 1 << (q - 1);
+            int rest = balance - q*price;
+            if((known & bit) != 0 || rest == 0 || canMakeChange(rest, c)) units |= bit;
+        }
+        return units;
     }
 
     public Response fillProducts()
+    {
+        long start = start();
+        return fire(Operation.FILL_PRODUCTS, 0, 0, doFillProducts(), start);
+    }
+
+    private Response doFillProducts()
+    {
+        if(mode == Mode.OPERATION) return Response.ILLEGAL_OPERATION;
+        MachineConfig c = config.get();
+        num1 = c.getMax1();
+        num2 = c.getMax2();
+        return Response.OK;
+    }
+
+    /** Sets the stock to {@code n1} and {@code n2} units instead of topping up to capacity. */
+    public Response fillProducts(int n1, int n2)
+    {
+        long start = start();
+        return fire(Operation.FILL_PRODUCTS_TO, n1, n2, doFillProducts(n1, n2), start);
+    }
+
+    private Response doFillProducts(int n1, int n2)
     {
         if(mode == Mode.OPERATION) return Response.ILLEGAL_OPERATION;
-        num1 = max1;
-        num2 = max2;
+        MachineConfig c = config.get();
+        if(n1 < 0 || n1 > c.getMax1()) return Response.INVALID_PARAM;
+        if(n2 < 0 || n2 > c.getMax2()) return Response.INVALID_PARAM;
+        num1 = n1;
+        num2 = n2;
         return Response.OK;
     }
 
     public Response fillCoins(int c1, int c2)
+    {
+        long start = start();
+        return fire(Operation.FILL_COINS, c1, c2, doFillCoins(c1, c2), start);
+    }
+
+    private Response doFillCoins(int c1, int c2)
     {
         if(mode == Mode.OPERATION) return Response.ILLEGAL_OPERATION;
-        if(c1 <= 0 || c1 > maxc1) return Response.INVALID_PARAM;
-        if(c2 <= 0 || c2 > maxc2) return Response.INVALID_PARAM;
+        MachineConfig c = config.get();
+        if(c1 <= 0 || c1 > c.getMaxCoins1()) return Response.INVALID_PARAM;
+        if(c2 <= 0 || c2 > c.getMaxCoins2()) return Response.INVALID_PARAM;
         coins1 = c1;
         coins2 = c2;
         return Response.OK;
     }
 
     public Response enterAdminMode(long code)
+    {
+        long start = start();
+        return fire(Operation.ENTER_ADMIN_MODE, 0, 0, doEnterAdminMode(code), start);
+    }
+
+    private Response doEnterAdminMode(long code)
     {
         if(code != id) return Response.INVALID_PARAM;
         if(balance != 0) return Response.CANNOT_PERFORM;
@@ -120,10 +369,18 @@ public class VendingMachine
 
     public void exitAdminMode()
     {
+        long start = start();
         mode = Mode.OPERATION;
+        fire(Operation.EXIT_ADMIN_MODE, 0, 0, Response.OK, start);
     }
 
     public Response setPrices(int p1, int p2)
+    {
+        long start = start();
+        return fire(Operation.SET_PRICES, p1, p2, doSetPrices(p1, p2), start);
+    }
+
+    private Response doSetPrices(int p1, int p2)
     {
         if(mode == Mode.OPERATION) return Response.ILLEGAL_OPERATION;
         if(p1 <= 0 || p2 <= 0) return Response.INVALID_PARAM;
@@ -133,168 +390,420 @@ public class VendingMachine
     }
 
     public Response putCoin1()
+    {
+        long start = start();
+        return fire(Operation.PUT_COIN1, 0, 0, doPutCoin1(), start);
+    }
+
+    private Response doPutCoin1()
     {
         if(mode == Mode.ADMINISTERING) return Response.ILLEGAL_OPERATION;
-        if(coins1 == maxc1)            return Response.CANNOT_PERFORM;
+        if(coins1 >= config.get().getMaxCoins1()) return Response.CANNOT_PERFORM;
 
-        balance += coinval1;
+        balance += value1;
         coins1++;
 
         return Response.OK;
     }
 
     public Response putCoin2()
+    {
+        long start = start();
+        return fire(Operation.PUT_COIN2, 0, 0, doPutCoin2(), start);
+    }
+
+    private Response doPutCoin2()
     {
         if(mode == Mode.ADMINISTERING) return Response.ILLEGAL_OPERATION;
-        if(coins2 == maxc2)            return Response.CANNOT_PERFORM;
+        if(coins2 >= config.get().getMaxCoins2()) return Response.CANNOT_PERFORM;
 
-        balance += coinval2;
+        balance += value2;
         coins2++;
 
         return Response.OK;
     }
 
-    public Response returnMoney()
+    /**
+     * Inserts {@code n1} coins of the first kind and {@code n2} of the second at once, as a
+     * bill validator or card reader pays. Ends like {@code n1} calls to {@link #putCoin1()}
+     * and {@code n2} to {@link #putCoin2()}, except that if the coins do not all fit none
+     * are taken and the answer is {@code CANNOT_PERFORM}.
+     */
+    public Response putCoins(int n1, int n2)
+    {
+        long start = start();
+        return fire(Operation.PUT_COINS, n1, n2, doPutCoins(n1, n2), start);
+    }
+
+    private Response doPutCoins(int n1, int n2)
     {
         if(mode == Mode.ADMINISTERING) return Response.ILLEGAL_OPERATION;
+        if(n1 < 0 || n2 < 0)           return Response.INVALID_PARAM;
+        MachineConfig c = config.get();
+        if(n1 > c.getMaxCoins1() - coins1 || n2 > c.getMaxCoins2() - coins2) return Response.CANNOT_PERFORM;
 
-        if(balance == 0)
-        {
-            return Response.OK;
-        }
-        else if(balance > coins1*coinval1 + coins2*coinval2)
-        {
-            return Response.TOO_BIG_CHANGE;
-        }
-        else if(balance > coins2*coinval2)
-        {
-            // using coinval1 == 1
-            coins1 -= (balance-coins2*coinval2);
-            coins2 = 0;
-            balance = 0;
+        balance += n1*value1 + n2*value2;
+        coins1 += n1;
+        coins2 += n2;
 
-            return Response.OK;
-        }
-        else if(balance % 2 == 0)
-        {
-            coins2 -= (balance/2);
-            balance = 0;
+        return Response.OK;
+    }
 
-            return Response.OK;
-        }
-        else if(coins1 == 0)
+    /**
+     * Pays with {@code n1} and {@code n2} coins and buys {@code number} units of product
+     * {@code product}, 1 or 2, in one step: the same as {@link #putCoins(int, int)} followed,
+     * if the coins were taken, by {@link #sellProduct1(int)} or {@link #sellProduct2(int)}.
+     * Listeners hear of both parts; a sale that fails leaves the coins in the balance.
+     */
+    public long purchase(int product, int number, int n1, int n2)
+    {
+        if(product != 1 && product != 2) return Receipt.of(Response.INVALID_PARAM);
+
+        if(n1 != 0 || n2 != 0)
         {
-            // using coinval1 == 1
-            return Response.UNSUITABLE_CHANGE;
+            long start = start();
+            Response paid = fire(Operation.PUT_COINS, n1, n2, doPutCoins(n1, n2), start);
+            if(paid != Response.OK) return Receipt.of(paid);
         }
-        else
-        {
-            // using coinval1 == 1
-            coins2 -= (balance/2);
-            coins1--;
-            balance = 0;
+        return product == 1 ? sell(Operation.GIVE_PRODUCT1, number) : sell(Operation.GIVE_PRODUCT2, number);
+    }
 
-            return Response.OK;
-        }
+    public Response returnMoney()
+    {
+        return Receipt.response(refund());
+    }
+
+    public Response returnMoney(Receipt receipt)
+    {
+        return receipt.set(refund());
+    }
+
+    /** {@link #returnMoney()} returning a packed {@link Receipt} with the coins paid out. */
+    public long refund()
+    {
+        long start = start();
+        return fire(Operation.RETURN_MONEY, 0, 0, doRefund(), start);
+    }
+
+    private long doRefund()
+    {
+        if(mode == Mode.ADMINISTERING) return Receipt.of(Response.ILLEGAL_OPERATION);
+
+        if(balance == 0) return Receipt.of(Response.OK);
+        return payOut(balance, config.get());
     }
 
     public Response giveProduct1(int number)
     {
-        if(mode == Mode.ADMINISTERING) return Response.ILLEGAL_OPERATION;
+        return Receipt.response(sellProduct1(number));
+    }
 
-        if(number <= 0 || number > max1) return Response.INVALID_PARAM;
-        if(number > num1) return Response.INSUFFICIENT_PRODUCT;
+    public Response giveProduct1(int number, Receipt receipt)
+    {
+        return receipt.set(sellProduct1(number));
+    }
 
-        int res = balance - number*price1;
+    /** {@link #giveProduct1(int)} returning a packed {@link Receipt} with the units sold and the change. */
+    public long sellProduct1(int number)
+    {
+        return sell(Operation.GIVE_PRODUCT1, number);
+    }
 
-        if(res < 0) return Response.INSUFFICIENT_MONEY;
-        else if(res > coins1*coinval1 + coins2*coinval2)
+    private long sell(Operation operation, int number)
+    {
+        long start = start();
+        priceVersion = 0;
+        salePrice = 0;
+        long receipt = operation == Operation.GIVE_PRODUCT1 ? doSellProduct1(number, 0) : doSellProduct2(number, 0);
+        if(metrics != null) metrics.record(operation, Receipt.response(receipt), System.nanoTime() - start);
+        if(Receipt.isOk(receipt)) updateAvailability(operation);
+        if(listener != null)
         {
-            return Response.TOO_BIG_CHANGE;
+            told = receipt;
+            listener.onSale(this, operation, number, priceVersion, salePrice, receipt);
         }
-        else if(res > coins2*coinval2)
-        {
-            // using coinval1 == 1
-            coins1 -= (res-coins2*coinval2);
-            coins2 = 0;
-            balance = 0;
-            num1 -= number;
+        return receipt;
+    }
 
-            return Response.OK;
-        }
-        else if(res%coinval2 == 0)
-        {
-            coins2 -= (res/coinval2);
-            balance = 0;
-            num1 -= number;
+    /** Sells at {@code price} a unit, or at the price in force now if 0. */
+    private long doSellProduct1(int number, int price)
+    {
+        if(mode == Mode.ADMINISTERING) return Receipt.of(Response.ILLEGAL_OPERATION);
 
-            return Response.OK;
-        }
-        else if(coins1 == 0)
-        {
-            // using coinval1 == 1
-            return Response.UNSUITABLE_CHANGE;
-        }
-        else
-        {
-            // using coinval1 == 1
-            int remains = res % coinval2;
-            coins2 -= (res/coinval2);
-            coins1 -= remains;
-            balance = 0;
-            num1 -= number;
-
-            return Response.OK;
-        }
+        MachineConfig c = config.get();
+        if(number <= 0 || number > c.getMax1()) return Receipt.of(Response.INVALID_PARAM);
+        if(number > num1) return Receipt.of(Response.INSUFFICIENT_PRODUCT);
+
+        salePrice = price != 0 ? price : chargedPrice1(c);
+        int res = balance - number*salePrice;
+        if(res < 0) return Receipt.of(Response.INSUFFICIENT_MONEY);
+
+        long receipt = payOut(res, c);
+        if(!Receipt.isOk(receipt)) return receipt;
+
+        num1 -= number;
+        return Receipt.withUnits(receipt, number);
     }
 
     public Response giveProduct2(int number)
     {
-        if(mode == Mode.ADMINISTERING) return Response.ILLEGAL_OPERATION;
+        return Receipt.response(sellProduct2(number));
+    }
+
+    public Response giveProduct2(int number, Receipt receipt)
+    {
+        return receipt.set(sellProduct2(number));
+    }
+
+    /** {@link #giveProduct2(int)} returning a packed {@link Receipt} with the units sold and the change. */
+    public long sellProduct2(int number)
+    {
+        return sell(Operation.GIVE_PRODUCT2, number);
+    }
+
+    private long doSellProduct2(int number, int price)
+    {
+        if(mode == Mode.ADMINISTERING) return Receipt.of(Response.ILLEGAL_OPERATION);
+
+        MachineConfig c = config.get();
+        if(number <= 0 || number > c.getMax2()) return Receipt.of(Response.INVALID_PARAM);
+        if(number > num2) return Receipt.of(Response.INSUFFICIENT_PRODUCT);
+
+        salePrice = price != 0 ? price : chargedPrice2(c);
+        int res = balance - number*salePrice;
+        if(res < 0) return Receipt.of(Response.INSUFFICIENT_MONEY);
+
+        long receipt = payOut(res, c);
+        if(!Receipt.isOk(receipt)) return receipt;
+
+        num2 -= number;
+        return Receipt.withUnits(receipt, number);
+    }
+
+    /** Price of product 1 for the sale in progress; records the version of the table it came from. */
+    private int chargedPrice1(MachineConfig c)
+    {
+        PriceBoard board = priceBoard;
+        if(board == null) return ownPrice1(c);
+        PriceTable table = board.current();
+        priceVersion = table.getVersion();
+        return table.getPrice1();
+    }
+
+    private int chargedPrice2(MachineConfig c)
+    {
+        PriceBoard board = priceBoard;
+        if(board == null) return ownPrice2(c);
+        PriceTable table = board.current();
+        priceVersion = table.getVersion();
+        return table.getPrice2();
+    }
+
+    private long payOut(int amount, MachineConfig c)
+    {
+        held[0] = coins1;
+        held[1] = coins2;
+        Response response = engine(c).makeChange(amount, held, change);
+        if(response != Response.OK) return Receipt.of(response);
+
+        coins1 -= change[0];
+        coins2 -= change[1];
+        balance = 0;
+        return Receipt.pack(Response.OK, 0, change[0], change[1]);
+    }
+
+    /** Whether the coins held now could pay out {@code amount} exactly. */
+    boolean canMakeChange(int amount)
+    {
+        return canMakeChange(amount, config.get());
+    }
+
+    private boolean canMakeChange(int amount, MachineConfig c)
+    {
+        held[0] = coins1;
+        held[1] = coins2;
+        return engine(c).makeChange(amount, held, change) == Response.OK;
+    }
+
+    /** The change engine, resized first if the machine built it and {@code c} changed the coin capacities. */
+    private ChangeEngine engine(MachineConfig c)
+    {
+        MachineConfig built = engineConfig;
+        if(built == null || built == c) return changeEngine;
+        if(built.getMaxCoins1() != c.getMaxCoins1() || built.getMaxCoins2() != c.getMaxCoins2())
+            changeEngine = engineFor(c, value1, value2, coins1, coins2);
+        engineConfig = c;
+        return changeEngine;
+    }
 
-        if(number <= 0 || number > max2) return Response.INVALID_PARAM;
-        if(number > num2) return Response.INSUFFICIENT_PRODUCT;
+    /** Registers the listener told about every operation after it completes, or removes it with {@code null}. */
+    public void setListener(MachineListener listener)
+    {
+        this.listener = listener;
+    }
 
-        int res = balance - number*price2;
+    public MachineListener getListener()
+    {
+        return listener;
+    }
+
+    /** Starts recording every operation into {@code metrics}, or stops with {@code null}. */
+    public void setMetrics(MachineMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    public MachineMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Charges sales from the tables published on {@code board} instead of the prices set in
+     * admin mode, or goes back to those with {@code null}. Listeners get the table version of
+     * every sale as its second argument and the unit price through
+     * {@link MachineListener#onSale}; journals record that price, so recovery charges each
+     * sale what it was charged whether or not a board is attached by then. Traces replay
+     * sales at the prices in force when replayed.
+     */
+    public void setPriceBoard(PriceBoard board)
+    {
+        this.priceBoard = board;
+    }
+
+    public PriceBoard getPriceBoard()
+    {
+        return priceBoard;
+    }
+
+    private long start()
+    {
+        return metrics == null ? 0 : System.nanoTime();
+    }
 
-        if(res < 0) return Response.INSUFFICIENT_MONEY;
-        else if(res > coins1*coinval1 + coins2*coinval2)
+    private Response fire(Operation operation, int arg1, int arg2, Response response, long start)
+    {
+        if(metrics != null) metrics.record(operation, response, System.nanoTime() - start);
+        if(response == Response.OK) updateAvailability(operation);
+        if(listener != null)
         {
-            return Response.TOO_BIG_CHANGE;
+            told = Receipt.of(response);
+            listener.onOperation(this, operation, arg1, arg2, told);
         }
-        else if(res > coins2*coinval2)
-        {
-            // using coinval1 == 1
-            coins1 -= (res-coins2*coinval2);
-            coins2 = 0;
-            balance = 0;
-            num2 -= number;
+        return response;
+    }
 
-            return Response.OK;
-        }
-        else if(res%coinval2 == 0)
+    private long fire(Operation operation, int arg1, int arg2, long receipt, long start)
+    {
+        if(metrics != null) metrics.record(operation, Receipt.response(receipt), System.nanoTime() - start);
+        if(Receipt.isOk(receipt)) updateAvailability(operation);
+        if(listener != null)
         {
-            coins2 -= (res/coinval2);
-            balance = 0;
-            num2 -= number;
+            told = receipt;
+            listener.onOperation(this, operation, arg1, arg2, receipt);
+        }
+        return receipt;
+    }
 
-            return Response.OK;
+    MachineState captureState()
+    {
+        PriceBoard board = priceBoard;
+        boolean configured = price1 == 0;
+        if(board == null)
+        {
+            MachineConfig c = config.get();
+            return new MachineState(num1, num2, coins1, coins2, balance, ownPrice1(c), ownPrice2(c), mode, configured);
         }
-        else if(coins1 == 0)
+
+        PriceTable table = board.current();
+        return new MachineState(num1, num2, coins1, coins2, balance, table.getPrice1(), table.getPrice2(), mode,
+                                configured);
+    }
+
+    /**
+     * {@code history} followed by the current state. Reads the fields as they are, so it is
+     * meant for listeners, which run while the operation still holds the machine.
+     */
+    StateHistory appendState(StateHistory history)
+    {
+        PriceBoard board = priceBoard;
+        int p1, p2;
+        if(board == null)
         {
-            // using coinval1 == 1
-            return Response.UNSUITABLE_CHANGE;
+            MachineConfig c = config.get();
+            p1 = ownPrice1(c);
+            p2 = ownPrice2(c);
         }
         else
         {
-            // using coinval1 == 1
-            int remains = res % coinval2;
-            coins2 -= (res/coinval2);
-            coins1 -= remains;
-            balance = 0;
-            num2 -= number;
-
-            return Response.OK;
+            PriceTable table = board.current();
+            p1 = table.getPrice1();
+            p2 = table.getPrice2();
+        }
+        return history.append(num1, num2, coins1, coins2, balance, p1, p2, mode, price1 == 0);
+    }
+
+    /**
+     * Overwrites the whole state without telling the listener. A state with configured
+     * prices leaves the machine following its configuration.
+     */
+    void restoreState(MachineState state)
+    {
+        num1 = state.getNumberOfProduct1();
+        num2 = state.getNumberOfProduct2();
+        coins1 = state.getCoins1();
+        coins2 = state.getCoins2();
+        balance = state.getBalance();
+        price1 = state.hasConfiguredPrices() ? 0 : state.getPrice1();
+        price2 = state.hasConfiguredPrices() ? 0 : state.getPrice2();
+        mode = state.getMode();
+        updateAvailability();
+    }
+
+    /**
+     * Unit price the latest sale was charged, 0 if it failed before a price applied; for
+     * the thread that made the sale while no other sells on the machine.
+     */
+    int getSalePrice()
+    {
+        return salePrice;
+    }
+
+    /** Overwrites the whole state as {@link #restoreState} does and tells the listener. */
+    void restore(MachineState state)
+    {
+        restoreState(state);
+        if(listener != null) listener.onRestore(this, state);
+    }
+
+    /**
+     * Applies a recorded operation without telling the listener. For sales {@code arg2} is
+     * the unit price charged, or 0 to charge the price in force now.
+     */
+    Response replay(Operation operation, int arg1, int arg2)
+    {
+        Response response = doReplay(operation, arg1, arg2);
+        if(response == Response.OK) updateAvailability();
+        return response;
+    }
+
+    private Response doReplay(Operation operation, int arg1, int arg2)
+    {
+        switch(operation)
+        {
+            case PUT_COIN1:        return doPutCoin1();
+            case PUT_COIN2:        return doPutCoin2();
+            case PUT_COINS:        return doPutCoins(arg1, arg2);
+            case GIVE_PRODUCT1:    return Receipt.response(doSellProduct1(arg1, arg2));
+            case GIVE_PRODUCT2:    return Receipt.response(doSellProduct2(arg1, arg2));
+            case RETURN_MONEY:     return Receipt.response(doRefund());
+            case FILL_PRODUCTS:    return doFillProducts();
+            case FILL_PRODUCTS_TO: return doFillProducts(arg1, arg2);
+            case FILL_COINS:       return doFillCoins(arg1, arg2);
+            case SET_PRICES:       return doSetPrices(arg1, arg2);
+            case ENTER_ADMIN_MODE: return doEnterAdminMode(id);
+            case EXIT_ADMIN_MODE:  mode = Mode.OPERATION; return Response.OK;
+            default: throw new IllegalArgumentException(operation.name());
         }
     }
 
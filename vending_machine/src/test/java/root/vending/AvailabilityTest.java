@@ -0,0 +1,172 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import root.vending.VendingMachine.Response;
+
+
+public class AvailabilityTest {
+
+    private VendingMachine machine;
+
+    @BeforeEach
+    public void createMachineTest() {
+        machine = new VendingMachine();
+        machine.enterAdminMode(code);
+        machine.fillProducts(3, 40);
+        machine.setPrices(4, 3);
+        machine.fillCoins(1, 10);
+        machine.exitAdminMode();
+    }
+
+    @Test
+    public void testNothingSellsWithoutBalance() {
+        Assertions.assertEquals(0, machine.getAvailability());
+        Assertions.assertEquals(0, new VendingMachine().getAvailability());
+    }
+
+    @Test
+    public void testFollowsBalanceAndStock() {
+        for (int i = 0; i < 4; i++) machine.putCoin2();
+        long availability = machine.getAvailability();
+        Assertions.assertTrue(Availability.canSell1(availability, 1));
+        Assertions.assertTrue(Availability.canSell1(availability, 2));
+        Assertions.assertFalse(Availability.canSell1(availability, 3));
+        Assertions.assertEquals(2, Availability.maxUnits1(availability));
+        Assertions.assertEquals(2, Availability.maxUnits2(availability));
+        Assertions.assertFalse(Availability.canSell2(availability, 0));
+        Assertions.assertFalse(Availability.canSell2(availability, 33));
+
+        for (int i = 0; i < 4; i++) machine.putCoin2();
+        Assertions.assertEquals(3, Availability.maxUnits1(machine.getAvailability()));
+
+        machine.giveProduct1(3);
+        Assertions.assertEquals(0, machine.getAvailability());
+        machine.putCoin2();
+        machine.putCoin2();
+        Assertions.assertFalse(Availability.canSell1(machine.getAvailability(), 1));
+        Assertions.assertTrue(Availability.canSell2(machine.getAvailability(), 1));
+    }
+
+    @Test
+    public void testChangeThatCannotBePaid() {
+        machine = new VendingMachine(ChangeEngine.forCoins(new int[]{2, 3}, new int[]{50, 50}));
+        machine.enterAdminMode(code);
+        machine.fillProducts();
+        machine.setPrices(5, 3);
+        machine.fillCoins(1, 1);
+        machine.exitAdminMode();
+        for (int i = 0; i < 4; i++) machine.putCoin2();
+
+        long availability = machine.getAvailability();
+        // 12 - 5 = 7 needs two coins of 2 and the machine holds one; 12 - 10 = 2 is fine
+        Assertions.assertFalse(Availability.canSell1(availability, 1));
+        Assertions.assertTrue(Availability.canSell1(availability, 2));
+        Assertions.assertEquals(Response.UNSUITABLE_CHANGE, machine.giveProduct1(1));
+    }
+
+    @Test
+    public void testAdminModeSellsNothing() {
+        machine.putCoin2();
+        machine.returnMoney();
+        machine.enterAdminMode(code);
+        Assertions.assertEquals(0, machine.getAvailability());
+    }
+
+    @Test
+    public void testFollowsPublishedPricesAndConfig() {
+        for (int i = 0; i < 4; i++) machine.putCoin2();
+        PriceBoard board = new PriceBoard(8, 8);
+        machine.setPriceBoard(board);
+        Assertions.assertEquals(1, Availability.maxUnits1(machine.getAvailability()));
+        board.publish(2, 2);
+        Assertions.assertEquals(3, Availability.maxUnits1(machine.getAvailability()));
+        Assertions.assertEquals(4, Availability.maxUnits2(machine.getAvailability()));
+        machine.setPriceBoard(null);
+        Assertions.assertEquals(2, Availability.maxUnits1(machine.getAvailability()));
+
+        ConfigReference reference = new ConfigReference(MachineConfig.DEFAULT);
+        VendingMachine limited = new VendingMachine(reference);
+        limited.enterAdminMode(code);
+        limited.fillProducts();
+        limited.setPrices(1, 1);
+        limited.exitAdminMode();
+        for (int i = 0; i < 5; i++) limited.putCoin1();
+        Assertions.assertEquals(5, Availability.maxUnits1(limited.getAvailability()));
+        reference.set(MachineConfig.DEFAULT.withCapacities(2, 40, 50, 50));
+        Assertions.assertEquals(2, Availability.maxUnits1(limited.getAvailability()));
+    }
+
+    @Test
+    public void testMatchesSalesOnRandomWalks() {
+        Random random = new Random(11);
+        VendingMachine copy = new VendingMachine();
+        for (int step = 0; step < 3_000; step++) {
+            switch (random.nextInt(8)) {
+                case 0: case 1: case 2: machine.putCoin1(); break;
+                case 3: case 4: machine.putCoin2(); break;
+                case 5: machine.giveProduct1(1 + random.nextInt(3)); break;
+                case 6: machine.giveProduct2(1 + random.nextInt(3)); break;
+                default:
+                    machine.returnMoney();
+                    machine.enterAdminMode(code);
+                    machine.fillProducts(random.nextInt(5), random.nextInt(5));
+                    machine.fillCoins(1 + random.nextInt(3), 1 + random.nextInt(3));
+                    machine.setPrices(1 + random.nextInt(6), 1 + random.nextInt(6));
+                    machine.exitAdminMode();
+            }
+
+            long availability = machine.getAvailability();
+            MachineState state = machine.captureState();
+            for (int n = 1; n <= 6; n++) {
+                copy.restoreState(state);
+                Assertions.assertEquals(copy.giveProduct1(n) == Response.OK, Availability.canSell1(availability, n));
+                copy.restoreState(state);
+                Assertions.assertEquals(copy.giveProduct2(n) == Response.OK, Availability.canSell2(availability, n));
+            }
+        }
+    }
+
+    @Test
+    public void testInsertsUpdateLikeARecomputation() {
+        ChangeEngine engine = ChangeEngine.forCoins(new int[]{2, 3}, new int[]{50, 50});
+        machine = new VendingMachine(engine);
+        VendingMachine copy = new VendingMachine(engine);
+        Random random = new Random(5);
+        for (int step = 0; step < 3_000; step++) {
+            switch (random.nextInt(6)) {
+                case 0: case 1: machine.putCoin1(); break;
+                case 2: machine.putCoin2(); break;
+                case 3: machine.putCoins(random.nextInt(3), random.nextInt(3)); break;
+                case 4: machine.giveProduct1(1 + random.nextInt(3)); break;
+                default:
+                    machine.returnMoney();
+                    machine.enterAdminMode(code);
+                    machine.fillProducts(random.nextInt(8), random.nextInt(8));
+                    machine.fillCoins(1 + random.nextInt(4), 1 + random.nextInt(4));
+                    machine.setPrices(1 + random.nextInt(6), 1 + random.nextInt(6));
+                    machine.exitAdminMode();
+            }
+            copy.restoreState(machine.captureState());
+            Assertions.assertEquals(copy.getAvailability(), machine.getAvailability(), "step " + step);
+        }
+    }
+
+    @Test
+    public void testStampedMachineAgrees() {
+        StampedVendingMachine stamped = new StampedVendingMachine();
+        stamped.restoreState(machine.captureState());
+        for (int i = 0; i < 3; i++) {
+            machine.putCoin2();
+            stamped.putCoin2();
+        }
+        Assertions.assertEquals(machine.getAvailability(), stamped.getAvailability());
+        Assertions.assertTrue(stamped.getAvailability() != 0);
+    }
+}
@@ -0,0 +1,166 @@
+package root.vending;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+
+public class ChangeEngineTest {
+
+    @Test
+    public void testDefaultCoinsMatchHandWrittenChange() {
+        ChangeEngine engine = ChangeEngine.forCoins(new int[] {1, 2}, new int[] {50, 50});
+        int[] out = new int[2];
+        Assertions.assertEquals(engine.makeChange(5, new int[] {0, 2}, out), VendingMachine.Response.TOO_BIG_CHANGE);
+        Assertions.assertEquals(engine.makeChange(3, new int[] {0, 2}, out), VendingMachine.Response.UNSUITABLE_CHANGE);
+        Assertions.assertEquals(engine.makeChange(7, new int[] {4, 2}, out), VendingMachine.Response.OK);
+        Assertions.assertArrayEquals(out, new int[] {3, 2});
+        Assertions.assertEquals(engine.makeChange(5, new int[] {4, 3}, out), VendingMachine.Response.OK);
+        Assertions.assertArrayEquals(out, new int[] {1, 2});
+    }
+
+    @Test
+    public void testTableEngineFindsChangeGreedyMisses() {
+        ChangeEngine engine = ChangeEngine.forCoins(new int[] {4, 3}, new int[] {10, 10});
+        int[] out = new int[2];
+        Assertions.assertEquals(engine.makeChange(6, new int[] {1, 2}, out), VendingMachine.Response.OK);
+        Assertions.assertArrayEquals(out, new int[] {0, 2});
+        Assertions.assertEquals(engine.makeChange(5, new int[] {1, 2}, out), VendingMachine.Response.UNSUITABLE_CHANGE);
+    }
+
+    @Test
+    public void testInvalidCoinSets() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> ChangeEngine.forCoins(new int[] {1, 1}, new int[] {5, 5}));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> ChangeEngine.forCoins(new int[] {0, 2}, new int[] {5, 5}));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> ChangeEngine.forCoins(new int[] {1, 2}, new int[] {5}));
+    }
+
+    @Test
+    public void testMatchesExhaustiveSearch() {
+        int[][] systems = {{1, 2}, {1, 5, 10, 25}, {3, 5, 7}, {1, 3, 4}, {25, 10, 1}, {6, 9, 20}};
+        Random random = new Random(3);
+        for (int[] values : systems) {
+            int[] capacities = new int[values.length];
+            Arrays.fill(capacities, 12);
+            ChangeEngine engine = ChangeEngine.forCoins(values, capacities);
+            int[] coins = new int[values.length];
+            int[] out = new int[values.length];
+            for (int trial = 0; trial < 2000; ++trial) {
+                int total = 0;
+                for (int i = 0; i < coins.length; ++i) {
+                    coins[i] = random.nextInt(capacities[i] + 1);
+                    total += coins[i] * values[i];
+                }
+                int amount = random.nextInt(total + 10);
+                VendingMachine.Response response = engine.makeChange(amount, coins, out);
+                if (amount > total) {
+                    Assertions.assertEquals(response, VendingMachine.Response.TOO_BIG_CHANGE);
+                } else if (!payable(amount, values, coins, 0)) {
+                    Assertions.assertEquals(response, VendingMachine.Response.UNSUITABLE_CHANGE);
+                } else {
+                    Assertions.assertEquals(response, VendingMachine.Response.OK);
+                    int paid = 0;
+                    for (int i = 0; i < coins.length; ++i) {
+                        Assertions.assertTrue(out[i] >= 0 && out[i] <= coins[i]);
+                        paid += out[i] * values[i];
+                    }
+                    Assertions.assertEquals(amount, paid);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPreservingKeepsTheFlexibleMix() {
+        int[] values = {2, 3};
+        int[] capacities = {10, 10};
+        int[] out = new int[2];
+        ChangeEngine table = ChangeEngine.forCoins(values, capacities);
+        Assertions.assertEquals(table.makeChange(6, new int[] {5, 2}, out), VendingMachine.Response.OK);
+        Assertions.assertArrayEquals(out, new int[] {0, 2});
+
+        // paying 6 with three 2s keeps 2, 3, 4 and 5 payable instead of only 2 and 4
+        ChangeEngine preserving = ChangeEngine.preserving(values, capacities);
+        Assertions.assertEquals(preserving.makeChange(6, new int[] {5, 2}, out), VendingMachine.Response.OK);
+        Assertions.assertArrayEquals(out, new int[] {3, 0});
+        Assertions.assertEquals(preserving.makeChange(1, new int[] {5, 2}, out), VendingMachine.Response.UNSUITABLE_CHANGE);
+        Assertions.assertEquals(preserving.makeChange(17, new int[] {5, 2}, out), VendingMachine.Response.TOO_BIG_CHANGE);
+        Assertions.assertArrayEquals(preserving.denominations(), values);
+
+        // if only 4 matters, both mixes keep it payable and the one with fewer coins wins
+        int[] weights = new int[5];
+        weights[4] = 1;
+        ChangeEngine weighted = ChangeEngine.preserving(values, capacities, weights);
+        Assertions.assertEquals(weighted.makeChange(6, new int[] {5, 2}, out), VendingMachine.Response.OK);
+        Assertions.assertArrayEquals(out, new int[] {0, 2});
+    }
+
+    @Test
+    public void testPreservingMatchesGreedyForDefaultCoins() {
+        ChangeEngine greedy = ChangeEngine.forCoins(new int[] {1, 2}, new int[] {50, 50});
+        ChangeEngine preserving = ChangeEngine.preserving(new int[] {1, 2}, new int[] {50, 50});
+        int[] coins = new int[2];
+        int[] expected = new int[2];
+        int[] out = new int[2];
+        for (coins[0] = 0; coins[0] <= 50; coins[0] += 7) {
+            for (coins[1] = 0; coins[1] <= 50; coins[1] += 3) {
+                for (int amount = 0; amount <= 160; amount++) {
+                    VendingMachine.Response response = greedy.makeChange(amount, coins, expected);
+                    Assertions.assertEquals(response, preserving.makeChange(amount, coins, out));
+                    if (response == VendingMachine.Response.OK) Assertions.assertArrayEquals(expected, out);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPreservingMatchesExhaustiveSearch() {
+        int[][] systems = {{1, 2}, {2, 3}, {3, 5}, {5, 1}, {4, 6}};
+        Random random = new Random(5);
+        for (int[] values : systems) {
+            int[] capacities = {12, 9};
+            ChangeEngine engine = ChangeEngine.preserving(values, capacities);
+            int[] coins = new int[2];
+            int[] out = new int[2];
+            for (int trial = 0; trial < 2000; ++trial) {
+                // past the capacities the engine plans without its table
+                coins[0] = random.nextInt(capacities[0] + 4);
+                coins[1] = random.nextInt(capacities[1] + 4);
+                int total = coins[0] * values[0] + coins[1] * values[1];
+                int amount = random.nextInt(total + 10);
+                VendingMachine.Response response = engine.makeChange(amount, coins, out);
+                if (amount > total) {
+                    Assertions.assertEquals(response, VendingMachine.Response.TOO_BIG_CHANGE);
+                } else if (!payable(amount, values, coins, 0)) {
+                    Assertions.assertEquals(response, VendingMachine.Response.UNSUITABLE_CHANGE);
+                } else {
+                    Assertions.assertEquals(response, VendingMachine.Response.OK);
+                    Assertions.assertTrue(out[0] >= 0 && out[0] <= coins[0] && out[1] >= 0 && out[1] <= coins[1]);
+                    Assertions.assertEquals(amount, out[0] * values[0] + out[1] * values[1]);
+                }
+            }
+        }
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> ChangeEngine.preserving(new int[] {1, 2, 5}, new int[] {5, 5, 5}));
+    }
+
+    private static boolean payable(int amount, int[] values, int[] coins, int from) {
+        if (amount == 0) {
+            return true;
+        }
+        if (from == values.length) {
+            return false;
+        }
+        for (int n = 0; n <= coins[from] && n * values[from] <= amount; ++n) {
+            if (payable(amount - n * values[from], values, coins, from + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
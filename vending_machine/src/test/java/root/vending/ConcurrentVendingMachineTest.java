@@ -0,0 +1,159 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class ConcurrentVendingMachineTest {
+
+    private ConcurrentVendingMachine machine;
+
+    @BeforeEach
+    public void createMachineTest() {
+        machine = new ConcurrentVendingMachine();
+    }
+
+    @Test
+    public void testInitialValues() {
+        Assertions.assertEquals(machine.getCoins1(), 0);
+        Assertions.assertEquals(machine.getCoins2(), 0);
+        Assertions.assertEquals(machine.getNumberOfProduct1(), 0);
+        Assertions.assertEquals(machine.getNumberOfProduct2(), 0);
+        Assertions.assertEquals(machine.getPrice1(), 8);
+        Assertions.assertEquals(machine.getPrice2(), 5);
+        Assertions.assertEquals(machine.getCurrentMode(), VendingMachine.Mode.OPERATION);
+    }
+
+    @Test
+    public void testGiveProduct1WithChange() {
+        machine.enterAdminMode(code);
+        machine.fillProducts();
+        machine.setPrices(4, 1);
+        machine.fillCoins(4, 3);
+        machine.exitAdminMode();
+        for (int i = 0; i < 8; ++i) {
+            machine.putCoin1();
+        }
+        Assertions.assertEquals(machine.giveProduct1(1), VendingMachine.Response.OK);
+        Assertions.assertEquals(machine.getCurrentBalance(), 0);
+        Assertions.assertEquals(machine.getNumberOfProduct1(), 29);
+        machine.enterAdminMode(code);
+        Assertions.assertEquals(machine.getCoins1(), 12);
+        Assertions.assertEquals(machine.getCoins2(), 1);
+    }
+
+    @Test
+    public void testSameResponsesAsVendingMachine() {
+        Random random = new Random(42);
+        for (int run = 0; run < 200; ++run) {
+            MachineTesting.Subject expected = MachineTesting.subject(new VendingMachine());
+            MachineTesting.Subject actual = subject(new ConcurrentVendingMachine());
+            for (int step = 0; step < 500; ++step) {
+                MachineTesting.step(expected, actual, random);
+            }
+        }
+    }
+
+    private static MachineTesting.Subject subject(ConcurrentVendingMachine m) {
+        return new MachineTesting.Subject() {
+            @Override
+            public VendingMachine.Response apply(Operation operation, long arg1, int arg2) {
+                switch (operation) {
+                    case PUT_COIN1: return m.putCoin1();
+                    case PUT_COIN2: return m.putCoin2();
+                    case GIVE_PRODUCT1: return m.giveProduct1((int) arg1);
+                    case GIVE_PRODUCT2: return m.giveProduct2((int) arg1);
+                    case RETURN_MONEY: return m.returnMoney();
+                    case ENTER_ADMIN_MODE: return m.enterAdminMode(arg1);
+                    case EXIT_ADMIN_MODE: m.exitAdminMode(); return null;
+                    case FILL_PRODUCTS: return m.fillProducts();
+                    case FILL_COINS: return m.fillCoins((int) arg1, arg2);
+                    case SET_PRICES: return m.setPrices((int) arg1, arg2);
+                    default: throw new IllegalArgumentException(operation.name());
+                }
+            }
+
+            @Override
+            public int[] state() {
+                return new int[] {m.getCurrentBalance(), m.getCurrentMode().ordinal(), m.getCurrentSum(),
+                        m.getCoins1(), m.getCoins2(), m.getNumberOfProduct1(), m.getNumberOfProduct2(),
+                        m.getPrice1(), m.getPrice2()};
+            }
+        };
+    }
+
+    @Test
+    public void testConcurrentSalesConserveMoney() throws InterruptedException {
+        machine.enterAdminMode(code);
+        machine.fillProducts();
+        machine.setPrices(3, 2);
+        machine.fillCoins(20, 20);
+        int initialSum = machine.getCurrentSum();
+        machine.exitAdminMode();
+
+        int threads = 8;
+        AtomicLong revenue = new AtomicLong();
+        AtomicLong sold1 = new AtomicLong();
+        AtomicLong sold2 = new AtomicLong();
+        AtomicBoolean torn = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            long seed = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 50_000; ++i) {
+                    switch (random.nextInt(6)) {
+                        case 0: machine.putCoin1(); break;
+                        case 1: machine.putCoin2(); break;
+                        case 2:
+                            if (machine.giveProduct1(1) == VendingMachine.Response.OK) {
+                                sold1.incrementAndGet();
+                                revenue.addAndGet(3);
+                            }
+                            break;
+                        case 3:
+                            if (machine.giveProduct2(1) == VendingMachine.Response.OK) {
+                                sold2.incrementAndGet();
+                                revenue.addAndGet(2);
+                            }
+                            break;
+                        case 4: machine.returnMoney(); break;
+                        default:
+                            int balance = machine.getCurrentBalance();
+                            if (balance < 0 || balance > 150) {
+                                torn.set(true);
+                            }
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        Assertions.assertFalse(torn.get());
+        Assertions.assertEquals(30 - sold1.get(), machine.getNumberOfProduct1());
+        Assertions.assertEquals(40 - sold2.get(), machine.getNumberOfProduct2());
+        while (machine.returnMoney() != VendingMachine.Response.OK) {
+            machine.putCoin1();
+        }
+        Assertions.assertEquals(VendingMachine.Response.OK, machine.enterAdminMode(code));
+        Assertions.assertEquals(initialSum + revenue.get(), machine.getCurrentSum());
+    }
+}
@@ -0,0 +1,116 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import root.vending.VendingMachine.Mode;
+
+
+public class FleetQueryTest {
+
+    private static final int MACHINES = 200;
+
+    private MachineRegistry registry;
+    private FleetQuery query;
+
+    @BeforeEach
+    public void createFleetTest() {
+        registry = new MachineRegistry();
+        for (int i = 0; i < MACHINES; i++) {
+            VendingMachine machine = new VendingMachine();
+            machine.enterAdminMode(code);
+            machine.fillProducts();
+            machine.fillCoins(1 + i % 50, 1 + i % 50);
+            machine.exitAdminMode();
+            registry.register(1000 + i, machine);
+        }
+        query = new FleetQuery(registry);
+    }
+
+    @Test
+    public void testTotals() {
+        long cash = 0;
+        for (int i = 0; i < MACHINES; i++) cash += 3L * (1 + i % 50);
+        Assertions.assertEquals(cash, query.totalCash());
+        Assertions.assertEquals(0, query.totalBalance());
+
+        registry.get(1005).putCoin2();
+        registry.get(1006).putCoin1();
+        Assertions.assertEquals(cash + 3, query.totalCash());
+        Assertions.assertEquals(3, query.totalBalance());
+        Assertions.assertEquals(MACHINES, query.snapshot().size());
+        Assertions.assertEquals(Mode.OPERATION, query.snapshot().get(1005L).getMode());
+    }
+
+    @Test
+    public void testFilters() {
+        VendingMachine machine = registry.get(1010);
+        machine.enterAdminMode(code);
+        machine.setPrices(8, 1);
+        machine.exitAdminMode();
+        for (int i = 0; i < 36; i++) {
+            machine.putCoin1();
+            machine.giveProduct2(1);
+        }
+        Assertions.assertEquals(Arrays.asList(1010L), query.lowOnProduct2(5));
+        Assertions.assertTrue(query.lowOnProduct1(5).isEmpty());
+        Assertions.assertEquals(MACHINES, query.count(s -> s.getNumberOfProduct1() == 30));
+        Assertions.assertEquals(4, query.count(s -> s.getCoins2() == 1));
+        Assertions.assertEquals(1, query.find(s -> s.getPrice2() == 1).size());
+    }
+
+    @Test
+    public void testCannotMakeChange() {
+        Assertions.assertTrue(query.cannotMakeChange().isEmpty());
+
+        VendingMachine machine = registry.get(1000);
+        machine.putCoin2();
+        machine.putCoin2();
+        machine.putCoin2();
+        Assertions.assertEquals(VendingMachine.Response.OK, machine.giveProduct2(1));
+        Assertions.assertEquals(0, machine.captureState().getCoins1());
+        Assertions.assertEquals(Arrays.asList(1000L), query.cannotMakeChange());
+    }
+
+    @Test
+    public void testConsistentWhileSelling() throws Exception {
+        long initial = query.totalCash();
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread[] kiosks = new Thread[3];
+        for (int t = 0; t < kiosks.length; t++) {
+            int first = t;
+            kiosks[t] = new Thread(() -> {
+                for (int round = 0; !stop.get(); round++) {
+                    VendingMachine machine = registry.get(1000 + (first + 3 * round) % MACHINES);
+                    synchronized (machine) {
+                        machine.putCoin1();
+                    }
+                    synchronized (machine) {
+                        machine.returnMoney();
+                    }
+                }
+            });
+            kiosks[t].start();
+        }
+        try {
+            for (int i = 0; i < 200; i++) {
+                Map<Long, MachineState> states = query.snapshot();
+                long held = 0;
+                for (MachineState s : states.values()) {
+                    held += s.getCoins1() + 2L * s.getCoins2() - s.getBalance();
+                }
+                Assertions.assertEquals(initial, held);
+            }
+        } finally {
+            stop.set(true);
+            for (Thread kiosk : kiosks) kiosk.join();
+        }
+    }
+}
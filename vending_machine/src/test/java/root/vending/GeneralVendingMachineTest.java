@@ -0,0 +1,88 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+
+public class GeneralVendingMachineTest {
+
+    private static GeneralVendingMachine defaultMachine() {
+        return new GeneralVendingMachine(code, new int[] {30, 40}, new int[] {8, 5},
+                new int[] {1, 2}, new int[] {50, 50});
+    }
+
+    @Test
+    public void testThreeSlotsWithNonGreedyCoins() {
+        GeneralVendingMachine machine = new GeneralVendingMachine(code, new int[] {10, 10, 10}, new int[] {2, 5, 7},
+                new int[] {4, 3}, new int[] {20, 20});
+        machine.enterAdminMode(code);
+        machine.fillProducts();
+        machine.fillCoins(1, 2);
+        machine.exitAdminMode();
+        machine.putCoin(0);
+        machine.putCoin(0);
+        machine.putCoin(0);
+        Assertions.assertEquals(machine.getCurrentBalance(), 12);
+        Assertions.assertEquals(machine.giveProduct(2, 1), VendingMachine.Response.UNSUITABLE_CHANGE);
+        Assertions.assertEquals(machine.giveProduct(0, 3), VendingMachine.Response.OK);
+        Assertions.assertEquals(machine.getNumberOfProduct(0), 7);
+        machine.enterAdminMode(code);
+        Assertions.assertEquals(machine.getCoins(0), 4);
+        Assertions.assertEquals(machine.getCoins(1), 0);
+        Assertions.assertEquals(machine.getCurrentSum(), 16);
+    }
+
+    @Test
+    public void testInvalidSlotAndCoinType() {
+        GeneralVendingMachine machine = defaultMachine();
+        Assertions.assertEquals(machine.putCoin(2), VendingMachine.Response.INVALID_PARAM);
+        Assertions.assertEquals(machine.giveProduct(-1, 1), VendingMachine.Response.INVALID_PARAM);
+        machine.enterAdminMode(code);
+        Assertions.assertEquals(machine.setPrices(1, 2, 3), VendingMachine.Response.INVALID_PARAM);
+        Assertions.assertEquals(machine.fillCoins(1), VendingMachine.Response.INVALID_PARAM);
+    }
+
+    @Test
+    public void testDefaultConfigurationMatchesVendingMachine() {
+        Random random = new Random(11);
+        for (int run = 0; run < 200; ++run) {
+            MachineTesting.Subject expected = MachineTesting.subject(new VendingMachine());
+            MachineTesting.Subject actual = subject(defaultMachine());
+            for (int step = 0; step < 500; ++step) {
+                MachineTesting.step(expected, actual, random);
+            }
+        }
+    }
+
+    private static MachineTesting.Subject subject(GeneralVendingMachine m) {
+        return new MachineTesting.Subject() {
+            @Override
+            public VendingMachine.Response apply(Operation operation, long arg1, int arg2) {
+                switch (operation) {
+                    case PUT_COIN1: return m.putCoin(0);
+                    case PUT_COIN2: return m.putCoin(1);
+                    case GIVE_PRODUCT1: return m.giveProduct(0, (int) arg1);
+                    case GIVE_PRODUCT2: return m.giveProduct(1, (int) arg1);
+                    case RETURN_MONEY: return m.returnMoney();
+                    case ENTER_ADMIN_MODE: return m.enterAdminMode(arg1);
+                    case EXIT_ADMIN_MODE: m.exitAdminMode(); return null;
+                    case FILL_PRODUCTS: return m.fillProducts();
+                    case FILL_COINS: return m.fillCoins((int) arg1, arg2);
+                    case SET_PRICES: return m.setPrices((int) arg1, arg2);
+                    default: throw new IllegalArgumentException(operation.name());
+                }
+            }
+
+            @Override
+            public int[] state() {
+                return new int[] {m.getCurrentBalance(), m.getCurrentMode().ordinal(), m.getCurrentSum(),
+                        m.getCoins(0), m.getCoins(1), m.getNumberOfProduct(0), m.getNumberOfProduct(1),
+                        m.getPrice(0), m.getPrice(1)};
+            }
+        };
+    }
+}
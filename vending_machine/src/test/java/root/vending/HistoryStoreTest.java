@@ -0,0 +1,317 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import root.vending.VendingMachine.Response;
+
+
+public class HistoryStoreTest {
+
+    private static final long HOUR = 3_600_000L;
+
+    private Path directory;
+
+    @BeforeEach
+    public void createDirectoryTest() throws IOException {
+        directory = Files.createTempDirectory("history");
+    }
+
+    @AfterEach
+    public void deleteDirectoryTest() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static final class Row {
+        final long time, machine;
+        final Operation operation;
+        final Response response;
+        final int units, amount, coins1, coins2;
+
+        Row(long time, long machine, Operation operation, Response response, int units, int amount, int coins1, int coins2) {
+            this.time = time;
+            this.machine = machine;
+            this.operation = operation;
+            this.response = response;
+            this.units = units;
+            this.amount = amount;
+            this.coins1 = coins1;
+            this.coins2 = coins2;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            Row r = (Row) o;
+            return time == r.time && machine == r.machine && operation == r.operation && response == r.response
+                    && units == r.units && amount == r.amount && coins1 == r.coins1 && coins2 == r.coins2;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(time);
+        }
+
+        @Override
+        public String toString() {
+            return time + " " + machine + " " + operation + " " + response + " " + units + " " + amount;
+        }
+    }
+
+    private static List<Row> randomRows(int count, long seed) {
+        Random random = new Random(seed);
+        Operation[] operations = Operation.values();
+        Response[] responses = Response.values();
+        List<Row> rows = new ArrayList<>();
+        long time = 1_700_000_000_000L;
+        for (int i = 0; i < count; i++) {
+            time += random.nextInt(20_000);
+            Operation operation = operations[random.nextInt(operations.length)];
+            Response response = random.nextInt(4) == 0 ? responses[random.nextInt(responses.length)] : Response.OK;
+            rows.add(new Row(time, 1000 + random.nextInt(12), operation, response, random.nextInt(4),
+                    random.nextInt(100), random.nextInt(5), random.nextInt(5)));
+        }
+        return rows;
+    }
+
+    private static void appendAll(HistoryStore store, List<Row> rows) throws IOException {
+        for (Row r : rows) {
+            store.append(r.time, r.machine, r.operation, r.response, r.units, r.amount, r.coins1, r.coins2);
+        }
+    }
+
+    private static List<Row> scan(HistoryStore store, long from, long to, long machine) {
+        List<Row> rows = new ArrayList<>();
+        store.scan(from, to, machine, (time, id, operation, response, units, amount, coins1, coins2) ->
+                rows.add(new Row(time, id, operation, response, units, amount, coins1, coins2)));
+        return rows;
+    }
+
+    @Test
+    public void testScanReturnsWhatWasAppended() throws IOException {
+        List<Row> rows = randomRows(5000, 1);
+        try (HistoryStore store = HistoryStore.open(directory, 700, System::currentTimeMillis)) {
+            appendAll(store, rows);
+            store.flush();
+            Assertions.assertEquals(rows.size(), store.size());
+            Assertions.assertEquals(rows, scan(store, Long.MIN_VALUE, Long.MAX_VALUE, HistoryStore.ANY_MACHINE));
+            Assertions.assertTrue(store.sizeOnDisk() < rows.size() * 8L, "bytes: " + store.sizeOnDisk());
+        }
+    }
+
+    @Test
+    public void testFiltersByTimeAndMachine() throws IOException {
+        List<Row> rows = randomRows(5000, 2);
+        try (HistoryStore store = HistoryStore.open(directory, 512, System::currentTimeMillis)) {
+            appendAll(store, rows);
+            store.flush();
+
+            long from = rows.get(1234).time;
+            long to = rows.get(3456).time;
+            List<Row> expected = new ArrayList<>();
+            for (Row r : rows) {
+                if (r.time >= from && r.time < to && r.machine == 1005) expected.add(r);
+            }
+            Assertions.assertEquals(expected, scan(store, from, to, 1005));
+            Assertions.assertTrue(scan(store, from, to, 42).isEmpty());
+        }
+    }
+
+    @Test
+    public void testRevenuePerHour() throws IOException {
+        List<Row> rows = randomRows(20000, 3);
+        try (HistoryStore store = HistoryStore.open(directory, 4096, System::currentTimeMillis)) {
+            appendAll(store, rows);
+            store.flush();
+
+            long from = rows.get(100).time;
+            long to = rows.get(19000).time;
+            for (long machine : new long[]{HistoryStore.ANY_MACHINE, 1003}) {
+                long[][] expected = new long[(int) ((to - from + HOUR - 1) / HOUR)][2];
+                for (Row r : rows) {
+                    if (r.time < from || r.time >= to || r.response != Response.OK) continue;
+                    if (machine != HistoryStore.ANY_MACHINE && r.machine != machine) continue;
+                    if (r.operation == Operation.GIVE_PRODUCT1) expected[(int) ((r.time - from) / HOUR)][0] += r.amount;
+                    if (r.operation == Operation.GIVE_PRODUCT2) expected[(int) ((r.time - from) / HOUR)][1] += r.amount;
+                }
+                long[][] actual = store.revenuePerHour(from, to, machine);
+                Assertions.assertEquals(expected.length, actual.length);
+                for (int h = 0; h < expected.length; h++) {
+                    Assertions.assertEquals(expected[h][0], actual[h][0]);
+                    Assertions.assertEquals(expected[h][1], actual[h][1]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReopensSegments() throws IOException {
+        List<Row> rows = randomRows(3000, 4);
+        try (HistoryStore store = HistoryStore.open(directory, 1000, System::currentTimeMillis)) {
+            appendAll(store, rows.subList(0, 2500));
+        }
+        try (HistoryStore store = HistoryStore.open(directory, 1000, System::currentTimeMillis)) {
+            Assertions.assertEquals(2500, store.size());
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> store.append(rows.get(0).time, 1, Operation.PUT_COIN1, Response.OK, 0, 1, 0, 0));
+            appendAll(store, rows.subList(2500, 3000));
+        }
+        try (HistoryStore store = HistoryStore.open(directory)) {
+            Assertions.assertEquals(rows, scan(store, Long.MIN_VALUE, Long.MAX_VALUE, HistoryStore.ANY_MACHINE));
+        }
+    }
+
+    @Test
+    public void testRecordsMachineOperations() throws IOException {
+        long[] now = {HOUR};
+        try (HistoryStore store = HistoryStore.open(directory, 100, () -> now[0])) {
+            VendingMachine machine = MachineTesting.stocked(10, 10);
+            store.attach(9, machine);
+
+            for (int i = 0; i < 5; i++) machine.putCoin2();
+            machine.giveProduct1(1);
+            now[0] += HOUR;
+            machine.putCoin2();
+            machine.putCoin2();
+            machine.putCoin2();
+            machine.giveProduct2(1);
+            store.flush();
+
+            long[][] revenue = store.revenuePerHour(HOUR, 3 * HOUR, 9);
+            Assertions.assertEquals(8, revenue[0][0]);
+            Assertions.assertEquals(0, revenue[0][1]);
+            Assertions.assertEquals(5, revenue[1][1]);
+
+            List<Row> rows = scan(store, 0, Long.MAX_VALUE, 9);
+            Assertions.assertEquals(10, rows.size());
+            Assertions.assertEquals(new Row(HOUR, 9, Operation.GIVE_PRODUCT1, Response.OK, 1, 8, 0, 1), rows.get(5));
+            Assertions.assertEquals(new Row(2 * HOUR, 9, Operation.GIVE_PRODUCT2, Response.OK, 1, 5, 1, 0), rows.get(9));
+        }
+    }
+
+    @Test
+    public void testRecordsRevenueAtThePriceCharged() throws IOException {
+        try (HistoryStore store = HistoryStore.open(directory, 100, () -> HOUR)) {
+            VendingMachine machine = MachineTesting.stocked(10, 10);
+            PriceBoard board = new PriceBoard(8, 5);
+            machine.setPriceBoard(board);
+            board.publish(3, 5);
+            // reprices before the store hears of the sale
+            machine.setListener((m, operation, arg1, arg2, receipt) -> {
+                if (operation == Operation.GIVE_PRODUCT1) board.publish(6, 5);
+            });
+            store.attach(9, machine);
+
+            for (int i = 0; i < 3; i++) machine.putCoin1();
+            Assertions.assertEquals(Response.OK, machine.giveProduct1(1));
+            store.flush();
+
+            Assertions.assertEquals(6, machine.getPrice1());
+            Assertions.assertEquals(3, store.revenuePerHour(HOUR, 2 * HOUR, 9)[0][0]);
+        }
+    }
+
+    @Test
+    public void testRecordsStampedMachines() throws IOException, InterruptedException {
+        try (HistoryStore store = HistoryStore.open(directory, 100, () -> HOUR)) {
+            StampedVendingMachine machine = new StampedVendingMachine();
+            machine.enterAdminMode(code);
+            machine.fillProducts();
+            machine.fillCoins(10, 10);
+            machine.exitAdminMode();
+            store.attach(9, machine);
+
+            Thread seller = new Thread(() -> {
+                for (int i = 0; i < 3; i++) machine.putCoin2();
+                machine.giveProduct2(1);
+                machine.returnMoney();
+            });
+            seller.setDaemon(true);
+            seller.start();
+            seller.join(10_000);
+            Assertions.assertFalse(seller.isAlive(), "sale deadlocked");
+            store.flush();
+
+            Assertions.assertEquals(5, store.revenuePerHour(HOUR, 2 * HOUR, 9)[0][1]);
+            List<Row> rows = scan(store, 0, Long.MAX_VALUE, 9);
+            Assertions.assertEquals(5, rows.size());
+            Assertions.assertEquals(new Row(HOUR, 9, Operation.GIVE_PRODUCT2, Response.OK, 1, 5, 1, 0), rows.get(3));
+        }
+    }
+
+    @Test
+    public void testAttachedMachinesNeverSeeStoreErrors() throws IOException {
+        long[] now = {HOUR};
+        VendingMachine machine = MachineTesting.stocked(10, 10);
+        try (HistoryStore store = HistoryStore.open(directory, 2, () -> now[0])) {
+            store.attach(9, machine);
+            Files.createDirectory(directory.resolve("segment-00000000.col"));
+            machine.putCoin2();
+            now[0]--;
+            for (int i = 0; i < 3; i++) machine.putCoin2();
+            Assertions.assertEquals(Response.OK, machine.giveProduct1(1));
+            Assertions.assertThrows(IOException.class, store::flush);
+            Assertions.assertEquals(1, store.getSealFailures());
+
+            List<Row> rows = scan(store, 0, Long.MAX_VALUE, 9);
+            Assertions.assertEquals(3, rows.size());
+            for (Row row : rows) Assertions.assertEquals(HOUR, row.time);
+        }
+        Assertions.assertEquals(Response.OK, machine.putCoin2());
+        Assertions.assertEquals(2, machine.getCurrentBalance());
+    }
+
+    @Test
+    public void testSealsWhileAppending() throws IOException {
+        List<Row> rows = randomRows(20000, 5);
+        try (HistoryStore store = HistoryStore.open(directory, 64, System::currentTimeMillis)) {
+            appendAll(store, rows);
+            Assertions.assertTrue(store.size() <= rows.size());
+            store.flush();
+            Assertions.assertEquals(rows.size(), store.size());
+            Assertions.assertEquals(rows, scan(store, Long.MIN_VALUE, Long.MAX_VALUE, HistoryStore.ANY_MACHINE));
+        }
+    }
+
+    @Test
+    public void testReportsSegmentsThatFailToSeal() throws IOException {
+        List<Row> rows = randomRows(300, 6);
+        try (HistoryStore store = HistoryStore.open(directory, 100, System::currentTimeMillis)) {
+            // a directory where the first segment should go
+            Files.createDirectory(directory.resolve("segment-00000000.col"));
+            appendAll(store, rows.subList(0, 100));
+            Assertions.assertThrows(IOException.class, store::flush);
+            Assertions.assertEquals(1, store.getSealFailures());
+            appendAll(store, rows.subList(100, 200));
+            store.flush();
+            Assertions.assertEquals(100, store.size());
+        }
+        Files.delete(directory.resolve("segment-00000000.col"));
+        try (HistoryStore store = HistoryStore.open(directory, 100, System::currentTimeMillis)) {
+            appendAll(store, rows.subList(200, 300));
+        }
+        try (HistoryStore store = HistoryStore.open(directory)) {
+            Assertions.assertEquals(rows.subList(100, 300), scan(store, Long.MIN_VALUE, Long.MAX_VALUE, HistoryStore.ANY_MACHINE));
+        }
+    }
+
+    @Test
+    public void testRejectsDamagedSegments() throws IOException {
+        Files.write(directory.resolve("segment-00000000.col"), new byte[100]);
+        Assertions.assertThrows(IOException.class, () -> HistoryStore.open(directory));
+    }
+}
@@ -0,0 +1,156 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class LazyFleetTest {
+
+    private Path directory;
+
+    @BeforeEach
+    public void createDirectoryTest() throws IOException {
+        directory = Files.createTempDirectory("snapshot");
+    }
+
+    @AfterEach
+    public void deleteDirectoryTest() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static List<VendingMachine> randomFleet(int size, long seed) {
+        Random random = new Random(seed);
+        List<VendingMachine> fleet = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            VendingMachine machine = new VendingMachine();
+            machine.enterAdminMode(code);
+            machine.fillProducts();
+            machine.setPrices(1 + random.nextInt(9), 1 + random.nextInt(9));
+            machine.fillCoins(1 + random.nextInt(50), 1 + random.nextInt(50));
+            machine.exitAdminMode();
+            for (int k = random.nextInt(8); k > 0; k--) {
+                machine.putCoin2();
+                machine.giveProduct1(1 + random.nextInt(2));
+            }
+            if (random.nextInt(4) == 0) machine.putCoin1();
+            if (random.nextInt(4) == 0) machine.enterAdminMode(code);
+            fleet.add(machine);
+        }
+        return fleet;
+    }
+
+    @Test
+    public void testRestoresEveryMachine() throws IOException {
+        List<VendingMachine> fleet = randomFleet(500, 7);
+        Path file = directory.resolve("fleet.snap");
+        FleetSnapshot.write(file, fleet);
+
+        LazyFleet restored = LazyFleet.open(file);
+        Assertions.assertEquals(fleet.size(), restored.size());
+        for (int i = 0; i < fleet.size(); i++) {
+            Assertions.assertEquals(fleet.get(i).captureState(), restored.get(i).captureState());
+        }
+    }
+
+    @Test
+    public void testKeepsWhetherPricesAreConfigured() throws IOException {
+        VendingMachine priced = new VendingMachine();
+        priced.enterAdminMode(code);
+        priced.setPrices(8, 5);
+        priced.exitAdminMode();
+        Path file = directory.resolve("fleet.snap");
+        FleetSnapshot.write(file, List.of(new VendingMachine(), priced));
+
+        LazyFleet restored = LazyFleet.open(file);
+        Assertions.assertTrue(restored.get(0).captureState().hasConfiguredPrices());
+        Assertions.assertFalse(restored.get(1).captureState().hasConfiguredPrices());
+        Assertions.assertEquals(priced.captureState(), restored.get(1).captureState());
+    }
+
+    @Test
+    public void testMaterializesOnFirstAccess() throws IOException {
+        Path file = directory.resolve("fleet.snap");
+        FleetSnapshot.write(file, randomFleet(100, 1));
+
+        LazyFleet fleet = LazyFleet.open(file);
+        Assertions.assertEquals(0, fleet.materializedCount());
+
+        VendingMachine machine = fleet.get(42);
+        Assertions.assertTrue(fleet.isMaterialized(42));
+        Assertions.assertFalse(fleet.isMaterialized(41));
+        Assertions.assertEquals(1, fleet.materializedCount());
+        Assertions.assertSame(machine, fleet.get(42));
+    }
+
+    @Test
+    public void testWriteBackKeepsUntouchedMachines() throws IOException {
+        List<VendingMachine> original = randomFleet(300, 3);
+        Path first = directory.resolve("first.snap");
+        FleetSnapshot.write(first, original);
+
+        LazyFleet fleet = LazyFleet.open(first);
+        for (int i = 0; i < fleet.size(); i += 7) {
+            VendingMachine machine = fleet.get(i);
+            machine.exitAdminMode();
+            machine.putCoin2();
+            machine.returnMoney();
+        }
+
+        Path second = directory.resolve("second.snap");
+        fleet.writeSnapshot(second);
+        FleetSnapshot reread = FleetSnapshot.open(second);
+        Assertions.assertTrue(reread.verify());
+        for (int i = 0; i < fleet.size(); i++) {
+            MachineState expected = i % 7 == 0 ? fleet.get(i).captureState() : original.get(i).captureState();
+            Assertions.assertEquals(expected, reread.state(i));
+        }
+    }
+
+    @Test
+    public void testEmptyFleet() throws IOException {
+        Path file = directory.resolve("empty.snap");
+        FleetSnapshot.write(file, new ArrayList<>());
+
+        FleetSnapshot snapshot = FleetSnapshot.open(file);
+        Assertions.assertEquals(0, snapshot.size());
+        Assertions.assertTrue(snapshot.verify());
+    }
+
+    @Test
+    public void testRejectsDamagedFiles() throws IOException {
+        Path file = directory.resolve("fleet.snap");
+        FleetSnapshot.write(file, randomFleet(10, 5));
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1}), FleetSnapshot.HEADER_SIZE + 3);
+        }
+        Assertions.assertFalse(FleetSnapshot.open(file).verify());
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        Assertions.assertThrows(IOException.class, () -> FleetSnapshot.open(file));
+
+        Path other = directory.resolve("other.snap");
+        Files.write(other, new byte[64]);
+        Assertions.assertThrows(IOException.class, () -> FleetSnapshot.open(other));
+    }
+}
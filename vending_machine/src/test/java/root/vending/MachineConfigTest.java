@@ -0,0 +1,219 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class MachineConfigTest {
+
+    private Path directory;
+
+    @BeforeEach
+    public void createDirectoryTest() throws IOException {
+        directory = Files.createTempDirectory("config");
+    }
+
+    @AfterEach
+    public void deleteDirectoryTest() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static String properties(int max1, int price1) {
+        return "max1 = " + max1 + "\nmax2 = 40\nmaxCoins1 = 50\nmaxCoins2 = 50\n"
+             + "price1 = " + price1 + "\nprice2 = 5\ncoinValue1 = 1\ncoinValue2 = 2\n";
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testDefaultsMatchTheFactoryMachine() {
+        VendingMachine machine = new VendingMachine();
+        Assertions.assertEquals(30, machine.getMaxNumberOfProduct1());
+        Assertions.assertEquals(40, machine.getMaxNumberOfProduct2());
+        Assertions.assertEquals(50, machine.getMaxCoins1());
+        Assertions.assertEquals(50, machine.getMaxCoins2());
+        Assertions.assertEquals(8, machine.getPrice1());
+        Assertions.assertEquals(5, machine.getPrice2());
+        Assertions.assertEquals(1, machine.getCoinValue1());
+        Assertions.assertEquals(2, machine.getCoinValue2());
+    }
+
+    @Test
+    public void testParseNeedsEveryKey() {
+        Properties properties = new Properties();
+        properties.setProperty("max1", " 12 ");
+        properties.setProperty("max2", "40");
+        properties.setProperty("maxCoins1", "50");
+        properties.setProperty("maxCoins2", "50");
+        properties.setProperty("price1", "8");
+        properties.setProperty("price2", "7");
+        properties.setProperty("coinValue1", "1");
+        properties.setProperty("coinValue2", "2");
+        MachineConfig config = MachineConfig.parse(properties);
+        Assertions.assertEquals(12, config.getMax1());
+        Assertions.assertEquals(7, config.getPrice2());
+        Assertions.assertEquals(new MachineConfig(12, 40, 50, 50, 8, 7, 1, 2), config);
+
+        properties.remove("coinValue1");
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class, () -> MachineConfig.parse(properties));
+        Assertions.assertTrue(e.getMessage().contains("coinValue1"));
+    }
+
+    @Test
+    public void testRejectsInvalidConfigurations() throws IOException {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MachineConfig(0, 40, 50, 50, 8, 5, 1, 2));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MachineConfig(30, 70000, 50, 50, 8, 5, 1, 2));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MachineConfig(30, 40, 50, 50, -8, 5, 1, 2));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MachineConfig(30, 40, 50, 50, 8, 5, 2, 2));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MachineConfig(30, 40, 2_000_000, 50, 8, 5, 1, 2));
+
+        Properties properties = new Properties();
+        properties.load(new StringReader(properties(30, 8).replace("maxCoins1 = 50", "maxCoins1 = lots")));
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class, () -> MachineConfig.parse(properties));
+        Assertions.assertTrue(e.getMessage().contains("maxCoins1"));
+    }
+
+    @Test
+    public void testLoadReportsInvalidFiles() throws IOException {
+        Path file = directory.resolve("machine.properties");
+        Files.writeString(file, properties(10, 8).replace("coinValue2 = 2", "coinValue2 = 1"));
+        Assertions.assertThrows(IOException.class, () -> MachineConfig.load(file));
+
+        Files.writeString(file, "");
+        Assertions.assertThrows(IOException.class, () -> MachineConfig.load(file));
+
+        Files.writeString(file, properties(10, 8));
+        Assertions.assertEquals(10, MachineConfig.load(file).getMax1());
+    }
+
+    @Test
+    public void testRunningMachineFollowsNewVersion() {
+        ConfigReference reference = new ConfigReference(MachineConfig.DEFAULT);
+        VendingMachine machine = new VendingMachine(reference);
+        machine.enterAdminMode(code);
+        machine.fillProducts();
+        machine.exitAdminMode();
+
+        reference.set(new MachineConfig(30, 40, 3, 50, 6, 5, 1, 2));
+        Assertions.assertEquals(6, machine.getPrice1());
+        machine.putCoin1();
+        machine.putCoin1();
+        machine.putCoin1();
+        Assertions.assertEquals(VendingMachine.Response.CANNOT_PERFORM, machine.putCoin1());
+        machine.putCoin2();
+        machine.putCoin2();
+        Assertions.assertEquals(VendingMachine.Response.OK, machine.giveProduct1(1));
+        Assertions.assertEquals(29, machine.getNumberOfProduct1());
+
+        machine.enterAdminMode(code);
+        Assertions.assertEquals(VendingMachine.Response.INVALID_PARAM, machine.fillCoins(4, 1));
+        reference.set(MachineConfig.DEFAULT.withCapacities(35, 40, 50, 50));
+        machine.fillProducts();
+        Assertions.assertEquals(35, machine.getNumberOfProduct1());
+
+        machine.setPrices(9, 9);
+        reference.set(new MachineConfig(35, 40, 50, 50, 1, 1, 1, 2));
+        Assertions.assertEquals(9, machine.getPrice1());
+    }
+
+    @Test
+    public void testOwnEngineGrowsWithCoinCapacity() {
+        ConfigReference reference = new ConfigReference(new MachineConfig(30, 40, 2, 2, 1, 1, 2, 3));
+        VendingMachine machine = new VendingMachine(reference);
+        machine.enterAdminMode(code);
+        machine.fillProducts();
+        machine.fillCoins(1, 1);
+        machine.exitAdminMode();
+
+        reference.set(new MachineConfig(30, 40, 40, 40, 1, 1, 2, 3));
+        for (int i = 0; i < 30; i++) {
+            machine.putCoin1();
+            machine.putCoin2();
+        }
+        Assertions.assertEquals(150, machine.getCurrentBalance());
+        Assertions.assertEquals(VendingMachine.Response.OK, machine.giveProduct1(1));
+        Assertions.assertEquals(0, machine.getCurrentBalance());
+
+        machine.enterAdminMode(code);
+        Assertions.assertEquals(2*31 + 3*31 - 149, machine.getCurrentSum());
+    }
+
+    @Test
+    public void testWatcherSwapsInValidVersions() throws IOException, InterruptedException {
+        Path file = directory.resolve("machine.properties");
+        Files.writeString(file, properties(10, 8));
+        ConfigReference reference = new ConfigReference(MachineConfig.DEFAULT);
+        VendingMachine machine = new VendingMachine(reference);
+
+        try (ConfigWatcher watcher = ConfigWatcher.watch(file, reference)) {
+            Assertions.assertEquals(10, machine.getMaxNumberOfProduct1());
+
+            Files.writeString(file, properties(20, 3));
+            await(() -> machine.getMaxNumberOfProduct1() == 20);
+            Assertions.assertEquals(3, machine.getPrice1());
+
+            Files.writeString(file, properties(0, 3));
+            await(() -> watcher.getFailures() > 0);
+            Assertions.assertEquals(20, machine.getMaxNumberOfProduct1());
+            Assertions.assertNotNull(watcher.getLastFailure());
+
+            Path next = directory.resolve("machine.properties.tmp");
+            Files.writeString(next, properties(25, 3));
+            Files.move(next, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            await(() -> machine.getMaxNumberOfProduct1() == 25);
+            Assertions.assertTrue(watcher.getReloads() >= 2);
+        }
+    }
+
+    @Test
+    public void testWatcherRefusesNewCoinValues() throws IOException, InterruptedException {
+        Path file = directory.resolve("machine.properties");
+        Files.writeString(file, properties(10, 8));
+        ConfigReference reference = new ConfigReference(MachineConfig.DEFAULT);
+        VendingMachine machine = new VendingMachine(reference);
+
+        try (ConfigWatcher watcher = ConfigWatcher.watch(file, reference)) {
+            MachineConfig before = reference.get();
+            Files.writeString(file, properties(20, 8).replace("coinValue2 = 2", "coinValue2 = 5"));
+            await(() -> watcher.getFailures() > 0);
+            Assertions.assertSame(before, reference.get());
+            Assertions.assertEquals(0, watcher.getReloads());
+            Assertions.assertTrue(watcher.getLastFailure().getMessage().contains("coin values"));
+            Assertions.assertEquals(2, machine.getCoinValue2());
+
+            Files.writeString(file, properties(20, 8));
+            await(() -> machine.getMaxNumberOfProduct1() == 20);
+        }
+    }
+
+    @Test
+    public void testWatchRejectsInvalidFileUpFront() throws IOException {
+        Path file = directory.resolve("machine.properties");
+        Files.writeString(file, "price2 = free\n");
+        ConfigReference reference = new ConfigReference(MachineConfig.DEFAULT);
+        Assertions.assertThrows(IOException.class, () -> ConfigWatcher.watch(file, reference));
+        Assertions.assertSame(MachineConfig.DEFAULT, reference.get());
+    }
+}
@@ -0,0 +1,202 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import root.vending.VendingMachine.Response;
+
+
+public class MachineEventStreamTest {
+
+    private ExecutorService executor;
+    private VendingMachine machine;
+
+    @BeforeEach
+    public void createMachineTest() {
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            return thread;
+        });
+        machine = new VendingMachine();
+        machine.enterAdminMode(code);
+        machine.fillProducts();
+        machine.fillCoins(25, 25);
+        machine.exitAdminMode();
+    }
+
+    @AfterEach
+    public void shutdownExecutorTest() {
+        executor.shutdownNow();
+    }
+
+    private static class Collector implements Flow.Subscriber<MachineEvent> {
+        final List<MachineEvent> events = new ArrayList<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        final long initial;
+        Flow.Subscription subscription;
+        Throwable error;
+
+        Collector(long initial) {
+            this.initial = initial;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initial > 0) subscription.request(initial);
+        }
+
+        @Override
+        public synchronized void onNext(MachineEvent event) {
+            events.add(event.copy());
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+
+        synchronized List<MachineEvent> events() {
+            return new ArrayList<>(events);
+        }
+    }
+
+    @Test
+    public void testDeliversEveryOperationInOrder() throws InterruptedException {
+        MachineEventStream stream = new MachineEventStream(executor, 64, MachineEventStream.Overflow.BLOCK, 1, TimeUnit.SECONDS);
+        stream.attach(7, machine);
+        Collector collector = new Collector(Long.MAX_VALUE);
+        stream.subscribe(collector);
+
+        machine.putCoin2();
+        machine.putCoin2();
+        machine.putCoin2();
+        machine.putCoin2();
+        machine.giveProduct1(1);
+        machine.giveProduct1(1);
+        machine.enterAdminMode(code);
+        stream.close();
+
+        Assertions.assertTrue(collector.completed.await(5, TimeUnit.SECONDS));
+        List<MachineEvent> events = collector.events();
+        Assertions.assertEquals(7, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            Assertions.assertEquals(i, events.get(i).getSequence());
+            Assertions.assertEquals(7, events.get(i).getMachineId());
+            Assertions.assertSame(machine, events.get(i).getMachine());
+        }
+        Assertions.assertEquals(Operation.PUT_COIN2, events.get(0).getOperation());
+        Assertions.assertEquals(Operation.GIVE_PRODUCT1, events.get(4).getOperation());
+        Assertions.assertEquals(1, Receipt.units(events.get(4).getReceipt()));
+        Assertions.assertEquals(Response.INSUFFICIENT_MONEY, events.get(5).getResponse());
+        Assertions.assertEquals(Operation.ENTER_ADMIN_MODE, events.get(6).getOperation());
+        Assertions.assertEquals(0, stream.getDropped());
+    }
+
+    @Test
+    public void testHonoursDemand() throws InterruptedException {
+        MachineEventStream stream = new MachineEventStream(executor, 64, MachineEventStream.Overflow.DROP, 0, TimeUnit.SECONDS);
+        stream.attach(1, machine);
+        Collector collector = new Collector(3);
+        stream.subscribe(collector);
+
+        for (int i = 0; i < 10; i++) machine.putCoin1();
+        awaitIdle();
+        Assertions.assertEquals(3, collector.events().size());
+
+        collector.subscription.request(5);
+        awaitIdle();
+        Assertions.assertEquals(8, collector.events().size());
+
+        stream.close();
+        collector.subscription.request(10);
+        Assertions.assertTrue(collector.completed.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(10, collector.events().size());
+    }
+
+    @Test
+    public void testDropsWhenSubscriberFallsBehind() throws InterruptedException {
+        MachineEventStream stream = new MachineEventStream(executor, 4, MachineEventStream.Overflow.DROP, 0, TimeUnit.SECONDS);
+        stream.attach(1, machine);
+        Collector collector = new Collector(0);
+        stream.subscribe(collector);
+
+        for (int i = 0; i < 10; i++) machine.putCoin1();
+        Assertions.assertEquals(6, stream.getDropped());
+
+        collector.subscription.request(Long.MAX_VALUE);
+        awaitIdle();
+        machine.putCoin1();
+        stream.close();
+        Assertions.assertTrue(collector.completed.await(5, TimeUnit.SECONDS));
+        List<MachineEvent> events = collector.events();
+        Assertions.assertEquals(5, events.size());
+        Assertions.assertEquals(3, events.get(3).getSequence());
+        Assertions.assertEquals(10, events.get(4).getSequence());
+    }
+
+    @Test
+    public void testBlockingIsBounded() {
+        MachineEventStream stream = new MachineEventStream(executor, 2, MachineEventStream.Overflow.BLOCK, 2, TimeUnit.MILLISECONDS);
+        stream.attach(1, machine);
+        stream.subscribe(new Collector(0));
+
+        machine.putCoin1();
+        machine.putCoin1();
+        long start = System.nanoTime();
+        Assertions.assertEquals(Response.OK, machine.putCoin1());
+        long elapsed = System.nanoTime() - start;
+        Assertions.assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(2));
+        Assertions.assertTrue(elapsed < TimeUnit.SECONDS.toNanos(1));
+        Assertions.assertEquals(1, stream.getDropped());
+    }
+
+    @Test
+    public void testRejectsNonPositiveRequest() throws InterruptedException {
+        MachineEventStream stream = new MachineEventStream(executor, 4, MachineEventStream.Overflow.DROP, 0, TimeUnit.SECONDS);
+        Collector collector = new Collector(0);
+        stream.subscribe(collector);
+        collector.subscription.request(0);
+
+        Assertions.assertTrue(collector.completed.await(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(collector.error instanceof IllegalArgumentException);
+        Assertions.assertEquals(0, stream.getSubscriberCount());
+    }
+
+    @Test
+    public void testKeepsExistingListener() {
+        int[] calls = new int[1];
+        machine.setListener((m, operation, arg1, arg2, receipt) -> calls[0]++);
+        MachineEventStream stream = new MachineEventStream(executor, 4, MachineEventStream.Overflow.DROP, 0, TimeUnit.SECONDS);
+        stream.attach(1, machine);
+        machine.putCoin1();
+        Assertions.assertEquals(1, calls[0]);
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        try {
+            executor.submit(() -> { }).get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
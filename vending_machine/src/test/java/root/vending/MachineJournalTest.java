@@ -0,0 +1,316 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class MachineJournalTest {
+
+    private Path directory;
+
+    @BeforeEach
+    public void createDirectoryTest() throws IOException {
+        directory = Files.createTempDirectory("journal");
+    }
+
+    @AfterEach
+    public void deleteDirectoryTest() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static void trade(VendingMachine machine) {
+        machine.enterAdminMode(code);
+        machine.fillProducts();
+        machine.setPrices(3, 4);
+        machine.fillCoins(10, 10);
+        machine.exitAdminMode();
+        machine.putCoin2();
+        machine.putCoin2();
+        machine.giveProduct1(1);
+        machine.putCoin1();
+        machine.putCoin2();
+        machine.putCoin2();
+        machine.giveProduct2(1);
+        machine.putCoin2();
+    }
+
+    @Test
+    public void testRecoversStateAfterReopen() throws Exception {
+        VendingMachine machine = new VendingMachine();
+        try (MachineJournal journal = MachineJournal.open(directory, machine)) {
+            trade(machine);
+            journal.sync();
+        }
+        MachineState expected = machine.captureState();
+
+        VendingMachine recovered = new VendingMachine();
+        try (MachineJournal journal = MachineJournal.open(directory, recovered)) {
+            Assertions.assertEquals(expected, recovered.captureState());
+            Assertions.assertEquals(recovered.getCurrentBalance(), 2);
+            Assertions.assertEquals(recovered.enterAdminMode(code), VendingMachine.Response.CANNOT_PERFORM);
+        }
+    }
+
+    @Test
+    public void testRecoveredMachineKeepsFollowingConfiguration() throws Exception {
+        ConfigReference config = new ConfigReference(MachineConfig.DEFAULT);
+        VendingMachine machine = new VendingMachine(config);
+        try (MachineJournal journal = MachineJournal.open(directory, machine)) {
+            machine.enterAdminMode(code);
+            machine.fillProducts();
+            machine.exitAdminMode();
+            journal.checkpoint();
+            machine.putCoin2();
+        }
+
+        VendingMachine recovered = new VendingMachine(config);
+        try (MachineJournal journal = MachineJournal.open(directory, recovered)) {
+            Assertions.assertEquals(machine.captureState(), recovered.captureState());
+            config.set(new MachineConfig(30, 40, 50, 50, 6, 4, 1, 2));
+            Assertions.assertEquals(6, recovered.getPrice1());
+            Assertions.assertEquals(4, recovered.getPrice2());
+        }
+    }
+
+    @Test
+    public void testRollbackIsJournaled() throws Exception {
+        VendingMachine machine = new VendingMachine();
+        try (MachineJournal journal = MachineJournal.open(directory, machine)) {
+            StateRecorder recorder = StateRecorder.attach(machine);
+            trade(machine);
+            recorder.rollback(7);
+            machine.putCoin1();
+            journal.sync();
+        }
+        Assertions.assertEquals(5, machine.getCurrentBalance());
+
+        VendingMachine recovered = new VendingMachine();
+        try (MachineJournal journal = MachineJournal.open(directory, recovered)) {
+            Assertions.assertEquals(machine.captureState(), recovered.captureState());
+        }
+    }
+
+    @Test
+    public void testSharesTheMachineWithOtherListeners() throws Exception {
+        VendingMachine machine = new VendingMachine();
+        int[] told = {0};
+        machine.setListener((m, operation, arg1, arg2, receipt) -> told[0]++);
+        MachineJournal journal = MachineJournal.open(directory, machine);
+        trade(machine);
+        StateRecorder.attach(machine);
+        journal.close();
+        MachineState closed = machine.captureState();
+
+        Assertions.assertEquals(VendingMachine.Response.OK, machine.putCoin1());
+        Assertions.assertEquals(14, told[0]);
+        Assertions.assertEquals(3, machine.getCurrentBalance());
+
+        VendingMachine recovered = new VendingMachine();
+        try (MachineJournal reopened = MachineJournal.open(directory, recovered)) {
+            Assertions.assertEquals(closed, recovered.captureState());
+        }
+    }
+
+    @Test
+    public void testFailedOperationsAreNotJournaled() throws Exception {
+        VendingMachine machine = new VendingMachine();
+        try (MachineJournal journal = MachineJournal.open(directory, machine)) {
+            machine.fillProducts();
+            machine.giveProduct1(1);
+            machine.putCoin1();
+        }
+        VendingMachine recovered = new VendingMachine();
+        try (MachineJournal journal = MachineJournal.open(directory, recovered)) {
+            Assertions.assertEquals(machine.captureState(), recovered.captureState());
+        }
+    }
+
+    @Test
+    public void testTornRecordIsDropped() throws Exception {
+        VendingMachine machine = new VendingMachine();
+        MachineState beforeLast;
+        try (MachineJournal journal = MachineJournal.open(directory, machine)) {
+            trade(machine);
+            beforeLast = machine.captureState();
+            machine.putCoin1();
+        }
+
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            int at = 0;
+            int last = 0;
+            ByteBuffer header = ByteBuffer.allocate(4);
+            while (true) {
+                header.clear();
+                channel.read(header, at);
+                int length = header.getInt(0);
+                if (length == 0) {
+                    break;
+                }
+                last = at;
+                at += 8 + length;
+            }
+            channel.write(ByteBuffer.wrap(new byte[] {0x7F}), last + 20);
+        }
+
+        VendingMachine recovered = new VendingMachine();
+        try (MachineJournal journal = MachineJournal.open(directory, recovered)) {
+            Assertions.assertEquals(beforeLast, recovered.captureState());
+        }
+    }
+
+    @Test
+    public void testSegmentsRollOver() throws Exception {
+        VendingMachine machine = new VendingMachine();
+        try (MachineJournal journal = MachineJournal.open(directory, machine, 256, 100)) {
+            for (int i = 0; i < 20; ++i) {
+                trade(machine);
+                machine.returnMoney();
+            }
+            journal.checkpoint();
+            machine.putCoin1();
+            journal.sync();
+            Assertions.assertEquals(1, written().size());
+        }
+        VendingMachine recovered = new VendingMachine();
+        try (MachineJournal journal = MachineJournal.open(directory, recovered, 256, 100)) {
+            Assertions.assertEquals(machine.captureState(), recovered.captureState());
+        }
+    }
+
+    @Test
+    public void testPreparesTheNextSegmentAhead() throws Exception {
+        VendingMachine machine = new VendingMachine();
+        try (MachineJournal journal = MachineJournal.open(directory, machine, 256, 100)) {
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (segments().size() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            Assertions.assertEquals(2, segments().size());
+            Assertions.assertEquals(1, written().size());
+
+            for (int i = 0; i < 20; ++i) {
+                trade(machine);
+                machine.returnMoney();
+            }
+            journal.sync();
+        }
+        Assertions.assertEquals(1, segments().size());
+        VendingMachine recovered = new VendingMachine();
+        try (MachineJournal journal = MachineJournal.open(directory, recovered, 256, 100)) {
+            Assertions.assertEquals(machine.captureState(), recovered.captureState());
+        }
+    }
+
+    @Test
+    public void testRolloverDoesNotReplayTheOperationTwice() throws Exception {
+        VendingMachine machine = new VendingMachine();
+        try (MachineJournal journal = MachineJournal.open(directory, machine, 256, 100)) {
+            for (int i = 0; i < 20; ++i) {
+                trade(machine);
+                machine.returnMoney();
+            }
+            trade(machine);
+            journal.sync();
+        }
+        VendingMachine recovered = new VendingMachine();
+        try (MachineJournal journal = MachineJournal.open(directory, recovered, 256, 100)) {
+            Assertions.assertEquals(machine.captureState(), recovered.captureState());
+        }
+    }
+
+    @Test
+    public void testStampedMachineRollsOverSegments() throws Exception {
+        StampedVendingMachine machine = new StampedVendingMachine();
+        try (MachineJournal journal = MachineJournal.open(directory, machine, 256, 100)) {
+            Thread seller = new Thread(() -> {
+                for (int i = 0; i < 50; ++i) {
+                    trade(machine);
+                    machine.returnMoney();
+                }
+            });
+            seller.setDaemon(true);
+            seller.start();
+            seller.join(10_000);
+            Assertions.assertFalse(seller.isAlive(), "seller deadlocked on segment rollover");
+            journal.sync();
+        }
+        VendingMachine recovered = new VendingMachine();
+        try (MachineJournal journal = MachineJournal.open(directory, recovered, 256, 100)) {
+            Assertions.assertEquals(machine.snapshot(), recovered.captureState());
+        }
+    }
+
+    @Test
+    public void testSalesUnderPriceBoardReplayAtChargedPrice() throws Exception {
+        VendingMachine machine = new VendingMachine();
+        PriceBoard board = new PriceBoard(8, 5);
+        try (MachineJournal journal = MachineJournal.open(directory, machine)) {
+            machine.enterAdminMode(code);
+            machine.fillProducts();
+            machine.fillCoins(10, 10);
+            machine.exitAdminMode();
+            machine.setPriceBoard(board);
+            board.publish(3, 2);
+            machine.putCoin2();
+            machine.putCoin2();
+            Assertions.assertEquals(VendingMachine.Response.OK, machine.giveProduct1(1));
+            board.publish(4, 1);
+            machine.putCoin2();
+            Assertions.assertEquals(VendingMachine.Response.OK, machine.giveProduct2(2));
+            machine.putCoin1();
+            journal.sync();
+        }
+        machine.setPriceBoard(null);
+        MachineState expected = machine.captureState();
+
+        VendingMachine recovered = new VendingMachine();
+        try (MachineJournal journal = MachineJournal.open(directory, recovered)) {
+            Assertions.assertEquals(expected, recovered.captureState());
+            Assertions.assertEquals(1, recovered.getCurrentBalance());
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "journal-*.log")) {
+            for (Path p : stream) {
+                result.add(p);
+            }
+        }
+        return result;
+    }
+
+    /** Segments holding records, leaving out the one prepared ahead, which is still zeroed. */
+    private List<Path> written() throws IOException {
+        List<Path> result = new ArrayList<>();
+        for (Path p : segments()) {
+            try (FileChannel channel = FileChannel.open(p, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(4);
+                channel.read(header, 0);
+                if (header.getInt(0) != 0) {
+                    result.add(p);
+                }
+            }
+        }
+        return result;
+    }
+}
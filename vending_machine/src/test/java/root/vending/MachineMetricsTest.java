@@ -0,0 +1,137 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import root.vending.VendingMachine.Response;
+
+
+public class MachineMetricsTest {
+
+    private VendingMachine machine;
+    private MachineMetrics metrics;
+
+    @BeforeEach
+    public void createMachineTest() {
+        machine = new VendingMachine();
+        metrics = new MachineMetrics();
+        machine.setMetrics(metrics);
+    }
+
+    @Test
+    public void testCountsByResponse() {
+        machine.giveProduct1(1);
+        machine.enterAdminMode(code);
+        machine.fillProducts();
+        machine.fillCoins(1, 1);
+        machine.exitAdminMode();
+        machine.putCoin2();
+        machine.putCoin2();
+        machine.putCoin2();
+        machine.putCoin2();
+        machine.putCoin2();
+        machine.giveProduct1(1);
+        machine.giveProduct1(1);
+        machine.giveProduct2(100);
+
+        Assertions.assertEquals(1, metrics.getCount(Operation.GIVE_PRODUCT1, Response.INSUFFICIENT_PRODUCT));
+        Assertions.assertEquals(1, metrics.getCount(Operation.GIVE_PRODUCT1, Response.INSUFFICIENT_MONEY));
+        Assertions.assertEquals(1, metrics.getCount(Operation.GIVE_PRODUCT1, Response.OK));
+        Assertions.assertEquals(3, metrics.getCount(Operation.GIVE_PRODUCT1));
+        Assertions.assertEquals(1, metrics.getCount(Operation.GIVE_PRODUCT2, Response.INVALID_PARAM));
+        Assertions.assertEquals(5, metrics.getCount(Operation.PUT_COIN2, Response.OK));
+        Assertions.assertEquals(1, metrics.getCount(Operation.EXIT_ADMIN_MODE));
+        Assertions.assertEquals(3, metrics.getLatency(Operation.GIVE_PRODUCT1).getCount());
+
+        machine.setMetrics(null);
+        machine.putCoin2();
+        Assertions.assertEquals(5, metrics.getCount(Operation.PUT_COIN2));
+
+        metrics.reset();
+        Assertions.assertEquals(0, metrics.getCount(Operation.GIVE_PRODUCT1));
+        Assertions.assertEquals(0, metrics.getLatency(Operation.GIVE_PRODUCT1).getMax());
+    }
+
+    @Test
+    public void testBucketsCoverValues() {
+        for (long v = 0; v < 100000; v++) {
+            int bucket = LatencyHistogram.bucket(v);
+            Assertions.assertTrue(LatencyHistogram.lowerBound(bucket) <= v);
+            Assertions.assertTrue(LatencyHistogram.upperBound(bucket) >= v);
+        }
+        for (int b = 1; b < LatencyHistogram.BUCKETS; b++) {
+            Assertions.assertEquals(LatencyHistogram.upperBound(b - 1) + 1, LatencyHistogram.lowerBound(b));
+        }
+        Assertions.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+        Assertions.assertEquals(0, LatencyHistogram.bucket(-5));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) histogram.record(i * 100L);
+
+        Assertions.assertEquals(1000, histogram.getCount());
+        Assertions.assertEquals(50050.0, histogram.getMean(), 0.001);
+        long p50 = histogram.valueAtPercentile(50);
+        Assertions.assertTrue(p50 >= 50000 && p50 <= 50000 * 1.125, Long.toString(p50));
+        long p99 = histogram.valueAtPercentile(99);
+        Assertions.assertTrue(p99 >= 99000 && p99 <= 99000 * 1.125, Long.toString(p99));
+        Assertions.assertTrue(histogram.getMax() >= 100000 && histogram.getMax() <= 112500);
+        Assertions.assertEquals(0, new LatencyHistogram().valueAtPercentile(99));
+    }
+
+    @Test
+    public void testExportedThroughJmx() throws Exception {
+        machine.giveProduct2(1);
+        machine.putCoin1();
+
+        ObjectName name = metrics.register("test-" + System.nanoTime());
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            TabularData counts = (TabularData) server.getAttribute(name, "ResponseCounts");
+            Assertions.assertEquals(2, counts.size());
+            CompositeData row = counts.get(new Object[]{"GIVE_PRODUCT2/INSUFFICIENT_PRODUCT"});
+            Assertions.assertEquals(1L, row.get("value"));
+            Assertions.assertNotNull(server.getAttribute(name, "LatencyP99Nanos"));
+
+            server.invoke(name, "reset", null, null);
+            Assertions.assertEquals(0, metrics.getCount(Operation.PUT_COIN1));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void testSaleDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        machine.enterAdminMode(code);
+        machine.fillCoins(50, 50);
+        machine.exitAdminMode();
+
+        for (int warm = 0; warm < 3; warm++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            long after = threads.getThreadAllocatedBytes(thread);
+            long calibration = after - before;
+
+            before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < 1000; i++) {
+                machine.giveProduct1(1);
+                machine.giveProduct2(1);
+            }
+            after = threads.getThreadAllocatedBytes(thread);
+            if (warm == 2) Assertions.assertEquals(calibration, after - before);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import root.vending.VendingMachine.Response;
+
+
+public class MachinePipelineTest {
+
+    private VendingMachine machine;
+    private MachinePipeline pipeline;
+
+    @BeforeEach
+    public void createPipelineTest() {
+        machine = new VendingMachine(new ConfigReference(MachineConfig.DEFAULT.withCapacities(30, 40, 100_000, 50)));
+        pipeline = MachinePipeline.start(machine, 64);
+    }
+
+    @AfterEach
+    public void closePipelineTest() {
+        pipeline.close();
+    }
+
+    @Test
+    public void testAppliesCommandsInOrder() {
+        MachinePipeline.Ticket ticket = new MachinePipeline.Ticket();
+        Assertions.assertEquals(Response.INVALID_PARAM, Receipt.response(pipeline.call(Operation.ENTER_ADMIN_MODE, 1, 0, ticket)));
+        Assertions.assertEquals(Response.OK, Receipt.response(pipeline.call(Operation.ENTER_ADMIN_MODE, code, 0, ticket)));
+        Assertions.assertEquals(Response.OK, Receipt.response(pipeline.call(Operation.FILL_PRODUCTS, 0, 0, ticket)));
+        Assertions.assertEquals(Response.OK, Receipt.response(pipeline.call(Operation.FILL_COINS, 10, 10, ticket)));
+        Assertions.assertEquals(Response.OK, Receipt.response(pipeline.call(Operation.SET_PRICES, 3, 4, ticket)));
+        Assertions.assertEquals(Response.OK, Receipt.response(pipeline.call(Operation.EXIT_ADMIN_MODE, 0, 0, ticket)));
+
+        pipeline.call(Operation.PUT_COIN2, 0, 0, ticket);
+        pipeline.call(Operation.PUT_COIN2, 0, 0, ticket);
+        long receipt = pipeline.call(Operation.GIVE_PRODUCT1, 1, 0, ticket);
+        Assertions.assertEquals(Response.OK, Receipt.response(receipt));
+        Assertions.assertEquals(1, Receipt.units(receipt));
+        Assertions.assertEquals(1, Receipt.coins1(receipt));
+
+        synchronized (machine) {
+            Assertions.assertEquals(29, machine.getNumberOfProduct1());
+            Assertions.assertEquals(0, machine.getCurrentBalance());
+            Assertions.assertEquals(3, machine.getPrice1());
+        }
+    }
+
+    @Test
+    public void testManyProducersLoseNothing() throws InterruptedException {
+        int producers = 8;
+        int each = 5_000;
+        AtomicInteger ok = new AtomicInteger();
+        MachinePipeline.Completion counter = receipt -> {
+            if (Receipt.isOk(receipt)) ok.incrementAndGet();
+        };
+
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < each; i++) pipeline.submit(Operation.PUT_COIN1, 0, 0, counter);
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads) thread.join();
+        pipeline.close();
+
+        Assertions.assertEquals(producers * each, ok.get());
+        Assertions.assertEquals(0, pipeline.getPending());
+        Assertions.assertTrue(pipeline.getBatches() <= producers * each);
+        synchronized (machine) {
+            Assertions.assertEquals(producers * each, machine.getCurrentBalance());
+        }
+    }
+
+    @Test
+    public void testTicketsFromManyThreads() throws InterruptedException {
+        int producers = 4;
+        int each = 2_000;
+        Thread[] threads = new Thread[producers];
+        AtomicInteger refunded = new AtomicInteger();
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread(() -> {
+                MachinePipeline.Ticket ticket = new MachinePipeline.Ticket();
+                for (int i = 0; i < each; i++) {
+                    Assertions.assertEquals(Response.OK, Receipt.response(pipeline.call(Operation.PUT_COIN1, 0, 0, ticket)));
+                    long receipt = pipeline.call(Operation.RETURN_MONEY, 0, 0, ticket);
+                    refunded.addAndGet(Receipt.coins1(receipt));
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        Assertions.assertEquals(producers * each, refunded.get());
+        synchronized (machine) {
+            Assertions.assertEquals(0, machine.getCurrentBalance());
+        }
+    }
+
+    @Test
+    public void testCloseAppliesPendingAndRejectsMore() {
+        AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < 200; i++) pipeline.submit(Operation.PUT_COIN1, 0, 0, receipt -> done.incrementAndGet());
+        pipeline.close();
+        Assertions.assertEquals(200, done.get());
+        Assertions.assertThrows(IllegalStateException.class, () -> pipeline.submit(Operation.PUT_COIN1, 0, 0, null));
+        pipeline.close();
+    }
+
+    @Test
+    public void testThrowingCommandFailsAloneAndKeepsTheOwnerRunning() {
+        IllegalStateException boom = new IllegalStateException("coin jammed");
+        VendingMachine jammed = new VendingMachine() {
+            @Override
+            public Response putCoin1() {
+                throw boom;
+            }
+        };
+        AtomicInteger ok = new AtomicInteger();
+        MachinePipeline.Completion counter = receipt -> {
+            if (Receipt.isOk(receipt)) ok.incrementAndGet();
+        };
+        MachinePipeline.Ticket ticket = new MachinePipeline.Ticket();
+
+        try (MachinePipeline jammedPipeline = MachinePipeline.start(jammed, 8)) {
+            jammedPipeline.submit(Operation.PUT_COIN2, 0, 0, counter);
+            long failed = jammedPipeline.call(Operation.PUT_COIN1, 0, 0, ticket);
+            jammedPipeline.submit(Operation.PUT_COIN2, 0, 0, counter);
+            long refund = jammedPipeline.call(Operation.RETURN_MONEY, 0, 0, ticket);
+
+            Assertions.assertEquals(Response.CANNOT_PERFORM, Receipt.response(failed));
+            Assertions.assertEquals(2, ok.get());
+            Assertions.assertEquals(Response.OK, Receipt.response(refund));
+            Assertions.assertEquals(2, Receipt.coins2(refund));
+            Assertions.assertEquals(1, jammedPipeline.getFailures());
+            Assertions.assertEquals(0, jammedPipeline.getListenerFailures());
+            Assertions.assertSame(boom, jammedPipeline.getLastFailure());
+        }
+    }
+
+    @Test
+    public void testThrowingListenerDoesNotHideTheOutcome() {
+        IllegalStateException boom = new IllegalStateException("listener failed");
+        machine.setListener((m, operation, arg1, arg2, receipt) -> {
+            if (operation == Operation.PUT_COIN1) throw boom;
+        });
+        MachinePipeline.Ticket ticket = new MachinePipeline.Ticket();
+
+        pipeline.call(Operation.PUT_COIN2, 0, 0, ticket);
+        long taken = pipeline.call(Operation.PUT_COIN1, 0, 0, ticket);
+        long refund = pipeline.call(Operation.RETURN_MONEY, 0, 0, ticket);
+
+        Assertions.assertEquals(Response.OK, Receipt.response(taken));
+        Assertions.assertEquals(Response.OK, Receipt.response(refund));
+        Assertions.assertEquals(1, Receipt.coins1(refund));
+        Assertions.assertEquals(1, Receipt.coins2(refund));
+        Assertions.assertEquals(0, pipeline.getFailures());
+        Assertions.assertEquals(1, pipeline.getListenerFailures());
+        Assertions.assertSame(boom, pipeline.getLastFailure());
+    }
+
+    @Test
+    public void testThrowingCompletionIsCounted() {
+        MachinePipeline.Ticket ticket = new MachinePipeline.Ticket();
+        pipeline.submit(Operation.PUT_COIN1, 0, 0, receipt -> {
+            throw new IllegalArgumentException("completion failed");
+        });
+        Assertions.assertEquals(Response.OK, Receipt.response(pipeline.call(Operation.PUT_COIN1, 0, 0, ticket)));
+        Assertions.assertEquals(1, pipeline.getFailures());
+        Assertions.assertTrue(pipeline.getLastFailure() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void testRejectsMissingOperation() {
+        Assertions.assertThrows(NullPointerException.class, () -> pipeline.submit(null, 0, 0, null));
+        Assertions.assertEquals(0, pipeline.getPending());
+        Assertions.assertEquals(0, pipeline.getFailures());
+    }
+
+    @Test
+    public void testCapacityMustBePowerOfTwo() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> MachinePipeline.start(machine, 48));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> MachinePipeline.start(machine, 0));
+    }
+}
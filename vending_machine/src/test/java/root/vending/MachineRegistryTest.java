@@ -0,0 +1,125 @@
+package root.vending;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class MachineRegistryTest {
+
+    private MachineRegistry registry;
+
+    @BeforeEach
+    public void createRegistryTest() {
+        registry = new MachineRegistry(8);
+    }
+
+    @Test
+    public void testBehavesLikeAMap() {
+        for (MachineRegistry r : new MachineRegistry[]{registry, new MachineRegistry(1)}) {
+            Map<Long, VendingMachine> reference = new HashMap<>();
+            Random random = new Random(3);
+            for (int i = 0; i < 50_000; i++) {
+                long id = random.nextInt(3) == 0 ? random.nextLong() : random.nextInt(2000) - 1000;
+                switch (random.nextInt(3)) {
+                    case 0:
+                        VendingMachine machine = new VendingMachine();
+                        if (reference.putIfAbsent(id, machine) == null) {
+                            r.register(id, machine);
+                        } else {
+                            Assertions.assertThrows(IllegalArgumentException.class, () -> r.register(id, machine));
+                        }
+                        break;
+                    case 1:
+                        Assertions.assertSame(reference.remove(id), r.remove(id));
+                        break;
+                    default:
+                        Assertions.assertSame(reference.get(id), r.get(id));
+                }
+            }
+            Assertions.assertEquals(reference.size(), r.size());
+            long[] ids = r.ids();
+            Arrays.sort(ids);
+            Assertions.assertArrayEquals(reference.keySet().stream().mapToLong(Long::longValue).sorted().toArray(), ids);
+            Assertions.assertEquals(reference.size(), r.machines().size());
+            Assertions.assertEquals(reference.size(), r.entries().count());
+            for (Map.Entry<Long, VendingMachine> e : reference.entrySet()) {
+                Assertions.assertSame(e.getValue(), r.get(e.getKey()));
+            }
+        }
+    }
+
+    @Test
+    public void testRoundsShardsToPowerOfTwo() {
+        Assertions.assertEquals(1, new MachineRegistry(1).shardCount());
+        Assertions.assertEquals(8, new MachineRegistry(5).shardCount());
+        Assertions.assertEquals(16, new MachineRegistry(16).shardCount());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MachineRegistry(0));
+    }
+
+    @Test
+    public void testBulkOperations() {
+        long[] ids = new long[1000];
+        VendingMachine[] machines = new VendingMachine[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 7L * i - 300;
+            machines[i] = new VendingMachine();
+        }
+        registry.registerAll(ids, machines);
+        Assertions.assertEquals(ids.length, registry.size());
+
+        long[] wanted = {ids[5], 2, ids[999], ids[0]};
+        VendingMachine[] found = new VendingMachine[4];
+        registry.getAll(wanted, found);
+        Assertions.assertSame(machines[5], found[0]);
+        Assertions.assertNull(found[1]);
+        Assertions.assertSame(machines[999], found[2]);
+        Assertions.assertSame(machines[0], found[3]);
+    }
+
+    @Test
+    public void testBulkRegistrationIsAllOrNothing() {
+        registry.register(42, new VendingMachine());
+        long[] ids = {1, 2, 42, 3};
+        VendingMachine[] machines = {new VendingMachine(), new VendingMachine(), new VendingMachine(), new VendingMachine()};
+        Assertions.assertThrows(IllegalArgumentException.class, () -> registry.registerAll(ids, machines));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> registry.registerAll(new long[]{5, 5}, new VendingMachine[]{new VendingMachine(), new VendingMachine()}));
+        Assertions.assertEquals(1, registry.size());
+        Assertions.assertNull(registry.get(1));
+        Assertions.assertNull(registry.get(5));
+    }
+
+    @Test
+    public void testLookupsDuringWrites() throws InterruptedException {
+        VendingMachine[] stable = new VendingMachine[500];
+        for (int i = 0; i < stable.length; i++) {
+            stable[i] = new VendingMachine();
+            registry.register(i, stable[i]);
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            for (long id = 1_000_000; !stop.get(); id++) {
+                registry.register(id, new VendingMachine());
+                if (id % 3 != 0) registry.remove(id);
+            }
+        });
+        writer.start();
+        try {
+            Random random = new Random(1);
+            for (int i = 0; i < 200_000; i++) {
+                int id = random.nextInt(stable.length);
+                Assertions.assertSame(stable[id], registry.get(id));
+            }
+        } finally {
+            stop.set(true);
+            writer.join();
+        }
+    }
+}
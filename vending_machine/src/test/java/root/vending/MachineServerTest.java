@@ -0,0 +1,156 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class MachineServerTest {
+
+    private MachineRegistry registry;
+    private MachineServer server;
+
+    @BeforeEach
+    public void createServerTest() throws IOException {
+        registry = new MachineRegistry();
+        registry.register(1, new VendingMachine());
+        registry.register(42, new VendingMachine());
+        server = MachineServer.start(registry, 0);
+    }
+
+    @AfterEach
+    public void closeServerTest() throws IOException {
+        server.close();
+    }
+
+    private List<String> exchange(String... requests) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+            for (String request : requests) {
+                out.write(request);
+                out.write('\n');
+            }
+            out.flush();
+            List<String> replies = new ArrayList<>();
+            for (int i = 0; i < requests.length; i++) {
+                replies.add(in.readLine());
+            }
+            return replies;
+        }
+    }
+
+    @Test
+    public void testServesEveryOperation() throws IOException {
+        List<String> replies = exchange(
+                "42 ENTER_ADMIN_MODE " + code,
+                "42 FILL_PRODUCTS",
+                "42 FILL_COINS 10 10",
+                "42 SET_PRICES 3 4",
+                "42 EXIT_ADMIN_MODE",
+                "42 PUT_COIN2",
+                "42 PUT_COIN2",
+                "42 GIVE_PRODUCT1 1",
+                "42 PUT_COIN2",
+                "42 PUT_COIN1",
+                "42 RETURN_MONEY",
+                "42 GIVE_PRODUCT2 1",
+                "42 STATE",
+                "1 STATE");
+
+        Assertions.assertEquals("OK", replies.get(0));
+        Assertions.assertEquals("OK", replies.get(4));
+        Assertions.assertEquals("OK 1 1 0", replies.get(7));
+        Assertions.assertEquals("OK 0 1 1", replies.get(10));
+        Assertions.assertEquals("INSUFFICIENT_MONEY 0 0 0", replies.get(11));
+        Assertions.assertEquals("OK 29 40 9 12 0 3 4 OPERATION", replies.get(12));
+        Assertions.assertEquals("OK 0 0 0 0 0 8 5 OPERATION", replies.get(13));
+
+        VendingMachine machine = registry.get(42);
+        Assertions.assertEquals(29, machine.getNumberOfProduct1());
+    }
+
+    @Test
+    public void testRejectsBadRequests() throws IOException {
+        List<String> replies = exchange(
+                "7 PUT_COIN1",
+                "x PUT_COIN1",
+                "1 SELL",
+                "1 FILL_COINS 3",
+                "1",
+                "1 ENTER_ADMIN_MODE 5");
+
+        Assertions.assertEquals("ERROR no machine 7", replies.get(0));
+        for (int i = 1; i < 5; i++) {
+            Assertions.assertTrue(replies.get(i).startsWith("ERROR"), replies.get(i));
+        }
+        Assertions.assertEquals("INVALID_PARAM", replies.get(5));
+    }
+
+    @Test
+    public void testServesConcurrentConnections() throws Exception {
+        VendingMachine machine = registry.get(1);
+        machine.enterAdminMode(code);
+        machine.fillCoins(1, 1);
+        machine.exitAdminMode();
+
+        Thread[] kiosks = new Thread[16];
+        for (int t = 0; t < kiosks.length; t++) {
+            kiosks[t] = new Thread(() -> {
+                try {
+                    String[] requests = new String[20];
+                    for (int i = 0; i < requests.length; i++) requests[i] = "1 PUT_COIN1";
+                    exchange(requests);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            kiosks[t].start();
+        }
+        for (Thread kiosk : kiosks) kiosk.join();
+
+        Assertions.assertEquals(49, machine.getCurrentBalance());
+        Assertions.assertEquals("CANNOT_PERFORM", exchange("1 PUT_COIN1").get(0));
+    }
+
+    @Test
+    public void testKeepsAcceptingAfterFailures() throws IOException {
+        ServerSocket failing = new ServerSocket() {
+            private int failures = 3;
+
+            @Override
+            public Socket accept() throws IOException {
+                if (failures > 0) {
+                    failures--;
+                    throw new IOException("Too many open files");
+                }
+                return super.accept();
+            }
+        };
+        failing.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.close();
+        server = MachineServer.start(registry, failing);
+
+        Assertions.assertEquals("OK", exchange("1 PUT_COIN1").get(0));
+        Assertions.assertEquals(3, server.getAcceptFailures());
+        Assertions.assertEquals("Too many open files", server.getLastFailure().getMessage());
+        server.close();
+        Assertions.assertEquals(3, server.getAcceptFailures());
+    }
+}
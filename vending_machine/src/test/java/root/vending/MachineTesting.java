@@ -0,0 +1,106 @@
+package root.vending;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+
+import root.vending.VendingMachine.Response;
+
+
+/**
+ * Fixtures shared by the tests, and a random differential check of a machine against
+ * {@link VendingMachine}: each test supplies only a {@link Subject} adapting its machine.
+ */
+final class MachineTesting {
+
+    static final long code = 117345294655382L;
+
+    // operations a step picks from, each equally likely; PUT_COIN2 twice more
+    private static final Operation[] STEPS = {
+        Operation.PUT_COIN1, Operation.PUT_COIN2, Operation.GIVE_PRODUCT1, Operation.GIVE_PRODUCT2,
+        Operation.RETURN_MONEY, Operation.ENTER_ADMIN_MODE, Operation.EXIT_ADMIN_MODE, Operation.FILL_PRODUCTS,
+        Operation.FILL_COINS, Operation.SET_PRICES, Operation.PUT_COIN2, Operation.PUT_COIN2
+    };
+
+    /** A machine as the differential check sees it. */
+    interface Subject {
+
+        /**
+         * Applies {@code operation} with the arguments as {@link MachinePipeline#submit} takes
+         * them; returns null for {@code EXIT_ADMIN_MODE}.
+         */
+        Response apply(Operation operation, long arg1, int arg2);
+
+        /** The state as {@link #state(VendingMachine)} lays it out. */
+        int[] state();
+    }
+
+    private MachineTesting() {
+    }
+
+    /** A machine with full products, {@code coins1} and {@code coins2} coins, in operation mode. */
+    static VendingMachine stocked(int coins1, int coins2) {
+        VendingMachine machine = new VendingMachine();
+        machine.enterAdminMode(code);
+        machine.fillProducts();
+        machine.fillCoins(coins1, coins2);
+        machine.exitAdminMode();
+        return machine;
+    }
+
+    /** Balance, mode, sum, coins, products and prices of {@code m}. */
+    static int[] state(VendingMachine m) {
+        return new int[] {m.getCurrentBalance(), m.getCurrentMode().ordinal(), m.getCurrentSum(),
+                m.getCoins1(), m.getCoins2(), m.getNumberOfProduct1(), m.getNumberOfProduct2(),
+                m.getPrice1(), m.getPrice2()};
+    }
+
+    static Subject subject(VendingMachine m) {
+        return new Subject() {
+            @Override
+            public Response apply(Operation operation, long arg1, int arg2) {
+                switch (operation) {
+                    case PUT_COIN1: return m.putCoin1();
+                    case PUT_COIN2: return m.putCoin2();
+                    case GIVE_PRODUCT1: return m.giveProduct1((int) arg1);
+                    case GIVE_PRODUCT2: return m.giveProduct2((int) arg1);
+                    case RETURN_MONEY: return m.returnMoney();
+                    case ENTER_ADMIN_MODE: return m.enterAdminMode(arg1);
+                    case EXIT_ADMIN_MODE: m.exitAdminMode(); return null;
+                    case FILL_PRODUCTS: return m.fillProducts();
+                    case FILL_COINS: return m.fillCoins((int) arg1, arg2);
+                    case SET_PRICES: return m.setPrices((int) arg1, arg2);
+                    default: throw new IllegalArgumentException(operation.name());
+                }
+            }
+
+            @Override
+            public int[] state() {
+                return MachineTesting.state(m);
+            }
+        };
+    }
+
+    /**
+     * Applies one random operation, with arguments that are often out of range, to both
+     * machines and checks that they answer and end up alike.
+     */
+    static void step(Subject expected, Subject actual, Random random) {
+        Operation operation = STEPS[random.nextInt(STEPS.length)];
+        int a = random.nextInt(60) - 5;
+        int b = random.nextInt(60) - 5;
+        long arg1;
+        int arg2 = 0;
+        switch (operation) {
+            case GIVE_PRODUCT1: arg1 = a / 10; break;
+            case GIVE_PRODUCT2: arg1 = b / 10; break;
+            case ENTER_ADMIN_MODE: arg1 = a % 7 == 0 ? 1 : code; break;
+            case FILL_COINS: arg1 = a; arg2 = b; break;
+            case SET_PRICES: arg1 = a / 4; arg2 = b / 4; break;
+            default: arg1 = 0;
+        }
+        Assertions.assertEquals(expected.apply(operation, arg1, arg2), actual.apply(operation, arg1, arg2),
+                operation.name());
+        Assertions.assertArrayEquals(expected.state(), actual.state(), operation.name());
+    }
+}
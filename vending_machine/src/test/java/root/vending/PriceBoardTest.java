@@ -0,0 +1,167 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import root.vending.VendingMachine.Response;
+
+
+public class PriceBoardTest {
+
+    private PriceBoard board;
+    private List<VendingMachine> fleet;
+
+    @BeforeEach
+    public void createFleetTest() {
+        board = new PriceBoard(8, 5);
+        fleet = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            fleet.add(MachineTesting.stocked(25, 10));
+        }
+    }
+
+    @Test
+    public void testPublicationReachesEveryMachine() {
+        for (VendingMachine machine : fleet) machine.setPriceBoard(board);
+        PriceTable table = board.publish(3, 2);
+
+        Assertions.assertEquals(2, table.getVersion());
+        for (VendingMachine machine : fleet) {
+            Assertions.assertEquals(3, machine.getPrice1());
+            Assertions.assertEquals(2, machine.getPrice2());
+            Assertions.assertEquals(2, machine.getPriceVersion());
+            Assertions.assertEquals(VendingMachine.Mode.OPERATION, machine.getCurrentMode());
+        }
+        VendingMachine machine = fleet.get(0);
+        Assertions.assertEquals(3, machine.captureState().getPrice1());
+        machine.putCoin2();
+        machine.putCoin2();
+        Assertions.assertEquals(Response.OK, machine.giveProduct1(1));
+        Assertions.assertEquals(0, machine.getCurrentBalance());
+    }
+
+    @Test
+    public void testDetachingRestoresOwnPrices() {
+        VendingMachine machine = fleet.get(0);
+        machine.setPriceBoard(board);
+        board.publish(1, 1);
+        machine.setPriceBoard(null);
+
+        Assertions.assertEquals(8, machine.getPrice1());
+        Assertions.assertEquals(5, machine.getPrice2());
+        Assertions.assertEquals(0, machine.getPriceVersion());
+    }
+
+    @Test
+    public void testSalesReportTheVersionCharged() {
+        VendingMachine machine = fleet.get(0);
+        int[] versions = new int[2];
+        machine.setListener((m, operation, arg1, arg2, receipt) -> {
+            if (operation == Operation.GIVE_PRODUCT2) versions[Receipt.isOk(receipt) ? 0 : 1] = arg2;
+        });
+
+        machine.putCoin2();
+        machine.putCoin2();
+        machine.putCoin2();
+        machine.giveProduct2(1);
+        Assertions.assertEquals(0, versions[0]);
+
+        machine.setPriceBoard(board);
+        board.publish(8, 6);
+        machine.putCoin2();
+        machine.putCoin2();
+        machine.putCoin2();
+        Assertions.assertEquals(Response.OK, machine.giveProduct2(1));
+        Assertions.assertEquals(2, versions[0]);
+
+        Assertions.assertEquals(Response.INSUFFICIENT_MONEY, machine.giveProduct2(1));
+        Assertions.assertEquals(2, versions[1]);
+        Assertions.assertEquals(Response.INVALID_PARAM, machine.giveProduct2(0));
+        Assertions.assertEquals(0, versions[1]);
+    }
+
+    @Test
+    public void testSalesReportThePriceCharged() {
+        VendingMachine machine = fleet.get(0);
+        int[] prices = new int[2];
+        machine.setListener(new MachineListener() {
+            @Override
+            public void onOperation(VendingMachine m, Operation operation, int arg1, int arg2, long receipt) {
+            }
+
+            @Override
+            public void onSale(VendingMachine m, Operation operation, int units, int priceVersion, int unitPrice,
+                               long receipt) {
+                prices[Receipt.isOk(receipt) ? 0 : 1] = unitPrice;
+            }
+        });
+
+        machine.setPriceBoard(board);
+        board.publish(3, 6);
+        machine.putCoin2();
+        machine.putCoin2();
+        Assertions.assertEquals(Response.OK, machine.giveProduct1(1));
+        Assertions.assertEquals(3, prices[0]);
+        board.publish(7, 6);
+        Assertions.assertEquals(Response.INSUFFICIENT_MONEY, machine.giveProduct1(1));
+        Assertions.assertEquals(7, prices[1]);
+        Assertions.assertEquals(Response.INVALID_PARAM, machine.giveProduct1(0));
+        Assertions.assertEquals(0, prices[1]);
+    }
+
+    @Test
+    public void testRejectsNonPositivePrices() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> board.publish(0, 5));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new PriceBoard(8, -1));
+        Assertions.assertEquals(1, board.current().getVersion());
+    }
+
+    @Test
+    public void testSalesNeverMixVersions() throws InterruptedException {
+        Map<Integer, PriceTable> published = new ConcurrentHashMap<>();
+        published.put(1, board.current());
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicBoolean failed = new AtomicBoolean();
+
+        List<Thread> sellers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            VendingMachine machine = fleet.get(t);
+            machine.setPriceBoard(board);
+            int[] version = new int[1];
+            machine.setListener((m, operation, arg1, arg2, receipt) -> version[0] = arg2);
+            sellers.add(new Thread(() -> {
+                for (int sale = 0; !stop.get(); sale++) {
+                    if (sale % 10 == 0) {
+                        machine.enterAdminMode(code);
+                        machine.fillProducts();
+                        machine.fillCoins(25, 10);
+                        machine.exitAdminMode();
+                    }
+                    for (int i = 0; i < 4; i++) machine.putCoin2();
+                    long receipt = machine.sellProduct1(1);
+                    int charged = 8 - Receipt.coins1(receipt) - 2 * Receipt.coins2(receipt);
+                    if (!Receipt.isOk(receipt) || charged != published.get(version[0]).getPrice1()) failed.set(true);
+                }
+            }));
+        }
+        sellers.forEach(Thread::start);
+        for (int i = 0; i < 100_000; i++) {
+            int price = 3 + i % 6;
+            PriceTable table = new PriceTable(board.current().getVersion() + 1, price, price);
+            published.put(table.getVersion(), table);
+            Assertions.assertEquals(table.getVersion(), board.publish(price, price).getVersion());
+        }
+        stop.set(true);
+        for (Thread seller : sellers) seller.join();
+        Assertions.assertFalse(failed.get());
+    }
+}
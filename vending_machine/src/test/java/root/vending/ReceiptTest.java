@@ -0,0 +1,85 @@
+package root.vending;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class ReceiptTest {
+
+    private VendingMachine machine;
+
+    @BeforeEach
+    public void createMachineTest() {
+        machine = new VendingMachine();
+        machine.enterAdminMode(117345294655382L);
+        machine.fillProducts();
+        machine.setPrices(4, 3);
+        machine.fillCoins(4, 3);
+        machine.exitAdminMode();
+    }
+
+    @Test
+    public void testPackRoundTrip() {
+        long receipt = Receipt.pack(VendingMachine.Response.UNSUITABLE_CHANGE, 40, 50, 1 << 19);
+        Assertions.assertEquals(Receipt.response(receipt), VendingMachine.Response.UNSUITABLE_CHANGE);
+        Assertions.assertEquals(Receipt.units(receipt), 40);
+        Assertions.assertEquals(Receipt.coins1(receipt), 50);
+        Assertions.assertEquals(Receipt.coins2(receipt), 1 << 19);
+        Assertions.assertFalse(Receipt.isOk(receipt));
+    }
+
+    @Test
+    public void testSellProduct1ReportsChange() {
+        for (int i = 0; i < 7; ++i) {
+            machine.putCoin2();
+        }
+        long receipt = machine.sellProduct1(2);
+        Assertions.assertEquals(Receipt.response(receipt), VendingMachine.Response.OK);
+        Assertions.assertEquals(Receipt.units(receipt), 2);
+        Assertions.assertEquals(Receipt.coins1(receipt), 0);
+        Assertions.assertEquals(Receipt.coins2(receipt), 3);
+        machine.enterAdminMode(117345294655382L);
+        Assertions.assertEquals(machine.getCoins2(), 7);
+    }
+
+    @Test
+    public void testGiveProduct2FillsHolder() {
+        Receipt receipt = new Receipt();
+        for (int i = 0; i < 4; ++i) {
+            machine.putCoin1();
+        }
+        Assertions.assertEquals(machine.giveProduct2(1, receipt), VendingMachine.Response.OK);
+        Assertions.assertEquals(receipt.getUnits(), 1);
+        Assertions.assertEquals(receipt.getCoins1(), 1);
+        Assertions.assertEquals(receipt.getCoins2(), 0);
+
+        Assertions.assertEquals(machine.giveProduct2(1, receipt), VendingMachine.Response.INSUFFICIENT_MONEY);
+        Assertions.assertEquals(receipt.getUnits(), 0);
+        Assertions.assertEquals(receipt.getCoins1(), 0);
+    }
+
+    @Test
+    public void testRefundReportsCoins() {
+        machine.putCoin2();
+        machine.putCoin2();
+        machine.putCoin1();
+        long receipt = machine.refund();
+        Assertions.assertTrue(Receipt.isOk(receipt));
+        Assertions.assertEquals(Receipt.units(receipt), 0);
+        Assertions.assertEquals(Receipt.coins1(receipt), 1);
+        Assertions.assertEquals(Receipt.coins2(receipt), 2);
+        Assertions.assertEquals(machine.refund(), Receipt.of(VendingMachine.Response.OK));
+    }
+
+    @Test
+    public void testFailedSaleLeavesState() {
+        machine.putCoin2();
+        Receipt receipt = new Receipt();
+        Assertions.assertEquals(machine.giveProduct1(1, receipt), VendingMachine.Response.INSUFFICIENT_MONEY);
+        Assertions.assertEquals(machine.getCurrentBalance(), 2);
+        Assertions.assertEquals(machine.getNumberOfProduct1(), 30);
+        Assertions.assertEquals(machine.returnMoney(receipt), VendingMachine.Response.OK);
+        Assertions.assertEquals(receipt.getCoins2(), 1);
+    }
+}
@@ -0,0 +1,177 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import root.vending.VendingMachine.Response;
+
+
+public class RestockPlannerTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private long now;
+    private RestockPlanner planner;
+    private VendingMachine busy;
+    private VendingMachine quiet;
+    private VendingMachine elsewhere;
+
+    @BeforeEach
+    public void createPlannerTest() {
+        planner = new RestockPlanner(2, 1.0, () -> now);
+        busy = machine();
+        quiet = machine();
+        elsewhere = machine();
+        planner.track(1, busy, "north");
+        planner.track(2, quiet, "north");
+        planner.track(3, elsewhere, "south");
+    }
+
+    private static VendingMachine machine() {
+        VendingMachine machine = new VendingMachine();
+        machine.enterAdminMode(code);
+        machine.fillProducts();
+        machine.fillCoins(40, 10);
+        machine.setPrices(3, 4);
+        machine.exitAdminMode();
+        return machine;
+    }
+
+    private static void restock(VendingMachine machine) {
+        machine.enterAdminMode(code);
+        machine.fillProducts();
+        machine.fillCoins(40, 10);
+        machine.exitAdminMode();
+    }
+
+    /** Every six minutes the busy machine sells one of product 1 for two coins of 2, giving 1 back. */
+    private void trade(int hours) {
+        for (int minute = 0; minute < hours * 60; minute++) {
+            now += MINUTE;
+            if (minute % 6 == 0) {
+                busy.putCoin2();
+                busy.putCoin2();
+                Assertions.assertEquals(Response.OK, busy.giveProduct1(1));
+                if (busy.getNumberOfProduct1() == 0 || busy.captureState().getCoins2() >= 48) restock(busy);
+            }
+        }
+    }
+
+    @Test
+    public void testForecastsDemand() {
+        trade(24);
+        RestockPlan plan = planner.plan("north", 3);
+
+        List<RestockPlan.Stop> stops = plan.getStops();
+        Assertions.assertEquals(2, stops.size());
+        RestockPlan.Stop first = stops.get(0);
+        Assertions.assertEquals(1, first.getMachineId());
+        Assertions.assertEquals(30, first.getDemand1(), 1.0);
+        Assertions.assertEquals(0, first.getDemand2(), 1e-9);
+        Assertions.assertEquals(Math.max(30, busy.getNumberOfProduct1()), first.getProduct1());
+        Assertions.assertEquals(first.getProduct1() - busy.getNumberOfProduct1(), first.getLoad1());
+        Assertions.assertEquals(0, first.getLoad2());
+        Assertions.assertEquals(30, first.getCoins1(), 1);
+        Assertions.assertEquals(1, first.getCoins2());
+
+        RestockPlan.Stop second = stops.get(1);
+        Assertions.assertEquals(2, second.getMachineId());
+        Assertions.assertEquals(Double.POSITIVE_INFINITY, second.getHoursLeft());
+        Assertions.assertEquals(0, second.getLoad1());
+        Assertions.assertEquals(1, second.getCoins1());
+        Assertions.assertEquals(first.getLoad1(), plan.getTotalLoad1());
+    }
+
+    @Test
+    public void testPlansWhileStampedMachineSells() throws InterruptedException {
+        // a half-life so long that decaying changes nothing, while every read still writes the rates
+        double halfLife = 1e6;
+        AtomicLong clock = new AtomicLong();
+        RestockPlanner concurrent = new RestockPlanner(halfLife, 1.0, clock::incrementAndGet);
+        StampedVendingMachine stamped = new StampedVendingMachine();
+        stamped.enterAdminMode(code);
+        stamped.fillProducts(0, 0);
+        stamped.exitAdminMode();
+        concurrent.track(7, stamped, "east");
+
+        int asked = 200_000;
+        Thread seller = new Thread(() -> {
+            for (int i = 0; i < asked; i++) stamped.giveProduct1(1);
+        });
+        Thread[] planners = new Thread[3];
+        for (int i = 0; i < planners.length; i++) {
+            planners[i] = new Thread(() -> {
+                while (seller.isAlive()) concurrent.plan("east", 1);
+            });
+            planners[i].setDaemon(true);
+        }
+        seller.setDaemon(true);
+        seller.start();
+        for (Thread planner : planners) planner.start();
+        seller.join();
+        for (Thread planner : planners) planner.join();
+
+        double demand = concurrent.plan("east", 1).getStops().get(0).getDemand1();
+        Assertions.assertEquals(asked, demand * halfLife / Math.log(2), 1e-3);
+    }
+
+    @Test
+    public void testForgetsOldDemand() {
+        trade(24);
+        now += TimeUnit.HOURS.toNanos(20);
+        RestockPlan.Stop stop = planner.plan("north", 3).getStops().get(0);
+        Assertions.assertTrue(stop.getDemand1() < 0.1, Double.toString(stop.getDemand1()));
+    }
+
+    @Test
+    public void testChangeFailuresRaiseSmallCoinFloat() {
+        quiet.enterAdminMode(code);
+        quiet.fillCoins(1, 10);
+        quiet.exitAdminMode();
+        quiet.putCoin2();
+        quiet.putCoin2();
+        quiet.giveProduct1(1);
+        for (int i = 0; i < 10; i++) {
+            now += MINUTE;
+            quiet.putCoin2();
+            quiet.putCoin2();
+            Assertions.assertEquals(Response.UNSUITABLE_CHANGE, quiet.giveProduct1(1));
+            quiet.putCoin2();
+            Assertions.assertEquals(Response.OK, quiet.giveProduct1(2));
+        }
+
+        RestockPlan.Stop stop = planner.plan("north", 1).getStops().get(0);
+        Assertions.assertEquals(2, stop.getMachineId());
+        Assertions.assertTrue(stop.getCoins1() > 5, stop.toString());
+    }
+
+    @Test
+    public void testPlansEveryRoute() {
+        elsewhere.putCoin2();
+        elsewhere.putCoin2();
+        elsewhere.giveProduct2(1);
+        Map<String, RestockPlan> plans = planner.plan(2);
+        Assertions.assertEquals(2, plans.size());
+        Assertions.assertEquals(1, plans.get("south").getStops().size());
+        Assertions.assertTrue(plans.get("south").getStops().get(0).getDemand2() > 0);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> planner.track(9, busy, "west"));
+    }
+
+    @Test
+    public void testKeepsExistingListener() {
+        VendingMachine machine = new VendingMachine();
+        int[] seen = new int[1];
+        machine.setListener((m, operation, arg1, arg2, receipt) -> seen[0]++);
+        planner.track(4, machine, "east");
+        machine.putCoin1();
+        Assertions.assertEquals(1, seen[0]);
+    }
+}
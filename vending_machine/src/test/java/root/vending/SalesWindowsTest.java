@@ -0,0 +1,147 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import root.vending.SalesWindows.Window;
+
+
+public class SalesWindowsTest {
+
+    private static final long MINUTE = 60_000L;
+
+    private long[] now;
+    private SalesWindows windows;
+    private VendingMachine machine;
+    private int slot;
+
+    @BeforeEach
+    public void createWindowsTest() {
+        now = new long[]{1_700_000_000_000L};
+        windows = new SalesWindows(4, () -> now[0]);
+        machine = MachineTesting.stocked(25, 25);
+        slot = windows.track(11, machine);
+    }
+
+    private void buy1(int units) {
+        for (int i = 0; i < 4 * units; i++) machine.putCoin2();
+        Assertions.assertEquals(VendingMachine.Response.OK, machine.giveProduct1(units));
+    }
+
+    @Test
+    public void testRevenueIsAtThePriceCharged() {
+        PriceBoard board = new PriceBoard(8, 5);
+        machine.setPriceBoard(board);
+        board.publish(3, 5);
+        buy1(1);
+        board.publish(6, 5);
+        Assertions.assertEquals(3, windows.revenue(slot, 1, Window.HOUR));
+        buy1(1);
+        Assertions.assertEquals(9, windows.revenue(slot, 1, Window.HOUR));
+    }
+
+    @Test
+    public void testCountsStampedMachines() throws InterruptedException {
+        StampedVendingMachine stamped = new StampedVendingMachine();
+        stamped.enterAdminMode(code);
+        stamped.fillProducts();
+        stamped.fillCoins(25, 25);
+        stamped.exitAdminMode();
+        int stampedSlot = windows.track(12, stamped);
+
+        Thread seller = new Thread(() -> {
+            for (int i = 0; i < 3; i++) stamped.putCoin2();
+            stamped.giveProduct2(1);
+        });
+        seller.setDaemon(true);
+        seller.start();
+        seller.join(10_000);
+        Assertions.assertFalse(seller.isAlive(), "sale deadlocked");
+        Assertions.assertEquals(5, windows.revenue(stampedSlot, 2, Window.DAY));
+    }
+
+    @Test
+    public void testSalesLeaveEachWindowInTurn() {
+        buy1(2);
+        machine.putCoin2();
+        machine.giveProduct2(1);
+        for (Window window : Window.values()) {
+            Assertions.assertEquals(2, windows.units(slot, 1, window));
+            Assertions.assertEquals(16, windows.revenue(slot, 1, window));
+            Assertions.assertEquals(0, windows.units(slot, 2, window));
+        }
+
+        now[0] += 4 * MINUTE;
+        Assertions.assertEquals(2, windows.units(slot, 1, Window.FIVE_MINUTES));
+
+        now[0] += 2 * MINUTE;
+        Assertions.assertEquals(0, windows.units(slot, 1, Window.FIVE_MINUTES));
+        Assertions.assertEquals(2, windows.units(slot, 1, Window.HOUR));
+
+        now[0] += 60 * MINUTE;
+        Assertions.assertEquals(0, windows.revenue(slot, 1, Window.HOUR));
+        Assertions.assertEquals(16, windows.revenue(slot, 1, Window.DAY));
+
+        now[0] += 24 * 60 * MINUTE;
+        Assertions.assertEquals(0, windows.revenue(slot, 1, Window.DAY));
+    }
+
+    @Test
+    public void testMatchesBruteForce() {
+        Random random = new Random(9);
+        List<long[]> sales = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            now[0] += random.nextInt(20) * MINUTE / 3;
+            if (machine.getNumberOfProduct1() < 3 || machine.captureState().getCoins2() > 40) {
+                machine.enterAdminMode(code);
+                machine.fillProducts();
+                machine.fillCoins(25, 25);
+                machine.exitAdminMode();
+            }
+            int units = 1 + random.nextInt(2);
+            buy1(units);
+            sales.add(new long[]{now[0], units});
+
+            Window window = Window.values()[random.nextInt(3)];
+            long bucket = window == Window.FIVE_MINUTES ? 18_750 : window == Window.HOUR ? 225_000 : 5_400_000;
+            int expected = 0;
+            for (long[] sale : sales) {
+                if (now[0] / bucket - sale[0] / bucket < SalesWindows.BUCKETS) expected += sale[1];
+            }
+            Assertions.assertEquals(expected, windows.units(slot, 1, window));
+            Assertions.assertEquals(8 * expected, windows.revenue(slot, 1, window));
+        }
+    }
+
+    @Test
+    public void testIgnoresFailedSalesAndOtherMachines() {
+        VendingMachine other = MachineTesting.stocked(25, 25);
+        int otherSlot = windows.track(12, other);
+        Assertions.assertEquals(otherSlot, windows.slot(12));
+        Assertions.assertEquals(-1, windows.slot(13));
+
+        machine.putCoin2();
+        machine.giveProduct1(1);
+        buy1(1);
+        Assertions.assertEquals(1, windows.units(slot, 1, Window.HOUR));
+        Assertions.assertEquals(0, windows.units(otherSlot, 1, Window.HOUR));
+    }
+
+    @Test
+    public void testCapacityIsFixed() {
+        windows.track(1, MachineTesting.stocked(25, 25));
+        windows.track(2, MachineTesting.stocked(25, 25));
+        windows.track(3, MachineTesting.stocked(25, 25));
+        Assertions.assertThrows(IllegalStateException.class, () -> windows.track(4, MachineTesting.stocked(25, 25)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> windows.track(11, MachineTesting.stocked(25, 25)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> windows.units(slot, 3, Window.DAY));
+        Assertions.assertTrue(SalesWindows.BYTES_PER_MACHINE < 1024);
+    }
+}
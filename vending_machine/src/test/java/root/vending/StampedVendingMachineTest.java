@@ -0,0 +1,113 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import root.vending.VendingMachine.Mode;
+import root.vending.VendingMachine.Response;
+
+
+public class StampedVendingMachineTest {
+
+    private StampedVendingMachine machine;
+
+    @BeforeEach
+    public void createMachineTest() {
+        machine = new StampedVendingMachine();
+        machine.enterAdminMode(code);
+        machine.fillProducts();
+        machine.fillCoins(20, 20);
+        machine.exitAdminMode();
+    }
+
+    @Test
+    public void testBehavesLikeVendingMachine() {
+        VendingMachine reference = new VendingMachine();
+        reference.enterAdminMode(code);
+        reference.fillProducts();
+        reference.fillCoins(20, 20);
+        reference.exitAdminMode();
+
+        Random random = new Random(5);
+        for (int i = 0; i < 5000; i++) {
+            int op = random.nextInt(9);
+            int n = random.nextInt(4);
+            Response expected, actual;
+            switch (op) {
+                case 0: expected = reference.putCoin1(); actual = machine.putCoin1(); break;
+                case 1: expected = reference.putCoin2(); actual = machine.putCoin2(); break;
+                case 2: expected = reference.giveProduct1(n); actual = machine.giveProduct1(n); break;
+                case 3: expected = reference.giveProduct2(n); actual = machine.giveProduct2(n); break;
+                case 4: expected = reference.returnMoney(); actual = machine.returnMoney(); break;
+                case 5: expected = reference.enterAdminMode(code); actual = machine.enterAdminMode(code); break;
+                case 6: expected = reference.fillProducts(); actual = machine.fillProducts(); break;
+                case 7: expected = reference.fillCoins(1 + n, 10); actual = machine.fillCoins(1 + n, 10); break;
+                default:
+                    reference.exitAdminMode();
+                    machine.exitAdminMode();
+                    expected = actual = Response.OK;
+            }
+            Assertions.assertEquals(expected, actual);
+            Assertions.assertEquals(reference.captureState(), machine.snapshot());
+            Assertions.assertEquals(reference.getCurrentSum(), machine.getCurrentSum());
+            Assertions.assertEquals(reference.getCurrentMode(), machine.getCurrentMode());
+            Assertions.assertEquals(reference.getCoins1(), machine.getCoins1());
+        }
+    }
+
+    @Test
+    public void testListenersReadThroughTheWriteLock() throws Exception {
+        int[] seen = new int[3];
+        machine.setListener((m, operation, arg1, arg2, receipt) -> {
+            seen[0] = m.getPrice1();
+            seen[1] = m.getCurrentBalance();
+            seen[2] = ((StampedVendingMachine) m).snapshot().getBalance() + (int) (m.getAvailability() & 1);
+        });
+        Thread seller = new Thread(() -> {
+            machine.putCoin2();
+            machine.putCoin1();
+        });
+        seller.setDaemon(true);
+        seller.start();
+        seller.join(10_000);
+        Assertions.assertFalse(seller.isAlive(), "listener deadlocked");
+        Assertions.assertEquals(8, seen[0]);
+        Assertions.assertEquals(3, seen[1]);
+        Assertions.assertEquals(3, seen[2]);
+        Assertions.assertEquals(3, machine.getCurrentBalance());
+    }
+
+    @Test
+    public void testSnapshotsAreConsistentDuringSales() throws Exception {
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread[] customers = new Thread[2];
+        for (int t = 0; t < customers.length; t++) {
+            customers[t] = new Thread(() -> {
+                while (!stop.get()) {
+                    machine.putCoin2();
+                    machine.putCoin1();
+                    machine.returnMoney();
+                }
+            });
+            customers[t].start();
+        }
+        try {
+            for (int i = 0; i < 200000; i++) {
+                MachineState s = machine.snapshot();
+                Assertions.assertEquals(60, s.getCoins1() + 2 * s.getCoins2() - s.getBalance());
+                Assertions.assertEquals(Mode.OPERATION, s.getMode());
+            }
+        } finally {
+            stop.set(true);
+            for (Thread customer : customers) customer.join();
+        }
+        Assertions.assertEquals(Response.OK, machine.returnMoney());
+        Assertions.assertEquals(0, machine.getCurrentBalance());
+    }
+}
@@ -0,0 +1,175 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import root.vending.VendingMachine.Mode;
+
+
+public class StateHistoryTest {
+
+    private static MachineState state(int i) {
+        return new MachineState(i & 0xFFFF, (i >>> 3) & 0xFFFF, i & 0xFFFFF, (i * 7) & 0xFFFFF, i,
+                i % 100 + 1, Integer.MAX_VALUE - i, (i & 1) == 0 ? Mode.OPERATION : Mode.ADMINISTERING);
+    }
+
+    private static void assertMatches(List<MachineState> expected, StateHistory history) {
+        Assertions.assertEquals(expected.size(), history.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assertions.assertEquals(expected.get(i), history.get(i));
+        }
+    }
+
+    @Test
+    public void testAppendAndGetAcrossLevels() {
+        List<MachineState> expected = new ArrayList<>();
+        StateHistory history = StateHistory.empty();
+        for (int i = 0; i < 40_000; i++) {
+            expected.add(state(i));
+            history = history.append(state(i));
+        }
+        assertMatches(expected, history);
+        Assertions.assertEquals(0, StateHistory.empty().size());
+    }
+
+    @Test
+    public void testOlderVersionsDoNotChange() {
+        StateHistory history = StateHistory.empty();
+        for (int i = 0; i < 1_000; i++) history = history.append(state(i));
+        StateHistory older = history;
+        for (int i = 1_000; i < 3_000; i++) history = history.append(state(i));
+
+        Assertions.assertEquals(1_000, older.size());
+        Assertions.assertEquals(state(999), older.get(999));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> older.get(1_000));
+        Assertions.assertEquals(state(2_999), history.get(2_999));
+    }
+
+    @Test
+    public void testRollbackForks() {
+        Random random = new Random(7);
+        List<MachineState> expected = new ArrayList<>();
+        StateHistory history = StateHistory.empty();
+        for (int i = 0; i < 5_000; i++) {
+            expected.add(state(i));
+            history = history.append(state(i));
+        }
+
+        for (int round = 0; round < 200; round++) {
+            int transaction = random.nextInt(history.size());
+            StateHistory before = history;
+            List<MachineState> kept = new ArrayList<>(expected);
+
+            history = history.rollback(transaction);
+            expected = new ArrayList<>(expected.subList(0, transaction + 1));
+            int added = random.nextInt(100);
+            for (int i = 0; i < added; i++) {
+                MachineState s = state(random.nextInt(1 << 20));
+                expected.add(s);
+                history = history.append(s);
+            }
+
+            Assertions.assertEquals(kept.size(), before.size());
+            Assertions.assertEquals(kept.get(kept.size() - 1), before.get(before.size() - 1));
+            Assertions.assertEquals(kept.get(transaction), before.get(transaction));
+            if (round % 20 == 0) {
+                assertMatches(kept, before);
+                assertMatches(expected, history);
+            }
+        }
+        assertMatches(expected, history);
+    }
+
+    @Test
+    public void testRejectsStatesThatDoNotFit() {
+        Assertions.assertThrows(IllegalArgumentException.class, () ->
+                StateHistory.empty().append(new MachineState(0x10000, 0, 0, 0, 0, 8, 5, Mode.OPERATION)));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> StateHistory.empty().rollback(0));
+    }
+
+    @Test
+    public void testRecorderRestoresEarlierTransaction() {
+        VendingMachine machine = new VendingMachine();
+        machine.enterAdminMode(code);
+        machine.fillProducts();
+        machine.fillCoins(5, 5);
+        machine.exitAdminMode();
+
+        StateRecorder recorder = StateRecorder.attach(machine);
+        Assertions.assertEquals(1, recorder.history().size());
+        List<MachineState> expected = new ArrayList<>();
+        expected.add(machine.captureState());
+
+        Random random = new Random(11);
+        for (int i = 0; i < 2_000; i++) {
+            switch (random.nextInt(4)) {
+                case 0: machine.putCoin1(); break;
+                case 1: machine.putCoin2(); break;
+                case 2: machine.giveProduct1(1); break;
+                default: machine.giveProduct2(1 + random.nextInt(2)); break;
+            }
+            expected.add(machine.captureState());
+        }
+        StateHistory full = recorder.history();
+        assertMatches(expected, full);
+
+        MachineState restored = recorder.rollback(1_234);
+        Assertions.assertEquals(expected.get(1_234), restored);
+        Assertions.assertEquals(restored, machine.captureState());
+        Assertions.assertEquals(1_235, recorder.history().size());
+        Assertions.assertEquals(2_001, full.size());
+
+        machine.putCoin2();
+        Assertions.assertEquals(machine.captureState(), recorder.history().get(1_235));
+        Assertions.assertEquals(expected.get(1_235), full.get(1_235));
+    }
+
+    @Test
+    public void testRollbackTellsListeners() {
+        VendingMachine machine = new VendingMachine();
+        List<MachineState> restored = new ArrayList<>();
+        machine.setListener(new MachineListener() {
+            @Override
+            public void onOperation(VendingMachine m, Operation operation, int arg1, int arg2, long receipt) {
+            }
+
+            @Override
+            public void onRestore(VendingMachine m, MachineState state) {
+                restored.add(state);
+            }
+        });
+        StateRecorder recorder = StateRecorder.attach(machine);
+        machine.putCoin2();
+        machine.putCoin1();
+
+        MachineState state = recorder.rollback(1);
+        Assertions.assertEquals(List.of(state), restored);
+        Assertions.assertEquals(2, machine.captureState().getBalance());
+    }
+
+    @Test
+    public void testRollbackKeepsWhetherPricesAreConfigured() {
+        ConfigReference config = new ConfigReference(MachineConfig.DEFAULT);
+        VendingMachine machine = new VendingMachine(config);
+        StateRecorder recorder = StateRecorder.attach(machine);
+        machine.enterAdminMode(code);
+        machine.setPrices(3, 4);
+        machine.exitAdminMode();
+        Assertions.assertTrue(recorder.history().get(0).hasConfiguredPrices());
+        Assertions.assertFalse(recorder.history().get(3).hasConfiguredPrices());
+
+        recorder.rollback(3);
+        config.set(new MachineConfig(30, 40, 50, 50, 6, 7, 1, 2));
+        Assertions.assertEquals(3, machine.getPrice1());
+
+        recorder.rollback(0);
+        Assertions.assertEquals(6, machine.getPrice1());
+        Assertions.assertEquals(7, machine.getPrice2());
+    }
+}
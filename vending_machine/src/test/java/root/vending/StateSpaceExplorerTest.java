@@ -0,0 +1,62 @@
+package root.vending;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class StateSpaceExplorerTest {
+
+    private StateSpaceExplorer.Model model;
+
+    @BeforeEach
+    public void createModelTest() {
+        model = new StateSpaceExplorer.Model(2, 3, 3, 4, 1, 3, 5, 8);
+    }
+
+    @Test
+    public void testSmallMachineHasNoViolations() {
+        StateSpaceExplorer.Result result = new StateSpaceExplorer(model).explore(2);
+        Assertions.assertEquals(0, result.getViolationCount(), String.join("\n", result.getViolations()));
+        Assertions.assertTrue(result.getStates() > 1000, result.toString());
+        Assertions.assertTrue(result.getStates() <= model.size());
+        Assertions.assertTrue(result.getTransitions() > result.getStates());
+    }
+
+    @Test
+    public void testParallelismDoesNotChangeTheStateCount() {
+        StateSpaceExplorer explorer = new StateSpaceExplorer(model);
+        long sequential = explorer.explore(1).getStates();
+        Assertions.assertEquals(sequential, explorer.explore(4).getStates());
+    }
+
+    @Test
+    public void testFindsLostCoin() {
+        StateSpaceExplorer.Model small = new StateSpaceExplorer.Model(1, 1, 2, 2, 5, 8);
+        StateSpaceExplorer explorer = new StateSpaceExplorer(small, () ->
+                new VendingMachine(ChangeEngine.forCoins(new int[]{1, 2}, new int[]{2, 2}), 1, 1, 2, 2) {
+                    @Override
+                    public Response putCoin2() {
+                        Response response = super.putCoin2();
+                        if (response == Response.OK && getCurrentBalance() > 2) returnMoney();
+                        return response;
+                    }
+                });
+        StateSpaceExplorer.Result result = explorer.explore(1);
+        Assertions.assertTrue(result.getViolationCount() > 0);
+        Assertions.assertFalse(result.getViolations().isEmpty());
+    }
+
+    @Test
+    public void testModelRoundTrip() {
+        MachineState state = new MachineState(2, 1, 3, 0, 7, 8, 3, VendingMachine.Mode.OPERATION);
+        Assertions.assertEquals(state, model.decode(model.encode(state)));
+        Assertions.assertEquals(-1, model.encode(new MachineState(3, 1, 3, 0, 7, 8, 3, VendingMachine.Mode.OPERATION)));
+        Assertions.assertEquals(-1, model.encode(new MachineState(2, 1, 3, 0, 7, 8, 4, VendingMachine.Mode.OPERATION)));
+    }
+
+    @Test
+    public void testModelNeedsFactoryPrices() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new StateSpaceExplorer.Model(2, 2, 2, 2, 1, 8));
+    }
+}
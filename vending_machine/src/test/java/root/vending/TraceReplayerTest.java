@@ -0,0 +1,212 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import root.vending.VendingMachine.Response;
+
+
+public class TraceReplayerTest {
+
+    private static final int MACHINES = 13;
+    private static final int EVENTS = 20000;
+
+    private Path directory;
+    private Path trace;
+    private VendingMachine[] expected;
+    private long[] expectedResponses;
+
+    @BeforeEach
+    public void createTraceTest() throws IOException {
+        directory = Files.createTempDirectory("trace");
+        trace = directory.resolve("trace.bin");
+        expected = fleet();
+        expectedResponses = new long[Response.values().length];
+
+        Random random = new Random(11);
+        try (TraceWriter writer = TraceWriter.create(trace)) {
+            for (int i = 0; i < EVENTS; i++) {
+                int m = random.nextInt(MACHINES);
+                VendingMachine machine = expected[m];
+                Response response;
+                switch (random.nextInt(12)) {
+                    case 0: case 1:
+                        writer.append(m, Operation.PUT_COIN1, 0, 0);
+                        response = machine.putCoin1();
+                        break;
+                    case 2: case 3: case 4:
+                        writer.append(m, Operation.PUT_COIN2, 0, 0);
+                        response = machine.putCoin2();
+                        break;
+                    case 5: case 6: {
+                        int n = random.nextInt(4);
+                        writer.append(m, Operation.GIVE_PRODUCT1, n, 0);
+                        response = machine.giveProduct1(n);
+                        break;
+                    }
+                    case 7: {
+                        int n = random.nextInt(4);
+                        writer.append(m, Operation.GIVE_PRODUCT2, n, 0);
+                        response = machine.giveProduct2(n);
+                        break;
+                    }
+                    case 8:
+                        writer.append(m, Operation.RETURN_MONEY, 0, 0);
+                        response = machine.returnMoney();
+                        break;
+                    case 9: {
+                        long c = random.nextBoolean() ? code : code + 1;
+                        writer.appendEnterAdminMode(m, c);
+                        response = machine.enterAdminMode(c);
+                        break;
+                    }
+                    case 10: {
+                        writer.append(m, Operation.FILL_PRODUCTS, 0, 0);
+                        response = machine.fillProducts();
+                        int c1 = 1 + random.nextInt(50);
+                        writer.append(m, Operation.FILL_COINS, c1, 5);
+                        expectedResponses[response.ordinal()]++;
+                        response = machine.fillCoins(c1, 5);
+                        break;
+                    }
+                    default:
+                        writer.append(m, Operation.EXIT_ADMIN_MODE, 0, 0);
+                        machine.exitAdminMode();
+                        response = Response.OK;
+                }
+                expectedResponses[response.ordinal()]++;
+            }
+        }
+    }
+
+    @AfterEach
+    public void deleteDirectoryTest() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static VendingMachine[] fleet() {
+        VendingMachine[] machines = new VendingMachine[MACHINES];
+        for (int i = 0; i < MACHINES; i++) {
+            machines[i] = new VendingMachine();
+            machines[i].enterAdminMode(code);
+            machines[i].fillProducts();
+            machines[i].fillCoins(10, 10);
+            machines[i].setPrices(3 + i % 4, 2 + i % 3);
+            machines[i].exitAdminMode();
+        }
+        return machines;
+    }
+
+    private void assertReplayed(VendingMachine[] machines, ReplayStats stats) {
+        long events = 0;
+        for (Response response : Response.values()) {
+            Assertions.assertEquals(expectedResponses[response.ordinal()], stats.getCount(response), response.toString());
+            events += stats.getCount(response);
+        }
+        Assertions.assertEquals(events, stats.getEvents());
+        long perMachine = 0;
+        for (int m = 0; m < MACHINES; m++) {
+            Assertions.assertEquals(expected[m].captureState(), machines[m].captureState());
+            perMachine += stats.getMachineEvents(m);
+        }
+        Assertions.assertEquals(events, perMachine);
+    }
+
+    @Test
+    public void testReplayMatchesDirectCalls() throws IOException {
+        TraceReplayer replayer = TraceReplayer.open(trace);
+        VendingMachine[] machines = fleet();
+        ReplayStats stats = replayer.replay(machines);
+
+        Assertions.assertEquals(stats.getEvents(), replayer.size());
+        assertReplayed(machines, stats);
+        Assertions.assertTrue(stats.getUnitsSold() > 0);
+    }
+
+    @Test
+    public void testParallelReplayMatchesSequential() throws IOException {
+        TraceReplayer replayer = TraceReplayer.open(trace);
+        ReplayStats sequential = replayer.replay(fleet());
+
+        VendingMachine[] machines = fleet();
+        ReplayStats parallel = replayer.replayParallel(machines, 4);
+        assertReplayed(machines, parallel);
+        Assertions.assertEquals(sequential.getUnitsSold(), parallel.getUnitsSold());
+        Assertions.assertEquals(sequential.getRevenue(), parallel.getRevenue());
+        for (int m = 0; m < MACHINES; m++) {
+            for (Response response : Response.values()) {
+                Assertions.assertEquals(sequential.getCount(m, response), parallel.getCount(m, response));
+            }
+        }
+    }
+
+    @Test
+    public void testRejectsUnknownMachine() throws IOException {
+        TraceReplayer replayer = TraceReplayer.open(trace);
+        Assertions.assertThrows(IOException.class, () -> replayer.replay(Arrays.copyOf(fleet(), MACHINES - 1)));
+
+        Path other = directory.resolve("other.bin");
+        Files.write(other, new byte[TraceWriter.HEADER_SIZE + 3]);
+        Assertions.assertThrows(IOException.class, () -> TraceReplayer.open(other));
+    }
+
+    @Test
+    public void testParallelReplayWithMoreWorkersThanMachines() throws IOException {
+        TraceReplayer replayer = TraceReplayer.open(trace);
+        VendingMachine[] machines = fleet();
+        assertReplayed(machines, replayer.replayParallel(machines, MACHINES + 7));
+    }
+
+    @Test
+    public void testRevenueIsAtThePriceCharged() throws IOException {
+        Path sales = directory.resolve("sales.bin");
+        try (TraceWriter writer = TraceWriter.create(sales)) {
+            for (int m = 0; m < 2; m++) {
+                for (int i = 0; i < 3; i++) writer.append(m, Operation.PUT_COIN1, 0, 0);
+                writer.append(m, Operation.GIVE_PRODUCT1, 1, 0);
+            }
+        }
+        TraceReplayer replayer = TraceReplayer.open(sales);
+        for (int workers = 1; workers <= 2; workers++) {
+            VendingMachine[] machines = fleet();
+            for (int m = 0; m < 2; m++) {
+                PriceBoard board = new PriceBoard(3, 5);
+                machines[m].setPriceBoard(board);
+                // reprices as soon as the sale is made
+                machines[m].setListener((machine, operation, arg1, arg2, receipt) -> {
+                    if (operation == Operation.GIVE_PRODUCT1) board.publish(6, 5);
+                });
+            }
+            ReplayStats stats = workers == 1 ? replayer.replay(machines) : replayer.replayParallel(machines, workers);
+            Assertions.assertEquals(2, stats.getUnitsSold());
+            Assertions.assertEquals(6, stats.getRevenue());
+        }
+    }
+
+    @Test
+    public void testRejectsUnknownOperation() throws IOException {
+        Path corrupt = directory.resolve("corrupt.bin");
+        Files.copy(trace, corrupt);
+        byte[] bytes = Files.readAllBytes(corrupt);
+        bytes[TraceWriter.HEADER_SIZE + 100 * TraceWriter.RECORD_SIZE + 4] = 99;
+        Files.write(corrupt, bytes);
+
+        TraceReplayer replayer = TraceReplayer.open(corrupt);
+        Assertions.assertThrows(IOException.class, () -> replayer.replay(fleet()));
+        Assertions.assertThrows(IOException.class, () -> replayer.replayParallel(fleet(), 3));
+    }
+}
@@ -0,0 +1,102 @@
+package root.vending;
+
+import static root.vending.MachineTesting.code;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class VendingFleetTest {
+
+    private VendingFleet fleet;
+
+    @BeforeEach
+    public void createFleetTest() {
+        fleet = new VendingFleet(16);
+    }
+
+    @Test
+    public void testInitialValues() {
+        for (int m = 0; m < fleet.size(); ++m) {
+            Assertions.assertEquals(fleet.getCoins1(m), 0);
+            Assertions.assertEquals(fleet.getCoins2(m), 0);
+            Assertions.assertEquals(fleet.getNumberOfProduct1(m), 0);
+            Assertions.assertEquals(fleet.getNumberOfProduct2(m), 0);
+            Assertions.assertEquals(fleet.getPrice1(m), 8);
+            Assertions.assertEquals(fleet.getPrice2(m), 5);
+            Assertions.assertEquals(fleet.getCurrentMode(m), VendingMachine.Mode.OPERATION);
+        }
+    }
+
+    @Test
+    public void testMachinesAreIndependent() {
+        fleet.enterAdminMode(3, code);
+        fleet.fillProducts(3);
+        fleet.exitAdminMode(3);
+        fleet.putCoin2(4);
+        Assertions.assertEquals(fleet.getNumberOfProduct1(3), 30);
+        Assertions.assertEquals(fleet.getNumberOfProduct1(4), 0);
+        Assertions.assertEquals(fleet.getCurrentBalance(3), 0);
+        Assertions.assertEquals(fleet.getCurrentBalance(4), 2);
+        Assertions.assertEquals(fleet.enterAdminMode(4, code), VendingMachine.Response.CANNOT_PERFORM);
+    }
+
+    @Test
+    public void testFullCoinsAndBalance() {
+        for (int i = 0; i < 50; ++i) {
+            fleet.putCoin1(0);
+            fleet.putCoin2(0);
+        }
+        Assertions.assertEquals(fleet.putCoin2(0), VendingMachine.Response.CANNOT_PERFORM);
+        Assertions.assertEquals(fleet.getCurrentBalance(0), 150);
+        Assertions.assertEquals(fleet.returnMoney(0), VendingMachine.Response.OK);
+        fleet.enterAdminMode(0, code);
+        Assertions.assertEquals(fleet.getCurrentSum(0), 0);
+    }
+
+    @Test
+    public void testSameResponsesAsVendingMachine() {
+        Random random = new Random(7);
+        MachineTesting.Subject[] expected = new MachineTesting.Subject[fleet.size()];
+        MachineTesting.Subject[] actual = new MachineTesting.Subject[fleet.size()];
+        for (int m = 0; m < expected.length; ++m) {
+            expected[m] = MachineTesting.subject(new VendingMachine());
+            actual[m] = subject(fleet, m);
+        }
+        for (int step = 0; step < 100_000; ++step) {
+            int m = random.nextInt(fleet.size());
+            MachineTesting.step(expected[m], actual[m], random);
+        }
+    }
+
+    private static MachineTesting.Subject subject(VendingFleet f, int m) {
+        return new MachineTesting.Subject() {
+            @Override
+            public VendingMachine.Response apply(Operation operation, long arg1, int arg2) {
+                switch (operation) {
+                    case PUT_COIN1: return f.putCoin1(m);
+                    case PUT_COIN2: return f.putCoin2(m);
+                    case GIVE_PRODUCT1: return f.giveProduct1(m, (int) arg1);
+                    case GIVE_PRODUCT2: return f.giveProduct2(m, (int) arg1);
+                    case RETURN_MONEY: return f.returnMoney(m);
+                    case ENTER_ADMIN_MODE: return f.enterAdminMode(m, arg1);
+                    case EXIT_ADMIN_MODE: f.exitAdminMode(m); return null;
+                    case FILL_PRODUCTS: return f.fillProducts(m);
+                    case FILL_COINS: return f.fillCoins(m, (int) arg1, arg2);
+                    case SET_PRICES: return f.setPrices(m, (int) arg1, arg2);
+                    default: throw new IllegalArgumentException(operation.name());
+                }
+            }
+
+            @Override
+            public int[] state() {
+                return new int[] {f.getCurrentBalance(m), f.getCurrentMode(m).ordinal(), f.getCurrentSum(m),
+                        f.getCoins1(m), f.getCoins2(m), f.getNumberOfProduct1(m), f.getNumberOfProduct2(m),
+                        f.getPrice1(m), f.getPrice2(m)};
+            }
+        };
+    }
+}
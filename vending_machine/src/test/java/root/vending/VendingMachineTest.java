@@ -1,5 +1,9 @@
 package root.vending;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -201,7 +205,7 @@ public class VendingMachineTest {
         int first_mon = 4, second_mon = 2;
         machine.fillCoins(first_mon, second_mon);
         int sum = machine.getCurrentSum();
-        Assertions.assertEquals(sum, first_mon*VendingMachine.coinval1 + second_mon*VendingMachine.coinval2);
+        Assertions.assertEquals(sum, first_mon*machine.getCoinValue1() + second_mon*machine.getCoinValue2());
         Assertions.assertEquals(machine.getCoins1(), first_mon);
         Assertions.assertEquals(machine.getCoins2(), second_mon);
     }
@@ -787,4 +791,121 @@ public class VendingMachineTest {
         Assertions.assertEquals(machine.returnMoney(), VendingMachine.Response.OK);
         Assertions.assertEquals(machine.getCurrentBalance(), 0);
     }
+
+    @Test
+    public void testFillProductsToLevelInOperationMode() {
+        Assertions.assertEquals(machine.fillProducts(5, 6), VendingMachine.Response.ILLEGAL_OPERATION);
+        Assertions.assertEquals(machine.getNumberOfProduct1(), 0);
+    }
+
+    @Test
+    public void testFillProductsToLevel() {
+        machine.enterAdminMode(117345294655382L);
+        Assertions.assertEquals(machine.fillProducts(5, max2), VendingMachine.Response.OK);
+        Assertions.assertEquals(machine.getNumberOfProduct1(), 5);
+        Assertions.assertEquals(machine.getNumberOfProduct2(), max2);
+        Assertions.assertEquals(machine.fillProducts(0, 0), VendingMachine.Response.OK);
+        Assertions.assertEquals(machine.getNumberOfProduct1(), 0);
+    }
+
+    @Test
+    public void testFillProductsToLevelInvalidParam() {
+        machine.enterAdminMode(117345294655382L);
+        Assertions.assertEquals(machine.fillProducts(max1 + 1, 1), VendingMachine.Response.INVALID_PARAM);
+        Assertions.assertEquals(machine.fillProducts(1, -1), VendingMachine.Response.INVALID_PARAM);
+        Assertions.assertEquals(machine.getNumberOfProduct1(), 0);
+    }
+
+    @Test
+    public void testPutCoins() {
+        Assertions.assertEquals(machine.putCoins(3, 2), VendingMachine.Response.OK);
+        Assertions.assertEquals(machine.getCurrentBalance(), 3 * machine.getCoinValue1() + 2 * machine.getCoinValue2());
+        Assertions.assertEquals(machine.captureState().getCoins1(), 3);
+        Assertions.assertEquals(machine.captureState().getCoins2(), 2);
+    }
+
+    @Test
+    public void testPutCoinsOverCapacity() {
+        Assertions.assertEquals(machine.putCoins(maxc1, maxc2 + 1), VendingMachine.Response.CANNOT_PERFORM);
+        Assertions.assertEquals(machine.getCurrentBalance(), 0);
+        Assertions.assertEquals(machine.putCoins(maxc1, maxc2), VendingMachine.Response.OK);
+        Assertions.assertEquals(machine.putCoins(1, 0), VendingMachine.Response.CANNOT_PERFORM);
+    }
+
+    @Test
+    public void testPutCoinsInvalidParam() {
+        Assertions.assertEquals(machine.putCoins(-1, 2), VendingMachine.Response.INVALID_PARAM);
+        Assertions.assertEquals(machine.getCurrentBalance(), 0);
+    }
+
+    @Test
+    public void testPutCoinsInAdministrating() {
+        machine.enterAdminMode(117345294655382L);
+        Assertions.assertEquals(machine.putCoins(1, 1), VendingMachine.Response.ILLEGAL_OPERATION);
+        Assertions.assertEquals(machine.getCoins1(), 0);
+    }
+
+    @Test
+    public void testPurchase() {
+        fillProducts(machine);
+        long receipt = machine.purchase(1, 2, 2, 8);
+        Assertions.assertEquals(Receipt.response(receipt), VendingMachine.Response.OK);
+        Assertions.assertEquals(Receipt.units(receipt), 2);
+        Assertions.assertEquals(machine.getNumberOfProduct1(), max1 - 2);
+        Assertions.assertEquals(machine.getCurrentBalance(), 0);
+        Assertions.assertEquals(Receipt.response(machine.purchase(3, 1, 1, 0)), VendingMachine.Response.INVALID_PARAM);
+        Assertions.assertEquals(machine.getCurrentBalance(), 0);
+    }
+
+    @Test
+    public void testPurchaseNotifiesBothSteps() {
+        fillProducts(machine);
+        List<Operation> operations = new ArrayList<>();
+        machine.setListener((m, operation, arg1, arg2, receipt) -> operations.add(operation));
+        machine.purchase(2, 1, 0, 3);
+        machine.purchase(2, 1, 0, 0);
+        Assertions.assertEquals(operations, List.of(Operation.PUT_COINS, Operation.GIVE_PRODUCT2, Operation.GIVE_PRODUCT2));
+    }
+
+    @Test
+    public void testPurchaseMatchesSingleCalls() {
+        VendingMachine bulk = new VendingMachine();
+        VendingMachine single = new VendingMachine();
+        for (VendingMachine m : new VendingMachine[] {bulk, single}) {
+            m.enterAdminMode(117345294655382L);
+            m.fillProducts();
+            m.fillCoins(5, 5);
+            m.exitAdminMode();
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            int product = 1 + random.nextInt(2);
+            int number = random.nextInt(4);
+            int n1 = random.nextInt(6);
+            int n2 = random.nextInt(6);
+
+            long expected = Receipt.of(VendingMachine.Response.OK);
+            if (n1 + n2 > 0) {
+                MachineState state = single.captureState();
+                if (state.getCoins1() + n1 > maxc1 || state.getCoins2() + n2 > maxc2) {
+                    expected = Receipt.of(VendingMachine.Response.CANNOT_PERFORM);
+                } else {
+                    for (int c = 0; c < n1; c++) single.putCoin1();
+                    for (int c = 0; c < n2; c++) single.putCoin2();
+                }
+            }
+            if (expected == Receipt.of(VendingMachine.Response.OK)) {
+                expected = product == 1 ? single.sellProduct1(number) : single.sellProduct2(number);
+            }
+
+            Assertions.assertEquals(bulk.purchase(product, number, n1, n2), expected);
+            Assertions.assertEquals(bulk.captureState(), single.captureState());
+            if (random.nextInt(5) == 0) Assertions.assertEquals(bulk.refund(), single.refund());
+            if (single.getNumberOfProduct1() < 5 || single.getNumberOfProduct2() < 5) {
+                fillProducts(bulk);
+                fillProducts(single);
+            }
+        }
+    }
 }
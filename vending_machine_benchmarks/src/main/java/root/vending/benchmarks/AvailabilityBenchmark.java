@@ -0,0 +1,67 @@
+package root.vending.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import root.vending.VendingMachine;
+
+/**
+ * What keeping the availability mask current adds to paying in {@code balance} and taking
+ * it back, at prices of 1, where every unit of balance is one more quantity to probe for
+ * change, and of 100, where the balance pays for nothing and no quantity is probed.
+ *
+ * Paying in one step probes every quantity; paying coin by coin probes only those the
+ * previous coins did not already make sellable. The coins come back as they went in, so
+ * the machine stays as set up.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AvailabilityBenchmark {
+
+    private static final long code = 117345294655382L;
+
+    @Param({"2", "8", "32"})
+    public int balance;
+
+    @Param({"1", "100"})
+    public int price;
+
+    private VendingMachine machine;
+
+    @Setup
+    public void setUp() {
+        machine = new VendingMachine();
+        machine.enterAdminMode(code);
+        machine.fillProducts();
+        machine.fillCoins(10, 20);
+        machine.setPrices(price, price);
+        machine.exitAdminMode();
+    }
+
+    @Benchmark
+    public long payAtOnceThenRefund() {
+        machine.putCoins(0, balance / 2);
+        return machine.refund();
+    }
+
+    @Benchmark
+    public long payCoinByCoinThenRefund() {
+        for (int i = 0; i < balance / 2; i++) machine.putCoin2();
+        return machine.refund();
+    }
+}
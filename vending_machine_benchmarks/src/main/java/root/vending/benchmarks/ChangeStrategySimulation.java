@@ -0,0 +1,104 @@
+package root.vending.benchmarks;
+
+import java.util.Random;
+
+import root.vending.ChangeEngine;
+import root.vending.VendingMachine;
+import root.vending.VendingMachine.Response;
+
+/**
+ * Replays the same stream of customers against machines that differ only in how they pay
+ * out change, and prints how many sales per 10,000 transactions are lost because change
+ * cannot be made.
+ *
+ * A customer picks a product and a quantity, inserts coins until the balance covers it and
+ * now and then one more, and buys, sometimes one unit less than paid for; a failed sale is
+ * refunded. Customers pay four coins in five with the larger coin, or with the smaller one,
+ * depending on the scenario. A technician refills the products and resets the coin boxes
+ * every 1,000 transactions. Run with
+ * {@code java -cp benchmarks.jar root.vending.benchmarks.ChangeStrategySimulation [runs]}.
+ */
+public class ChangeStrategySimulation {
+
+    private static final long code = 117345294655382L;
+
+    private static final int TRANSACTIONS = 10_000;
+    private static final int SERVICE_EVERY = 1_000;
+    private static final int START_COINS = 4;
+
+    private static final int[][] COINS = {{1, 2}, {2, 3}, {2, 5}, {3, 5}};
+    private static final int[][] PRICES = {{8, 5}, {7, 10}, {9, 12}, {11, 13}};
+
+    private interface Strategy {
+        ChangeEngine engine(int[] values, int[] capacities);
+    }
+
+    public static void main(String[] args) {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+
+        String[] names = {"largest first", "preserving"};
+        Strategy[] strategies = {ChangeEngine::forCoins, ChangeEngine::preserving};
+
+        System.out.printf("%-8s %-8s %-10s %-14s %10s%n", "coins", "prices", "paying", "strategy", "lost/10k");
+        for (int s = 0; s < COINS.length; s++) {
+            for (boolean large : new boolean[] {true, false}) {
+                for (int k = 0; k < strategies.length; k++) {
+                    ChangeEngine engine = strategies[k].engine(COINS[s], new int[] {50, 50});
+                    long lost = 0;
+                    for (int run = 0; run < runs; run++) {
+                        lost += simulate(engine, PRICES[s], large, run);
+                    }
+                    System.out.printf("%-8s %-8s %-10s %-14s %10.1f%n",
+                            COINS[s][0] + "/" + COINS[s][1], PRICES[s][0] + "/" + PRICES[s][1],
+                            large ? "large" : "small", names[k], (double) lost / runs);
+                }
+            }
+        }
+    }
+
+    /** Returns the sales lost because change could not be made in one run. */
+    private static long simulate(ChangeEngine engine, int[] prices, boolean large, long seed) {
+        Random random = new Random(seed);
+        VendingMachine machine = new VendingMachine(engine);
+        long lost = 0;
+
+        for (int t = 0; t < TRANSACTIONS; t++) {
+            if (t % SERVICE_EVERY == 0 && machine.getCurrentBalance() == 0) service(machine, prices);
+
+            boolean second = random.nextInt(3) == 0;
+            int quantity = random.nextInt(5) == 0 ? 2 : 1;
+            int due = quantity * (second ? prices[1] : prices[0]);
+            while (machine.getCurrentBalance() < due) {
+                if (!insert(machine, random, large)) break;
+            }
+            if (random.nextInt(4) == 0) insert(machine, random, large);
+
+            if (quantity == 2 && random.nextBoolean()) quantity = 1;
+            Response response = second ? machine.giveProduct2(quantity) : machine.giveProduct1(quantity);
+            if (response == Response.UNSUITABLE_CHANGE || response == Response.TOO_BIG_CHANGE) lost++;
+            if (response != Response.OK) machine.returnMoney();
+        }
+        return lost;
+    }
+
+    /**
+     * Inserts a coin, the preferred kind four times in five, or the other if that box is
+     * full; false if both are.
+     */
+    private static boolean insert(VendingMachine machine, Random random, boolean preferLarge) {
+        boolean large = (random.nextInt(5) != 0) == preferLarge;
+        boolean first = large == (machine.getCoinValue1() > machine.getCoinValue2());
+        if (first) {
+            return machine.putCoin1() == Response.OK || machine.putCoin2() == Response.OK;
+        }
+        return machine.putCoin2() == Response.OK || machine.putCoin1() == Response.OK;
+    }
+
+    private static void service(VendingMachine machine, int[] prices) {
+        machine.enterAdminMode(code);
+        machine.fillProducts();
+        machine.fillCoins(START_COINS, START_COINS);
+        machine.setPrices(prices[0], prices[1]);
+        machine.exitAdminMode();
+    }
+}
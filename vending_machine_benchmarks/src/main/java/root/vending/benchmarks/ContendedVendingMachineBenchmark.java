@@ -0,0 +1,79 @@
+package root.vending.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import root.vending.VendingMachine;
+
+/**
+ * One {@code VendingMachine} shared by four threads behind its monitor, the way the
+ * service drives it today. Each transaction holds the monitor from the first coin to
+ * the change, as a kiosk session would.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ContendedVendingMachineBenchmark {
+
+    @Param({"FULL", "COIN_STARVED", "UNSUITABLE_CHANGE"})
+    public Fixture fixture;
+
+    private VendingMachine machine;
+    private int sales;
+
+    @Setup
+    public void setUp() {
+        machine = new VendingMachine();
+        fixture.prepare(machine);
+    }
+
+    @Benchmark
+    public VendingMachine.Response giveProduct1() {
+        synchronized (machine) {
+            Fixture.pay(machine, machine.getPrice1() + 1);
+            return settle(machine.giveProduct1(1));
+        }
+    }
+
+    @Benchmark
+    public VendingMachine.Response giveProduct2() {
+        synchronized (machine) {
+            Fixture.pay(machine, machine.getPrice2() + 1);
+            return settle(machine.giveProduct2(1));
+        }
+    }
+
+    @Benchmark
+    public int readBalance() {
+        synchronized (machine) {
+            return machine.getCurrentBalance();
+        }
+    }
+
+    private VendingMachine.Response settle(VendingMachine.Response response) {
+        if (response != VendingMachine.Response.OK) {
+            machine.returnMoney();
+        }
+        if (++sales == VendingMachineBenchmark.RESTOCK_EVERY) {
+            sales = 0;
+            fixture.prepare(machine);
+        }
+        return response;
+    }
+}
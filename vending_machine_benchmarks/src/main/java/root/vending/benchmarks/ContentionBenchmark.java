@@ -0,0 +1,98 @@
+package root.vending.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import root.vending.ConcurrentVendingMachine;
+import root.vending.VendingMachine;
+
+/**
+ * Kiosk threads inserting coins and taking change while a telemetry thread polls the
+ * balance: {@code VendingMachine} behind a monitor versus {@code ConcurrentVendingMachine}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentionBenchmark {
+
+    private static final long code = 117345294655382L;
+
+    @State(Scope.Group)
+    public static class Locked {
+        VendingMachine machine;
+
+        @Setup
+        public void setUp() {
+            machine = new VendingMachine();
+            machine.enterAdminMode(code);
+            machine.fillProducts();
+            machine.fillCoins(25, 25);
+            machine.exitAdminMode();
+        }
+    }
+
+    @State(Scope.Group)
+    public static class LockFree {
+        ConcurrentVendingMachine machine;
+
+        @Setup
+        public void setUp() {
+            machine = new ConcurrentVendingMachine();
+            machine.enterAdminMode(code);
+            machine.fillProducts();
+            machine.fillCoins(25, 25);
+            machine.exitAdminMode();
+        }
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(3)
+    public VendingMachine.Response lockedKiosk(Locked state) {
+        VendingMachine machine = state.machine;
+        synchronized (machine) {
+            machine.putCoin1();
+            return machine.returnMoney();
+        }
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(1)
+    public int lockedTelemetry(Locked state) {
+        VendingMachine machine = state.machine;
+        synchronized (machine) {
+            return machine.getCurrentBalance();
+        }
+    }
+
+    @Benchmark
+    @Group("lockFree")
+    @GroupThreads(3)
+    public VendingMachine.Response lockFreeKiosk(LockFree state) {
+        ConcurrentVendingMachine machine = state.machine;
+        machine.putCoin1();
+        return machine.returnMoney();
+    }
+
+    @Benchmark
+    @Group("lockFree")
+    @GroupThreads(1)
+    public int lockFreeTelemetry(LockFree state) {
+        return state.machine.getCurrentBalance();
+    }
+}
@@ -0,0 +1,89 @@
+package root.vending.benchmarks;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import root.vending.MachineEvent;
+import root.vending.MachineEventStream;
+import root.vending.VendingMachine;
+
+/**
+ * Latency of inserting a coin and taking it back while the machine publishes to a
+ * {@link MachineEventStream}: not at all, to a subscriber taking everything, and to one
+ * that stopped requesting, under each overflow policy.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventStreamBenchmark {
+
+    @Param({"none", "draining", "stalled-drop", "stalled-block"})
+    public String subscriber;
+
+    private VendingMachine machine;
+    private MachineEventStream stream;
+
+    @Setup
+    public void setUp() {
+        machine = new VendingMachine();
+        Fixture.FULL.prepare(machine);
+        if (subscriber.equals("none")) return;
+
+        MachineEventStream.Overflow overflow = subscriber.endsWith("block")
+                ? MachineEventStream.Overflow.BLOCK : MachineEventStream.Overflow.DROP;
+        stream = new MachineEventStream(1024, overflow);
+        stream.attach(1, machine);
+        long demand = subscriber.equals("draining") ? Long.MAX_VALUE : 1024;
+        stream.subscribe(new Flow.Subscriber<MachineEvent>() {
+            long units;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(demand);
+            }
+
+            @Override
+            public void onNext(MachineEvent event) {
+                units += event.getArg1();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (stream != null) {
+            stream.close();
+            System.out.println("dropped " + stream.getDropped());
+        }
+    }
+
+    @Benchmark
+    public VendingMachine.Response insertAndRefund() {
+        machine.putCoin1();
+        return machine.returnMoney();
+    }
+}
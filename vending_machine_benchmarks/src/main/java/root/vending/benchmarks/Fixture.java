@@ -0,0 +1,62 @@
+package root.vending.benchmarks;
+
+import root.vending.VendingMachine;
+
+/**
+ * Machine states the benchmarks start from. Every fixture leaves the machine in
+ * operation mode with a zero balance.
+ */
+public enum Fixture {
+
+    /** Stocked, half-full coin boxes, default prices. */
+    FULL {
+        @Override
+        void prepare(VendingMachine machine) {
+            machine.enterAdminMode(CODE);
+            machine.fillProducts();
+            machine.fillCoins(25, 25);
+            machine.setPrices(8, 5);
+            machine.exitAdminMode();
+        }
+    },
+
+    /** Stocked, a single coin of each kind: change has to come from what the customer paid. */
+    COIN_STARVED {
+        @Override
+        void prepare(VendingMachine machine) {
+            machine.enterAdminMode(CODE);
+            machine.fillProducts();
+            machine.fillCoins(1, 1);
+            machine.setPrices(8, 5);
+            machine.exitAdminMode();
+        }
+    },
+
+    /** No coins worth 1 left and odd prices, so every sale paid in coins worth 2 is refused. */
+    UNSUITABLE_CHANGE {
+        @Override
+        void prepare(VendingMachine machine) {
+            machine.enterAdminMode(CODE);
+            machine.fillProducts();
+            machine.fillCoins(1, 25);
+            machine.setPrices(1, 3);
+            machine.exitAdminMode();
+            machine.putCoin2();
+            machine.giveProduct1(1);
+        }
+    };
+
+    static final long CODE = 117345294655382L;
+
+    abstract void prepare(VendingMachine machine);
+
+    /** Inserts coins worth {@code amount}, largest coins first. */
+    static void pay(VendingMachine machine, int amount) {
+        for (int i = 0; i < amount / 2; ++i) {
+            machine.putCoin2();
+        }
+        if (amount % 2 != 0) {
+            machine.putCoin1();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package root.vending.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import root.vending.VendingFleet;
+import root.vending.VendingMachine;
+
+/**
+ * Retained heap of one million {@code VendingMachine} objects versus a
+ * {@code VendingFleet} of the same size.
+ *
+ * Run with a fixed heap, e.g. {@code java -Xms2g -Xmx2g -cp benchmarks.jar
+ * root.vending.benchmarks.FleetFootprint [machines]}.
+ */
+public class FleetFootprint {
+
+    public static void main(String[] args) {
+        int machines = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        long base = usedHeap();
+        VendingMachine[] objects = new VendingMachine[machines];
+        for (int i = 0; i < machines; ++i) {
+            objects[i] = new VendingMachine();
+        }
+        long objectBytes = usedHeap() - base;
+        report("VendingMachine[]", machines, objectBytes, objects.length);
+        objects = null;
+
+        base = usedHeap();
+        VendingFleet fleet = new VendingFleet(machines);
+        long fleetBytes = usedHeap() - base;
+        report("VendingFleet", machines, fleetBytes, fleet.size());
+
+        System.out.printf("ratio: %.1fx%n", (double) objectBytes / fleetBytes);
+    }
+
+    private static void report(String name, int machines, long bytes, int keepAlive) {
+        System.out.printf("%-18s %,d machines: %,d bytes (%.1f bytes/machine)%n",
+                name, keepAlive, bytes, (double) bytes / machines);
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
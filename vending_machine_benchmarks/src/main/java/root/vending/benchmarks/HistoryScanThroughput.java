@@ -0,0 +1,74 @@
+package root.vending.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import root.vending.HistoryStore;
+import root.vending.Operation;
+import root.vending.VendingMachine.Response;
+
+/**
+ * Fills a {@link HistoryStore} with synthetic traffic, then prints its size per row and
+ * how fast revenue per product per hour is computed over all of it and for one machine.
+ *
+ * Run with {@code java -cp benchmarks.jar root.vending.benchmarks.HistoryScanThroughput
+ * [rows] [machines]}.
+ */
+public class HistoryScanThroughput {
+
+    private static final long HOUR = 3_600_000L;
+
+    public static void main(String[] args) throws IOException {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 20_000_000L;
+        int machines = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+        Path directory = Files.createTempDirectory("history");
+        try (HistoryStore store = HistoryStore.open(directory)) {
+            long from = 1_700_000_000_000L;
+            long to = write(store, rows, machines, from) + 1;
+            System.out.printf("%,d rows, %.2f bytes/row%n", store.size(), (double) store.sizeOnDisk() / store.size());
+
+            for (int round = 0; round < 5; ++round) {
+                long start = System.nanoTime();
+                long[][] all = store.revenuePerHour(from, to, HistoryStore.ANY_MACHINE);
+                long middle = System.nanoTime();
+                long[][] one = store.revenuePerHour(from, to, machines / 2);
+                long end = System.nanoTime();
+                System.out.printf("all machines: %,.0f rows/s, %.2f GB/s (%d hours, %d in hour 0); one machine: %.1f ms (%d)%n",
+                        store.size() / ((middle - start) / 1e9), store.sizeOnDisk() / (double) (middle - start),
+                        all.length, all[0][0] + all[0][1], (end - middle) / 1e6, one[0][0] + one[0][1]);
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    /** Coins, sales and refunds about a second apart; returns the last time written. */
+    private static long write(HistoryStore store, long rows, int machines, long time) throws IOException {
+        Random random = new Random(1);
+        for (long i = 0; i < rows; ++i) {
+            time += random.nextInt(2_000);
+            long machine = random.nextInt(machines);
+            int kind = random.nextInt(100);
+            if (kind < 60) {
+                store.append(time, machine, Operation.PUT_COIN2, Response.OK, 0, 2, 0, 0);
+            } else if (kind < 75) {
+                store.append(time, machine, Operation.GIVE_PRODUCT1, Response.OK, 1, 8, 0, random.nextInt(2));
+            } else if (kind < 90) {
+                store.append(time, machine, Operation.GIVE_PRODUCT2, Response.OK, 1, 5, 1, 0);
+            } else if (kind < 95) {
+                store.append(time, machine, Operation.GIVE_PRODUCT1, Response.INSUFFICIENT_MONEY, 0, 0, 0, 0);
+            } else {
+                store.append(time, machine, Operation.RETURN_MONEY, Response.OK, 0, 4, 0, 2);
+            }
+        }
+        store.flush();
+        return time;
+    }
+}
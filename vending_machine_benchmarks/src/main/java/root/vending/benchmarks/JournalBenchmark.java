@@ -0,0 +1,73 @@
+package root.vending.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import root.vending.MachineJournal;
+import root.vending.VendingMachine;
+
+/**
+ * Cost of journaling a coin insert and refund, with group commit every
+ * {@code commitIntervalMicros}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class JournalBenchmark {
+
+    @Param({"false", "true"})
+    public boolean journaled;
+
+    @Param({"1000"})
+    public long commitIntervalMicros;
+
+    private Path directory;
+    private VendingMachine machine;
+    private MachineJournal journal;
+
+    @Setup
+    public void setUp() throws IOException {
+        machine = new VendingMachine();
+        Fixture.FULL.prepare(machine);
+        if (journaled) {
+            directory = Files.createTempDirectory("journal-bench");
+            journal = MachineJournal.open(directory, machine, MachineJournal.DEFAULT_SEGMENT_SIZE, commitIntervalMicros);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (journal != null) {
+            journal.close();
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public VendingMachine.Response putCoin1ThenReturnMoney() {
+        machine.putCoin1();
+        return machine.returnMoney();
+    }
+}
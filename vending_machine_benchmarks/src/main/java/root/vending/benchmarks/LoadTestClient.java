@@ -0,0 +1,129 @@
+package root.vending.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+import root.vending.LatencyHistogram;
+import root.vending.MachineRegistry;
+import root.vending.MachineServer;
+import root.vending.VendingMachine;
+
+/**
+ * Opens many kiosk connections to a {@link MachineServer}, drives coin-and-buy traffic
+ * through them for a fixed time and prints throughput and round-trip latency percentiles.
+ *
+ * Run with {@code java -cp benchmarks.jar root.vending.benchmarks.LoadTestClient
+ * [connections] [seconds] [machines] [port]}. Without a port it starts a server in the
+ * same JVM with machines 0 to {@code machines - 1}; with one it expects those machines to
+ * be registered on that server.
+ */
+public class LoadTestClient {
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int machines = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        MachineServer server = null;
+        int port;
+        if (args.length > 3) {
+            port = Integer.parseInt(args[3]);
+        } else {
+            MachineRegistry registry = new MachineRegistry();
+            for (int i = 0; i < machines; ++i) {
+                VendingMachine machine = new VendingMachine();
+                Fixture.FULL.prepare(machine);
+                registry.register(i, machine);
+            }
+            server = MachineServer.start(registry, 0);
+            port = server.getPort();
+        }
+
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder errors = new LongAdder();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(connections);
+        ExecutorService kiosks = MachineServer.newConnectionExecutor();
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; ++c) {
+            int machine = c % machines;
+            kiosks.execute(() -> {
+                try {
+                    kiosk(port, machine, deadline, latency);
+                } catch (IOException e) {
+                    errors.increment();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        kiosks.shutdown();
+        if (server != null) {
+            server.close();
+        }
+
+        System.out.printf("%d connections, %d machines, %.1f s%n", connections, machines, elapsed / 1e9);
+        System.out.printf("%,d requests, %,.0f requests/s, %d failed connections%n",
+                latency.getCount(), latency.getCount() * 1e9 / elapsed, errors.sum());
+        System.out.println("round trip: " + latency);
+    }
+
+    private static void kiosk(int port, int machine, long deadline, LatencyHistogram latency) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+            socket.setTcpNoDelay(true);
+            List<String> sale = new ArrayList<>();
+            for (int i = 0; i < 4; ++i) {
+                sale.add(machine + " PUT_COIN2");
+            }
+            sale.add(machine + " GIVE_PRODUCT1 1");
+            String[] restock = {
+                machine + " RETURN_MONEY",
+                machine + " ENTER_ADMIN_MODE " + Fixture.CODE,
+                machine + " FILL_PRODUCTS",
+                machine + " FILL_COINS 25 25",
+                machine + " EXIT_ADMIN_MODE",
+            };
+
+            while (System.nanoTime() < deadline) {
+                boolean failed = false;
+                for (String request : sale) {
+                    failed |= !call(in, out, request, latency).startsWith("OK");
+                }
+                if (failed) {
+                    for (String request : restock) {
+                        call(in, out, request, latency);
+                    }
+                }
+            }
+        }
+    }
+
+    private static String call(BufferedReader in, BufferedWriter out, String request, LatencyHistogram latency)
+            throws IOException {
+        long start = System.nanoTime();
+        out.write(request);
+        out.write('\n');
+        out.flush();
+        String reply = in.readLine();
+        latency.record(System.nanoTime() - start);
+        if (reply == null) {
+            throw new IOException("server closed the connection");
+        }
+        return reply;
+    }
+}
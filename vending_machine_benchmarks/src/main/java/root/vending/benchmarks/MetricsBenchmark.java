@@ -0,0 +1,54 @@
+package root.vending.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import root.vending.MachineMetrics;
+import root.vending.VendingMachine;
+
+/**
+ * Overhead of recording {@link MachineMetrics} on a sale; run with the GC profiler to
+ * confirm the metered path does not allocate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class MetricsBenchmark {
+
+    @Param({"false", "true"})
+    public boolean metered;
+
+    private VendingMachine machine;
+    private int sales;
+
+    @Setup
+    public void setUp() {
+        machine = new VendingMachine();
+        Fixture.FULL.prepare(machine);
+        if (metered) machine.setMetrics(new MachineMetrics());
+    }
+
+    @Benchmark
+    public VendingMachine.Response giveProduct1() {
+        if (++sales == VendingMachineBenchmark.RESTOCK_EVERY) {
+            sales = 0;
+            Fixture.FULL.prepare(machine);
+        }
+        Fixture.pay(machine, machine.getPrice1());
+        return machine.giveProduct1(1);
+    }
+}
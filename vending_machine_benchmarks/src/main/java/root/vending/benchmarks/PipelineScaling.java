@@ -0,0 +1,91 @@
+package root.vending.benchmarks;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import root.vending.ConfigReference;
+import root.vending.LatencyHistogram;
+import root.vending.MachineConfig;
+import root.vending.MachinePipeline;
+import root.vending.Operation;
+import root.vending.Receipt;
+import root.vending.VendingMachine;
+
+/**
+ * One machine driven by 1 to 64 producer threads, each inserting a coin and asking for its
+ * money back in a loop: once through the machine's monitor as the service does today, once
+ * through a {@link MachinePipeline} waiting on a ticket per command. Prints commands per
+ * second and the latency of a single command as seen by its producer.
+ *
+ * JMH cannot vary the thread count per run, hence a main program. Run with
+ * {@code java -cp benchmarks.jar root.vending.benchmarks.PipelineScaling [seconds]}.
+ */
+public class PipelineScaling {
+
+    private static final int[] PRODUCERS = {1, 2, 4, 8, 16, 32, 64};
+    private static final long code = 117345294655382L;
+
+    private interface Driver {
+        long execute(Operation operation, MachinePipeline.Ticket ticket);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+
+        System.out.printf("%-12s %9s %14s %10s %10s %10s%n", "", "producers", "commands/s", "p50", "p99", "p99.9");
+        for (int producers : PRODUCERS) {
+            VendingMachine locked = machine();
+            run("synchronized", producers, seconds, (operation, ticket) -> {
+                synchronized (locked) {
+                    return operation == Operation.PUT_COIN1 ? Receipt.of(locked.putCoin1()) : locked.refund();
+                }
+            });
+
+            try (MachinePipeline pipeline = MachinePipeline.start(machine(), 1024)) {
+                run("pipeline", producers, seconds, (operation, ticket) -> pipeline.call(operation, 0, 0, ticket));
+            }
+        }
+    }
+
+    private static VendingMachine machine() {
+        VendingMachine machine = new VendingMachine(new ConfigReference(new MachineConfig(30, 40, 1_000, 50, 8, 5, 1, 2)));
+        machine.enterAdminMode(code);
+        machine.fillProducts();
+        machine.fillCoins(1, 1);
+        machine.exitAdminMode();
+        return machine;
+    }
+
+    private static void run(String name, int producers, double seconds, Driver driver) throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder commands = new LongAdder();
+        long warmUntil = System.nanoTime() + (long) (seconds / 2 * 1e9);
+        long stopAt = warmUntil + (long) (seconds * 1e9);
+        CountDownLatch done = new CountDownLatch(producers);
+
+        for (int p = 0; p < producers; p++) {
+            Thread thread = new Thread(() -> {
+                MachinePipeline.Ticket ticket = new MachinePipeline.Ticket();
+                long n = 0;
+                for (long now = System.nanoTime(); now < stopAt; ) {
+                    Operation operation = (n & 1) == 0 ? Operation.PUT_COIN1 : Operation.RETURN_MONEY;
+                    driver.execute(operation, ticket);
+                    long end = System.nanoTime();
+                    if (now >= warmUntil) {
+                        latency.record(end - now);
+                        commands.increment();
+                    }
+                    now = end;
+                    n++;
+                }
+                done.countDown();
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+
+        System.out.printf("%-12s %9d %,14.0f %8dns %8dns %8dns%n", name, producers, commands.sum() / seconds,
+                latency.valueAtPercentile(50), latency.valueAtPercentile(99), latency.valueAtPercentile(99.9));
+    }
+}
@@ -0,0 +1,81 @@
+package root.vending.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import root.vending.PriceBoard;
+import root.vending.VendingMachine;
+
+/**
+ * Sale latency on machines attached to a {@link PriceBoard}, with nobody publishing
+ * ({@code quiet}) and with a thread publishing new tables back to back
+ * ({@code publishing}). Each sale pays 8 and buys one unit of product 1 at 6 or 8.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PricePublicationBenchmark {
+
+    @State(Scope.Group)
+    public static class Board {
+        final PriceBoard board = new PriceBoard(8, 5);
+        int published;
+    }
+
+    @State(Scope.Thread)
+    public static class Seller {
+        final VendingMachine machine = new VendingMachine();
+        int sales;
+
+        @Setup
+        public void setUp(Board board) {
+            Fixture.FULL.prepare(machine);
+            machine.setPriceBoard(board.board);
+        }
+    }
+
+    @Benchmark
+    @Group("quiet")
+    @GroupThreads(3)
+    public long sellQuiet(Seller seller) {
+        return sell(seller);
+    }
+
+    @Benchmark
+    @Group("publishing")
+    @GroupThreads(3)
+    public long sellWhilePublishing(Seller seller) {
+        return sell(seller);
+    }
+
+    @Benchmark
+    @Group("publishing")
+    @GroupThreads(1)
+    public int publish(Board board) {
+        int n = ++board.published;
+        return board.board.publish(n % 2 == 0 ? 8 : 6, 5).getVersion();
+    }
+
+    private static long sell(Seller seller) {
+        VendingMachine machine = seller.machine;
+        if (++seller.sales % 5 == 0) {
+            Fixture.FULL.prepare(machine);
+        }
+        Fixture.pay(machine, 8);
+        return machine.sellProduct1(1);
+    }
+}
@@ -0,0 +1,101 @@
+package root.vending.benchmarks;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import root.vending.MachineRegistry;
+import root.vending.VendingMachine;
+
+/**
+ * Lookups, and lookups followed by an insert and refund under the machine's monitor, at
+ * random ids of a large fleet from every core: the sharded {@link MachineRegistry}
+ * against a single {@code ConcurrentHashMap<Long, VendingMachine>}. Run with
+ * {@code -t 1}, {@code -t 2}, ... up to the core count to see how throughput scales.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class RegistryBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Fleet {
+
+        @Param({"sharded", "single-map"})
+        public String registry;
+
+        @Param({"100000"})
+        public int machines;
+
+        MachineRegistry sharded;
+        ConcurrentHashMap<Long, VendingMachine> single;
+
+        @Setup
+        public void setUp() {
+            long[] ids = new long[machines];
+            VendingMachine[] fleet = new VendingMachine[machines];
+            for (int i = 0; i < machines; ++i) {
+                ids[i] = id(i);
+                fleet[i] = new VendingMachine();
+                Fixture.FULL.prepare(fleet[i]);
+            }
+            if (registry.equals("sharded")) {
+                sharded = new MachineRegistry();
+                sharded.registerAll(ids, fleet);
+            } else {
+                single = new ConcurrentHashMap<>();
+                for (int i = 0; i < machines; ++i) single.put(ids[i], fleet[i]);
+            }
+        }
+
+        VendingMachine get(long id) {
+            return sharded != null ? sharded.get(id) : single.get(id);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Ids {
+        long seed = System.nanoTime() | 1;
+
+        long next(int machines) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            return id((int) Long.remainderUnsigned(seed, machines));
+        }
+    }
+
+    /** Sparse ids, as machine serial numbers are. */
+    static long id(int index) {
+        return 4_000_000_000L + 37L * index;
+    }
+
+    @Benchmark
+    public VendingMachine lookup(Fleet fleet, Ids ids) {
+        return fleet.get(ids.next(fleet.machines));
+    }
+
+    @Benchmark
+    public VendingMachine.Response lookupAndOperate(Fleet fleet, Ids ids) {
+        VendingMachine machine = fleet.get(ids.next(fleet.machines));
+        synchronized (machine) {
+            machine.putCoin1();
+            return machine.returnMoney();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package root.vending.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import root.vending.SalesWindows;
+import root.vending.VendingMachine;
+
+/**
+ * A sale with and without {@link SalesWindows} counting it, and a dashboard read of the
+ * three windows of both products, on one machine of a fleet of {@code fleet}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SalesWindowsBenchmark {
+
+    @Param({"1000", "100000"})
+    public int fleet;
+
+    private VendingMachine plain;
+    private VendingMachine counted;
+    private SalesWindows windows;
+    private int slot;
+    private int sales;
+
+    @Setup
+    public void setUp() {
+        plain = new VendingMachine();
+        Fixture.FULL.prepare(plain);
+
+        windows = new SalesWindows(fleet);
+        for (int i = 0; i < fleet - 1; ++i) {
+            windows.track(i, new VendingMachine());
+        }
+        counted = new VendingMachine();
+        Fixture.FULL.prepare(counted);
+        slot = windows.track(fleet - 1, counted);
+    }
+
+    @Benchmark
+    public long sellPlain() {
+        return sell(plain);
+    }
+
+    @Benchmark
+    public long sellCounted() {
+        return sell(counted);
+    }
+
+    @Benchmark
+    public int readWindows() {
+        int sum = 0;
+        for (SalesWindows.Window window : SalesWindows.Window.values()) {
+            sum += windows.units(slot, 1, window) + windows.units(slot, 2, window)
+                    + windows.revenue(slot, 1, window) + windows.revenue(slot, 2, window);
+        }
+        return sum;
+    }
+
+    private long sell(VendingMachine machine) {
+        if (++sales % 5 == 0) {
+            Fixture.FULL.prepare(machine);
+        }
+        Fixture.pay(machine, 8);
+        return machine.sellProduct1(1);
+    }
+}
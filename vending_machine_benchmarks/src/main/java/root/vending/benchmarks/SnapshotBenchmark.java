@@ -0,0 +1,73 @@
+package root.vending.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import root.vending.FleetSnapshot;
+import root.vending.LazyFleet;
+import root.vending.VendingMachine;
+
+/**
+ * Restoring a fleet from a snapshot: opening it lazily and touching one machine, against
+ * materializing every machine up front.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+
+    @Param({"1000", "1000000"})
+    public int machines;
+
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        VendingMachine prepared = new VendingMachine();
+        Fixture.FULL.prepare(prepared);
+        List<VendingMachine> fleet = new ArrayList<>(machines);
+        for (int i = 0; i < machines; i++) fleet.add(prepared);
+
+        file = Files.createTempFile("fleet", ".snap");
+        FleetSnapshot.write(file, fleet);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public VendingMachine openLazily() throws IOException {
+        LazyFleet fleet = LazyFleet.open(file);
+        return fleet.get(fleet.size() / 2);
+    }
+
+    @Benchmark
+    public VendingMachine restoreEverything() throws IOException {
+        LazyFleet fleet = LazyFleet.open(file);
+        VendingMachine last = null;
+        for (int i = 0; i < fleet.size(); i++) last = fleet.get(i);
+        return last;
+    }
+}
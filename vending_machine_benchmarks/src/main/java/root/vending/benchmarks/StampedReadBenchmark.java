@@ -0,0 +1,93 @@
+package root.vending.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import root.vending.MachineState;
+import root.vending.StampedVendingMachine;
+import root.vending.VendingMachine;
+
+/**
+ * One machine shared by four threads, each doing {@value #READS_PER_WRITE} dashboard
+ * polls per coin insert or refund. {@code synchronized} guards a plain
+ * {@code VendingMachine} with its monitor; {@code stamped} uses
+ * {@link StampedVendingMachine}'s optimistic reads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+public class StampedReadBenchmark {
+
+    static final int READS_PER_WRITE = 100;
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+
+        @Param({"synchronized", "stamped"})
+        public String locking;
+
+        VendingMachine machine;
+        StampedVendingMachine stamped;
+
+        @Setup
+        public void setUp() {
+            if (locking.equals("stamped")) {
+                machine = stamped = new StampedVendingMachine();
+            } else {
+                machine = new VendingMachine();
+            }
+            Fixture.FULL.prepare(machine);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Mix {
+        int operations;
+    }
+
+    @Benchmark
+    public int mixed(Shared shared, Mix mix) {
+        int n = ++mix.operations;
+        if (n % (READS_PER_WRITE + 1) != 0) {
+            return poll(shared);
+        }
+        return write(shared, n / (READS_PER_WRITE + 1) % 2 == 0).ordinal();
+    }
+
+    private static int poll(Shared shared) {
+        if (shared.stamped != null) {
+            MachineState state = shared.stamped.snapshot();
+            return state.getNumberOfProduct1() + state.getNumberOfProduct2() + state.getBalance() + state.getPrice1();
+        }
+        VendingMachine machine = shared.machine;
+        synchronized (machine) {
+            return machine.getNumberOfProduct1() + machine.getNumberOfProduct2() + machine.getCurrentBalance()
+                    + machine.getPrice1();
+        }
+    }
+
+    private static VendingMachine.Response write(Shared shared, boolean insert) {
+        VendingMachine machine = shared.machine;
+        if (shared.stamped != null) {
+            return insert ? machine.putCoin1() : machine.returnMoney();
+        }
+        synchronized (machine) {
+            return insert ? machine.putCoin1() : machine.returnMoney();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package root.vending.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import root.vending.MachineState;
+import root.vending.StateHistory;
+import root.vending.StateRecorder;
+import root.vending.VendingMachine;
+
+/**
+ * What keeping every state of a machine costs: a coin in and out with and without a
+ * {@link StateRecorder}, and looking up or rolling back to a transaction in a history of
+ * a million.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StateHistoryBenchmark {
+
+    static final int HISTORY = 1 << 20;
+
+    private VendingMachine plain;
+    private VendingMachine recorded;
+    private StateRecorder recorder;
+    private StateHistory history;
+    private int transaction;
+
+    @Setup
+    public void setUp() {
+        plain = new VendingMachine();
+        Fixture.FULL.prepare(plain);
+        recorded = new VendingMachine();
+        Fixture.FULL.prepare(recorded);
+        recorder = StateRecorder.attach(recorded);
+
+        VendingMachine machine = new VendingMachine();
+        Fixture.FULL.prepare(machine);
+        StateRecorder filler = StateRecorder.attach(machine);
+        while (filler.history().size() < HISTORY) {
+            machine.putCoin1();
+            machine.returnMoney();
+        }
+        history = filler.history();
+    }
+
+    @Benchmark
+    public VendingMachine.Response putCoin1ThenReturnMoney() {
+        plain.putCoin1();
+        return plain.returnMoney();
+    }
+
+    @Benchmark
+    public VendingMachine.Response putCoin1ThenReturnMoneyRecorded() {
+        recorded.putCoin1();
+        VendingMachine.Response response = recorded.returnMoney();
+        // the cycle leaves the machine as it was, so forgetting it keeps memory flat
+        if (recorder.history().size() > HISTORY) recorder.rollback(0);
+        return response;
+    }
+
+    @Benchmark
+    public MachineState get() {
+        transaction = (transaction + 40_503) & (HISTORY - 1);
+        return history.get(transaction);
+    }
+
+    @Benchmark
+    public StateHistory rollbackAndAppend() {
+        transaction = (transaction + 40_503) & (HISTORY - 1);
+        return history.rollback(transaction).append(history.get(0));
+    }
+}
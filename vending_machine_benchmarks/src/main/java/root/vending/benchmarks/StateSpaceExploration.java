@@ -0,0 +1,25 @@
+package root.vending.benchmarks;
+
+import root.vending.StateSpaceExplorer;
+
+/**
+ * Explores every reachable state of the production machine and prints what was found.
+ * The visited set takes about 500 MB.
+ *
+ * Run with {@code java -Xmx2g -cp benchmarks.jar root.vending.benchmarks.StateSpaceExploration
+ * [threads]}.
+ */
+public class StateSpaceExploration {
+
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        StateSpaceExplorer.Model model = StateSpaceExplorer.Model.full();
+        System.out.printf("%,d encodable states, %d threads%n", model.size(), threads);
+        StateSpaceExplorer.Result result = new StateSpaceExplorer(model).explore(threads);
+        System.out.println(result);
+        System.out.printf("%,.0f transitions/s%n", result.getTransitions() / (result.getElapsedNanos() / 1e9));
+        for (String violation : result.getViolations()) System.out.println(violation);
+        if (result.getViolationCount() != 0) System.exit(1);
+    }
+}
@@ -0,0 +1,79 @@
+package root.vending.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import root.vending.Operation;
+import root.vending.ReplayStats;
+import root.vending.TraceReplayer;
+import root.vending.TraceWriter;
+import root.vending.VendingMachine;
+
+/**
+ * Replays a synthetic trace of customer traffic, sequentially and partitioned by machine,
+ * and prints events per second.
+ *
+ * Run with {@code java -cp benchmarks.jar root.vending.benchmarks.TraceReplayThroughput
+ * [events] [machines] [workers]}.
+ */
+public class TraceReplayThroughput {
+
+    public static void main(String[] args) throws IOException {
+        long events = args.length > 0 ? Long.parseLong(args[0]) : 50_000_000L;
+        int machines = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        Path trace = Files.createTempFile("trace", ".bin");
+        try {
+            write(trace, events, machines);
+            TraceReplayer replayer = TraceReplayer.open(trace);
+            for (int round = 0; round < 3; ++round) {
+                ReplayStats sequential = replayer.replay(fleet(machines));
+                System.out.println("sequential: " + sequential);
+                ReplayStats parallel = replayer.replayParallel(fleet(machines), workers);
+                System.out.println("parallel x" + workers + ": " + parallel);
+            }
+        } finally {
+            Files.deleteIfExists(trace);
+        }
+    }
+
+    private static VendingMachine[] fleet(int machines) {
+        VendingMachine[] fleet = new VendingMachine[machines];
+        for (int i = 0; i < machines; ++i) {
+            fleet[i] = new VendingMachine();
+            Fixture.FULL.prepare(fleet[i]);
+        }
+        return fleet;
+    }
+
+    /** A customer inserts coins and buys; every machine is restocked now and then. */
+    private static void write(Path trace, long events, int machines) throws IOException {
+        Random random = new Random(1);
+        try (TraceWriter writer = TraceWriter.create(trace)) {
+            for (long i = 0; i < events; ++i) {
+                int m = random.nextInt(machines);
+                int kind = random.nextInt(100);
+                if (kind < 45) {
+                    writer.append(m, Operation.PUT_COIN2, 0, 0);
+                } else if (kind < 60) {
+                    writer.append(m, Operation.PUT_COIN1, 0, 0);
+                } else if (kind < 75) {
+                    writer.append(m, Operation.GIVE_PRODUCT1, 1, 0);
+                } else if (kind < 90) {
+                    writer.append(m, Operation.GIVE_PRODUCT2, 1, 0);
+                } else if (kind < 99) {
+                    writer.append(m, Operation.RETURN_MONEY, 0, 0);
+                } else {
+                    writer.append(m, Operation.RETURN_MONEY, 0, 0);
+                    writer.appendEnterAdminMode(m, Fixture.CODE);
+                    writer.append(m, Operation.FILL_PRODUCTS, 0, 0);
+                    writer.append(m, Operation.FILL_COINS, 25, 25);
+                    writer.append(m, Operation.EXIT_ADMIN_MODE, 0, 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package root.vending.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import root.vending.Receipt;
+import root.vending.VendingMachine;
+
+/**
+ * Per-call cost of every {@code VendingMachine} operation on a single thread.
+ *
+ * Operations that change state run as closed cycles (pay, sell, take the change back)
+ * so that the machine stays in its fixture; stock and coin boxes are restored through
+ * the admin path every {@value #RESTOCK_EVERY} sales.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class VendingMachineBenchmark {
+
+    static final int RESTOCK_EVERY = 5;
+
+    @Param({"FULL", "COIN_STARVED", "UNSUITABLE_CHANGE"})
+    public Fixture fixture;
+
+    private VendingMachine machine;
+    private int sales;
+
+    @Setup
+    public void setUp() {
+        machine = new VendingMachine();
+        fixture.prepare(machine);
+    }
+
+    @Benchmark
+    public int readGetters() {
+        return machine.getNumberOfProduct1() + machine.getNumberOfProduct2()
+                + machine.getCurrentBalance() + machine.getCurrentSum()
+                + machine.getCoins1() + machine.getCoins2()
+                + machine.getPrice1() + machine.getPrice2()
+                + machine.getCurrentMode().ordinal();
+    }
+
+    @Benchmark
+    public VendingMachine.Response putCoin1ThenReturnMoney() {
+        machine.putCoin1();
+        return machine.returnMoney();
+    }
+
+    @Benchmark
+    public VendingMachine.Response putCoin2ThenReturnMoney() {
+        machine.putCoin2();
+        return machine.returnMoney();
+    }
+
+    @Benchmark
+    public VendingMachine.Response giveProduct1() {
+        Fixture.pay(machine, machine.getPrice1() + 1);
+        return settle(machine.giveProduct1(1));
+    }
+
+    @Benchmark
+    public VendingMachine.Response giveProduct2() {
+        Fixture.pay(machine, machine.getPrice2() + 1);
+        return settle(machine.giveProduct2(1));
+    }
+
+    @Benchmark
+    public long sellProduct1() {
+        Fixture.pay(machine, machine.getPrice1() + 1);
+        long receipt = machine.sellProduct1(1);
+        settle(Receipt.response(receipt));
+        return receipt;
+    }
+
+    @Benchmark
+    public long purchase1() {
+        int amount = machine.getPrice1() + 1;
+        long receipt = machine.purchase(1, 1, amount % 2, amount / 2);
+        settle(Receipt.response(receipt));
+        return receipt;
+    }
+
+    @Benchmark
+    public VendingMachine.Response giveProductInsufficientMoney() {
+        return machine.giveProduct1(1);
+    }
+
+    @Benchmark
+    public VendingMachine.Response giveProductInvalidParam() {
+        return machine.giveProduct2(0);
+    }
+
+    @Benchmark
+    public VendingMachine.Response enterAdminModeWrongCode() {
+        return machine.enterAdminMode(1);
+    }
+
+    @Benchmark
+    public VendingMachine.Response adminCycle() {
+        machine.enterAdminMode(Fixture.CODE);
+        machine.fillProducts();
+        machine.fillCoins(25, 25);
+        VendingMachine.Response response = machine.setPrices(machine.getPrice1(), machine.getPrice2());
+        machine.exitAdminMode();
+        return response;
+    }
+
+    private VendingMachine.Response settle(VendingMachine.Response response) {
+        if (response != VendingMachine.Response.OK) {
+            machine.returnMoney();
+        }
+        if (++sales == RESTOCK_EVERY) {
+            sales = 0;
+            fixture.prepare(machine);
+        }
+        return response;
+    }
+}